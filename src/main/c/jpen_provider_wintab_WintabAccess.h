@@ -112,6 +112,22 @@ JNIEXPORT jint JNICALL Java_jpen_provider_wintab_WintabAccess_getValue
 JNIEXPORT jboolean JNICALL Java_jpen_provider_wintab_WintabAccess_nextPacket
   (JNIEnv *, jclass, jint);
 
+/*
+ * Class:     jpen_provider_wintab_WintabAccess
+ * Method:    fillPackets
+ * Signature: (ILjava/nio/ByteBuffer;I)I
+ */
+JNIEXPORT jint JNICALL Java_jpen_provider_wintab_WintabAccess_fillPackets
+  (JNIEnv *, jclass, jint, jobject, jint);
+
+/*
+ * Class:     jpen_provider_wintab_WintabAccess
+ * Method:    getPacketSize
+ * Signature: ()I
+ */
+JNIEXPORT jint JNICALL Java_jpen_provider_wintab_WintabAccess_getPacketSize
+  (JNIEnv *, jclass);
+
 /*
  * Class:     jpen_provider_wintab_WintabAccess
  * Method:    getEnabled
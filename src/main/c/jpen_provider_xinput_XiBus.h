@@ -47,6 +47,14 @@ JNIEXPORT jint JNICALL Java_jpen_provider_xinput_XiBus_getDevicesSize
 JNIEXPORT jstring JNICALL Java_jpen_provider_xinput_XiBus_getDeviceName
   (JNIEnv *, jclass, jint, jint);
 
+/*
+ * Class:     jpen_provider_xinput_XiBus
+ * Method:    getDeviceId
+ * Signature: (II)I
+ */
+JNIEXPORT jint JNICALL Java_jpen_provider_xinput_XiBus_getDeviceId
+  (JNIEnv *, jclass, jint, jint);
+
 /*
  * Class:     jpen_provider_xinput_XiBus
  * Method:    setDevice
@@ -63,6 +71,46 @@ JNIEXPORT jint JNICALL Java_jpen_provider_xinput_XiBus_setDevice
 JNIEXPORT jint JNICALL Java_jpen_provider_xinput_XiBus_refreshDeviceInfo
   (JNIEnv *, jclass, jint);
 
+/*
+ * Class:     jpen_provider_xinput_XiBus
+ * Method:    waitNextEvent
+ * Signature: (I)I
+ */
+JNIEXPORT jint JNICALL Java_jpen_provider_xinput_XiBus_waitNextEvent
+  (JNIEnv *, jclass, jint);
+
+/*
+ * Class:     jpen_provider_xinput_XiBus
+ * Method:    fillEvents
+ * Signature: (ILjava/nio/ByteBuffer;I)I
+ */
+JNIEXPORT jint JNICALL Java_jpen_provider_xinput_XiBus_fillEvents
+  (JNIEnv *, jclass, jint, jobject, jint);
+
+/*
+ * Class:     jpen_provider_xinput_XiBus
+ * Method:    selectDevicePresence
+ * Signature: (I)I
+ */
+JNIEXPORT jint JNICALL Java_jpen_provider_xinput_XiBus_selectDevicePresence
+  (JNIEnv *, jclass, jint);
+
+/*
+ * Class:     jpen_provider_xinput_XiBus
+ * Method:    waitDevicePresenceChange
+ * Signature: (I)Z
+ */
+JNIEXPORT jboolean JNICALL Java_jpen_provider_xinput_XiBus_waitDevicePresenceChange
+  (JNIEnv *, jclass, jint);
+
+/*
+ * Class:     jpen_provider_xinput_XiBus
+ * Method:    stopWaitingNextEvent
+ * Signature: (I)V
+ */
+JNIEXPORT void JNICALL Java_jpen_provider_xinput_XiBus_stopWaitingNextEvent
+  (JNIEnv *, jclass, jint);
+
 /*
  * Class:     jpen_provider_xinput_XiBus
  * Method:    printXNextRequestSerial
@@ -128,6 +128,22 @@ JNIEXPORT void JNICALL Java_jpen_provider_xinput_XiDevice_refreshLevelRanges
 JNIEXPORT jboolean JNICALL Java_jpen_provider_xinput_XiDevice_getIsAbsoluteMode
   (JNIEnv *, jclass, jint);
 
+/*
+ * Class:     jpen_provider_xinput_XiDevice
+ * Method:    getRefreshedLevelRanges
+ * Signature: (I)[I
+ */
+JNIEXPORT jintArray JNICALL Java_jpen_provider_xinput_XiDevice_getRefreshedLevelRanges
+  (JNIEnv *, jclass, jint);
+
+/*
+ * Class:     jpen_provider_xinput_XiDevice
+ * Method:    setIsListeningAndGet
+ * Signature: (IZ)Z
+ */
+JNIEXPORT jboolean JNICALL Java_jpen_provider_xinput_XiDevice_setIsListeningAndGet
+  (JNIEnv *, jclass, jint, jboolean);
+
 /*
  * Class:     jpen_provider_xinput_XiDevice
  * Method:    destroy
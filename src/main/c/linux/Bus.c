@@ -18,6 +18,10 @@ along with jpen.  If not, see <http://www.gnu.org/licenses/>.
 }] */
 #include "Bus.h"
 #include "Device.h"
+#include <errno.h>
+#include <fcntl.h>
+#include <poll.h>
+#include <unistd.h>
 
 char *xerror;
 
@@ -50,30 +54,61 @@ int Bus_preCreate(SBus *pBus) {
 		return errorState;
 	}
 	pBus->displayConnectionNumber=ConnectionNumber(pBus->pDisplay);
+	if(pipe(pBus->wakeupFds)) {
+		Bus_setError("Failed to create the wakeup pipe.");
+		XCloseDisplay(pBus->pDisplay);
+		return errorState;
+	}
+	fcntl(pBus->wakeupFds[0], F_SETFL, O_NONBLOCK);
+	fcntl(pBus->wakeupFds[1], F_SETFL, O_NONBLOCK);
 
-	return Bus_refreshDeviceInfo(pBus);
+	if(Bus_refreshDeviceInfo(pBus)) {
+		close(pBus->wakeupFds[0]);
+		close(pBus->wakeupFds[1]);
+		XCloseDisplay(pBus->pDisplay);
+		return errorState;
+	}
+	return cleanState;
 }
 
+/**
+Replaces the device information list. The devices created on this bus keep working: they find their information by XID (see Bus_getDeviceInfo), not by the index on the previous list.
+On failure the list is left empty and the X server connection is kept open.
+*/
 int Bus_refreshDeviceInfo(SBus *pBus){
 	if(pBus->pDeviceInfo)
 		XFreeDeviceList(pBus->pDeviceInfo);
 	pBus->pDeviceInfo = XListInputDevices(pBus->pDisplay, &pBus->deviceInfoSize);
 	if (!pBus->pDeviceInfo) {
+		pBus->deviceInfoSize=0;
 		Bus_setError("Failed to get input device information:");
 		Bus_appendError(xerror);
 		Bus_appendError(".");
-		XCloseDisplay(pBus->pDisplay);
 		return errorState;
 	}
 	return cleanState;
 }
 
 /**
-Relations and entire structure map freeing is done by the java side finalization mechanism. Is important to reflect all relations in the java side to avoid garbage collection of live structures.
+@return the information of the device having the given XID on the current device information list, NULL if the device is not on the list (e.g. it was unplugged).
+*/
+XDeviceInfo *Bus_getDeviceInfo(SBus *pBus, XID deviceId){
+	int i=pBus->deviceInfoSize;
+	while(--i>=0)
+		if(pBus->pDeviceInfo[i].id==deviceId)
+			return &pBus->pDeviceInfo[i];
+	return NULL;
+}
+
+/**
+Relations and entire structure map freeing is done by the java side (XiBus.close(), XiDevice.close() and their jpen.internal.Cleaner safety net). Is important to reflect all relations in the java side to avoid garbage collection of live structures.
 */
 int Bus_preDestroy(SBus *pBus) {
+	close(pBus->wakeupFds[0]);
+	close(pBus->wakeupFds[1]);
 	XCloseDisplay(pBus->pDisplay);
-	XFreeDeviceList(pBus->pDeviceInfo);
+	if(pBus->pDeviceInfo)
+		XFreeDeviceList(pBus->pDeviceInfo);
 	return cleanState;
 }
 
@@ -83,20 +118,147 @@ remember to destroy the current device on the java side when setting this.
 int Bus_setDevice(SBus *pBus, int deviceIndex) {
 	int deviceCellIndex=Device_create();
 	if(deviceCellIndex==errorState) {
-		Bus_setError(Device_row.error);
+		Bus_setError(Device_getError());
 		return errorState;
 	}
 	SDevice *pDevice=Device_getP(deviceCellIndex);
 	if(Device_init(pDevice, pBus, deviceIndex)==errorState) {
-		Bus_appendError(Device_row.error);
+		Bus_appendError(Device_getError());
 		Bus_appendError(".");
 		if(Device_destroy(deviceCellIndex))
-			Bus_appendError(Device_row.error);
+			Bus_appendError(Device_getError());
 		return errorState;
 	}
 	return pBus->deviceCellIndex=deviceCellIndex;
 }
 
+/**
+@return the device created on this bus which generated the given event (the event is processed by the device), NULL if none.
+*/
+static SDevice *Bus_routeEvent(SBus *pBus, XEvent *pEvent) {
+	SDevice *pRouted=NULL;
+	Device_lockRow(); // other buses may be creating or destroying devices
+	int deviceCellIndex=Device_row.firstUsedCell;
+	while(deviceCellIndex!=-1) {
+		SDeviceCell *pDeviceCell=Device_getPCell(deviceCellIndex);
+		SDevice *pDevice=pDeviceCell->pContent;
+		if(!pDeviceCell->destroying && // its XDevice may be being closed outside the row lock
+			 pDevice->busCellIndex==pBus->cellIndex && pDevice->pXdevice &&
+			 Device_processEvent(pDevice, pEvent)) {
+			pRouted=pDevice;
+			break;
+		}
+		deviceCellIndex=pDeviceCell->nextCell;
+	}
+	Device_unlockRow();
+	return pRouted;
+}
+
+/**
+@return true if Bus_stopWaitingNextEvent was called since the last call (consumes the wakeup).
+*/
+static int Bus_consumeWakeup(SBus *pBus) {
+	char buffer[32];
+	int woken=false;
+	while(read(pBus->wakeupFds[0], buffer, sizeof(buffer))>0)
+		woken=true;
+	return woken;
+}
+
+/**
+Waits the next event on the X server connection, or until Bus_stopWaitingNextEvent is called: polls the connection file descriptor and the wakeup pipe.
+@return true if an event was stored on pEvent, false if the wait was stopped.
+*/
+int Bus_nextEvent(SBus *pBus, XEvent *pEvent) {
+	struct pollfd fds[2];
+	while(true) {
+		if(Bus_consumeWakeup(pBus))
+			return false;
+		if(XPending(pBus->pDisplay)) { // flushes the requests and reads the available events
+			XNextEvent(pBus->pDisplay, pEvent);
+			return true;
+		}
+		fds[0].fd=pBus->displayConnectionNumber;
+		fds[0].events=POLLIN;
+		fds[1].fd=pBus->wakeupFds[0];
+		fds[1].events=POLLIN;
+		if(poll(fds, 2, -1)<0 && errno!=EINTR)
+			return false;
+	}
+}
+
+/**
+Waits the next event on the X server connection and routes it (by the device XID) to the device created on this bus which generated it. Many devices can be created on the same bus (multiplexed mode) to read all of them using one connection.
+@return the cell index of the device which received the event, -1 if the event was not generated by a device of this bus (e.g. Bus_stopWaitingNextEvent was called).
+*/
+int Bus_waitNextEvent(SBus *pBus) {
+	XEvent event;
+	if(!Bus_nextEvent(pBus, &event))
+		return -1;
+	SDevice *pDevice=Bus_routeEvent(pBus, &event);
+	return pDevice? pDevice->cellIndex: -1;
+}
+
+/**
+Bulk version of Bus_waitNextEvent: waits the next event and then routes all the already queued events (without blocking), writing one record (see E_EventRecord) for each device event on pRecords.
+@return the number of records written, at most capacity. 0 if the first event was not a device event (e.g. Bus_stopWaitingNextEvent was called). A non device event ends the batch.
+*/
+int Bus_fillEvents(SBus *pBus, char *pRecords, int capacity) {
+	int size=0;
+	XEvent event;
+	do {
+		if(!Bus_nextEvent(pBus, &event))
+			break;
+		SDevice *pDevice=Bus_routeEvent(pBus, &event);
+		if(!pDevice)
+			break;
+		Device_writeLastEventRecord(pDevice, pRecords+size*E_EventRecord_size);
+		size++;
+	} while(size<capacity && XPending(pBus->pDisplay));
+	return size;
+}
+
+/**
+Selects the DevicePresenceNotify events (sent by the X server when an input device is added, removed, enabled or disabled) on the root window of this bus connection. Supported since XInput 1.4.
+*/
+int Bus_selectDevicePresence(SBus *pBus){
+	XEventClass eventClass=0;
+	DevicePresence(pBus->pDisplay, pBus->presenceEventType, eventClass);
+	if(!eventClass || !pBus->presenceEventType) {
+		Bus_setError("Server does not support the XInput device presence notification.");
+		return errorState;
+	}
+	if(XSelectExtensionEvent(pBus->pDisplay, DefaultRootWindow(pBus->pDisplay), &eventClass, 1)) {
+		Bus_setError("Failed to select the device presence events.");
+		return errorState;
+	}
+	XFlush(pBus->pDisplay);
+	return cleanState;
+}
+
+/**
+Waits until a DevicePresenceNotify event is received (see Bus_selectDevicePresence) or Bus_stopWaitingNextEvent is called. The other events are discarded: the devices must not be created on this bus.
+@return true if the input devices changed, false if the wait was stopped.
+*/
+int Bus_waitDevicePresenceChange(SBus *pBus){
+	XEvent event;
+	while(Bus_nextEvent(pBus, &event))
+		if(event.type==pBus->presenceEventType)
+			return true;
+	return false;
+}
+
+/**
+Makes the current (or next) Bus_nextEvent call on the given bus return false: writes on the bus wakeup pipe. Does not use the X server connection: it is safe to call from any thread while another thread waits.
+*/
+void Bus_stopWaitingNextEvent(SBus *pBus){
+	if(!pBus)
+		return;
+	char wakeup=1;
+	if(write(pBus->wakeupFds[1], &wakeup, 1)<0 && errno!=EAGAIN) // EAGAIN: the pipe is full, a wakeup is already pending
+		printf("Failed to write on the wakeup pipe!\n");
+}
+
 void Bus_printXNextRequestSerial(SBus *pBus){
 	printf("X next request serial number: %li \n", XNextRequest(pBus->pDisplay));
 }
\ No newline at end of file
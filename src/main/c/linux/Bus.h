@@ -35,9 +35,18 @@ struct Bus {
 	int deviceInfoSize;
 	int deviceCellIndex;
 	int displayConnectionNumber;
+	int wakeupFds[2]; // self-pipe written by Bus_stopWaitingNextEvent, non blocking
+	int presenceEventType; // set by Bus_selectDevicePresence
 };
 m_declareRow(Bus);
 extern int Bus_setDevice(SBus *pBus, int deviceIndex);
 extern int Bus_refreshDeviceInfo(SBus *pBus);
+extern XDeviceInfo *Bus_getDeviceInfo(SBus *pBus, XID deviceId);
+extern int Bus_selectDevicePresence(SBus *pBus);
+extern int Bus_waitDevicePresenceChange(SBus *pBus);
 extern void Bus_printXNextRequestSerial(SBus *pBus);
+extern int Bus_nextEvent(SBus *pBus, XEvent *pEvent);
+extern int Bus_waitNextEvent(SBus *pBus);
+extern int Bus_fillEvents(SBus *pBus, char *pRecords, int capacity);
+extern void Bus_stopWaitingNextEvent(SBus *pBus);
 #endif
@@ -87,11 +87,16 @@ int Device_preDestroy(SDevice *pDevice) {
 	return 0;
 }
 
+/**
+Keeps the current ranges if the device is not on the bus device information list (e.g. it was unplugged).
+*/
 void Device_refreshValuatorRanges(struct Device *pDevice){
 	SBus *pBus=Bus_getP(pDevice->busCellIndex);
-	XDeviceInfo deviceInfo=pBus->pDeviceInfo[pDevice->index];
-	XAnyClassPtr pAnyClassInfo = deviceInfo.inputclassinfo;
-	int j=deviceInfo.num_classes;
+	XDeviceInfo *pDeviceInfo=Bus_getDeviceInfo(pBus, pDevice->id);
+	if(!pDeviceInfo)
+		return;
+	XAnyClassPtr pAnyClassInfo = pDeviceInfo->inputclassinfo;
+	int j=pDeviceInfo->num_classes;
 	while(--j>=0) {
 		if(pAnyClassInfo->class==ValuatorClass) {
 			XValuatorInfo *pValuatorInfo=(XValuatorInfo *) pAnyClassInfo;
@@ -118,9 +123,11 @@ void Device_refreshValuatorRanges(struct Device *pDevice){
 
 static int Device_getNumAxes(struct Device *pDevice){
 	SBus *pBus=Bus_getP(pDevice->busCellIndex);
-	XDeviceInfo deviceInfo=pBus->pDeviceInfo[pDevice->index];
-	XAnyClassPtr pAnyClassInfo = deviceInfo.inputclassinfo;
-	int j=deviceInfo.num_classes;
+	XDeviceInfo *pDeviceInfo=Bus_getDeviceInfo(pBus, pDevice->id);
+	if(!pDeviceInfo)
+		return 0;
+	XAnyClassPtr pAnyClassInfo = pDeviceInfo->inputclassinfo;
+	int j=pDeviceInfo->num_classes;
 	while(--j>=0) {
 		if(pAnyClassInfo->class==ValuatorClass) {
 			XValuatorInfo *pValuatorInfo=(XValuatorInfo *) pAnyClassInfo;
@@ -135,6 +142,7 @@ int Device_init(SDevice *pDevice, SBus *pBus, int deviceIndex) {
 	pDevice->busCellIndex=pBus->cellIndex;
 	pDevice->index=deviceIndex;
 	XDeviceInfo deviceInfo=pBus->pDeviceInfo[pDevice->index];
+	pDevice->id=deviceInfo.id;
 	if(deviceInfo.use<IsXExtensionDevice) { // 4 is isXExtensionPointer, 3 is isXExtensionKeyboard; these are a new  (since 2006/07/18) inputproto 1.4.1 (xorg 7.3 includes inputproto 1.4.2.1). (http://gitweb.freedesktop.org/?p=xorg/proto/inputproto.git;a=summary). Warning: sometimes isXExtensionKeyboard is a tablet device : S
 		Device_setError("Not an X extension device.");
 		return errorState;
@@ -155,8 +163,6 @@ int Device_init(SDevice *pDevice, SBus *pBus, int deviceIndex) {
 		return errorState;
 	}
 	Device_refreshValuatorRanges(pDevice);
-	//hack to signal Device_waitNextEventOrTimeOut through Device_stopWaitingNextEvent:
-	XSelectInput(pBus->pDisplay,DefaultRootWindow(pBus->pDisplay),PropertyChangeMask);
 	//Device_setIsListening(pDevice, true);
 	return 0;
 }
@@ -183,8 +189,11 @@ int Device_nextEvent(struct Device *pDevice) {
 	//if(!pDevice->isListening)
 	//return 0;
 
-	if(XPending(pBus->pDisplay))
-		return Device_waitNextEvent(pDevice);
+	if(XPending(pBus->pDisplay)) { // does not use Bus_nextEvent: a pending wakeup is for the waiting thread
+		XEvent event;
+		XNextEvent(pBus->pDisplay, &event);
+		return Device_processEvent(pDevice, &event);
+	}
 	return false;
 }
 
@@ -194,11 +203,24 @@ int Device_nextEvent(struct Device *pDevice) {
 int Device_waitNextEvent(struct Device *pDevice) {
 	struct Bus *pBus=Bus_getP(pDevice->busCellIndex);
 
-	XNextEvent(pBus->pDisplay, &pDevice->lastEvent);
-	
+	XEvent event;
+	if(!Bus_nextEvent(pBus, &event))
+		return false;
+	return Device_processEvent(pDevice, &event);
+}
+
+/**
+Stores the given event as the last event of this device if the event was generated by this device (its XID matches).
+@return 1 if the event was generated by this device, 0 otherwise.
+*/
+int Device_processEvent(struct Device *pDevice, XEvent *pEvent) {
 	register int i;
 	for(i=E_EventType_size; --i>=0;) {
-		if(pDevice->eventTypeIds[i]==pDevice->lastEvent.type){
+		if(pDevice->eventTypeIds[i]==pEvent->type){
+			// all the XInput device events have the deviceid field at the same position:
+			if(((XDeviceMotionEvent *)pEvent)->deviceid!=pDevice->pXdevice->device_id)
+				return false;
+			pDevice->lastEvent=*pEvent;
 			pDevice->lastEventType=i;
 			switch(i){
 			case E_EventType_ButtonPress:
@@ -237,19 +259,18 @@ int Device_waitNextEvent(struct Device *pDevice) {
 	return false;
 }
 
-Display *pAuxDisplay;
+/**
+Writes the last event of this device (see Device_processEvent) and the current valuator values on the given record.
+*/
+void Device_writeLastEventRecord(SDevice *pDevice, char *pRecord){
+	*(jint *)(pRecord+E_EventRecord_deviceCellIndex)=pDevice->cellIndex;
+	*(jint *)(pRecord+E_EventRecord_type)=pDevice->lastEventType;
+	*(jlong *)(pRecord+E_EventRecord_time)=pDevice->lastEventTime;
+	*(jint *)(pRecord+E_EventRecord_button)=pDevice->lastEventButton;
+	*(jint *)(pRecord+E_EventRecord_deviceState)=pDevice->lastEventDeviceState;
+	memcpy(pRecord+E_EventRecord_valuators, pDevice->valuatorValues, sizeof(jint)*E_Valuators_size);
+}
 
 void Device_stopWaitingNextEvent(SDevice *pDevice){
-	if(!pAuxDisplay){
-		pAuxDisplay=XOpenDisplay(NULL);
-		if(!pAuxDisplay) {
-			printf("Failed to connect to X server!\n");
-			return;
-		}
-	}
-
-	unsigned char data[0];
-	XChangeProperty(pAuxDisplay, DefaultRootWindow(pAuxDisplay), XA_ATOM, XA_ATOM, 8,
-									PropModeAppend, data, 0 );
-	XFlush(pAuxDisplay);
+	Bus_stopWaitingNextEvent(Bus_getP(pDevice->busCellIndex));
 }
\ No newline at end of file
@@ -41,10 +41,22 @@ enum {
 	E_Valuators_size,
 };
 
+/* Warning: this layout must correspond to the XiBus.EVENT_RECORD_* constants. Native byte order. */
+enum {
+	E_EventRecord_deviceCellIndex=0, // jint
+	E_EventRecord_type=4, // jint, E_EventType
+	E_EventRecord_time=8, // jlong
+	E_EventRecord_button=16, // jint
+	E_EventRecord_deviceState=20, // jint
+	E_EventRecord_valuators=24, // jint[E_Valuators_size]
+	E_EventRecord_size=24+4*E_Valuators_size,
+};
+
 struct Device {
 	int cellIndex;
 	int busCellIndex;
-	int index;
+	int index; // on the bus device information list when created, use id afterwards (the list is refreshed on hotplug)
+	XID id;
 	XDevice *pXdevice;
 	int isListening;
 	
@@ -65,6 +77,8 @@ m_declareRow(Device);
 extern int Device_init(SDevice *pDevice, SBus *pBus, int deviceIndex);
 extern int Device_nextEvent(SDevice *pDevice);
 extern int Device_waitNextEvent(SDevice *pDevice);
+extern int Device_processEvent(SDevice *pDevice, XEvent *pEvent);
+extern void Device_writeLastEventRecord(SDevice *pDevice, char *pRecord);
 extern void Device_stopWaitingNextEvent(SDevice *pDevice);
 extern void Device_refreshValuatorRanges(SDevice *pDevice);
 extern void Device_setIsListening(SDevice *pDevice, int isListening);
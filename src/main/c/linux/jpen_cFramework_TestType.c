@@ -35,7 +35,7 @@ JNIEXPORT jint JNICALL Java_jpen_cFramework_TestType_createTestType
  */
 JNIEXPORT jstring JNICALL Java_jpen_cFramework_TestType_getTestTypeError
 (JNIEnv *pEnv, jclass class){
-  return (*pEnv)->NewStringUTF(pEnv, TestType_row.error);
+  return (*pEnv)->NewStringUTF(pEnv, TestType_getError());
 }
 
 /*
@@ -47,7 +47,7 @@ JNIEXPORT jint JNICALL Java_jpen_provider_xinput_XiBus_create
  */
 JNIEXPORT jstring JNICALL Java_jpen_provider_xinput_XiBus_getError
 (JNIEnv *pEnv, jclass class){
-  return (*pEnv)->NewStringUTF(pEnv, Bus_row.error);
+  return (*pEnv)->NewStringUTF(pEnv, Bus_getError());
 }
 
 /*
@@ -70,6 +70,16 @@ JNIEXPORT jstring JNICALL Java_jpen_provider_xinput_XiBus_getDeviceName
   return (*pEnv)->NewStringUTF(pEnv, Bus_getP(cellIndex)->pDeviceInfo[deviceIndex].name);
 }
 
+/*
+ * Class:     jpen_provider_xinput_XiBus
+ * Method:    getDeviceId
+ * Signature: (II)I
+ */
+JNIEXPORT jint JNICALL Java_jpen_provider_xinput_XiBus_getDeviceId
+(JNIEnv *pEnv, jclass class, jint cellIndex, jint deviceIndex){
+	return Bus_getP(cellIndex)->pDeviceInfo[deviceIndex].id;
+}
+
 /*
  * Class:     jpen_provider_xinput_Bus
  * Method:    setDevice
@@ -100,6 +110,59 @@ JNIEXPORT jint JNICALL Java_jpen_provider_xinput_XiBus_refreshDeviceInfo
 	return Bus_refreshDeviceInfo(Bus_getP(cellIndex));
 }
 
+/*
+ * Class:     jpen_provider_xinput_XiBus
+ * Method:    waitNextEvent
+ * Signature: (I)I
+ */
+JNIEXPORT jint JNICALL Java_jpen_provider_xinput_XiBus_waitNextEvent
+(JNIEnv *pEnv, jclass class, jint cellIndex){
+	return Bus_waitNextEvent(Bus_getP(cellIndex));
+}
+
+/*
+ * Class:     jpen_provider_xinput_XiBus
+ * Method:    fillEvents
+ * Signature: (ILjava/nio/ByteBuffer;I)I
+ */
+JNIEXPORT jint JNICALL Java_jpen_provider_xinput_XiBus_fillEvents
+(JNIEnv *pEnv, jclass class, jint cellIndex, jobject records, jint capacity){
+	char *pRecords=(*pEnv)->GetDirectBufferAddress(pEnv, records);
+	if(!pRecords)
+		return -1;
+	return Bus_fillEvents(Bus_getP(cellIndex), pRecords, capacity);
+}
+
+/*
+ * Class:     jpen_provider_xinput_XiBus
+ * Method:    selectDevicePresence
+ * Signature: (I)I
+ */
+JNIEXPORT jint JNICALL Java_jpen_provider_xinput_XiBus_selectDevicePresence
+(JNIEnv *pEnv, jclass class, jint cellIndex){
+	return Bus_selectDevicePresence(Bus_getP(cellIndex));
+}
+
+/*
+ * Class:     jpen_provider_xinput_XiBus
+ * Method:    waitDevicePresenceChange
+ * Signature: (I)Z
+ */
+JNIEXPORT jboolean JNICALL Java_jpen_provider_xinput_XiBus_waitDevicePresenceChange
+(JNIEnv *pEnv, jclass class, jint cellIndex){
+	return Bus_waitDevicePresenceChange(Bus_getP(cellIndex));
+}
+
+/*
+ * Class:     jpen_provider_xinput_XiBus
+ * Method:    stopWaitingNextEvent
+ * Signature: (I)V
+ */
+JNIEXPORT void JNICALL Java_jpen_provider_xinput_XiBus_stopWaitingNextEvent
+(JNIEnv *pEnv, jclass class, jint cellIndex){
+	Bus_stopWaitingNextEvent(Bus_getP(cellIndex));
+}
+
 /*
  * Class:     jpen_provider_xinput_XiBus
  * Method:    printXNextRequestSerial
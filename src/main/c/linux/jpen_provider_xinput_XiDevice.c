@@ -85,7 +85,7 @@ JNIEXPORT jint JNICALL Java_jpen_provider_xinput_XiDevice_destroy
  */
 JNIEXPORT jstring JNICALL Java_jpen_provider_xinput_XiDevice_getError
 (JNIEnv *pEnv, jclass class) {
-	return (*pEnv)->NewStringUTF(pEnv, Device_row.error);
+	return (*pEnv)->NewStringUTF(pEnv, Device_getError());
 }
 
 /*
@@ -179,6 +179,39 @@ JNIEXPORT void JNICALL Java_jpen_provider_xinput_XiDevice_refreshLevelRanges
 	Device_refreshValuatorRanges(Device_getP(cellIndex));
 }
 
+/*
+ * Class:     jpen_provider_xinput_XiDevice
+ * Method:    getRefreshedLevelRanges
+ * Signature: (I)[I
+ */
+JNIEXPORT jintArray JNICALL Java_jpen_provider_xinput_XiDevice_getRefreshedLevelRanges
+(JNIEnv *pEnv, jclass class, jint cellIndex){
+	SDevice *pDevice=Device_getP(cellIndex);
+	Device_refreshValuatorRanges(pDevice);
+	jint ranges[2*E_Valuators_size];
+	int i;
+	for(i=E_Valuators_size; --i>=0;){
+		ranges[2*i]=pDevice->valuatorRangeMins[i];
+		ranges[2*i+1]=pDevice->valuatorRangeMaxs[i];
+	}
+	jintArray rangesArray=(*pEnv)->NewIntArray(pEnv, 2*E_Valuators_size);
+	if(rangesArray)
+		(*pEnv)->SetIntArrayRegion(pEnv, rangesArray, 0, 2*E_Valuators_size, ranges);
+	return rangesArray;
+}
+
+/*
+ * Class:     jpen_provider_xinput_XiDevice
+ * Method:    setIsListeningAndGet
+ * Signature: (IZ)Z
+ */
+JNIEXPORT jboolean JNICALL Java_jpen_provider_xinput_XiDevice_setIsListeningAndGet
+(JNIEnv *pEnv, jclass class, jint cellIndex, jboolean isListening){
+	SDevice *pDevice=Device_getP(cellIndex);
+	Device_setIsListening(pDevice, isListening == JNI_TRUE? true: false);
+	return pDevice->isListening? JNI_TRUE: JNI_FALSE;
+}
+
 /*
  * Class:     jpen_provider_xinput_XiDevice
  * Method:    getIsAbsoluteMode
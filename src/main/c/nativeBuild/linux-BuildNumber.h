@@ -2,5 +2,5 @@
 /* DO NOT EDIT THIS FILE - it is machine generated */
 #ifndef BuildNumber_h
 #define BuildNumber_h
-#define BUILD_NUMBER 485 
+#define BUILD_NUMBER 492 
 #endif
@@ -2,5 +2,5 @@
 /* DO NOT EDIT THIS FILE - it is machine generated */
 #ifndef BuildNumber_h
 #define BuildNumber_h
-#define BUILD_NUMBER 525
+#define BUILD_NUMBER 526
 #endif
@@ -22,6 +22,7 @@ along with jpen.  If not, see <http://www.gnu.org/licenses/>.
 #include <string.h>
 #include <stdlib.h>
 #include <stdio.h>
+#include <pthread.h>
 
 #define errorState -1
 #define cleanState 0
@@ -33,19 +34,39 @@ extern char *mf_concat(char *s1, char *s2);
 #define m_concat(s1, s2) s1 = mf_concat(s1, s2);
 #define m_newstr(new, content) free(new); new=mf_concat(NULL, content);
 
+/**
+Size of the first chunk of cells of each row. The row grows by allocating chunks of doubling size (16, 32, 64, ...) under the row lock: the cells never move, so pointers to them and to their content stay valid while other threads create or destroy cells.
+*/
+#define m_rowFirstChunkSize 16
+#define m_rowMaxChunks 24
+
+static inline int mf_rowChunkIndex(int cellIndex){
+	return 31-__builtin_clz(cellIndex/m_rowFirstChunkSize+1);
+}
+
+static inline int mf_rowChunkStart(int chunkIndex){
+	return m_rowFirstChunkSize*((1<<chunkIndex)-1);
+}
+
+/**
+The row framework is thread-safe: the cells are allocated in chunks which are never reallocated and the links between cells are guarded by a lock per row. The row lock is not held while calling type##_preCreate and type##_preDestroy, so these can do slow work (e.g. X server round trips) without blocking the other cells of the row. The error message is per thread: type##_getError() returns the last error set by the calling thread.
+
+Using the content of a cell (type##_getP) concurrently with its destruction is not guarded: the callers must serialize it. Use type##_lockRow()/type##_unlockRow() to walk the used cells.
+*/
 #define m_declareRow(type) \
 struct type##Cell {\
 	struct type *pContent;\
 	int prevCell;\
 	int nextCell;\
+	int destroying;\
 };\
 struct type##Row {\
-	struct type##Cell *pCells;\
+	pthread_mutex_t lock;\
+	struct type##Cell *pChunks[m_rowMaxChunks];\
 	int size;\
 	int firstUsedCell;\
 	int firstFreeCell;\
 	int usedSize;\
-	char *error;\
 };\
 typedef struct type S##type;\
 typedef struct type##Row S##type##Row;\
@@ -57,51 +78,64 @@ extern int type##_create(void);\
 extern int type##_preCreate(struct type *pCreated);\
 extern int type##_destroy(int cellIndex);\
 extern int type##_preDestroy(struct type *pToDestroy);\
+extern void type##_lockRow(void);\
+extern void type##_unlockRow(void);\
+extern char *type##_getError(void);\
 extern void type##_setError(char *error);\
 extern void type##_appendError(char *error);\
 extern void type##_clearError(void);
 
 	#define m_implementRow(type) \
 \
-	struct type##Row type##_row;\
+struct type##Row type##_row={PTHREAD_MUTEX_INITIALIZER, {NULL}, 0, -1, -1, 0};\
+static __thread char *type##_error;\
+\
 struct type##Cell * type##_getPCell(int cellIndex){\
-	return type##_row.pCells+cellIndex;\
+	int chunkIndex=mf_rowChunkIndex(cellIndex);\
+	return type##_row.pChunks[chunkIndex]+(cellIndex-mf_rowChunkStart(chunkIndex));\
 }\
 \
 struct type * type##_getP(int cellIndex){\
 	return  type##_getPCell(cellIndex)->pContent;\
 }\
 \
+void type##_lockRow(void){\
+	pthread_mutex_lock(&type##_row.lock);\
+}\
+\
+void type##_unlockRow(void){\
+	pthread_mutex_unlock(&type##_row.lock);\
+}\
+\
 int type##_create(void){\
-	if(type##_row.size==0){\
-		type##_row.firstUsedCell=-1;\
-		type##_row.firstFreeCell=-1;\
-	}\
 	struct type *pNew=calloc(1, sizeof(struct type));\
 	if(!pNew){\
 		type##_setError("Insuficient memory to create new "#type ".");\
 		return -1;\
 	}\
-	memset(pNew, 0, sizeof(struct type));\
 	type##_clearError();\
 	if(type##_preCreate(pNew)){\
 		type##_appendError(" Initialization of created "#type" failed.");\
 		free(pNew);\
 		return -1;\
 	}\
+	type##_lockRow();\
 	int cellIndex=type##_row.firstFreeCell;\
 	int reusing=1;\
 	if(cellIndex==-1){\
 		reusing=0;\
-		struct type##Cell *pNewCells=realloc(type##_row.pCells,\
-																							 (type##_row.size+1)*sizeof(struct type##Cell));\
-		if(!pNewCells){\
-			type##_setError("Insuficient memory to reallocate for "#type".");\
+		cellIndex=type##_row.size;\
+		int chunkIndex=mf_rowChunkIndex(cellIndex);\
+		if(chunkIndex>=m_rowMaxChunks ||\
+			 (!type##_row.pChunks[chunkIndex] &&\
+				!(type##_row.pChunks[chunkIndex]=calloc(m_rowFirstChunkSize<<chunkIndex, sizeof(struct type##Cell))))){\
+			type##_unlockRow();\
+			type##_preDestroy(pNew);\
 			free(pNew);\
+			type##_setError("Insuficient memory to grow the "#type" row.");\
 			return -1;\
 		}\
-		type##_row.pCells=pNewCells;\
-		cellIndex=type##_row.size++;\
+		type##_row.size++;\
 	}\
 	struct type##Cell *pCell=type##_getPCell(cellIndex);\
 	if(reusing){\
@@ -109,6 +143,7 @@ int type##_create(void){\
 	}\
 	pNew->cellIndex=cellIndex;\
 	pCell->pContent=pNew;\
+	pCell->destroying=false;\
 	pCell->prevCell=-1;\
 	pCell->nextCell=type##_row.firstUsedCell;\
 	if(pCell->nextCell!=-1){\
@@ -117,24 +152,34 @@ int type##_create(void){\
 	}\
 	type##_row.firstUsedCell=cellIndex;\
 	type##_row.usedSize++;\
+	type##_unlockRow();\
 	return cellIndex;\
 }\
 \
 int type##_destroy(int cellIndex){\
+	type##_lockRow();\
 	if(cellIndex<0 || cellIndex>=type##_row.size){\
+		type##_unlockRow();\
 		type##_setError("cellIndex out of range.");\
 		return -1;\
 	}\
 	struct type##Cell *pCell=type##_getPCell(cellIndex);\
-	if(pCell->pContent==NULL){\
+	if(pCell->pContent==NULL || pCell->destroying){\
+		type##_unlockRow();\
 		type##_setError("Cell content already destroyed.");\
 		return -1;\
 	}\
+	pCell->destroying=true;\
+	type##_unlockRow();\
 	type##_clearError();\
 	if(type##_preDestroy(pCell->pContent)){\
 		type##_appendError(" Destroy failed.");\
+		type##_lockRow();\
+		pCell->destroying=false;\
+		type##_unlockRow();\
 		return -1;\
 	}\
+	type##_lockRow();\
 	if(pCell->prevCell==-1 && pCell->nextCell==-1 ){\
 		type##_row.firstUsedCell=-1;\
 	}else if(pCell->prevCell==-1){\
@@ -150,27 +195,34 @@ int type##_destroy(int cellIndex){\
 		pPrevCell->nextCell=pCell->nextCell;\
 		pNextCell->prevCell=pCell->prevCell;\
 	}\
-	free(pCell->pContent);\
+	struct type *pContent=pCell->pContent;\
 	pCell->pContent=NULL;\
+	pCell->destroying=false;\
 	pCell->prevCell=-1;\
 	pCell->nextCell=type##_row.firstFreeCell;\
 	type##_row.firstFreeCell=cellIndex;\
 	type##_row.usedSize--;\
+	type##_unlockRow();\
+	free(pContent);\
 	return 0;\
 }\
 \
+char *type##_getError(void){\
+	return type##_error? type##_error: #type ": ";\
+}\
+\
 void type##_setError(char *error){\
 	/*printf("--- jni setError: "#type": %s \n", error);*/\
 	type##_clearError();\
-	m_concat(type##_row.error, error);\
+	m_concat(type##_error, error);\
 }\
 \
 void type##_appendError(char *toAppend){\
 	/*printf("--- jni appendError: "#type": %s \n", toAppend);*/\
-	m_concat(type##_row.error, toAppend);\
+	m_concat(type##_error, toAppend);\
 }\
 void type##_clearError(void){\
-	m_newstr(type##_row.error, #type ": ");\
+	m_newstr(type##_error, #type ": ");\
 }
 
 #endif
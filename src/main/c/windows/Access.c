@@ -24,6 +24,7 @@ m_implementRow(Access);
 static int Access_refreshLc(SAccess *pAccess);
 static int Access_queueIsEmpty(SAccess *pAccess);
 static void Access_fillPacketQueue(SAccess *pAccess);
+static void Access_setCurrentPacket(SAccess *pAccess, PACKET *pPacket);
 
 
 //int ScanExts(UINT wTag)
@@ -240,21 +241,39 @@ int Access_nextPacket(SAccess *pAccess) {
 	Access_fillPacketQueue(pAccess);
 	if(Access_queueIsEmpty(pAccess))
 		return 0;
-	PACKET p=pAccess->queue[pAccess->queueConsumableIndex++];
-	pAccess->valuatorValues[E_Valuators_x]= p.pkX;
-	pAccess->valuatorValues[E_Valuators_y]= p.pkY;
-	pAccess->valuatorValues[E_Valuators_press]= p.pkNormalPressure;
-	pAccess->valuatorValues[E_Valuators_orAzimuth]=p.pkOrientation.orAzimuth;
-	pAccess->valuatorValues[E_Valuators_orAltitude]=p.pkOrientation.orAltitude;
-	pAccess->valuatorValues[E_Valuators_tanPress]=p.pkTangentPressure;
-	pAccess->valuatorValues[E_Valuators_twist]=p.pkOrientation.orTwist;
-	pAccess->cursor=p.pkCursor;
-	pAccess->buttons=p.pkButtons;
-	pAccess->status=p.pkStatus;
-	pAccess->time=p.pkTime;
+	Access_setCurrentPacket(pAccess, &pAccess->queue[pAccess->queueConsumableIndex++]);
 	return 1;
 }
 
+static void Access_setCurrentPacket(SAccess *pAccess, PACKET *pPacket) {
+	pAccess->valuatorValues[E_Valuators_x]= pPacket->pkX;
+	pAccess->valuatorValues[E_Valuators_y]= pPacket->pkY;
+	pAccess->valuatorValues[E_Valuators_press]= pPacket->pkNormalPressure;
+	pAccess->valuatorValues[E_Valuators_orAzimuth]=pPacket->pkOrientation.orAzimuth;
+	pAccess->valuatorValues[E_Valuators_orAltitude]=pPacket->pkOrientation.orAltitude;
+	pAccess->valuatorValues[E_Valuators_tanPress]=pPacket->pkTangentPressure;
+	pAccess->valuatorValues[E_Valuators_twist]=pPacket->pkOrientation.orTwist;
+	pAccess->cursor=pPacket->pkCursor;
+	pAccess->buttons=pPacket->pkButtons;
+	pAccess->status=pPacket->pkStatus;
+	pAccess->time=pPacket->pkTime;
+}
+
+/**
+Bulk version of Access_nextPacket: writes the packets not yet consumed from the queue and then gets the pending Wintab packets directly on pPackets (one WTPacketsGet call). The last packet written becomes the current packet (getValue, getCursor...).
+@return the number of packets written on pPackets, at most capacity.
+*/
+int Access_fillPackets(SAccess *pAccess, PACKET *pPackets, int capacity) {
+	int size=0;
+	while(size<capacity && !Access_queueIsEmpty(pAccess))
+		pPackets[size++]=pAccess->queue[pAccess->queueConsumableIndex++];
+	if(size<capacity)
+		size+=WTPacketsGet(pAccess->ctx, capacity-size, pPackets+size);
+	if(size)
+		Access_setCurrentPacket(pAccess, &pPackets[size-1]);
+	return size;
+}
+
 static void Access_fillPacketQueue(SAccess *pAccess) {
 	if(Access_queueIsEmpty(pAccess)) {
 		pAccess->queueConsumableIndex=0;
@@ -82,6 +82,7 @@ struct Access {
 };
 m_declareRow(Access);
 extern int Access_nextPacket(SAccess *pAccess);
+extern int Access_fillPackets(SAccess *pAccess, PACKET *pPackets, int capacity);
 extern int Access_getEnabled(SAccess *pAccess);
 extern void Access_setEnabled(SAccess *pAccess, int enabled);
 extern void Access_enable(SAccess *pAccess, int enable);
@@ -72,6 +72,29 @@ JNIEXPORT jboolean JNICALL Java_jpen_provider_wintab_WintabAccess_nextPacket
 	return Access_nextPacket(Access_getP(cellIndex))? JNI_TRUE: JNI_FALSE;
 }
 
+/*
+ * Class:     jpen_provider_wintab_WintabAccess
+ * Method:    fillPackets
+ * Signature: (ILjava/nio/ByteBuffer;I)I
+ */
+JNIEXPORT jint JNICALL Java_jpen_provider_wintab_WintabAccess_fillPackets
+(JNIEnv *pEnv, jclass class, jint cellIndex, jobject packets, jint capacity) {
+	PACKET *pPackets=(*pEnv)->GetDirectBufferAddress(pEnv, packets);
+	if(!pPackets)
+		return -1;
+	return Access_fillPackets(Access_getP(cellIndex), pPackets, capacity);
+}
+
+/*
+ * Class:     jpen_provider_wintab_WintabAccess
+ * Method:    getPacketSize
+ * Signature: ()I
+ */
+JNIEXPORT jint JNICALL Java_jpen_provider_wintab_WintabAccess_getPacketSize
+(JNIEnv *pEnv, jclass class) {
+	return sizeof(PACKET);
+}
+
 /*
  * Class:     jpen_provider_wintab_WintabAccess
  * Method:    getEnabled
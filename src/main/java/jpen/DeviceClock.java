@@ -0,0 +1,183 @@
+/* [{
+Copyright 2007, 2008 Nicolas Carranza <nicarran at gmail.com>
+
+This file is part of jpen.
+
+jpen is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License,
+or (at your option) any later version.
+
+jpen is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with jpen.  If not, see <http://www.gnu.org/licenses/>.
+}] */
+package jpen;
+
+import java.util.logging.Logger;
+
+/**
+Maps the {@link PenEvent#getDeviceTime()} of a {@link PenDevice} (milliseconds since an arbitrary device epoch) to the {@link System#nanoTime()} time base.<p>
+
+The model is {@code nanoTime = deviceTime*1e6 + offset + drift*(deviceTime-referenceDeviceTime)*1e6}. It is estimated from the arrival time of the samples scheduled by the providers. The arrival time is the device time plus a positive and jittery queueing delay, so the model is fitted to the lower envelope of the observations: the minimum offset is taken for each window of {@link #WINDOW_NANOS}, the drift is the least squares slope through the last {@link #WINDOWS} window minima, and the line is then lowered to lie below all of them.<p>
+
+The model is reset if the device time jumps (e.g. the device epoch changed).
+
+@see PenManager#getDeviceClock(PenDevice)
+*/
+public final class DeviceClock{
+	private static final Logger L=Logger.getLogger(DeviceClock.class.getName());
+	//static{L.setLevel(Level.ALL);}
+
+	static final long WINDOW_NANOS=500000000l;
+	static final int WINDOWS=16;
+	/**
+	Offset deviations greater than this are considered a device time jump.
+	*/
+	static final long RESET_NANOS=10000000000l;
+	/**
+	Maximum drift accepted: 1000 ppm.
+	*/
+	static final double MAX_DRIFT=1e-3;
+	private static final double NANOS_PER_MILLI=1e6;
+
+	private long referenceDeviceTime;
+	private int observationsCount;
+	//v ring of window minima: the x is deviceTime-referenceDeviceTime, the y is the offset
+	private final long[] windowXs=new long[WINDOWS];
+	private final long[] windowYs=new long[WINDOWS];
+	private int windowsCount;
+	private int nextWindowIndex;
+	//^
+	private long windowStartNanoTime;
+	private long windowMinX;
+	private long windowMinY=Long.MAX_VALUE;
+	private boolean dirty;
+	private double drift;
+	private long offsetBase;
+	private double offset; // relative to offsetBase, to keep the nanosecond precision
+
+	DeviceClock(){}
+
+	/**
+	Called by the {@link PenManager} when a sample of the device arrives.
+	*/
+	synchronized void observe(long deviceTime, long arrivalNanoTime){
+		if(observationsCount==0)
+			referenceDeviceTime=deviceTime;
+		long x=deviceTime-referenceDeviceTime;
+		long y=arrivalNanoTime-deviceTime*1000000l;
+		if(observationsCount!=0 && Math.abs(y-evalOffset(x))>RESET_NANOS){
+			L.fine("device time jump detected, resetting clock model");
+			reset();
+			referenceDeviceTime=deviceTime;
+			x=0;
+		}
+		if(observationsCount==0 || arrivalNanoTime-windowStartNanoTime>=WINDOW_NANOS){
+			if(observationsCount!=0)
+				closeWindow();
+			windowStartNanoTime=arrivalNanoTime;
+		}
+		if(y<windowMinY){
+			windowMinY=y;
+			windowMinX=x;
+			dirty=true;
+		}
+		observationsCount++;
+	}
+
+	private void closeWindow(){
+		windowXs[nextWindowIndex]=windowMinX;
+		windowYs[nextWindowIndex]=windowMinY;
+		nextWindowIndex=(nextWindowIndex+1)%WINDOWS;
+		if(windowsCount<WINDOWS)
+			windowsCount++;
+		windowMinY=Long.MAX_VALUE;
+		dirty=true;
+	}
+
+	private void reset(){
+		observationsCount=0;
+		windowsCount=0;
+		nextWindowIndex=0;
+		windowMinY=Long.MAX_VALUE;
+		drift=0;
+		offsetBase=0;
+		offset=0;
+		dirty=false;
+	}
+
+	private long evalOffset(long x){
+		fit();
+		return offsetBase+(long)(offset+drift*x*NANOS_PER_MILLI);
+	}
+
+	private void fit(){
+		if(!dirty)
+			return;
+		dirty=false;
+		int n=windowsCount+(windowMinY==Long.MAX_VALUE? 0: 1);
+		if(n==0)
+			return;
+		// the first point is used as origin to keep the sums small:
+		long x0=windowMinY==Long.MAX_VALUE? windowXs[0]: windowMinX;
+		long y0=windowMinY==Long.MAX_VALUE? windowYs[0]: windowMinY;
+		double sx=0, sy=0, sxx=0, sxy=0;
+		for(int i=-1; i<windowsCount; i++){
+			if(i<0 && windowMinY==Long.MAX_VALUE)
+				continue;
+			double x=(i<0? windowMinX: windowXs[i])-x0;
+			double y=(i<0? windowMinY: windowYs[i])-y0;
+			sx+=x;
+			sy+=y;
+			sxx+=x*x;
+			sxy+=x*y;
+		}
+		double denominator=n*sxx-sx*sx;
+		drift=denominator==0? 0: (n*sxy-sx*sy)/denominator/NANOS_PER_MILLI;
+		if(drift>MAX_DRIFT)
+			drift=MAX_DRIFT;
+		else if(drift< -MAX_DRIFT)
+			drift=-MAX_DRIFT;
+		// lower envelope: the line passes under all the window minima
+		double minIntercept=Double.MAX_VALUE;
+		for(int i=-1; i<windowsCount; i++){
+			if(i<0 && windowMinY==Long.MAX_VALUE)
+				continue;
+			long x=i<0? windowMinX: windowXs[i];
+			long y=i<0? windowMinY: windowYs[i];
+			double intercept=(y-y0)-drift*x*NANOS_PER_MILLI;
+			if(intercept<minIntercept)
+				minIntercept=intercept;
+		}
+		offsetBase=y0;
+		offset=minIntercept;
+	}
+
+	/**
+	@return the given {@code deviceTime} translated to the {@link System#nanoTime()} time base, or {@code -1} if no sample of the device has been observed yet.
+	*/
+	public synchronized long evalNanoTime(long deviceTime){
+		if(observationsCount==0)
+			return -1;
+		long x=deviceTime-referenceDeviceTime;
+		return deviceTime*1000000l+evalOffset(x);
+	}
+
+	/**
+	@return the estimated relative drift of the device clock (e.g. {@code 1e-5} means the device clock is 10 ppm slower than the host clock).
+	*/
+	public synchronized double getDrift(){
+		fit();
+		return drift;
+	}
+
+	@Override
+	public synchronized String toString(){
+		return "[DeviceClock: observationsCount="+observationsCount+", windowsCount="+windowsCount+", drift="+getDrift()+"]";
+	}
+}
@@ -27,8 +27,8 @@ public class PButtonEvent
 
 	public final PButton button;
 
-	PButtonEvent(PenDevice device, long deviceTime, PButton button) {
-		super(device, deviceTime);
+	PButtonEvent(Pen pen, PenDevice device, long deviceTime, PButton button) {
+		super(pen, device, deviceTime);
 		this.button=button;
 	}
 
@@ -39,8 +39,10 @@ public class PButtonEvent
 
 	@Override
 	void dispatch() {
-		for(PenListener l:pen.getListenersArray())
-			l.penButtonEvent(this);
+		Pen.Listeners listeners=pen.getListeners();
+		for(int i=0; i<listeners.array.length; i++)
+			if(listeners.masks[i].accepts(this, PenListenerMask.EventType.BUTTON))
+				listeners.array[i].penButtonEvent(this);
 	}
 
 	@Override
@@ -27,8 +27,8 @@ public class PKindEvent
 
 	public final PKind kind;
 
-	PKindEvent(PenDevice penDevice, long deviceTime, PKind kind) {
-		super(penDevice, deviceTime);
+	PKindEvent(Pen pen, PenDevice penDevice, long deviceTime, PKind kind) {
+		super(pen, penDevice, deviceTime);
 		this.kind=kind;
 	}
 
@@ -39,8 +39,10 @@ public class PKindEvent
 
 	@Override
 	void dispatch() {
-		for(PenListener l:pen.getListenersArray())
-			l.penKindEvent(this);
+		Pen.Listeners listeners=pen.getListeners();
+		for(int i=0; i<listeners.array.length; i++)
+			if(listeners.masks[i].accepts(this, PenListenerMask.EventType.KIND))
+				listeners.array[i].penKindEvent(this);
 	}
 
 	@Override
@@ -79,7 +79,19 @@ public final class PLevelEmulator{
 		setTrigger(kindType, buttonType, triggerPolicy, false);
 	}
 
-	public synchronized void setTrigger(int kindType, int buttonType, ButtonTriggerPolicy triggerPolicy, boolean alwaysActiveOnKind){
+	/**
+	When called on the emulator of the {@link PenManager#pen}, the trigger is also set on the {@link Pen}s of the multi-pen mode.
+	*/
+	public void setTrigger(int kindType, int buttonType, ButtonTriggerPolicy triggerPolicy, boolean alwaysActiveOnKind){
+		setOwnTrigger(kindType, buttonType, triggerPolicy, alwaysActiveOnKind);
+		if(pen.penManager==null || pen!=pen.penManager.pen)
+			return;
+		for(Pen devicePen: pen.penManager.getPens()) // outside the lock: the device pens copy the triggers of this emulator when created
+			if(devicePen!=pen)
+				devicePen.levelEmulator.setOwnTrigger(kindType, buttonType, triggerPolicy, alwaysActiveOnKind);
+	}
+
+	private synchronized void setOwnTrigger(int kindType, int buttonType, ButtonTriggerPolicy triggerPolicy, boolean alwaysActiveOnKind){
 		List<ButtonTriggerPolicy> buttonTypeToButtonTriggerPolicy=getButtonTypeToButtonTriggerPolicy(kindType);
 		ensureListSize(buttonTypeToButtonTriggerPolicy, buttonType);
 		ButtonTriggerPolicy oldPolicy=buttonTypeToButtonTriggerPolicy.set(buttonType, triggerPolicy);
@@ -94,6 +106,17 @@ public final class PLevelEmulator{
 		}
 	}
 
+	/**
+	Copies the triggers of the given emulator. Used to configure the {@link Pen}s of the multi-pen mode.
+	*/
+	synchronized void copyTriggers(PLevelEmulator levelEmulator){
+		synchronized(levelEmulator){
+			for(List<ButtonTriggerPolicy> buttonTypeToButtonTriggerPolicy: levelEmulator.kindTypeToButtonTypeToButtonTriggerPolicy)
+				kindTypeToButtonTypeToButtonTriggerPolicy.add(buttonTypeToButtonTriggerPolicy==null? null: new ArrayList<ButtonTriggerPolicy>(buttonTypeToButtonTriggerPolicy));
+			kindTypeToAlwaysActiveButtonTriggerPolicy.addAll(levelEmulator.kindTypeToAlwaysActiveButtonTriggerPolicy);
+		}
+	}
+
 	public ButtonTriggerPolicy getButtonTriggerPolicy(PKind.Type kindType, PButton.Type buttonType){
 		return getButtonTriggerPolicy(kindType, buttonType);
 	}
@@ -125,7 +148,7 @@ public final class PLevelEmulator{
 		else
 			emulatedLevel=emulateOnRelease(buttonEvent.button.typeNumber);
 		if(emulatedLevel!=null){
-			pen.penManager.scheduleLevelEvent(pen.penManager.emulationDevice, buttonEvent.time, Collections.singleton(emulatedLevel));
+			pen.penManager.scheduleLevelEvent(pen, pen.penManager.emulationDevice, buttonEvent.time, Collections.singleton(emulatedLevel), false);
 		}
 	}
 
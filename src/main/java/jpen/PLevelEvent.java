@@ -37,6 +37,11 @@ public class PLevelEvent
 		super(device, deviceTime);
 		this.levels=levels;
 	}
+
+	PLevelEvent(Pen pen, PenDevice device, long deviceTime, PLevel[] levels) {
+		super(pen, device, deviceTime);
+		this.levels=levels;
+	}
 	
 	@Override
 	void copyTo(PenState penState){
@@ -45,8 +50,11 @@ public class PLevelEvent
 
 	@Override
 	void dispatch() {
-		for(PenListener l:pen.getListenersArray())
-			l.penLevelEvent(this);
+		Pen.Listeners listeners=pen.getListeners();
+		for(int i=0; i<listeners.array.length; i++)
+			if(listeners.masks[i].accepts(this, PenListenerMask.EventType.LEVEL) &&
+				 listeners.masks[i].acceptsAnyLevel(levels))
+				listeners.array[i].penLevelEvent(this);
 	}
 
 	public boolean containsLevelOfType(Set<PLevel.Type> levelTypes){
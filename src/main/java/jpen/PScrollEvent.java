@@ -27,8 +27,8 @@ public class PScrollEvent
 
 	public final PScroll scroll;
 
-	PScrollEvent(PenDevice device, long deviceTime, PScroll scroll) {
-		super(device, deviceTime);
+	PScrollEvent(Pen pen, PenDevice device, long deviceTime, PScroll scroll) {
+		super(pen, device, deviceTime);
 		this.scroll=scroll;
 	}
 
@@ -37,8 +37,10 @@ public class PScrollEvent
 
 	@Override
 	void dispatch() {
-		for(PenListener l:pen.getListenersArray())
-			l.penScrollEvent(this);
+		Pen.Listeners listeners=pen.getListeners();
+		for(int i=0; i<listeners.array.length; i++)
+			if(listeners.masks[i].accepts(this, PenListenerMask.EventType.SCROLL))
+				listeners.array[i].penScrollEvent(this);
 	}
 
 	@Override
@@ -28,6 +28,7 @@ import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.Queue;
+import java.util.concurrent.atomic.AtomicBoolean;
 import javax.swing.SwingUtilities;
 import jpen.event.PenListener;
 import jpen.internal.ThreadUtils;
@@ -41,29 +42,113 @@ public class Pen extends PenState {
 
 	public final PenManager penManager;
 	private int frequency;
-	private volatile MyThread thread;
+	private volatile MyThread thread; // null when pooled
+	private final PooledDispatcher pooledDispatcher; // null when not pooled
 
 	/** Tail of event queue. */
 	private PenEvent lastDispatchedEvent=new PenEvent.Dummy();
 	final PenScheduler scheduler;
+	final PenEventMerger merger=new PenEventMerger(this);
 	public final PenState lastScheduledState;
 	private final List<PenListener> listeners=new ArrayList<PenListener>();
-	private PenListener[] listenersArray;
+	private final List<PenListenerMask> listenerMasks=new ArrayList<PenListenerMask>();
+	private Listeners listenersSnapshot;
+	private volatile PenListenerMask listenerMasksUnion=PenListenerMask.NONE;
 	private boolean firePenTockOnSwing;
 	public final PLevelEmulator levelEmulator;
 
+	/**
+	Dispatches the events using the {@link PenDispatchPool} instead of an own thread. Used when the {@link PenManager} is pooled.
+	*/
+	private final class PooledDispatcher
+		implements Runnable{
+		private final AtomicBoolean dispatchRequested=new AtomicBoolean();
+		private volatile long lastDispatchTime;
+		volatile boolean stopped;
+		volatile Exception exception;
+
+		void requestDispatch(){
+			requestDispatch(Math.max(0, lastDispatchTime+getPeriodMillis()-System.currentTimeMillis()));
+		}
+
+		private void requestDispatch(long delayMillis){
+			if(!stopped && dispatchRequested.compareAndSet(false, true))
+				PenDispatchPool.schedule(this, delayMillis);
+		}
+
+		//@Override
+		public void run(){
+			try{
+				if(scheduler.getThrottledLevelsDelay()==0)
+					scheduler.flushThrottledLevels();
+				long beforeTime=System.currentTimeMillis();
+				lastDispatchTime=beforeTime;
+				if(dispatchEvents(beforeTime))
+					firePenTock(getPeriodMillis()-(System.currentTimeMillis()-beforeTime));
+			}catch(Exception ex){
+				L.severe("jpen-PenDispatchPool task threw an exception: "+ThrowableUtils.evalStackTraceString(ex));
+				exception=ex;
+			}finally{
+				dispatchRequested.set(false);
+			}
+			if(lastDispatchedEvent.next!=null)
+				requestDispatch();
+			else{
+				long throttledLevelsDelay=scheduler.getThrottledLevelsDelay();
+				if(throttledLevelsDelay!=-1)
+					requestDispatch(throttledLevelsDelay);
+			}
+		}
+
+		private void firePenTock(final long availableMillis){
+			if(getListenersArray().length==0)
+				return;
+			Runnable penTockFirer=new Runnable(){
+						//@Override
+						public void run(){
+							Listeners listeners=getListeners();
+							for(int i=0; i<listeners.array.length; i++)
+								if(listeners.masks[i].acceptsEventType(PenListenerMask.EventType.TOCK))
+									listeners.array[i].penTock(availableMillis);
+						}
+					};
+			if(firePenTockOnSwing)
+				SwingUtilities.invokeLater(penTockFirer); // the pool threads must not wait for the event dispatch thread
+			else
+				penTockFirer.run();
+		}
+	}
+
+	/**
+	Dispatches the scheduled events with time less or equal than the given time.
+
+	@return {@code true} if at least one event was dispatched.
+	*/
+	private boolean dispatchEvents(long beforeTime){
+		boolean eventDispatched=false;
+		PenEvent event;
+		while((event=lastDispatchedEvent.next)!=null && event.getTime()<=beforeTime) {
+			event.copyTo(Pen.this);
+			event.dispatch();
+			lastDispatchedEvent.next=null;
+			lastDispatchedEvent=event;
+			eventDispatched=true;
+		}
+		return eventDispatched;
+	}
+
 	private final class MyThread
-		extends Thread {
+		implements Runnable {
+		private final Thread thread;
 		final int periodMillis;
 		long beforeTime;
 		long waitTime;
 		long availablePeriod;
-		PenEvent event;
 		boolean waitedNewEvents;
 		Exception exception;
 		private final Waiter waiter=new Waiter();
 		volatile boolean stopRunning;
-		Thread oldThread;
+		MyThread oldThread;
 
 		final class Waiter
 			extends Object{
@@ -74,8 +159,13 @@ public class Pen extends PenState {
 				synchronized(this){
 					if(lastDispatchedEvent.next!=null)
 						return false;
-					if(!stopRunning)
-						wait(0);
+					if(!stopRunning){
+						long throttledLevelsDelay=scheduler.getThrottledLevelsDelay();
+						if(throttledLevelsDelay==-1)
+							wait(0);
+						else if(throttledLevelsDelay>0)
+							wait(throttledLevelsDelay);
+					}
 					return true;
 				}
 			}
@@ -84,25 +174,33 @@ public class Pen extends PenState {
 			}
 		}
 
-		MyThread(Thread oldThread){
+		MyThread(MyThread oldThread){
 			periodMillis=1000/Pen.this.frequency;
 			this.oldThread=oldThread;
-			setName("jpen-Pen-["+periodMillis+"ms]");
-			AccessController.doPrivileged(new PrivilegedAction<Object>(){
+			thread=AccessController.doPrivileged(new PrivilegedAction<Thread>(){
 						//@Override
-						public Object run(){
-							setDaemon(true);
-							return null;
+						public Thread run(){
+							return PenRuntime.newThread("jpen-Pen-["+periodMillis+"ms]", MyThread.this);
 						}
 					});
 		}
+
+		void start(){
+			thread.start();
+		}
+
+		void join() throws InterruptedException{
+			thread.join();
+		}
 		private final Runnable penTockFirer=new Runnable(){
 					//@Override
 					public void run(){
 						//System.out.println("firing tocks "+System.currentTimeMillis());
-						for(PenListener l:getListenersArray()){
+						Listeners listeners=getListeners();
+						for(int i=0; i<listeners.array.length; i++){
 							//System.out.println("firing pentock, procTime="+evalCurrentProcTime()+", l="+l);
-							l.penTock(availablePeriodLeft());
+							if(listeners.masks[i].acceptsEventType(PenListenerMask.EventType.TOCK))
+								listeners.array[i].penTock(availablePeriodLeft());
 						}
 					}
 				};
@@ -115,17 +213,12 @@ public class Pen extends PenState {
 				oldThread=null;
 				while(!stopRunning) {
 					waitedNewEvents=waiter.waitForNewEvent();
+					if(scheduler.getThrottledLevelsDelay()==0)
+						scheduler.flushThrottledLevels();
 					beforeTime=System.currentTimeMillis();
 					if(waitedNewEvents)
 						waitTime=0;
-					boolean eventDispatched=false;
-					while((event=lastDispatchedEvent.next)!=null && event.getTime()<=beforeTime) {
-						event.copyTo(Pen.this);
-						event.dispatch();
-						lastDispatchedEvent.next=null;
-						lastDispatchedEvent=event;
-						eventDispatched=true;
-					}
+					boolean eventDispatched=dispatchEvents(beforeTime);
 					//System.out.println("after event dispatching, procTime="+evalCurrentProcTime());
 					availablePeriod=periodMillis+waitTime; // waitTime here is always <=0, if it is <0 then the whole processing of the previous round took longer than the time available.
 					//System.out.println("going to fire tock "+System.currentTimeMillis());
@@ -179,26 +272,84 @@ public class Pen extends PenState {
 
 	Pen(PenManager penManager) {
 		this.penManager=penManager;
+		this.pooledDispatcher=penManager!=null && penManager.getPooled()? new PooledDispatcher(): null;
 		this.scheduler=new PenScheduler(this);
 		this.lastScheduledState=scheduler.lastScheduledState;
 		this.levelEmulator=new PLevelEmulator(this);
 		setFrequencyLater(DEFAULT_FREQUENCY);
 	}
 
+	/**
+	Constructs a multi-pen mode {@code Pen} using the frequency and configuration of the given {@code pen}.
+	*/
+	Pen(PenManager penManager, Pen pen) {
+		this.penManager=penManager;
+		this.pooledDispatcher=penManager.getPooled()? new PooledDispatcher(): null;
+		this.scheduler=new PenScheduler(this);
+		this.lastScheduledState=scheduler.lastScheduledState;
+		this.levelEmulator=new PLevelEmulator(this);
+		levelEmulator.copyTriggers(pen.levelEmulator);
+		this.firePenTockOnSwing=pen.firePenTockOnSwing;
+		setFrequencyLater(pen.getFrequency());
+		scheduler.setHoverRate(pen.getHoverRate());
+		scheduler.setContactRate(pen.getContactRate());
+		merger.setLatencyMillis(pen.merger.getLatencyMillis());
+	}
+
+	/**
+	Stops the event firing thread. This pen is not usable after calling this method.
+	*/
+	synchronized void stop(){
+		merger.setLatencyMillis(0);
+		if(pooledDispatcher!=null)
+			pooledDispatcher.stopped=true;
+		if(thread!=null)
+			thread.stop(false);
+	}
+
 	void processNewEvents(){
-		thread.waiter.notifyNewEvent();
+		if(pooledDispatcher!=null)
+			pooledDispatcher.requestDispatch();
+		else
+			thread.waiter.notifyNewEvent();
 	}
 
 	PenEvent getLastDispatchedEvent(){
 		return lastDispatchedEvent;
 	}
 
+	/**
+	Limits the rate of the level events scheduled while the pen hovers ({@link PButton.Type#ON_PRESSURE} is false). The levels of the samples coming faster are not lost: they are merged into the next event, which is scheduled at most one period later. The rate switches to the {@link #setContactRate(int) contact rate} as soon as the pen is pressed.
+
+	@param hoverRate events per second, {@code 0} (the default) means no limit.
+	*/
+	public void setHoverRate(int hoverRate){
+		scheduler.setHoverRate(hoverRate);
+	}
+
+	public int getHoverRate(){
+		return scheduler.getHoverRate();
+	}
+
+	/**
+	Limits the rate of the level events scheduled while the pen is pressed. See {@link #setHoverRate(int)}.
+
+	@param contactRate events per second, {@code 0} (the default) means no limit.
+	*/
+	public void setContactRate(int contactRate){
+		scheduler.setContactRate(contactRate);
+	}
+
+	public int getContactRate(){
+		return scheduler.getContactRate();
+	}
+
 	public boolean getFirePenTockOnSwing() {
 		return firePenTockOnSwing;
 	}
 
 	/**
-	@param firePenTockOnSwing If {@code true} then {@link PenListener#penTock(long)} is called from the event dispatch thread. {@code false} by default.
+	@param firePenTockOnSwing If {@code true} then {@link PenListener#penTock(long)} is called from the event dispatch thread. {@code false} by default. On a pooled {@link PenManager} the tock is fired asynchronously (the dispatching doesn't wait for it).
 	*/
 	public void setFirePenTockOnSwing(boolean firePenTockOnSwing){
 		this.firePenTockOnSwing = firePenTockOnSwing;
@@ -225,6 +376,10 @@ public class Pen extends PenState {
 			return;
 		if(wait && SwingUtilities.isEventDispatchThread())
 			throw new Error("Cannot call setFrequency(int, <true>) from the event dispatcher thread");
+		if(pooledDispatcher!=null){
+			this.frequency=frequency;
+			return;
+		}
 		L.finest("v");
 		MyThread oldThread=this.thread;
 		if(oldThread!=null){
@@ -241,10 +396,14 @@ public class Pen extends PenState {
 	}
 
 	public int getPeriodMillis(){
+		if(pooledDispatcher!=null)
+			return 1000/frequency;
 		return thread.periodMillis;
 	}
 
 	public synchronized Exception getThreadException(){
+		if(pooledDispatcher!=null)
+			return pooledDispatcher.exception;
 		return thread.exception;
 	}
 
@@ -252,10 +411,22 @@ public class Pen extends PenState {
 	Adds a {@link PenListener} for {@link PenEvent}s fired by this pen.
 	*/
 	public void addListener(PenListener l) {
+		addListener(l, PenListenerMask.ALL);
+	}
+
+	/**
+	Adds a {@link PenListener} for the {@link PenEvent}s accepted by the given {@link PenListenerMask}.
+	*/
+	public void addListener(PenListener l, PenListenerMask mask) {
+		if(mask==null)
+			throw new NullPointerException();
 		synchronized(listeners) {
 			listeners.add(l);
-			listenersArray=null;
+			listenerMasks.add(mask);
+			listenersChanged();
 		}
+		if(penManager!=null)
+			penManager.startPenOwnerProviders();
 	}
 
 	/**
@@ -263,16 +434,72 @@ public class Pen extends PenState {
 	*/
 	public void removeListener(PenListener l) {
 		synchronized(listeners) {
-			listeners.remove(l);
-			listenersArray=null;
+			int index=listeners.indexOf(l);
+			if(index<0)
+				return;
+			listeners.remove(index);
+			listenerMasks.remove(index);
+			listenersChanged();
 		}
 	}
 
+	private void listenersChanged(){
+		listenersSnapshot=null;
+		PenListenerMask listenerMasksUnion=PenListenerMask.NONE;
+		for(PenListenerMask mask: listenerMasks)
+			listenerMasksUnion=listenerMasksUnion.union(mask);
+		this.listenerMasksUnion=listenerMasksUnion;
+	}
+
 	PenListener[] getListenersArray() {
+		return getListeners().array;
+	}
+
+	/**
+	An immutable snapshot of the listeners and their masks.
+	*/
+	static final class Listeners{
+		final PenListener[] array;
+		final PenListenerMask[] masks;
+		Listeners(PenListener[] array, PenListenerMask[] masks){
+			this.array=array;
+			this.masks=masks;
+		}
+	}
+
+	Listeners getListeners() {
 		synchronized(listeners){
-			if(listenersArray==null)
-				listenersArray=listeners.toArray(new PenListener[listeners.size()]);
-			return listenersArray;
+			if(listenersSnapshot==null)
+				listenersSnapshot=new Listeners(
+					listeners.toArray(new PenListener[listeners.size()]),
+					listenerMasks.toArray(new PenListenerMask[listenerMasks.size()]));
+			return listenersSnapshot;
 		}
 	}
+
+	/**
+	@return the union of the masks of all the listeners of this pen.
+	*/
+	public PenListenerMask getListenerMasksUnion(){
+		return listenerMasksUnion;
+	}
+
+	/**
+	Providers can use this method to avoid reading and converting level values nobody is interested in. All the level types are listened unless {@link PenManager#setLevelFiltering(boolean)} is enabled. The movement and pressure levels are always listened because they are needed by JPen to evaluate the {@link jpen.owner.PenClip} location and the {@link PButton.Type#ON_PRESSURE} button.
+
+	@return {@code true} if the values of the given level type must be scheduled.
+	*/
+	public boolean isLevelTypeListened(PLevel.Type levelType){
+		return isLevelTypeListened(levelType.ordinal());
+	}
+
+	public boolean isLevelTypeListened(int levelTypeNumber){
+		if(penManager==null || !penManager.getLevelFiltering())
+			return true;
+		if(levelTypeNumber==PLevel.Type.X.ordinal() ||
+			 levelTypeNumber==PLevel.Type.Y.ordinal() ||
+			 levelTypeNumber==PLevel.Type.PRESSURE.ordinal())
+			return true;
+		return listenerMasksUnion.acceptsLevelType(levelTypeNumber);
+	}
 }
\ No newline at end of file
@@ -0,0 +1,283 @@
+/* [{
+Copyright 2007, 2008 Nicolas Carranza <nicarran at gmail.com>
+
+This file is part of jpen.
+
+jpen is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License,
+or (at your option) any later version.
+
+jpen is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with jpen.  If not, see <http://www.gnu.org/licenses/>.
+}] */
+package jpen;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+Reduces the rate of the level samples of one {@link PenDevice} before they are scheduled. Samples are dropped to approach the target rate (measured using the device time), except:
+
+<ul>
+<li>The samples before and after a pressure change from/to 0: the {@link PButton.Type#ON_PRESSURE} timing is kept.</li>
+<li>The samples at pressure peaks and valleys: when the pressure goes back more than the minimum pressure delta from the extreme reached.</li>
+<li>The samples where the movement direction turns more than the minimum turn angle. The direction is measured on segments of the minimum segment length at least.</li>
+</ul>
+
+The thresholds (see {@link #setThresholds(float, double, float)}) keep the pressure and location jitter of real devices from turning most samples into kept samples.
+
+The levels of the dropped samples are not lost: they are merged into the next scheduled sample if it doesn't contain them. A dropped sample is scheduled anyway if no other sample comes after one period, and before any button or scroll event of the device.
+*/
+class PenDecimator{
+	private static final Logger L=Logger.getLogger(PenDecimator.class.getName());
+	//static { L.setLevel(Level.ALL); }
+
+	static final float DEFAULT_MIN_PRESSURE_DELTA=0.02f;
+	static final double DEFAULT_MIN_TURN_ANGLE=Math.PI/4;
+	static final float DEFAULT_MIN_SEGMENT_LENGTH=8f;
+	private static final int X=PLevel.Type.X.ordinal(), Y=PLevel.Type.Y.ordinal(), PRESSURE=PLevel.Type.PRESSURE.ordinal();
+
+	private final PenManager penManager;
+	private final PenDevice device;
+	private volatile int rate;
+	private double periodMillis;
+	private double nextScheduleDeviceTime;
+	private boolean scheduledAny;
+	private float minPressureDelta=DEFAULT_MIN_PRESSURE_DELTA;
+	private double minTurnCos=Math.cos(DEFAULT_MIN_TURN_ANGLE);
+	private float minSegmentLength=DEFAULT_MIN_SEGMENT_LENGTH;
+	//v the last dropped sample, its levels are merged with the levels of the samples dropped before:
+	private boolean held;
+	private PLevel[] heldLevels=new PLevel[PLevel.Type.VALUES.size()];
+	private long heldDeviceTime;
+	private boolean heldLevelsOnScreen;
+	private long heldArrivalNanoTime;
+	//^
+	//v the values of the last processed sample:
+	private int processedCount;
+	private float x1, y1, pressure1;
+	//^
+	//v pressure extremum detection:
+	private int pressureTrend; // 1 rising, -1 falling, 0 unknown
+	private float pressureExtreme; // the extreme reached on the current trend
+	//^
+	//v direction change detection:
+	private float anchorX, anchorY; // the end of the last segment
+	private float directionX, directionY; // the last segment, (0, 0) if unknown
+	//^
+	private final List<PLevel> levelsToSchedule=new ArrayList<PLevel>();
+	private boolean flushTaskScheduled;
+	private final Runnable flushTask=new Runnable(){
+				//@Override
+				public void run(){
+					flushTaskRun();
+				}
+			};
+
+	PenDecimator(PenManager penManager, PenDevice device, int rate){
+		this.penManager=penManager;
+		this.device=device;
+		setRate(rate);
+	}
+
+	/**
+	@param rate the target rate in samples per second, {@code 0} disables the decimation.
+	*/
+	synchronized void setRate(int rate){
+		if(rate<0)
+			throw new IllegalArgumentException();
+		if(rate==0)
+			flush();
+		this.rate=rate;
+		periodMillis=rate==0? 0: 1000d/rate;
+		scheduledAny=false;
+	}
+
+	int getRate(){
+		return rate;
+	}
+
+	/**
+	@param minPressureDelta the pressure must go back more than this from its extreme to be a peak or a valley.
+	@param minTurnAngle the minimum angle (radians) between two segments to be a direction change.
+	@param minSegmentLength the minimum length of the segments used to measure the direction, the movements shorter than this are accumulated.
+	*/
+	synchronized void setThresholds(float minPressureDelta, double minTurnAngle, float minSegmentLength){
+		if(minPressureDelta<0 || minTurnAngle<0 || minTurnAngle>Math.PI || minSegmentLength<0)
+			throw new IllegalArgumentException();
+		this.minPressureDelta=minPressureDelta;
+		this.minTurnCos=Math.cos(minTurnAngle);
+		this.minSegmentLength=minSegmentLength;
+	}
+
+	boolean isEnabled(){
+		return rate>0;
+	}
+
+	synchronized boolean scheduleLevelEvent(long deviceTime, Collection<PLevel> levels, boolean levelsOnScreen){
+		float x=x1, y=y1, pressure=pressure1;
+		for(PLevel level: levels){
+			if(level.typeNumber==X)
+				x=level.value;
+			else if(level.typeNumber==Y)
+				y=level.value;
+			else if(level.typeNumber==PRESSURE)
+				pressure=level.value;
+		}
+		boolean pressureEdge=processedCount>0 && (pressure1>0)!=(pressure>0);
+		boolean pressureExtremum=isPressureExtremum(pressure); // both called for each sample: they track the stroke
+		boolean directionChange=isDirectionChange(x, y);
+		if(held && (pressureEdge || pressureExtremum || directionChange))
+			scheduleHeld();
+		x1=x; y1=y; pressure1=pressure;
+		processedCount++;
+
+		if(pressureEdge || !scheduledAny || deviceTime>=nextScheduleDeviceTime){
+			levelsToSchedule.clear();
+			levelsToSchedule.addAll(levels);
+			if(held){
+				for(PLevel heldLevel: heldLevels)
+					if(heldLevel!=null && !containsType(levels, heldLevel.typeNumber))
+						levelsToSchedule.add(heldLevel);
+				clearHeld();
+			}
+			nextScheduleDeviceTime=!scheduledAny || nextScheduleDeviceTime+periodMillis<deviceTime?
+				deviceTime+periodMillis: nextScheduleDeviceTime+periodMillis;
+			scheduledAny=true;
+			return scheduleUndecimated(deviceTime, levelsToSchedule, levelsOnScreen);
+		}
+
+		hold(deviceTime, levels, levelsOnScreen);
+		return true;
+	}
+
+	/**
+	@return {@code true} if the pressure went back more than {@link #minPressureDelta} from the extreme reached on its current trend.
+	*/
+	private boolean isPressureExtremum(float pressure){
+		if(processedCount==0){
+			pressureTrend=0;
+			pressureExtreme=pressure;
+			return false;
+		}
+		float delta=pressure-pressureExtreme;
+		if(pressureTrend==0){
+			if(Math.abs(delta)>minPressureDelta){
+				pressureTrend=delta>0? 1: -1;
+				pressureExtreme=pressure;
+			}
+			return false;
+		}
+		if(delta*pressureTrend>=0){ // the trend goes on
+			pressureExtreme=pressure;
+			return false;
+		}
+		if(-delta*pressureTrend<=minPressureDelta) // jitter
+			return false;
+		pressureTrend=-pressureTrend;
+		pressureExtreme=pressure;
+		return true;
+	}
+
+	/**
+	@return {@code true} if the segment ending on the given location turns more than the minimum turn angle from the previous segment. The movements shorter than {@link #minSegmentLength} are accumulated into the next segment.
+	*/
+	private boolean isDirectionChange(float x, float y){
+		if(processedCount==0){
+			anchorX=x;
+			anchorY=y;
+			directionX=directionY=0;
+			return false;
+		}
+		float dx=x-anchorX, dy=y-anchorY;
+		float lengthSq=dx*dx+dy*dy;
+		if(lengthSq==0 || lengthSq<minSegmentLength*minSegmentLength)
+			return false;
+		boolean directionChange=(directionX!=0 || directionY!=0) &&
+			directionX*dx+directionY*dy<minTurnCos*Math.sqrt((directionX*directionX+directionY*directionY)*lengthSq);
+		directionX=dx;
+		directionY=dy;
+		anchorX=x;
+		anchorY=y;
+		return directionChange;
+	}
+
+	private static boolean containsType(Collection<PLevel> levels, int typeNumber){
+		for(PLevel level: levels)
+			if(level.typeNumber==typeNumber)
+				return true;
+		return false;
+	}
+
+	private void hold(long deviceTime, Collection<PLevel> levels, boolean levelsOnScreen){
+		for(PLevel level: levels){
+			if(level.typeNumber>=heldLevels.length){
+				PLevel[] newHeldLevels=new PLevel[level.typeNumber+1];
+				System.arraycopy(heldLevels, 0, newHeldLevels, 0, heldLevels.length);
+				heldLevels=newHeldLevels;
+			}
+			heldLevels[level.typeNumber]=level;
+		}
+		held=true;
+		heldDeviceTime=deviceTime;
+		heldLevelsOnScreen=levelsOnScreen;
+		heldArrivalNanoTime=System.nanoTime();
+		if(!flushTaskScheduled)
+			scheduleFlushTask((long)periodMillis+1);
+	}
+
+	private void clearHeld(){
+		for(int i=heldLevels.length; --i>=0;)
+			heldLevels[i]=null;
+		held=false;
+	}
+
+	private void scheduleHeld(){
+		levelsToSchedule.clear();
+		for(PLevel heldLevel: heldLevels)
+			if(heldLevel!=null)
+				levelsToSchedule.add(heldLevel);
+		clearHeld();
+		scheduleUndecimated(heldDeviceTime, levelsToSchedule, heldLevelsOnScreen);
+	}
+
+	/**
+	Hands the kept samples to the {@link PenManager}. Overridden by the tests.
+	*/
+	boolean scheduleUndecimated(long deviceTime, List<PLevel> levels, boolean levelsOnScreen){
+		return penManager.scheduleUndecimatedLevelEvent(device, deviceTime, levels, levelsOnScreen);
+	}
+
+	/**
+	Schedules the dropped sample, if any. Called before scheduling other events of the device to keep the order.
+	*/
+	synchronized void flush(){
+		if(held)
+			scheduleHeld();
+	}
+
+	private void scheduleFlushTask(long delayMillis){
+		flushTaskScheduled=true;
+		PenRuntime.getScheduledExecutor().schedule(flushTask, delayMillis, TimeUnit.MILLISECONDS);
+	}
+
+	private synchronized void flushTaskRun(){
+		flushTaskScheduled=false;
+		if(!held)
+			return;
+		long waitMillis=(long)periodMillis-(System.nanoTime()-heldArrivalNanoTime)/1000000l;
+		if(waitMillis>0)
+			scheduleFlushTask(waitMillis+1);
+		else
+			scheduleHeld();
+	}
+}
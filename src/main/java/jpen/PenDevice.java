@@ -18,9 +18,11 @@ along with jpen.  If not, see <http://www.gnu.org/licenses/>.
 }] */
 package jpen;
 
+import java.io.Closeable;
 import java.util.Collection;
 
-public interface PenDevice {
+public interface PenDevice
+	extends Closeable {
 
 	PenProvider getProvider();
 
@@ -34,18 +36,18 @@ public interface PenDevice {
 
 	String getName();
 	/**
-	@return A unique and constant id. This id is assigned at runtime by the {@link PenManager} and can change between restarts.
+	@return A unique and constant id. This id is assigned at runtime by the {@link PenManager} and can change between restarts. The id of a removed device is reused for the next device added, keeping the ids small.
 	
 	@see #getPhysicalId()
 	*/
-	byte getId();
+	int getId();
 	
 	/**
 	Don't call this method. It is only for use by the {@link PenManager}. This method is called when the device is being constructed to set a meaningful {@code id}.
 	
 	@see PLevelEvent#getDeviceId()
 	*/
-	void penManagerSetId(byte id);
+	void penManagerSetId(int id);
 	
 	/**
 	@return A unique and constant id. This {@code physicalId} is always the same for the given device, even if the program restarts. Each PenDevice has a different {@code physicalId}.  
@@ -63,5 +65,10 @@ public interface PenDevice {
 	@see #getUseFractionalMovements()
 	*/
 	void penManagerSetUseFractionalMovements(boolean useFractionalMovements);
+
+	/**
+	Called by the {@link PenProvider} when it is closed: this {@code PenDevice} must stop sending events and release its resources (threads, device grabs, native memory). The device is not used after calling this method.
+	*/
+	void close();
 	
 }
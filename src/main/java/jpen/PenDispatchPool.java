@@ -0,0 +1,79 @@
+/* [{
+Copyright 2007, 2008 Nicolas Carranza <nicarran at gmail.com>
+
+This file is part of jpen.
+
+jpen is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License,
+or (at your option) any later version.
+
+jpen is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with jpen.  If not, see <http://www.gnu.org/licenses/>.
+}] */
+package jpen;
+
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+The bounded pool shared by all the pooled {@link PenManager}s (see {@link PenManager#PenManager(jpen.owner.PenOwner, PenManager.PenGroupKeyEvaluator, boolean)}) to dispatch their events. It has one thread per available processor, created on first use.<p>
+
+The providers are constructed using a separate pool (see {@link #executeConstruction(Runnable)}): their construction can block for long (native library loading, driver initialization) and must not hold the dispatch threads.
+*/
+final class PenDispatchPool{
+	private PenDispatchPool(){}
+
+	private static ScheduledThreadPoolExecutor executor;
+	private static ThreadPoolExecutor constructionExecutor;
+
+	private static synchronized ScheduledThreadPoolExecutor getExecutor(){
+		if(executor==null)
+			executor=new ScheduledThreadPoolExecutor(Runtime.getRuntime().availableProcessors(), new ThreadFactory(){
+						private final AtomicInteger threadCount=new AtomicInteger();
+						//@Override
+						public Thread newThread(Runnable runnable){
+							return PenRuntime.newThread("jpen-PenDispatchPool-"+threadCount.incrementAndGet(), runnable);
+						}
+					});
+		return executor;
+	}
+
+	private static synchronized ThreadPoolExecutor getConstructionExecutor(){
+		if(constructionExecutor==null)
+			constructionExecutor=new ThreadPoolExecutor(0, Integer.MAX_VALUE, 10, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(), new ThreadFactory(){
+						private final AtomicInteger threadCount=new AtomicInteger();
+						//@Override
+						public Thread newThread(Runnable runnable){
+							Thread thread=PenRuntime.newThread("jpen-PenDispatchPool-construction-"+threadCount.incrementAndGet(), runnable);
+							thread.setPriority(Thread.MIN_PRIORITY);
+							return thread;
+						}
+					});
+		return constructionExecutor;
+	}
+
+	static void execute(Runnable task){
+		getExecutor().execute(task);
+	}
+
+	/**
+	Runs the given provider construction task on the construction pool. Its threads are created on demand and end after 10 seconds idle.
+	*/
+	static void executeConstruction(Runnable task){
+		getConstructionExecutor().execute(task);
+	}
+
+	static void schedule(Runnable task, long delayMillis){
+		getExecutor().schedule(task, delayMillis, TimeUnit.MILLISECONDS);
+	}
+}
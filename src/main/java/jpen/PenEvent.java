@@ -20,6 +20,8 @@ package jpen;
 
 import java.io.IOException;
 import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.util.Arrays;
 import jpen.event.PenListener;
 import jpen.internal.AccessibleField;
@@ -27,30 +29,51 @@ import jpen.internal.AccessibleField;
 public abstract class PenEvent
 	implements java.io.Serializable {
 	public static final long serialVersionUID=2l;
+	/**
+	The stream keeps the {@code byte} {@code deviceId} field of the previous versions: the {@code int} device id is written in the new {@code intDeviceId} field.
+	*/
+	private static final ObjectStreamField[] serialPersistentFields={
+		new ObjectStreamField("time", long.class),
+		new ObjectStreamField("deviceId", byte.class),
+		new ObjectStreamField("deviceTime", long.class),
+		new ObjectStreamField("deviceNanoTime", long.class),
+		new ObjectStreamField("intDeviceId", int.class),
+	};
 
 	protected long time=-1;
 	transient volatile PenEvent next;
 	public final transient Pen pen;
-	private final byte deviceId;
+	private final int deviceId;
 	private final long deviceTime;
+	private final long deviceNanoTime;
 	private transient Object penOwnerTag;
 
 	PenEvent(PenDevice device, long deviceTime) {
-		this(device.getProvider().getConstructor().getPenManager().pen,
-				 device.getId(),
+		this(device.getProvider().getConstructor().getPenManager().getPen(device),
+				 device,
 				 deviceTime);
 	}
 
-	private PenEvent(Pen pen, byte deviceId, long deviceTime){
+	PenEvent(Pen pen, PenDevice device, long deviceTime) {
+		this(pen, device.getId(), deviceTime, evalDeviceNanoTime(pen, device, deviceTime));
+	}
+
+	private PenEvent(Pen pen, int deviceId, long deviceTime, long deviceNanoTime){
 		this.pen=pen;
 		this.deviceId=deviceId;
 		this.deviceTime=deviceTime;
+		this.deviceNanoTime=deviceNanoTime;
+	}
+
+	private static long evalDeviceNanoTime(Pen pen, PenDevice device, long deviceTime){
+		DeviceClock deviceClock=pen.penManager.getDeviceClock(device);
+		return deviceClock==null? -1: deviceClock.evalNanoTime(deviceTime);
 	}
 
 	static final class Dummy
 		extends PenEvent{
 		Dummy(){
-			super(null, (byte)0, 0);
+			super(null, 0, 0, -1);
 		}
 		@Override
 		void copyTo(PenState penState){}
@@ -73,9 +96,9 @@ public abstract class PenEvent
 	Returns the id of the {@link PenDevice} which generated this event.
 
 	@see #getDevice()
-	@see PenManager#getDevice(byte)
+	@see PenManager#getDevice(int)
 	*/
-	public byte getDeviceId(){
+	public int getDeviceId(){
 		return deviceId;
 	}
 
@@ -97,6 +120,16 @@ public abstract class PenEvent
 	public long getDeviceTime(){
 		return deviceTime;
 	}
+
+	/**
+	Returns the {@link #getDeviceTime()} translated to the {@link System#nanoTime()} time base, as estimated by the {@link DeviceClock} of the device when this event was scheduled. Unlike the time of arrival, this timestamp doesn't include the queueing jitter: use it to measure velocities and latencies.
+
+	@return the device timestamp in nanoseconds or {@code -1} if it is unknown.
+	@see PenManager#getDeviceClock(PenDevice)
+	*/
+	public long getDeviceNanoTime(){
+		return deviceNanoTime;
+	}
 	
 	/**
 	@see PenOwner#evalPenEventTag(PenEvent)
@@ -111,7 +144,18 @@ public abstract class PenEvent
 
 	@Override
 	public String toString(){
-		return "[PenEvent: deviceId="+deviceId+", deviceTime="+deviceTime+", time="+time+"]";
+		return "[PenEvent: deviceId="+deviceId+", deviceTime="+deviceTime+", deviceNanoTime="+deviceNanoTime+", time="+time+"]";
+	}
+
+	private void writeObject(ObjectOutputStream out)
+	throws IOException {
+		ObjectOutputStream.PutField fields=out.putFields();
+		fields.put("time", time);
+		fields.put("deviceId", deviceId<=Byte.MAX_VALUE? (byte)deviceId: (byte)-1); // -1 for the previous versions if out of their range
+		fields.put("deviceTime", deviceTime);
+		fields.put("deviceNanoTime", deviceNanoTime);
+		fields.put("intDeviceId", deviceId);
+		out.writeFields();
 	}
 
 	private void readObject(ObjectInputStream in)
@@ -120,11 +164,13 @@ public abstract class PenEvent
 			ObjectInputStream.GetField fields = in.readFields();
 			time=fields.get("time", 0l);
 			//v Backwards compatibility:
-			//vv deviceId and deviceTime are new, provide better defaults:
-			//if(fields.defaulted("deviceId"))
-			//deviceIdField.getField().set(this, fields.get("deviceId", (byte)0));
-			if(fields.defaulted("deviceTime"))
-				deviceTimeField.getField().set(this, fields.get("deviceTime", time));
+			if(fields.defaulted("intDeviceId"))
+				deviceIdField.getField().set(this, (int)fields.get("deviceId", (byte)0));
+			else
+				deviceIdField.getField().set(this, fields.get("intDeviceId", 0));
+			//vv deviceTime and deviceNanoTime are new, provide better defaults:
+			deviceTimeField.getField().set(this, fields.get("deviceTime", time));
+			deviceNanoTimeField.getField().set(this, fields.get("deviceNanoTime", -1l));
 			//^^
 			//^
 		}catch(IllegalAccessException ex){
@@ -134,4 +180,5 @@ public abstract class PenEvent
 
 	static final AccessibleField deviceIdField=new AccessibleField(PenEvent.class, "deviceId");
 	static final AccessibleField deviceTimeField=new AccessibleField(PenEvent.class, "deviceTime");
+	static final AccessibleField deviceNanoTimeField=new AccessibleField(PenEvent.class, "deviceNanoTime");
 }
\ No newline at end of file
@@ -0,0 +1,278 @@
+/* [{
+Copyright 2007, 2008 Nicolas Carranza <nicarran at gmail.com>
+
+This file is part of jpen.
+
+jpen is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License,
+or (at your option) any later version.
+
+jpen is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with jpen.  If not, see <http://www.gnu.org/licenses/>.
+}] */
+package jpen;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.logging.Logger;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import jpen.internal.ObjectUtils;
+import jpen.internal.ThrowableUtils;
+
+/**
+Optional stage between the providers and the {@link PenScheduler}. When enabled (latency greater than 0), the samples coming from each device are buffered for at most the latency period and are handed to the scheduler ordered by their normalized device time (instead of arrival order).<p>
+
+The normalized time of a sample is its {@link PenEvent#getDeviceTime()} translated to the {@link System#nanoTime()} time base by the {@link DeviceClock} of its device. The normalized time of each device is forced to be monotonic.<p>
+
+A sample is released when its normalized time is not greater than the watermark---the minimum of the latest normalized time of all the devices which delivered samples during the last latency period---or when it has waited for the whole latency period.
+*/
+final class PenEventMerger{
+	private static final Logger L=Logger.getLogger(PenEventMerger.class.getName());
+	//static { L.setLevel(Level.ALL); }
+
+	private final Pen pen;
+	private volatile int latencyMillis;
+	private final PriorityQueue<Sample> samples=new PriorityQueue<Sample>();
+	/**
+	The samples released, in order, waiting to be handed to the scheduler without holding the lock of this merger (see {@link #dispatchReleased()}).
+	*/
+	private final Queue<Sample> releasedSamples=new LinkedList<Sample>();
+	/**
+	Held while handing the released samples to the scheduler: keeps their order when more than one thread releases.
+	*/
+	private final Object dispatchLock=new Object();
+	private final Map<PenDevice, DeviceStream> deviceToStream=new HashMap<PenDevice, DeviceStream>();
+	private long nextSequence;
+	/**
+	Incremented each time the {@link PenManager} is paused/unpaused: buffered samples from a previous epoch are discarded.
+	*/
+	private volatile int epoch;
+	private Thread thread;
+
+	private static final int LEVEL=0, BUTTON=1, SCROLL=2;
+
+	private static final class Sample
+		implements Comparable<Sample>{
+		final int type;
+		final PenDevice device;
+		final long deviceTime;
+		final long normalizedTime;
+		final long arrivalTime;
+		final long sequence;
+		final int epoch;
+		final Object payload;
+		final boolean levelsOnScreen;
+
+		Sample(int type, PenDevice device, long deviceTime, long normalizedTime, long arrivalTime, long sequence, int epoch, Object payload, boolean levelsOnScreen){
+			this.type=type;
+			this.device=device;
+			this.deviceTime=deviceTime;
+			this.normalizedTime=normalizedTime;
+			this.arrivalTime=arrivalTime;
+			this.sequence=sequence;
+			this.epoch=epoch;
+			this.payload=payload;
+			this.levelsOnScreen=levelsOnScreen;
+		}
+
+		//@Override
+		public int compareTo(Sample o){
+			if(normalizedTime!=o.normalizedTime)
+				return normalizedTime<o.normalizedTime? -1: 1;
+			return sequence<o.sequence? -1: sequence==o.sequence? 0: 1;
+		}
+	}
+
+	private static final class DeviceStream{
+		final DeviceClock clock;
+		long lastNormalizedTime=Long.MIN_VALUE;
+		long lastArrivalTime;
+
+		DeviceStream(DeviceClock clock){
+			this.clock=clock;
+		}
+
+		long normalize(long deviceTime, long arrivalTime){
+			long normalizedTime=clock.evalNanoTime(deviceTime);
+			if(normalizedTime<lastNormalizedTime)
+				normalizedTime=lastNormalizedTime;
+			lastNormalizedTime=normalizedTime;
+			lastArrivalTime=arrivalTime;
+			return normalizedTime;
+		}
+	}
+
+	PenEventMerger(Pen pen){
+		this.pen=pen;
+	}
+
+	int getLatencyMillis(){
+		return latencyMillis;
+	}
+
+	void setLatencyMillis(int latencyMillis){
+		if(latencyMillis<0)
+			throw new IllegalArgumentException();
+		synchronized(this){
+			this.latencyMillis=latencyMillis;
+			if(latencyMillis==0){
+				release(Long.MAX_VALUE);
+				deviceToStream.clear();
+			}else if(thread==null){
+				thread=PenRuntime.newThread("jpen-PenEventMerger", new MyRunnable());
+				thread.start();
+			}
+			notifyAll();
+		}
+		dispatchReleased();
+	}
+
+	boolean isEnabled(){
+		return latencyMillis>0;
+	}
+
+	/**
+	Called by the {@link PenManager} when it is paused or unpaused.
+	*/
+	void incrementEpoch(){
+		epoch++;
+	}
+
+	void scheduleLevelEvent(PenDevice device, long deviceTime, Collection<PLevel> levels, boolean levelsOnScreen){
+		add(LEVEL, device, deviceTime, new ArrayList<PLevel>(levels), levelsOnScreen); // the levels collection can be reused by the provider
+	}
+
+	void scheduleButtonEvent(PenDevice device, long deviceTime, PButton button){
+		add(BUTTON, device, deviceTime, button, false);
+	}
+
+	void scheduleScrollEvent(PenDevice device, long deviceTime, PScroll scroll){
+		add(SCROLL, device, deviceTime, scroll, false);
+	}
+
+	/**
+	Called by the {@link PenManager} when the device is removed.
+	*/
+	synchronized void removeDevice(PenDevice device){
+		deviceToStream.remove(device);
+	}
+
+	private void add(int type, PenDevice device, long deviceTime, Object payload, boolean levelsOnScreen){
+		synchronized(this){
+			long arrivalTime=System.nanoTime();
+			DeviceStream deviceStream=deviceToStream.get(device);
+			if(deviceStream==null){
+				DeviceClock deviceClock=pen.penManager.getDeviceClock(device);
+				if(deviceClock==null) // the device was removed
+					return;
+				deviceToStream.put(device, deviceStream=new DeviceStream(deviceClock));
+			}
+			long normalizedTime=deviceStream.normalize(deviceTime, arrivalTime);
+			samples.add(new Sample(type, device, deviceTime, normalizedTime, arrivalTime, nextSequence++, epoch, payload, levelsOnScreen));
+			release(evalWatermark(arrivalTime));
+			if(!samples.isEmpty())
+				notifyAll();
+		}
+		dispatchReleased();
+	}
+
+	private long evalWatermark(long time){
+		long watermark=Long.MAX_VALUE;
+		for(DeviceStream deviceStream: deviceToStream.values())
+			if(time-deviceStream.lastArrivalTime<latencyMillis*1000000l && deviceStream.lastNormalizedTime<watermark)
+				watermark=deviceStream.lastNormalizedTime;
+		return watermark;
+	}
+
+	/**
+	Releases the samples with normalized time less or equal than the given watermark and the samples which waited for the whole latency period. Must be followed by a {@link #dispatchReleased()} call once the lock of this merger is released.
+	*/
+	private void release(long watermark){
+		long expiredArrivalTime=System.nanoTime()-latencyMillis*1000000l;
+		Sample sample;
+		while((sample=samples.peek())!=null &&
+					(sample.normalizedTime<=watermark || sample.arrivalTime<=expiredArrivalTime))
+			releasedSamples.add(samples.poll());
+	}
+
+	/**
+	Hands the released samples to the scheduler. Called without holding the lock of this merger.
+	*/
+	private void dispatchReleased(){
+		synchronized(dispatchLock){
+			for(;;){
+				Sample sample;
+				synchronized(this){
+					sample=releasedSamples.poll();
+				}
+				if(sample==null)
+					return;
+				if(sample.epoch!=epoch)
+					continue;
+				dispatch(sample);
+			}
+		}
+	}
+
+	private void dispatch(Sample sample){
+		switch(sample.type){
+		case LEVEL:
+			@SuppressWarnings("unchecked")
+			Collection<PLevel> levels=(Collection<PLevel>)sample.payload;
+			pen.scheduler.scheduleLevelEvent(sample.device, sample.deviceTime, levels, sample.levelsOnScreen);
+			break;
+		case BUTTON:
+			pen.scheduler.scheduleButtonEvent(sample.device, sample.deviceTime, (PButton)sample.payload);
+			break;
+		case SCROLL:
+			pen.scheduler.scheduleScrollEvent(sample.device, sample.deviceTime, (PScroll)sample.payload);
+			break;
+		default:
+			throw new AssertionError();
+		}
+	}
+
+	/**
+	Releases the samples which waited for the whole latency period when no new samples arrive. Ends when the merger is disabled.
+	*/
+	private final class MyRunnable
+		implements Runnable{
+		//@Override
+		public void run(){
+			try{
+				for(;;){
+					synchronized(PenEventMerger.this){
+						if(latencyMillis<=0){
+							thread=null;
+							return;
+						}
+						Sample sample=samples.peek();
+						if(sample==null){
+							ObjectUtils.waitUninterrupted(PenEventMerger.this);
+							continue;
+						}
+						long waitNanos=sample.arrivalTime+latencyMillis*1000000l-System.nanoTime();
+						if(waitNanos>0){
+							ObjectUtils.waitUninterrupted(PenEventMerger.this, waitNanos/1000000l+1);
+							continue;
+						}
+						release(evalWatermark(System.nanoTime()));
+					}
+					dispatchReleased();
+				}
+			}catch(RuntimeException ex){
+				L.severe("jpen-PenEventMerger thread threw an exception: "+ThrowableUtils.evalStackTraceString(ex));
+			}
+		}
+	}
+}
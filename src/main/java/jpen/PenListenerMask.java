@@ -0,0 +1,194 @@
+/* [{
+Copyright 2007, 2008 Nicolas Carranza <nicarran at gmail.com>
+
+This file is part of jpen.
+
+jpen is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License,
+or (at your option) any later version.
+
+jpen is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with jpen.  If not, see <http://www.gnu.org/licenses/>.
+}] */
+package jpen;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import jpen.event.PenListener;
+
+/**
+Declares which {@link PenEvent}s a {@link PenListener} is interested in. A mask is given when adding the listener using {@link Pen#addListener(PenListener, PenListenerMask)}.<p>
+
+The {@link Pen} merges the masks of all its listeners. Events and level values that no listener is interested in are not dispatched. If {@link PenManager#setLevelFiltering(boolean)} is enabled, the level types that no listener is interested in are also not scheduled and not read from the device by the providers which support it (see {@link Pen#isLevelTypeListened(PLevel.Type)}).<p>
+
+{@code PenListenerMask}s are immutable, the {@code with...} methods return new instances.
+*/
+public final class PenListenerMask{
+
+	public enum EventType{
+		KIND, LEVEL, BUTTON, SCROLL,
+		/**
+		{@link PenListener#penTock(long)} calls.
+		*/
+		TOCK;
+		public static final List<EventType> VALUES=Collections.unmodifiableList(Arrays.asList(values()));
+	}
+
+	private static final long ALL_BITS=~0l;
+	/**
+	Level and kind type numbers greater or equal than this value share the last bit of the mask.
+	*/
+	private static final int EXT_TYPE_NUMBER=63;
+
+	/**
+	Accepts all the events. This is the mask used by {@link Pen#addListener(PenListener)}.
+	*/
+	public static final PenListenerMask ALL=new PenListenerMask(ALL_BITS, ALL_BITS, ALL_BITS, null);
+	/**
+	Accepts no events. Useful as a starting point: {@code PenListenerMask.NONE.withEventTypes(...).withLevelTypes(...)}.
+	*/
+	public static final PenListenerMask NONE=new PenListenerMask(0, 0, 0, null);
+
+	private final long eventTypesMask;
+	private final long levelTypesMask;
+	private final long kindTypesMask;
+	private final Set<String> devicePhysicalIds; // null means all the devices
+
+	private PenListenerMask(long eventTypesMask, long levelTypesMask, long kindTypesMask, Set<String> devicePhysicalIds){
+		this.eventTypesMask=eventTypesMask;
+		this.levelTypesMask=levelTypesMask;
+		this.kindTypesMask=kindTypesMask;
+		this.devicePhysicalIds=devicePhysicalIds;
+	}
+
+	/**
+	@return a mask accepting {@link PLevelEvent}s containing any of the given level types and all the other event types.
+	*/
+	public static PenListenerMask levels(PLevel.Type... levelTypes){
+		return ALL.withLevelTypes(levelTypes);
+	}
+
+	private static long bit(int typeNumber){
+		return 1l<<Math.min(typeNumber, EXT_TYPE_NUMBER);
+	}
+
+	/**
+	@return a copy of this mask accepting only the given event types. If level types were selected using {@link #withLevelTypes(PLevel.Type...)} then the {@link EventType#LEVEL} event type stays accepted: both methods can be chained in any order.
+	*/
+	public PenListenerMask withEventTypes(EventType... eventTypes){
+		long eventTypesMask=0;
+		for(EventType eventType: eventTypes)
+			eventTypesMask|=bit(eventType.ordinal());
+		if(levelTypesMask!=0 && levelTypesMask!=ALL_BITS)
+			eventTypesMask|=bit(EventType.LEVEL.ordinal());
+		return new PenListenerMask(eventTypesMask, levelTypesMask, kindTypesMask, devicePhysicalIds);
+	}
+
+	/**
+	@return a copy of this mask accepting only the given level types. The {@link EventType#LEVEL} event type is also accepted.
+	*/
+	public PenListenerMask withLevelTypes(PLevel.Type... levelTypes){
+		long levelTypesMask=0;
+		for(PLevel.Type levelType: levelTypes)
+			levelTypesMask|=bit(levelType.ordinal());
+		return new PenListenerMask(eventTypesMask|bit(EventType.LEVEL.ordinal()), levelTypesMask, kindTypesMask, devicePhysicalIds);
+	}
+
+	/**
+	@return a copy of this mask accepting only events fired while the {@link Pen} has one of the given {@link PKind.Type}s.
+	*/
+	public PenListenerMask withKindTypes(PKind.Type... kindTypes){
+		long kindTypesMask=0;
+		for(PKind.Type kindType: kindTypes)
+			kindTypesMask|=bit(kindType.ordinal());
+		return new PenListenerMask(eventTypesMask, levelTypesMask, kindTypesMask, devicePhysicalIds);
+	}
+
+	/**
+	@return a copy of this mask accepting only events coming from the devices with the given {@link PenDevice#getPhysicalId()}. The events emulated by JPen (e.g. {@link PButton.Type#ON_PRESSURE}) are always accepted.
+	*/
+	public PenListenerMask withDevices(String... devicePhysicalIds){
+		return new PenListenerMask(eventTypesMask, levelTypesMask, kindTypesMask,
+				Collections.unmodifiableSet(new HashSet<String>(Arrays.asList(devicePhysicalIds))));
+	}
+
+	/**
+	@return a mask accepting the events accepted by this mask or by the given mask.
+	*/
+	public PenListenerMask union(PenListenerMask mask){
+		Set<String> devicePhysicalIds=null;
+		if(this.devicePhysicalIds!=null && mask.devicePhysicalIds!=null){
+			devicePhysicalIds=new HashSet<String>(this.devicePhysicalIds);
+			devicePhysicalIds.addAll(mask.devicePhysicalIds);
+			devicePhysicalIds=Collections.unmodifiableSet(devicePhysicalIds);
+		}
+		return new PenListenerMask(eventTypesMask|mask.eventTypesMask,
+				levelTypesMask|mask.levelTypesMask,
+				kindTypesMask|mask.kindTypesMask,
+				devicePhysicalIds);
+	}
+
+	public boolean acceptsEventType(EventType eventType){
+		return (eventTypesMask & bit(eventType.ordinal()))!=0;
+	}
+
+	public boolean acceptsLevelType(PLevel.Type levelType){
+		return acceptsLevelType(levelType.ordinal());
+	}
+
+	public boolean acceptsLevelType(int levelTypeNumber){
+		return (levelTypesMask & bit(levelTypeNumber))!=0;
+	}
+
+	public boolean acceptsKindType(int kindTypeNumber){
+		return (kindTypesMask & bit(kindTypeNumber))!=0;
+	}
+
+	public boolean acceptsDevice(PenDevice device){
+		if(devicePhysicalIds==null || device==null)
+			return true;
+		if(device==device.getProvider().getConstructor().getPenManager().emulationDevice)
+			return true;
+		return devicePhysicalIds.contains(device.getPhysicalId());
+	}
+
+	/**
+	@return {@code true} if this mask accepts all the events.
+	*/
+	public boolean isAll(){
+		return eventTypesMask==ALL_BITS && levelTypesMask==ALL_BITS && kindTypesMask==ALL_BITS && devicePhysicalIds==null;
+	}
+
+	boolean accepts(PenEvent ev, EventType eventType){
+		if(!acceptsEventType(eventType))
+			return false;
+		if(kindTypesMask!=ALL_BITS && !acceptsKindType(ev.pen.getKind().typeNumber))
+			return false;
+		if(devicePhysicalIds!=null && !acceptsDevice(ev.getDevice()))
+			return false;
+		return true;
+	}
+
+	boolean acceptsAnyLevel(PLevel[] levels){
+		if(levelTypesMask==ALL_BITS)
+			return true;
+		for(int i=levels.length; --i>=0;)
+			if(acceptsLevelType(levels[i].typeNumber))
+				return true;
+		return false;
+	}
+
+	@Override
+	public String toString(){
+		return "[PenListenerMask: eventTypesMask="+Long.toHexString(eventTypesMask)+", levelTypesMask="+Long.toHexString(levelTypesMask)+", kindTypesMask="+Long.toHexString(kindTypesMask)+", devicePhysicalIds="+devicePhysicalIds+"]";
+	}
+}
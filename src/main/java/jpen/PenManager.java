@@ -19,6 +19,7 @@ along with jpen.  If not, see <http://www.gnu.org/licenses/>.
 package jpen;
 
 import java.awt.Component;
+import java.io.Closeable;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -28,10 +29,14 @@ import java.util.List;
 import java.util.logging.Logger;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 import jpen.event.PenManagerListener;
 import jpen.internal.BuildInfo;
 import jpen.internal.ObjectUtils;
+import jpen.internal.ThrowableUtils;
 import jpen.owner.awt.AwtPenOwner;
 import jpen.owner.PenOwner;
 import jpen.provider.system.MouseDevice;
@@ -39,7 +44,8 @@ import jpen.provider.system.MouseDevice;
 /**
 Create a {@code PenManager} to start using JPen, {@link jpen.owner.multiAwt.AwtPenToolkit} contains one ready to be used.
 */
-public final class PenManager {
+public final class PenManager
+	implements Closeable {
 
 	private static final Logger L=Logger.getLogger(PenManager.class.getName());
 
@@ -56,6 +62,10 @@ public final class PenManager {
 		instanceCount++;
 	}
 
+	private synchronized static void decrementInstanceCount() {
+		instanceCount--;
+	}
+
 	/**
 	See {@link PenOwner#enforceSinglePenManager()}.
 	*/
@@ -65,18 +75,78 @@ public final class PenManager {
 		PenManager.singletonMode=singletonMode;
 	}
 
-	public final Pen  pen=new Pen(this);
+	public final Pen  pen;
+	private final boolean pooled;
+	private final AtomicBoolean penOwnerProvidersStarted=new AtomicBoolean();
+	private final AtomicBoolean closed=new AtomicBoolean();
 	public final PenOwner penOwner;
 	private final Set<PenProvider.Constructor> providerConstructors=Collections.synchronizedSet(new HashSet<PenProvider.Constructor>());
 	private final Set<PenProvider.Constructor> providerConstructorsA=Collections.unmodifiableSet(providerConstructors);
-	private final Map<Byte, PenDevice> deviceIdToDevice=new HashMap<Byte, PenDevice>(Byte.MAX_VALUE, 1f);
-	private final Collection<PenDevice> devicesA=Collections.unmodifiableCollection(deviceIdToDevice.values());
-	private byte nextDeviceId;
+	private final Object devicesLock=new Object();
+	private volatile DeviceEntry[] deviceIdToEntry=new DeviceEntry[0];
+	private volatile List<PenDevice> devices=Collections.emptyList();
+	private volatile int decimationRate;
+	private volatile float decimationMinPressureDelta=PenDecimator.DEFAULT_MIN_PRESSURE_DELTA;
+	private volatile double decimationMinTurnAngle=PenDecimator.DEFAULT_MIN_TURN_ANGLE;
+	private volatile float decimationMinSegmentLength=PenDecimator.DEFAULT_MIN_SEGMENT_LENGTH;
+	private volatile boolean levelFiltering;
 	private volatile boolean paused=true;
+	//v idle mode:
+	private volatile boolean idle;
+	private final Object idleLock=new Object();
+	private final Set<PenDevice> devicesInProximity=new HashSet<PenDevice>();
+	private volatile int idleTimeout; // millis, 0: no inactivity timeout
+	private volatile long lastActivityNanoTime=System.nanoTime();
+	private ScheduledFuture<?> idleTimeoutTask;
+	/**
+	The inactivity timeout (millis) after which this {@code PenManager} goes back to idle when the idle mode was ended by a device which doesn't report proximity (e.g. the system mouse) and no {@link #setIdleTimeout(int) idle timeout} is set.
+	*/
+	static final int NON_PROXIMITY_IDLE_TIMEOUT=1000;
+	private ScheduledFuture<?> nonProximityIdleTask; // guarded by idleLock
+	//^
 	private final List<PenManagerListener> listeners=new ArrayList<PenManagerListener>();
 	private PenManagerListener[] listenersArray;
 	final PenDevice emulationDevice;
 	private PenDevice systemMouseDevice; // may be null
+	private final PenGroupKeyEvaluator penGroupKeyEvaluator; // null when in single pen mode
+	private final Map<Object, Pen> groupKeyToPen=new HashMap<Object, Pen>();
+
+	/**
+	The registry record of an added {@link PenDevice}, indexed by its {@link PenDevice#getId()}.
+	*/
+	private static final class DeviceEntry {
+		final PenDevice device;
+		final DeviceClock clock=new DeviceClock();
+		final PenDecimator decimator;
+		volatile Pen pen; // null when not on multi-pen mode
+		volatile boolean reportsProximity;
+
+		DeviceEntry(PenManager penManager, PenDevice device) {
+			this.device=device;
+			this.decimator=new PenDecimator(penManager, device, penManager.decimationRate);
+			decimator.setThresholds(penManager.decimationMinPressureDelta, penManager.decimationMinTurnAngle, penManager.decimationMinSegmentLength);
+		}
+	}
+
+	/**
+	Used on multi-pen mode to group the {@link PenDevice}s sharing one {@link Pen}. See {@link PenManager#PenManager(PenOwner, PenGroupKeyEvaluator)}.
+	*/
+	public interface PenGroupKeyEvaluator{
+		/**
+		@return a key identifying the group of the given device. Devices with equal keys share the same {@link Pen}.
+		*/
+		Object evalPenGroupKey(PenDevice device);
+	}
+
+	/**
+	Each {@link PenDevice} gets its own {@link Pen}: the key is the {@link PenDevice#getPhysicalId()}.
+	*/
+	public static final PenGroupKeyEvaluator PEN_PER_DEVICE=new PenGroupKeyEvaluator(){
+				//@Override
+				public Object evalPenGroupKey(PenDevice device){
+					return device.getPhysicalId();
+				}
+			};
 
 	/**
 	Creates an {@code AwtPenOwner} and calls the {@link #PenManager(PenOwner)} constructor. <b>Warning:</b> see {@link jpen.owner.awt.AwtPenOwner}.
@@ -85,7 +155,37 @@ public final class PenManager {
 		this(new AwtPenOwner(component));
 	}
 
+	/**
+	Constructs a {@code PenManager} on single pen mode: the events of all the devices are scheduled and fired by the {@link #pen}.
+	*/
 	public PenManager(PenOwner penOwner) {
+		this(penOwner, null);
+	}
+
+	/**
+	Constructs a {@code PenManager} on multi-pen mode if {@code penGroupKeyEvaluator} is not {@code null}: each group of {@link PenDevice}s (as given by the {@code penGroupKeyEvaluator}) gets its own {@link Pen}, with its own scheduler and event firing thread. Add the {@link jpen.event.PenListener}s to the {@code Pen} returned by {@link #getPen(PenDevice)} when notified by {@link PenManagerListener#penDeviceAdded(PenProvider.Constructor, PenDevice)}. The {@link #pen} only fires the events of the devices JPen uses internally (e.g. the emulation device).<p>
+
+	The {@link PenOwner} must be thread-safe when using multi-pen mode: its {@link PenOwner#getPenClip()} and {@link PenOwner#isDraggingOut()} are called concurrently by each {@code Pen} while holding only the {@code Pen}'s own scheduler lock.
+
+	@see #PEN_PER_DEVICE
+	*/
+	public PenManager(PenOwner penOwner, PenGroupKeyEvaluator penGroupKeyEvaluator) {
+		this(penOwner, penGroupKeyEvaluator, false);
+	}
+
+	/**
+	Constructs a {@code PenManager} which owns no event dispatch threads if {@code pooled} is {@code true}: its events are dispatched using a bounded pool shared by all the pooled {@code PenManager}s, with one thread per available processor, and its providers are constructed using a separate shared pool whose idle threads end. The {@link PenOwner#getPenProviderConstructors() providers} are constructed lazily, when the first {@link jpen.event.PenListener} is added (or when {@link #getProviderConstructors()} is called). Use pooled {@code PenManager}s to host many pen sessions (e.g. replayed sessions) in one JVM. The {@link PenOwner} must not {@link PenOwner#enforceSinglePenManager() enforce a single PenManager} to have more than one.<p>
+
+	The {@link jpen.event.PenListener}s of a pooled {@code PenManager} are called from the pool threads: they must not block. When {@link Pen#setFirePenTockOnSwing(boolean) firing the pen tock on swing}, it is fired asynchronously: the pool threads don't wait for the event dispatch thread.<p>
+
+	The providers reading devices keep their own threads: each XInput, Wintab, evdev and hidraw provider has its reader thread(s) (the XInput provider also a device presence thread) and the Cocoa provider its ingestion thread, per {@code PenManager}. Pooled {@code PenManager}s hosting sessions which don't read devices (e.g. replayed sessions) should use a {@link PenOwner} without device providers.
+
+	@see #PenManager(PenOwner, PenGroupKeyEvaluator)
+	*/
+	public PenManager(PenOwner penOwner, PenGroupKeyEvaluator penGroupKeyEvaluator, boolean pooled) {
+		this.pooled=pooled;
+		this.pen=new Pen(this);
+		this.penGroupKeyEvaluator=penGroupKeyEvaluator;
 		if(penOwner.enforceSinglePenManager())
 			setSingletonMode(true);
 		incrementInstanceCount();
@@ -117,32 +217,102 @@ public final class PenManager {
 			}
 										);
 		}
-		addPenOwnerProviders();
+		if(!pooled)
+			startPenOwnerProviders();
+	}
+
+	boolean getPooled() {
+		return pooled;
+	}
+
+	/**
+	In some cases, constructing providers takes considerable time (wintab, native library loading), so each provider is constructed concurrently in its own thread (or in the construction pool of the {@link PenDispatchPool} when pooled) and published as soon as it is ready. Only the first call has effect.
+
+	@see #getProviderFutures()
+	*/
+	void startPenOwnerProviders() {
+		if(!penOwnerProvidersStarted.compareAndSet(false, true))
+			return;
+		List<PenProviderFuture> providerFutures=new ArrayList<PenProviderFuture>();
+		for(PenProvider.Constructor penProviderConstructor: penOwner.getPenProviderConstructors())
+			providerFutures.add(new PenProviderFuture(penProviderConstructor));
+		synchronized(this) {
+			this.providerFutures=Collections.unmodifiableList(providerFutures);
+			pendingProviderFuturesCount=providerFutures.size();
+			if(pendingProviderFuturesCount==0) {
+				providerConstructorsInitialized=true;
+				notifyAll();
+			}
+		}
+		for(final PenProviderFuture providerFuture: providerFutures) {
+			Runnable providerConstructor=new Runnable() {
+				//@Override
+				public void run() {
+					constructProvider(providerFuture);
+				}
+			};
+			if(pooled) {
+				PenDispatchPool.executeConstruction(providerConstructor);
+				continue;
+			}
+			Thread thread=PenRuntime.newThread("jpen-PenManager-constructProvider-"+providerFuture.getConstructor().getName(), providerConstructor);
+			thread.setPriority(Thread.MIN_PRIORITY);
+			thread.start();
+		}
 	}
+	private volatile List<PenProviderFuture> providerFutures=Collections.emptyList();
+	private int pendingProviderFuturesCount;
+	private volatile boolean providerConstructorsInitialized=false;
 
 	/**
-	In some cases, constructing providers takes considerable time (wintab), so we add them in a new thread.
+	Constructs the provider outside of the scheduler lock (the other providers are constructed concurrently) and then publishes it (see {@link #publishProvider(PenProvider.Constructor)}).
 	*/
-	private void addPenOwnerProviders() {
-		Thread thread=new Thread("jpen-PenManager-addPenOwnerProviders") {
-			@Override
-			public void run() {
-				synchronized(pen.scheduler) {
-					for(PenProvider.Constructor penProviderConstructor: PenManager.this.penOwner.getPenProviderConstructors())
-						addProvider(penProviderConstructor);
+	private void constructProvider(PenProviderFuture providerFuture) {
+		PenProvider.Constructor providerConstructor=providerFuture.getConstructor();
+		long startTime=System.nanoTime();
+		PenProviderFuture.State state=PenProviderFuture.State.FAILED;
+		Throwable failure=null;
+		try {
+			try {
+				if(closed.get() || !providerConstructor.constructable(this))
+					state=PenProviderFuture.State.SKIPPED;
+				else if(providerConstructor.construct(this)) {
+					publishProvider(providerConstructor);
+					state=PenProviderFuture.State.CONSTRUCTED;
+				} else {
+					synchronized(pen.scheduler) {
+						providerConstructors.add(providerConstructor);
+					}
+					failure=providerConstructor.getConstructionException();
 				}
-				synchronized(PenManager.this) {
+			} catch(RuntimeException ex) {
+				L.warning("provider "+providerConstructor.getName()+" construction threw an exception: "+ThrowableUtils.evalStackTraceString(ex));
+				failure=ex;
+			}
+			long constructionNanos=System.nanoTime()-startTime;
+			L.fine("provider "+providerConstructor.getName()+" "+state+" in "+constructionNanos/1000000l+" ms");
+			providerFuture.done(state, failure, constructionNanos);
+		} finally { // the waiters of getProviderConstructors() must be released whatever happens
+			synchronized(this) {
+				if(--pendingProviderFuturesCount==0) {
 					providerConstructorsInitialized=true;
-					PenManager.this.notifyAll();
+					notifyAll();
 				}
 			}
-		};
-		thread.setPriority(Thread.MIN_PRIORITY);
-		thread.start();
+		}
+	}
+
+	/**
+	@return the constructions of the {@link PenOwner#getPenProviderConstructors()}, starting them if they were not started (pooled {@code PenManager}). Unlike {@link #getProviderConstructors()}, this method does not wait for the providers construction.
+	*/
+	public List<PenProviderFuture> getProviderFutures() {
+		if(!closed.get())
+			startPenOwnerProviders();
+		return providerFutures;
 	}
-	private volatile boolean providerConstructorsInitialized=false;
 
 	private synchronized void waitForProviderConstructorsInitialization() {
+		startPenOwnerProviders();
 		while(!providerConstructorsInitialized)
 			ObjectUtils.waitUninterrupted(this);
 	}
@@ -165,18 +335,27 @@ public final class PenManager {
 	*/
 	private  PenProvider addProvider(PenProvider.Constructor providerConstructor) {
 		if(providerConstructor.constructable(this)) {
+			if(providerConstructor.construct(this))
+				return publishProvider(providerConstructor);
+			providerConstructors.add(providerConstructor);
+		}
+		return null;
+	}
+
+	/**
+	Adds the constructed provider and its devices. The {@link #setPaused(boolean)} state is applied under the scheduler lock, so the provider is unpaused exactly once, and after its devices are added: the provider can start firing on them (and adding or removing devices) when unpaused.
+	*/
+	private PenProvider publishProvider(PenProvider.Constructor providerConstructor) {
+		synchronized(pen.scheduler) {
 			if(!this.providerConstructors.add(providerConstructor))
 				throw new IllegalArgumentException("constructor already added");
-			if(providerConstructor.construct(this)) {
-				PenProvider provider=providerConstructor.getConstructed();
-				if(!getPaused())
-					provider.penManagerPaused(false);// the provider is paused after construction, so it is not necessary to call when true
-				for(PenDevice device:provider.getDevices())
-					firePenDeviceAdded(providerConstructor, device);
-				return provider;
-			}
+			PenProvider provider=providerConstructor.getConstructed();
+			for(PenDevice device:provider.getDevices())
+				firePenDeviceAdded(providerConstructor, device);
+			if(!getPaused())
+				provider.penManagerPaused(false);// the provider is paused after construction, so it is not necessary to call when true
+			return provider;
 		}
-		return null;
 	}
 
 	public void addListener(PenManagerListener l) {
@@ -202,10 +381,22 @@ public final class PenManager {
 	}
 
 	public void firePenDeviceAdded(PenProvider.Constructor constructor, PenDevice device) {
-		byte nextDeviceId=getNextDeviceId();
-		device.penManagerSetId(nextDeviceId);
-		if(deviceIdToDevice.put(nextDeviceId, device)!=null)
-			throw new AssertionError();
+		synchronized(devicesLock) {
+			DeviceEntry[] deviceIdToEntry=this.deviceIdToEntry;
+			int deviceId=0;
+			while(deviceId<deviceIdToEntry.length && deviceIdToEntry[deviceId]!=null) // the lowest free id: the ids of the removed devices are reused
+				deviceId++;
+			device.penManagerSetId(deviceId);
+			DeviceEntry[] newDeviceIdToEntry=new DeviceEntry[Math.max(deviceIdToEntry.length, deviceId+1)];
+			System.arraycopy(deviceIdToEntry, 0, newDeviceIdToEntry, 0, deviceIdToEntry.length);
+			newDeviceIdToEntry[deviceId]=new DeviceEntry(this, device);
+			this.deviceIdToEntry=newDeviceIdToEntry; // copy on write: the provider threads read this array without locking.
+			List<PenDevice> devices=new ArrayList<PenDevice>(this.devices);
+			devices.add(device);
+			this.devices=Collections.unmodifiableList(devices);
+		}
+		if(penGroupKeyEvaluator!=null && !(device.getProvider() instanceof EmulationProvider))
+			setDevicePen(device);
 		if(systemMouseDevice==null && device instanceof MouseDevice)
 			this.systemMouseDevice=device;
 		for(PenManagerListener l: getListenersArray()) {
@@ -213,30 +404,144 @@ public final class PenManager {
 		}
 	}
 
-	private byte getNextDeviceId() {
-		Set<Byte> deviceIds=deviceIdToDevice.keySet();
-		while(deviceIds.contains(Byte.valueOf(nextDeviceId)))
-			nextDeviceId++;
-		if(nextDeviceId<0)
-			throw new IllegalStateException();
-		return nextDeviceId;
-	}
-
 	public void firePenDeviceRemoved(PenProvider.Constructor constructor, PenDevice device) {
-		if(deviceIdToDevice.remove(device.getId())==null)
-			throw new IllegalArgumentException("device not found");
+		DeviceEntry deviceEntry;
+		synchronized(devicesLock) {
+			deviceEntry=getDeviceEntry(device);
+			if(deviceEntry==null)
+				throw new IllegalArgumentException("device not found");
+			DeviceEntry[] deviceIdToEntry=this.deviceIdToEntry.clone();
+			deviceIdToEntry[device.getId()]=null;
+			int length=deviceIdToEntry.length;
+			while(length>0 && deviceIdToEntry[length-1]==null)
+				length--;
+			if(length<deviceIdToEntry.length) {
+				DeviceEntry[] trimmedDeviceIdToEntry=new DeviceEntry[length];
+				System.arraycopy(deviceIdToEntry, 0, trimmedDeviceIdToEntry, 0, length);
+				deviceIdToEntry=trimmedDeviceIdToEntry;
+			}
+			this.deviceIdToEntry=deviceIdToEntry;
+			List<PenDevice> devices=new ArrayList<PenDevice>(this.devices);
+			devices.remove(device);
+			this.devices=Collections.unmodifiableList(devices);
+		}
+		synchronized(devicesInProximity) {
+			if(devicesInProximity.remove(device) && devicesInProximity.isEmpty())
+				setIdle(true);
+		}
+		(deviceEntry.pen!=null? deviceEntry.pen: pen).merger.removeDevice(device); // after the entry removal: the merger doesn't add streams of devices without clock
 		for(PenManagerListener l: getListenersArray())
 			l.penDeviceRemoved(constructor, device);
 		if(systemMouseDevice==device)
 			this.systemMouseDevice=null;
+		if(deviceEntry.pen!=null)
+			removeDevicePen(deviceEntry.pen);
 	}
 
-	public PenDevice getDevice(byte deviceId) {
-		return deviceIdToDevice.get(Byte.valueOf(deviceId));
+	/**
+	@return the registry entry of the given device or {@code null} if the device is not added. Lock free.
+	*/
+	private DeviceEntry getDeviceEntry(PenDevice device) {
+		DeviceEntry deviceEntry=getDeviceEntry(device.getId());
+		return deviceEntry!=null && deviceEntry.device==device? deviceEntry: null;
 	}
 
+	private DeviceEntry getDeviceEntry(int deviceId) {
+		DeviceEntry[] deviceIdToEntry=this.deviceIdToEntry;
+		if(deviceId<0 || deviceId>=deviceIdToEntry.length)
+			return null;
+		return deviceIdToEntry[deviceId];
+	}
+
+	/**
+	@return the {@link DeviceClock} mapping the device time of the given device to the {@link System#nanoTime()} time base, or {@code null} if the device was not added to this {@code PenManager}.
+	@see PenEvent#getDeviceNanoTime()
+	*/
+	public DeviceClock getDeviceClock(PenDevice device) {
+		DeviceEntry deviceEntry=getDeviceEntry(device);
+		return deviceEntry==null? null: deviceEntry.clock;
+	}
+
+	private void observeDeviceTime(PenDevice device, long deviceTime) {
+		DeviceClock deviceClock=getDeviceClock(device);
+		if(deviceClock!=null)
+			deviceClock.observe(deviceTime, System.nanoTime());
+	}
+
+	private void setDevicePen(PenDevice device) {
+		Object groupKey=penGroupKeyEvaluator.evalPenGroupKey(device);
+		synchronized(groupKeyToPen) {
+			DeviceEntry deviceEntry=getDeviceEntry(device);
+			if(deviceEntry==null)
+				return;
+			Pen devicePen=groupKeyToPen.get(groupKey);
+			if(devicePen==null) {
+				devicePen=new Pen(this, pen);
+				groupKeyToPen.put(groupKey, devicePen);
+				devicePen.scheduler.setPaused(paused);
+			}
+			deviceEntry.pen=devicePen;
+		}
+	}
+
+	/**
+	Stops the given device pen if no other device uses it.
+	*/
+	private void removeDevicePen(Pen devicePen) {
+		synchronized(groupKeyToPen) {
+			for(PenDevice device: devices) {
+				DeviceEntry deviceEntry=getDeviceEntry(device);
+				if(deviceEntry!=null && deviceEntry.pen==devicePen)
+					return;
+			}
+			groupKeyToPen.values().remove(devicePen);
+			devicePen.stop();
+		}
+	}
+
+	/**
+	@return the {@link Pen} firing the events of the given device. It is always the {@link #pen} when on single pen mode.
+	@see #PenManager(PenOwner, PenGroupKeyEvaluator)
+	*/
+	public Pen getPen(PenDevice device) {
+		DeviceEntry deviceEntry=getDeviceEntry(device);
+		if(deviceEntry!=null) {
+			Pen devicePen=deviceEntry.pen;
+			if(devicePen!=null)
+				return devicePen;
+		}
+		return pen;
+	}
+
+	/**
+	@return the {@link #pen} followed by the {@link Pen}s created for each group of devices when on multi-pen mode.
+	*/
+	public List<Pen> getPens() {
+		List<Pen> pens=new ArrayList<Pen>();
+		pens.add(pen);
+		synchronized(groupKeyToPen) {
+			pens.addAll(groupKeyToPen.values());
+		}
+		return pens;
+	}
+
+	public boolean getMultiPenMode() {
+		return penGroupKeyEvaluator!=null;
+	}
+
+	/**
+	@return the device with the given {@link PenDevice#getId()} or {@code null} if there is none: the id of a removed device is given to the next device added. Lock free.
+	*/
+	public PenDevice getDevice(int deviceId) {
+		DeviceEntry deviceEntry=getDeviceEntry(deviceId);
+		return deviceEntry==null? null: deviceEntry.device;
+	}
+
+	/**
+	@return an unmodifiable snapshot of the devices currently added. A new snapshot is created (copy on write) each time a device is added or removed.
+	*/
 	public Collection<PenDevice> getDevices() {
-		return devicesA;
+		return devices;
 	}
 
 	/**
@@ -256,7 +561,16 @@ public final class PenManager {
 		synchronized(pen.scheduler) {
 			if(this.paused==paused)
 				return;
+			if(!paused && closed.get())
+				return;
 			pen.scheduler.setPaused(paused);
+			pen.merger.incrementEpoch();
+			synchronized(groupKeyToPen) {
+				for(Pen devicePen: groupKeyToPen.values()) {
+					devicePen.scheduler.setPaused(paused);
+					devicePen.merger.incrementEpoch();
+				}
+			}
 			this.paused=paused;
 			PenProvider.Constructor[] providerConstructorsArray=providerConstructors.toArray(new PenProvider.Constructor[0]); // I don't want to wait for the providerConstructors initialization so I do a copy.
 			for(PenProvider.Constructor providerConstructor: providerConstructorsArray) {
@@ -267,19 +581,267 @@ public final class PenManager {
 		}
 	}
 
+	/**
+	Called by the providers supporting proximity (e.g. XInput, Cocoa) when the pen of the given device enters or leaves the tablet proximity. This {@code PenManager} goes idle when no device is in proximity.
+
+	@see #getIdle()
+	*/
+	public void firePenProximity(PenDevice device, boolean inProximity) {
+		DeviceEntry deviceEntry=getDeviceEntry(device);
+		if(deviceEntry!=null)
+			deviceEntry.reportsProximity=true;
+		synchronized(devicesInProximity) {
+			if(inProximity)
+				devicesInProximity.add(device);
+			else
+				devicesInProximity.remove(device);
+			setIdle(devicesInProximity.isEmpty());
+		}
+	}
+
+	/**
+	Sets the inactivity timeout: if no event is scheduled during this period (and no device reported to be in proximity) then this {@code PenManager} goes idle. This is the way to go idle for providers not supporting proximity (e.g. Wintab).
+
+	@param idleTimeout in milliseconds, {@code 0} (the default) disables the inactivity timeout.
+	@see #getIdle()
+	*/
+	public void setIdleTimeout(int idleTimeout) {
+		if(idleTimeout<0)
+			throw new IllegalArgumentException("idleTimeout must be positive or 0");
+		synchronized(idleLock) {
+			this.idleTimeout=idleTimeout;
+			lastActivityNanoTime=System.nanoTime();
+			if(idleTimeoutTask!=null) {
+				idleTimeoutTask.cancel(false);
+				idleTimeoutTask=null;
+			}
+			if(idleTimeout==0)
+				return;
+			idleTimeoutTask=PenRuntime.getScheduledExecutor().scheduleWithFixedDelay(new Runnable() {
+				//@Override
+				public void run() {
+					if(!idle && System.nanoTime()-lastActivityNanoTime>=PenManager.this.idleTimeout*1000000l)
+						synchronized(devicesInProximity) {
+							if(devicesInProximity.isEmpty())
+								setIdle(true);
+						}
+				}
+			}, idleTimeout, idleTimeout, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	public int getIdleTimeout() {
+		return idleTimeout;
+	}
+
+	/**
+	@return {@code true} if the pen left the proximity of the tablet or no event was scheduled during the {@link #setIdleTimeout(int) idle timeout}. While idle, the providers stop polling (see {@link PenProvider#penManagerIdle(boolean)}) and the {@link Pen} threads stay parked until the next event is scheduled, which ends the idle mode. If that event comes from a device which doesn't report proximity (e.g. the system mouse) then the idle mode starts again after one second of inactivity (or the {@link #setIdleTimeout(int) idle timeout} if set), so that it doesn't keep this {@code PenManager} awake while the pen is away.
+	*/
+	public boolean getIdle() {
+		return idle;
+	}
+
+	private void setIdle(boolean idle) {
+		synchronized(idleLock) {
+			if(this.idle==idle)
+				return;
+			L.fine("idle: "+idle);
+			this.idle=idle;
+			if(!idle)
+				lastActivityNanoTime=System.nanoTime();
+			PenProvider.Constructor[] providerConstructorsArray=providerConstructors.toArray(new PenProvider.Constructor[0]);
+			for(PenProvider.Constructor providerConstructor: providerConstructorsArray) {
+				PenProvider penProvider=providerConstructor.getConstructed();
+				if(penProvider!=null)
+					penProvider.penManagerIdle(idle);
+			}
+		}
+	}
+
+	/**
+	Called on each scheduled event: ends the idle mode. If the given device doesn't report proximity and no idle timeout is set, this {@code PenManager} goes back to idle after {@link #NON_PROXIMITY_IDLE_TIMEOUT} of inactivity if no device is in proximity.
+	*/
+	private void noteActivity(PenDevice device) {
+		lastActivityNanoTime=System.nanoTime();
+		if(!idle)
+			return;
+		setIdle(false);
+		DeviceEntry deviceEntry=getDeviceEntry(device);
+		if(idleTimeout==0 && (deviceEntry==null || !deviceEntry.reportsProximity))
+			scheduleNonProximityIdleTask();
+	}
+
+	private void scheduleNonProximityIdleTask() {
+		synchronized(idleLock) {
+			if(nonProximityIdleTask!=null)
+				return;
+			nonProximityIdleTask=PenRuntime.getScheduledExecutor().scheduleWithFixedDelay(new Runnable() {
+						//@Override
+						public void run() {
+							if(System.nanoTime()-lastActivityNanoTime<NON_PROXIMITY_IDLE_TIMEOUT*1000000l)
+								return;
+							cancelNonProximityIdleTask(); // before going idle: the next wake up schedules a new task
+							synchronized(devicesInProximity) {
+								if(devicesInProximity.isEmpty())
+									setIdle(true);
+							} // else the proximity out event sets the idle mode
+						}
+					}, NON_PROXIMITY_IDLE_TIMEOUT, NON_PROXIMITY_IDLE_TIMEOUT, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	private void cancelNonProximityIdleTask() {
+		synchronized(idleLock) {
+			if(nonProximityIdleTask!=null) {
+				nonProximityIdleTask.cancel(false);
+				nonProximityIdleTask=null;
+			}
+		}
+	}
+
 	public boolean getPaused() {
 		synchronized(pen.scheduler) {
 			return paused;
 		}
 	}
 
+	/**
+	Closes this {@code PenManager}: pauses it, {@link PenProvider#close() closes} its providers---which stop their threads, ungrab their devices and release their native resources---and stops the event firing of its {@link Pen}s. A closed {@code PenManager} stays paused and is not usable. Calling this method more than once has no effect.<p>
+
+	The native resources of providers not closed are released when garbage collected, but close the {@code PenManager}s when recreating pen sessions often to avoid their pile up (e.g. X server connections).
+	*/
+	//@Override
+	public void close() {
+		if(!closed.compareAndSet(false, true))
+			return;
+		L.fine("closing");
+		setPaused(true);
+		setIdleTimeout(0);
+		cancelNonProximityIdleTask();
+		if(penOwnerProvidersStarted.compareAndSet(false, true)) { // pooled and never used: the providers are not constructed
+			synchronized(this) {
+				providerConstructorsInitialized=true;
+				notifyAll();
+			}
+		} else
+			waitForProviderConstructorsInitialization();
+		for(PenProvider.Constructor providerConstructor: providerConstructors.toArray(new PenProvider.Constructor[0])) {
+			PenProvider penProvider=providerConstructor.getConstructed();
+			if(penProvider!=null)
+				try {
+					penProvider.close();
+				} catch(RuntimeException ex) {
+					L.warning("provider "+providerConstructor.getName()+" threw an exception when closed: "+ThrowableUtils.evalStackTraceString(ex));
+				}
+		}
+		pen.stop();
+		synchronized(groupKeyToPen) {
+			for(Pen devicePen: groupKeyToPen.values())
+				devicePen.stop();
+		}
+		decrementInstanceCount();
+	}
+
+	/**
+	@see #close()
+	*/
+	public boolean getClosed() {
+		return closed.get();
+	}
+
+	/**
+	Enables the timestamp ordered merging of the events coming from different devices (or disables it if {@code latencyMillis} is {@code 0}). When enabled, the samples scheduled by the providers are buffered for at most {@code latencyMillis} and are handed to the {@link Pen}'s scheduler ordered by the device time normalized for each device, instead of arrival order. Disabled by default.<p>
+
+	When enabled, {@link #scheduleLevelEvent(PenDevice, long, Collection, boolean)} returns {@code true} if the sample was accepted into the buffer: the sample can still be discarded later by the scheduler (e.g. if it doesn't change the pen state).
+	*/
+	public void setEventMergingLatency(int latencyMillis) {
+		if(latencyMillis<0)
+			throw new IllegalArgumentException("latencyMillis must be positive or 0");
+		for(Pen devicePen: getPens())
+			devicePen.merger.setLatencyMillis(latencyMillis);
+	}
+
+	public int getEventMergingLatency() {
+		return pen.merger.getLatencyMillis();
+	}
+
+	/**
+	Enables the filtering of the level values by the {@link PenListenerMask}s of the {@link Pen} listeners: the level types not accepted by any listener of a pen are then not scheduled and not read from the devices by the providers which support it (see {@link Pen#isLevelTypeListened(PLevel.Type)}), so their {@link Pen#getLevelValue(PLevel.Type)} is not updated. Disabled by default: all the level values are scheduled, as needed by code polling the pen state.
+	*/
+	public void setLevelFiltering(boolean levelFiltering) {
+		this.levelFiltering=levelFiltering;
+	}
+
+	public boolean getLevelFiltering() {
+		return levelFiltering;
+	}
+
+	/**
+	Sets the decimation rate of all the devices, including the ones added later. See {@link #setDecimationRate(PenDevice, int)}.
+	*/
+	public void setDecimationRate(int rate) {
+		if(rate<0)
+			throw new IllegalArgumentException("rate must be positive or 0");
+		synchronized(devicesLock) {
+			decimationRate=rate;
+			for(PenDevice device: devices)
+				if(device!=emulationDevice)
+					getDeviceEntry(device).decimator.setRate(rate);
+		}
+	}
+
+	/**
+	Reduces the rate of the level samples scheduled by the given device to approximately the given {@code rate} (samples per second of device time), before they reach the {@link Pen}. The samples at pressure peaks and valleys, at movement direction changes and around {@link PButton.Type#ON_PRESSURE} transitions are kept. {@code 0} (the default) disables the decimation.
+	*/
+	public void setDecimationRate(PenDevice device, int rate) {
+		if(rate<0)
+			throw new IllegalArgumentException("rate must be positive or 0");
+		DeviceEntry deviceEntry=getDeviceEntry(device);
+		if(deviceEntry==null)
+			throw new IllegalArgumentException("device not found");
+		deviceEntry.decimator.setRate(rate);
+	}
+
+	/**
+	Sets the noise thresholds used by the decimation of all the devices, including the ones added later (see {@link #setDecimationRate(PenDevice, int)}): a pressure peak or valley is kept only if the pressure goes back more than {@code minPressureDelta} (default 0.02), and a direction change only if the movement turns more than {@code minTurnAngle} radians (default pi/4) between segments of {@code minSegmentLength} pixels at least (default 8).
+	*/
+	public void setDecimationThresholds(float minPressureDelta, double minTurnAngle, float minSegmentLength) {
+		if(minPressureDelta<0 || minTurnAngle<0 || minTurnAngle>Math.PI || minSegmentLength<0)
+			throw new IllegalArgumentException();
+		synchronized(devicesLock) {
+			decimationMinPressureDelta=minPressureDelta;
+			decimationMinTurnAngle=minTurnAngle;
+			decimationMinSegmentLength=minSegmentLength;
+			for(PenDevice device: devices)
+				getDeviceEntry(device).decimator.setThresholds(minPressureDelta, minTurnAngle, minSegmentLength);
+		}
+	}
+
+	public int getDecimationRate(PenDevice device) {
+		DeviceEntry deviceEntry=getDeviceEntry(device);
+		return deviceEntry==null? 0: deviceEntry.decimator.getRate();
+	}
+
+	private void flushDecimator(PenDevice device) {
+		DeviceEntry deviceEntry=getDeviceEntry(device);
+		if(deviceEntry!=null && deviceEntry.decimator.isEnabled())
+			deviceEntry.decimator.flush();
+	}
+
 	/**
 	Schedules button events. You must construct a new {@code PButton} each time you call this method (do not reuse).
 	*/
 	public void scheduleButtonEvent(PenDevice device, long deviceTime, PButton button) {
 		if(paused)
 			return;
-		pen.scheduler.scheduleButtonEvent(device, deviceTime, button);
+		observeDeviceTime(device, deviceTime);
+		noteActivity(device);
+		flushDecimator(device);
+		Pen devicePen=getPen(device);
+		if(devicePen.merger.isEnabled())
+			devicePen.merger.scheduleButtonEvent(device, deviceTime, button);
+		else
+			devicePen.scheduler.scheduleButtonEvent(device, deviceTime, button);
 	}
 
 	/**
@@ -288,7 +850,14 @@ public final class PenManager {
 	public void scheduleScrollEvent(PenDevice device, long deviceTime, PScroll scroll) {
 		if(paused)
 			return;
-		pen.scheduler.scheduleScrollEvent(device, deviceTime, scroll);
+		observeDeviceTime(device, deviceTime);
+		noteActivity(device);
+		flushDecimator(device);
+		Pen devicePen=getPen(device);
+		if(devicePen.merger.isEnabled())
+			devicePen.merger.scheduleScrollEvent(device, deviceTime, scroll);
+		else
+			devicePen.scheduler.scheduleScrollEvent(device, deviceTime, scroll);
 	}
 
 	public boolean scheduleLevelEvent(PenDevice device, long deviceTime, Collection<PLevel> levels) {
@@ -301,6 +870,29 @@ public final class PenManager {
 	public boolean scheduleLevelEvent(PenDevice device, long deviceTime, Collection<PLevel> levels, boolean levelsOnScreen) {
 		if(paused)
 			return false;
+		observeDeviceTime(device, deviceTime);
+		noteActivity(device);
+		DeviceEntry deviceEntry=getDeviceEntry(device);
+		if(deviceEntry!=null && deviceEntry.decimator.isEnabled())
+			return deviceEntry.decimator.scheduleLevelEvent(deviceTime, levels, levelsOnScreen);
+		return scheduleUndecimatedLevelEvent(device, deviceTime, levels, levelsOnScreen);
+	}
+
+	boolean scheduleUndecimatedLevelEvent(PenDevice device, long deviceTime, Collection<PLevel> levels, boolean levelsOnScreen) {
+		if(paused)
+			return false;
+		Pen devicePen=getPen(device);
+		if(devicePen.merger.isEnabled()) {
+			devicePen.merger.scheduleLevelEvent(device, deviceTime, levels, levelsOnScreen);
+			return true;
+		}
+		return devicePen.scheduler.scheduleLevelEvent(device, deviceTime, levels, levelsOnScreen);
+	}
+
+	boolean scheduleLevelEvent(Pen pen, PenDevice device, long deviceTime, Collection<PLevel> levels, boolean levelsOnScreen) {
+		if(paused)
+			return false;
+		observeDeviceTime(device, deviceTime);
 		return pen.scheduler.scheduleLevelEvent(device, deviceTime, levels, levelsOnScreen);
 	}
 
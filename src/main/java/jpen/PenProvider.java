@@ -18,6 +18,7 @@ along with jpen.  If not, see <http://www.gnu.org/licenses/>.
 }] */
 package jpen;
 
+import java.io.Closeable;
 import java.util.Collection;
 import jpen.owner.PenOwner;
 
@@ -28,7 +29,8 @@ Each {@code PenDevice} has a {@link PKind.Type}. A tablet provider constructs ty
 
 The pointer creates its own thread (or uses native threads through JNI) to feed the data.
 */
-public interface PenProvider {
+public interface PenProvider
+	extends Closeable {
 	/**
 	Each {@code PenProvider} is constructed using a {@code Constructor}. The available {@code Constructor}s are given by the {@link PenOwner#getPenProviderConstructors()} and are used by the {@link PenManager} to try to construct one {@code PenProvider} for each {@code Constructor}. 
 	*/
@@ -99,9 +101,21 @@ public interface PenProvider {
 	@param paused If {@code true} then the devices must stop sending events. If {@code false} then the devices must start sending events. 
 	*/
 	void penManagerPaused(boolean paused);
+
+	/**
+	Called by the {@link PenManager} when the pen leaves the tablet proximity or is inactive (see {@link PenManager#getIdle()}). While idle, the provider should stop polling the devices and wait for the pen to come back, using as few resources as possible. A provider which blocks waiting for the device events can ignore this call.
+
+	@param idle {@code true} when entering the idle mode, {@code false} when leaving it (the next event was scheduled).
+	*/
+	void penManagerIdle(boolean idle);
 	
 	/**
 	@return {@code true} if this provider needs a location filter to automatically detect if one of its devices is using mouse (relative) location mode and replace its movement levels values with mouse pointer location values.
 	*/
 	boolean getUseRelativeLocationFilter();
+
+	/**
+	Called by the {@link PenManager} when it is closed (see {@link PenManager#close()}): this {@code PenProvider} must stop its threads and close its {@link PenDevice}s, releasing deterministically the native resources it holds. The provider is not used after calling this method.
+	*/
+	void close();
 }
@@ -0,0 +1,159 @@
+/* [{
+Copyright 2007, 2008 Nicolas Carranza <nicarran at gmail.com>
+
+This file is part of jpen.
+
+jpen is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License,
+or (at your option) any later version.
+
+jpen is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with jpen.  If not, see <http://www.gnu.org/licenses/>.
+}] */
+package jpen;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Logger;
+import jpen.internal.ThrowableUtils;
+import jpen.owner.PenOwner;
+
+/**
+The construction of one of the {@link PenOwner#getPenProviderConstructors()}. The {@link PenManager} constructs the providers concurrently and completes each {@code PenProviderFuture} as soon as its provider is ready (see {@link PenManager#getProviderFutures()}).<p>
+
+{@link #get()} returns the {@link PenProvider} constructed, {@code null} if the provider was {@link State#SKIPPED skipped}, or throws an {@link ExecutionException} holding the {@link PenProvider.Constructor#getConstructionException()} if the construction {@link State#FAILED failed}.
+*/
+public final class PenProviderFuture
+	implements Future<PenProvider>{
+	private static final Logger L=Logger.getLogger(PenProviderFuture.class.getName());
+	//static{L.setLevel(Level.ALL);}
+
+	public enum State{
+		PENDING,
+		/**
+		{@link PenProvider.Constructor#constructable(PenManager)} returned {@code false}: the provider is not supported on this system or its devices/extensions are absent.
+		*/
+		SKIPPED,
+		CONSTRUCTED,
+		FAILED
+	}
+
+	private final PenProvider.Constructor constructor;
+	private State state=State.PENDING;
+	private Throwable failure;
+	private long constructionNanos=-1;
+	private List<Runnable> whenDoneActions=new ArrayList<Runnable>(1); // null when done
+
+	PenProviderFuture(PenProvider.Constructor constructor){
+		this.constructor=constructor;
+	}
+
+	public PenProvider.Constructor getConstructor(){
+		return constructor;
+	}
+
+	public synchronized State getState(){
+		return state;
+	}
+
+	/**
+	@return the time taken to check if the provider is constructable and to construct it, {@code -1} if still {@link State#PENDING}.
+	*/
+	public synchronized long getConstructionNanos(){
+		return constructionNanos;
+	}
+
+	/**
+	Runs the given action when this construction is done: on the calling thread if it is already done, on the thread which constructed the provider otherwise.
+	*/
+	public void whenDone(Runnable action){
+		synchronized(this){
+			if(whenDoneActions!=null){
+				whenDoneActions.add(action);
+				return;
+			}
+		}
+		action.run();
+	}
+
+	/**
+	Called by the {@link PenManager}. An exception thrown by an action is logged: it does not prevent the other actions from running.
+	*/
+	void done(State state, Throwable failure, long constructionNanos){
+		List<Runnable> whenDoneActions;
+		synchronized(this){
+			this.state=state;
+			this.failure=failure;
+			this.constructionNanos=constructionNanos;
+			whenDoneActions=this.whenDoneActions;
+			this.whenDoneActions=null;
+			notifyAll();
+		}
+		for(Runnable action: whenDoneActions)
+			try{
+				action.run();
+			}catch(RuntimeException ex){
+				L.warning("provider "+constructor.getName()+" whenDone action threw an exception: "+ThrowableUtils.evalStackTraceString(ex));
+			}
+	}
+
+	/**
+	The construction can not be cancelled.
+
+	@return {@code false}.
+	*/
+	//@Override
+	public boolean cancel(boolean mayInterruptIfRunning){
+		return false;
+	}
+
+	//@Override
+	public boolean isCancelled(){
+		return false;
+	}
+
+	//@Override
+	public synchronized boolean isDone(){
+		return state!=State.PENDING;
+	}
+
+	//@Override
+	public synchronized PenProvider get() throws InterruptedException, ExecutionException{
+		while(state==State.PENDING)
+			wait();
+		return getResult();
+	}
+
+	//@Override
+	public synchronized PenProvider get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException{
+		long deadline=System.nanoTime()+unit.toNanos(timeout);
+		while(state==State.PENDING){
+			long waitNanos=deadline-System.nanoTime();
+			if(waitNanos<=0)
+				throw new TimeoutException();
+			TimeUnit.NANOSECONDS.timedWait(this, waitNanos);
+		}
+		return getResult();
+	}
+
+	private PenProvider getResult() throws ExecutionException{
+		if(state==State.FAILED)
+			throw new ExecutionException(failure);
+		return constructor.getConstructed();
+	}
+
+	@Override
+	public synchronized String toString(){
+		return "[PenProviderFuture: constructor="+constructor.getName()+", state="+state+", constructionMillis="+(constructionNanos<0? -1: constructionNanos/1000000l)+"]";
+	}
+}
@@ -0,0 +1,103 @@
+/* [{
+Copyright 2007, 2008 Nicolas Carranza <nicarran at gmail.com>
+
+This file is part of jpen.
+
+jpen is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License,
+or (at your option) any later version.
+
+jpen is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with jpen.  If not, see <http://www.gnu.org/licenses/>.
+}] */
+package jpen;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Logger;
+
+/**
+Owns the creation of all the threads started by JPen and the scheduled executor shared by its timers.<p>
+
+Set a {@link ThreadFactory} using {@link #setThreadFactory(ThreadFactory)} before constructing the first {@link PenManager} to control how JPen threads are created (e.g. thread group, priority limits or accounting). JPen names the threads created by the factory ({@code "jpen-..."}) and makes them daemon. {@link #getThreads()} gives the live JPen threads.
+*/
+public final class PenRuntime{
+	private static final Logger L=Logger.getLogger(PenRuntime.class.getName());
+	//static{L.setLevel(Level.ALL);}
+
+	private PenRuntime(){}
+
+	private static ThreadFactory threadFactory=Executors.defaultThreadFactory();
+	private static final Map<Thread, Object> threads=new WeakHashMap<Thread, Object>();
+	private static ScheduledThreadPoolExecutor scheduledExecutor;
+
+	/**
+	Sets the factory used to create the JPen threads. Only the threads created after this call use the given factory.
+	*/
+	public static synchronized void setThreadFactory(ThreadFactory threadFactory){
+		if(threadFactory==null)
+			throw new NullPointerException();
+		PenRuntime.threadFactory=threadFactory;
+	}
+
+	public static synchronized ThreadFactory getThreadFactory(){
+		return threadFactory;
+	}
+
+	/**
+	Creates (but does not start) a daemon thread using the {@link #getThreadFactory() thread factory}. This is the only way JPen creates threads.
+
+	@param name the thread name, it must start with {@code "jpen-"}.
+	*/
+	public static Thread newThread(String name, Runnable runnable){
+		Thread thread;
+		synchronized(PenRuntime.class){
+			thread=threadFactory.newThread(runnable);
+			if(thread==null)
+				throw new IllegalStateException("the thread factory refused to create the thread "+name);
+			threads.put(thread, null);
+		}
+		thread.setName(name);
+		thread.setDaemon(true);
+		L.fine("created thread: "+name);
+		return thread;
+	}
+
+	/**
+	@return the executor shared by the JPen timers. Its single thread is created on first use. The tasks run in this executor must be short and must not block.
+	*/
+	public static synchronized ScheduledExecutorService getScheduledExecutor(){
+		if(scheduledExecutor==null)
+			scheduledExecutor=new ScheduledThreadPoolExecutor(1, new ThreadFactory(){
+						//@Override
+						public Thread newThread(Runnable runnable){
+							return PenRuntime.newThread("jpen-PenRuntime-scheduler", runnable);
+						}
+					});
+		return scheduledExecutor;
+	}
+
+	/**
+	@return the live threads created by JPen.
+	*/
+	public static synchronized List<Thread> getThreads(){
+		List<Thread> liveThreads=new ArrayList<Thread>(threads.size());
+		for(Thread thread: threads.keySet())
+			if(thread.isAlive())
+				liveThreads.add(thread);
+		return Collections.unmodifiableList(liveThreads);
+	}
+}
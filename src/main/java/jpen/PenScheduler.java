@@ -40,6 +40,14 @@ final class PenScheduler {
 	public final PenState lastScheduledState=new PenState();
 	private final SystemMouseFilter systemMouseFilter;
 	private final List<PLevel> scheduledLevels=new ArrayList<PLevel>();
+	//v hover and contact throttling:
+	private int hoverRate, contactRate; // 0: no throttling
+	private long lastLevelEventNanoTime;
+	private PLevel[] throttledLevels=new PLevel[PLevel.Type.VALUES.size()];
+	private PenDevice throttledLevelsDevice;
+	private long throttledLevelsDeviceTime;
+	private volatile long throttledLevelsDeadline=-1; // System.nanoTime() when the throttled levels must be scheduled, -1 if there are no throttled levels
+	//^
 
 	PenScheduler(Pen pen) {
 		this.pen=pen;
@@ -120,6 +128,7 @@ final class PenScheduler {
 	private volatile boolean firstScheduleAfterPause;
 
 	synchronized void setPaused(boolean paused) {
+		flushThrottledLevels();
 		if(paused) {
 			scheduleEmulatedZeroPressureEvent();
 			scheduleButtonReleasedEvents();
@@ -132,7 +141,7 @@ final class PenScheduler {
 
 	private synchronized void scheduleEmulatedZeroPressureEvent() {
 		if(lastScheduledState.levels.getValue(PLevel.Type.PRESSURE)>0)
-			scheduleLevelEvent(new PLevelEvent(getEmulationDevice(), System.currentTimeMillis(),new PLevel[] {new PLevel(PLevel.Type.PRESSURE, 0)}));
+			scheduleLevelEvent(new PLevelEvent(pen, getEmulationDevice(), System.currentTimeMillis(),new PLevel[] {new PLevel(PLevel.Type.PRESSURE, 0)}));
 	}
 
 	private final Point clipLocationOnScreen=new Point();
@@ -166,9 +175,10 @@ final class PenScheduler {
 				L.fine("scheduledLevels: "+scheduledLevels);
 				L.fine("device: "+device);
 			}
+			flushThrottledLevels();
 			lastScheduledState.setKind(newKind);
 			scheduleEmulatedZeroPressureEvent();
-			schedule(new PKindEvent(device, deviceTime, newKind));
+			schedule(new PKindEvent(pen, device, deviceTime, newKind));
 		}
 
 		scheduledLevels.clear();
@@ -186,6 +196,8 @@ final class PenScheduler {
 				continue;
 			if(level.value.isNaN())
 				continue;
+			if(!pen.isLevelTypeListened(level.typeNumber))
+				continue;
 			if(level.isMovement()) {
 				float levelValue=level.value;
 				switch(level.getType() ) {
@@ -231,18 +243,135 @@ final class PenScheduler {
 				return false;
 		}
 
+		boolean wasOnPressure=lastScheduledState.getButtonValue(PButton.Type.ON_PRESSURE);
 		scheduleOnPressureButtonEvent(scheduledPressure);
+		boolean isOnPressure=lastScheduledState.getButtonValue(PButton.Type.ON_PRESSURE);
 
-		scheduleLevelEvent(new PLevelEvent(device, deviceTime,
-										   scheduledLevels.toArray(new PLevel[scheduledLevels.size()])));
+		if(wasOnPressure!=isOnPressure || !throttleLevels(device, deviceTime, isOnPressure)) {
+			if(throttledLevelsDeadline!=-1) {
+				if(device==throttledLevelsDevice)
+					mergeThrottledLevels(scheduledLevels);
+				else
+					flushThrottledLevels();
+			}
+			scheduleLevelEvent(new PLevelEvent(pen, device, deviceTime,
+												 scheduledLevels.toArray(new PLevel[scheduledLevels.size()])));
+		}
 
 		firstScheduleAfterPause=false;
 
 		return true;
 	}
 
+	/**
+	@param hoverRate the maximum rate (events per second) of the level events scheduled while the pen is not pressed ({@link PButton.Type#ON_PRESSURE} is false), {@code 0} means no limit.
+	*/
+	synchronized void setHoverRate(int hoverRate) {
+		if(hoverRate<0)
+			throw new IllegalArgumentException();
+		this.hoverRate=hoverRate;
+	}
+
+	synchronized int getHoverRate() {
+		return hoverRate;
+	}
+
+	/**
+	@param contactRate the maximum rate (events per second) of the level events scheduled while the pen is pressed, {@code 0} means no limit.
+	*/
+	synchronized void setContactRate(int contactRate) {
+		if(contactRate<0)
+			throw new IllegalArgumentException();
+		this.contactRate=contactRate;
+	}
+
+	synchronized int getContactRate() {
+		return contactRate;
+	}
+
+	/**
+	@return {@code true} if the {@link #scheduledLevels} must not be scheduled now due to the hover/contact rate. In that case they are kept and scheduled later merged with the next levels.
+	*/
+	private boolean throttleLevels(PenDevice device, long deviceTime, boolean isOnPressure) {
+		int rate=isOnPressure? contactRate: hoverRate;
+		long nanoTime=System.nanoTime();
+		if(rate==0 || device==getEmulationDevice() ||
+				 nanoTime-lastLevelEventNanoTime>=1000000000l/rate)
+			return false;
+		if(throttledLevelsDeadline!=-1 && device!=throttledLevelsDevice)
+			flushThrottledLevels();
+		lastScheduledState.levels.setValues(scheduledLevels); // the next levels are compared against these
+		holdThrottledLevels(scheduledLevels);
+		throttledLevelsDevice=device;
+		throttledLevelsDeviceTime=deviceTime;
+		if(throttledLevelsDeadline==-1) {
+			throttledLevelsDeadline=lastLevelEventNanoTime+1000000000l/rate;
+			pen.processNewEvents(); // the pen thread schedules the throttled levels if no other levels come before the deadline.
+		}
+		return true;
+	}
+
+	private void holdThrottledLevels(List<PLevel> levels) {
+		for(PLevel level: levels) {
+			if(level.typeNumber>=throttledLevels.length) {
+				PLevel[] newThrottledLevels=new PLevel[level.typeNumber+1];
+				System.arraycopy(throttledLevels, 0, newThrottledLevels, 0, throttledLevels.length);
+				throttledLevels=newThrottledLevels;
+			}
+			throttledLevels[level.typeNumber]=level;
+		}
+	}
+
+	/**
+	Adds the throttled levels not present in the given levels and clears the throttled levels.
+	*/
+	private void mergeThrottledLevels(List<PLevel> levels) {
+		int levelsSize=levels.size();
+		for(int i=throttledLevels.length; --i>=0;) {
+			PLevel throttledLevel=throttledLevels[i];
+			if(throttledLevel==null)
+				continue;
+			throttledLevels[i]=null;
+			boolean present=false;
+			for(int j=levelsSize; --j>=0;)
+				if(levels.get(j).typeNumber==throttledLevel.typeNumber) {
+					present=true;
+					break;
+				}
+			if(!present)
+				levels.add(throttledLevel);
+		}
+		throttledLevelsDeadline=-1;
+	}
+
+	/**
+	Schedules the throttled levels, if any.
+	*/
+	synchronized void flushThrottledLevels() {
+		if(throttledLevelsDeadline==-1)
+			return;
+		List<PLevel> levels=new ArrayList<PLevel>(throttledLevels.length);
+		mergeThrottledLevels(levels);
+		scheduleLevelEvent(new PLevelEvent(pen, throttledLevelsDevice, throttledLevelsDeviceTime,
+											 levels.toArray(new PLevel[levels.size()])));
+	}
+
+	/**
+	Called by the pen thread, without locking.
+
+	@return the milliseconds left until the throttled levels must be scheduled, or {@code -1} if there are no throttled levels.
+	*/
+	long getThrottledLevelsDelay() {
+		long throttledLevelsDeadline=this.throttledLevelsDeadline;
+		if(throttledLevelsDeadline==-1)
+			return -1;
+		long delayNanos=throttledLevelsDeadline-System.nanoTime();
+		return delayNanos<=0? 0: delayNanos/1000000l+1;
+	}
+
 	private void scheduleLevelEvent(PLevelEvent levelEvent) {
 		lastScheduledState.levels.setValues(levelEvent);
+		lastLevelEventNanoTime=System.nanoTime();
 		schedule(levelEvent);
 		systemMouseFilter.setLastLevelEvent(levelEvent);
 	}
@@ -275,10 +404,11 @@ final class PenScheduler {
 	}
 
 	synchronized void scheduleButtonEvent(PenDevice device, long deviceTime, PButton button) {
+		flushThrottledLevels();
 		if(lastScheduledState.setButtonValue(button.typeNumber, button.value)) {
 			if(L.isLoggable(Level.FINE))
 				L.fine("scheduling button event: "+button);
-			PButtonEvent buttonEvent=new PButtonEvent(device, deviceTime, button);
+			PButtonEvent buttonEvent=new PButtonEvent(pen, device, deviceTime, button);
 			schedule(buttonEvent);
 			if(pen.levelEmulator!=null)
 				pen.levelEmulator.scheduleEmulatedEvent(buttonEvent);
@@ -286,7 +416,10 @@ final class PenScheduler {
 	}
 
 	synchronized void scheduleScrollEvent(PenDevice device, long deviceTime, PScroll scroll) {
-		schedule(new PScrollEvent(device, deviceTime, scroll));
+		if(!pen.getListenerMasksUnion().acceptsEventType(PenListenerMask.EventType.SCROLL))
+			return;
+		flushThrottledLevels();
+		schedule(new PScrollEvent(pen, device, deviceTime, scroll));
 	}
 
 	private void schedule(PenEvent ev) {
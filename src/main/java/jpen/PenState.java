@@ -119,6 +119,9 @@ public class PenState
 
 	PenState(){}
 
+	/**
+	If {@link PenManager#setLevelFiltering(boolean)} is enabled, on a {@link Pen} only the level types listened by at least one of its listeners are updated (see {@link Pen#isLevelTypeListened(PLevel.Type)}).
+	*/
 	public float getLevelValue(PLevel.Type levelType) {
 		return levels.getValue(levelType.ordinal());
 	}
@@ -22,12 +22,10 @@ import java.awt.KeyboardFocusManager;
 import java.awt.Window;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
-import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import javax.swing.SwingUtilities;
+import jpen.PenRuntime;
 /**
 Allows to keep an eye on the application active window avoiding the unnecessary null activeWindow change reported by the default KeyboardFocusManager when switching windows. 
 */
@@ -65,7 +63,7 @@ public final class ActiveWindowProperty
 		if(activeWindow==null){
 			// if the new activeWindow is null then we do the change only after a delay to avoid unnecessary changes to null (java does change the activeWindow to null when switching).
 			if(nullWindowTask==null || nullWindowTask.isDone())
-				nullWindowTask=nullWindowScheduler.schedule(this, 50, TimeUnit.MILLISECONDS);
+				nullWindowTask=PenRuntime.getScheduledExecutor().schedule(this, 50, TimeUnit.MILLISECONDS);
 			return;
 		}
 		if(nullWindowTask!=null){
@@ -75,23 +73,11 @@ public final class ActiveWindowProperty
 		set(activeWindow);
 	}
 
-	private final ScheduledExecutorService nullWindowScheduler=Executors.newSingleThreadScheduledExecutor(new ThreadFactory(){
-				//@Override
-				public Thread newThread(Runnable runnable){
-					Thread t=new Thread(runnable, "jpen-ActiveWindow-filter");
-					t.setDaemon(true);
-					return t;
-				}
-			});
 	private ScheduledFuture nullWindowTask;
 
 	//@Override
 	public void run(){
-		try{
-			SwingUtilities.invokeAndWait(nullWindowRunnable);
-		}catch(Exception ex){
-			throw new AssertionError(ex);
-		}
+		SwingUtilities.invokeLater(nullWindowRunnable); // don't block the shared PenRuntime scheduler on the EDT
 	}
 
 	private final Runnable nullWindowRunnable=new Runnable(){
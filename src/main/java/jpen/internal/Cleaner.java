@@ -0,0 +1,110 @@
+/* [{
+Copyright 2007, 2008 Nicolas Carranza <nicarran at gmail.com>
+
+This file is part of jpen.
+
+jpen is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License,
+or (at your option) any later version.
+
+jpen is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with jpen.  If not, see <http://www.gnu.org/licenses/>.
+}] */
+package jpen.internal;
+
+import java.lang.ref.PhantomReference;
+import java.lang.ref.ReferenceQueue;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.logging.Logger;
+import jpen.PenRuntime;
+
+/**
+Safety net releasing native resources of objects which were not closed: a Java 5 counterpart of {@code java.lang.ref.Cleaner}. The cleaning action of an object is run by the "jpen-Cleaner" thread once the object becomes phantom reachable, unless {@link Cleanable#clean()} was called before.<p>
+
+The action must not reference the registered object (directly or through an inner class instance), otherwise the object never becomes phantom reachable.
+*/
+public final class Cleaner{
+	private static final Logger L=Logger.getLogger(Cleaner.class.getName());
+	//static{L.setLevel(Level.ALL);}
+
+	public interface Cleanable{
+		/**
+		Runs the cleaning action if it has not been run yet and unregisters it.
+		*/
+		void clean();
+	}
+
+	private static final ReferenceQueue<Object> queue=new ReferenceQueue<Object>();
+	private static final Set<Ref> refs=Collections.synchronizedSet(new HashSet<Ref>()); // the phantom references must be reachable to be enqueued
+	private static Thread thread;
+
+	private Cleaner(){}
+
+	private static final class Ref
+		extends PhantomReference<Object>
+		implements Cleanable{
+		private Runnable action;
+
+		Ref(Object referent, Runnable action){
+			super(referent, queue);
+			this.action=action;
+		}
+
+		//@Override
+		public void clean(){
+			Runnable action;
+			synchronized(this){
+				action=this.action;
+				this.action=null;
+			}
+			if(action==null)
+				return;
+			refs.remove(this);
+			clear();
+			action.run();
+		}
+	}
+
+	/**
+	Registers the {@code action} to be run when the given {@code object} becomes phantom reachable.
+
+	@return the {@link Cleanable} to run the action on demand (e.g. when the object is closed).
+	*/
+	public static Cleanable register(Object object, Runnable action){
+		if(action==null)
+			throw new NullPointerException();
+		Ref ref=new Ref(object, action);
+		refs.add(ref);
+		startThread();
+		return ref;
+	}
+
+	private static synchronized void startThread(){
+		if(thread!=null)
+			return;
+		thread=PenRuntime.newThread("jpen-Cleaner", new Runnable(){
+			//@Override
+			public void run(){
+				while(true){
+					try{
+						((Ref)queue.remove()).clean();
+					}catch(InterruptedException ex){
+						throw new AssertionError(ex);
+					}catch(RuntimeException ex){
+						L.warning("cleaning action threw an exception: "+ThrowableUtils.evalStackTraceString(ex));
+					}
+				}
+			}
+		});
+		thread.setPriority(Thread.MIN_PRIORITY);
+		thread.start();
+	}
+}
@@ -28,4 +28,12 @@ public final class ThreadUtils{
 			throw new AssertionError(ex);
 		}
 	}
+
+	public static void joinUninterrupted(Thread thread){
+		try{
+			thread.join();
+		}catch(InterruptedException ex){
+			throw new AssertionError(ex);
+		}
+	}
 }
\ No newline at end of file
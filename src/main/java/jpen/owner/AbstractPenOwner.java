@@ -23,6 +23,7 @@ import jpen.event.PenListener;
 import jpen.PButtonEvent;
 import jpen.Pen;
 import jpen.PenEvent;
+import jpen.PenListenerMask;
 
 /**
 Provides a mechanism to start/stop the drag-out operation.
@@ -77,7 +78,7 @@ public abstract class AbstractPenOwner
 		if(!getPen().hasPressedButtons())
 			return false;
 		isDraggingOut=true;
-		getPen().addListener(draggingOutPenListener);
+		getPen().addListener(draggingOutPenListener, PenListenerMask.NONE.withEventTypes(PenListenerMask.EventType.BUTTON));
 		return true;
 	}
 
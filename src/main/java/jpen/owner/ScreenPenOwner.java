@@ -26,6 +26,8 @@ import java.util.Collection;
 import jpen.internal.ActiveWindowProperty;
 import jpen.PenEvent;
 import jpen.PenProvider;
+import jpen.provider.evdev.EvdevProvider;
+import jpen.provider.hidraw.HidrawProvider;
 import jpen.provider.osx.CocoaProvider;
 import jpen.provider.wintab.WintabProvider;
 import jpen.provider.xinput.XinputProvider;
@@ -49,6 +51,8 @@ public class ScreenPenOwner implements PenOwner {
 						 new PenProvider.Constructor[]{
 							 // new SystemProvider.Constructor(), //Does not work because it needs a java.awt.Component to register the MouseListener
 							 new XinputProvider.Constructor(),
+							 new EvdevProvider.Constructor(),
+							 new HidrawProvider.Constructor(),
 							 new WintabProvider.Constructor(),
 							 new CocoaProvider.Constructor()
 						 }
@@ -20,6 +20,8 @@ package jpen.owner.awt;
 
 import java.awt.Component;
 import java.awt.Dialog;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseMotionListener;
 import java.awt.Window;
@@ -31,6 +33,9 @@ import jpen.internal.ActiveWindowProperty;
 import jpen.owner.AbstractPenOwner;
 import jpen.owner.PenClip;
 import jpen.PenProvider;
+import jpen.provider.VirtualScreenBounds;
+import jpen.provider.evdev.EvdevProvider;
+import jpen.provider.hidraw.HidrawProvider;
 import jpen.provider.osx.CocoaProvider;
 import jpen.provider.system.SystemProvider;
 import jpen.provider.wintab.WintabProvider;
@@ -49,6 +54,8 @@ public abstract class ComponentPenOwner
 				   new PenProvider.Constructor[] {
 					   new SystemProvider.Constructor(),
 					   new XinputProvider.Constructor(),
+					   new EvdevProvider.Constructor(),
+					   new HidrawProvider.Constructor(),
 					   new WintabProvider.Constructor(),
 					   new CocoaProvider.Constructor(),
 				   }
@@ -107,10 +114,44 @@ public abstract class ComponentPenOwner
 	protected final void unpause() {
 		synchronized(penManagerHandle.getPenSchedulerLock()) {
 			activeWindowPL.setEnabled(true);
+			windowBoundsL.setWindow(getActiveComponent());
 			penManagerHandle.setPenManagerPaused(false);
 		}
 	}
 
+	private final WindowBoundsL windowBoundsL=new WindowBoundsL();
+
+	/**
+	Refreshes the {@link VirtualScreenBounds} when the window of the active component is moved or resized: it happens when the window is moved to another screen or when the screens change. Unlike the AWT display change notifications this needs no access to the JDK internals.
+	*/
+	private static class WindowBoundsL
+		extends ComponentAdapter {
+
+		private WeakReference<Window> windowRef=new WeakReference<Window>(null);
+
+		synchronized void setWindow(Component activeComponent) {
+			Window window=activeComponent==null? null: activeComponent instanceof Window? (Window)activeComponent: SwingUtilities.getWindowAncestor(activeComponent);
+			Window previousWindow=windowRef.get();
+			if(window==previousWindow)
+				return;
+			if(previousWindow!=null)
+				previousWindow.removeComponentListener(this);
+			if(window!=null)
+				window.addComponentListener(this);
+			windowRef=new WeakReference<Window>(window);
+		}
+
+		@Override
+		public void componentMoved(ComponentEvent ev) {
+			VirtualScreenBounds.getInstance().refresh();
+		}
+
+		@Override
+		public void componentResized(ComponentEvent ev) {
+			VirtualScreenBounds.getInstance().refresh();
+		}
+	}
+
 	private final ActiveWindowPL activeWindowPL=new ActiveWindowPL();
 
 	private class ActiveWindowPL
@@ -31,28 +31,30 @@ import jpen.PenProvider;
 import jpen.PKind;
 import jpen.PLevel;
 import jpen.PLevelEvent;
+import jpen.internal.Range;
 
 @SuppressWarnings("deprecation")
 public abstract class AbstractPenDevice
 	implements PenDevice {
 
-	private byte id;
+	private int id=-1;
 	private String physicalId;
 	private final PenProvider provider;
 	private int kindTypeNumber=PKind.Type.CURSOR.ordinal();
 	private boolean enabled;
+	private volatile DeviceDescriptor descriptor;
 
 	protected AbstractPenDevice(PenProvider provider) {
 		this.provider=provider;
 	}
 
 	//@Override
-	public byte getId(){
+	public int getId(){
 		return id;
 	}
 
 	//@Override
-	public void penManagerSetId(byte id){
+	public void penManagerSetId(int id){
 		this.id=id;
 	}
 	
@@ -83,8 +85,32 @@ public abstract class AbstractPenDevice
 		this.enabled=enabled;
 	}
 
+	/**
+	@return the descriptor set by the provider (see {@link #setDescriptor(DeviceDescriptor)}). Devices whose provider does not set one get a descriptor holding only their name and physical id.
+	*/
+	public DeviceDescriptor getDescriptor(){
+		DeviceDescriptor descriptor=this.descriptor;
+		if(descriptor==null)
+			synchronized(this){
+				descriptor=this.descriptor;
+				if(descriptor==null)
+					descriptor=this.descriptor=new DeviceDescriptor(getName(), getPhysicalId(), true, new Range[0]);
+			}
+		return descriptor;
+	}
+
+	/**
+	Called by the provider when the device is enumerated, reset or re-enumerated.
+	*/
+	protected void setDescriptor(DeviceDescriptor descriptor){
+		this.descriptor=descriptor;
+	}
+
 	//@Override
 	public String getPhysicalId(){
+		DeviceDescriptor descriptor=this.descriptor;
+		if(descriptor!=null)
+			return descriptor.getPhysicalId();
 		String physicalId=this.physicalId;
 		if(physicalId==null)
 			synchronized(this){
@@ -96,15 +122,25 @@ public abstract class AbstractPenDevice
 	}
 
 	protected String evalPhysicalId(){
-		return getName().trim()+"@"+provider.getConstructor().getName().trim();
+		return evalPhysicalId(getName());
+	}
+
+	/**
+	@return the default physical id of a device having the given name. Used to build the {@link DeviceDescriptor} before the name can be asked to the device.
+	*/
+	protected String evalPhysicalId(String name){
+		return name.trim()+"@"+provider.getConstructor().getName().trim();
 	}
 
 	public final PenManager getPenManager() {
 		return provider.getConstructor().getPenManager();
 	}
 
+	/**
+	@return the {@link Pen} firing the events of this device: the {@link PenManager#pen} on single pen mode, the device pen on multi-pen mode (see {@link PenManager#getPen(jpen.PenDevice)}).
+	*/
 	public final Pen getPen() {
-		return getPenManager().pen;
+		return getPenManager().getPen(this);
 	}
 	
 	//@Override
@@ -116,6 +152,12 @@ public abstract class AbstractPenDevice
 	public void penManagerSetUseFractionalMovements(boolean useFractionalMovement){
 		throw new UnsupportedOperationException();
 	}
+
+	/**
+	Does nothing: the default device holds no resources.
+	*/
+	//@Override
+	public void close(){}
 	
 	@Override
 	public String toString() {
@@ -18,10 +18,10 @@ along with jpen.  If not, see <http://www.gnu.org/licenses/>.
 }] */
 package jpen.provider;
 
-import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 import jpen.PenProvider;
 import jpen.PenDevice;
 import jpen.PenManager;
@@ -29,7 +29,10 @@ import jpen.PenManager;
 public abstract class AbstractPenProvider
 	implements PenProvider {
 	private final Constructor constructor;
-	protected final List<PenDevice> devices=new ArrayList<PenDevice>();
+	/**
+	Copy on write: the providers may add and remove devices on their own threads (e.g. on hotplug) while the {@link PenManager} iterates them.
+	*/
+	protected final List<PenDevice> devices=new CopyOnWriteArrayList<PenDevice>();
 	private final List<PenDevice> devicesA=Collections.unmodifiableList(devices);
 
 	protected AbstractPenProvider(Constructor constructor) {
@@ -50,11 +53,26 @@ public abstract class AbstractPenProvider
 		return constructor;
 	}
 	
+	/**
+	Does nothing: the default provider blocks waiting for device events.
+	*/
+	//@Override
+	public void penManagerIdle(boolean idle){}
+
 	//@Override
 	public boolean getUseRelativeLocationFilter(){
 		return false;
 	}
 
+	/**
+	Closes the devices of this provider.
+	*/
+	//@Override
+	public void close(){
+		for(PenDevice device: devices)
+			device.close();
+	}
+
 	//@Override
 	public String toString() {
 		return "[PenProvider: constructor.name="+getConstructor().getName()+"]";
@@ -0,0 +1,96 @@
+/* [{
+Copyright 2007, 2008 Nicolas Carranza <nicarran at gmail.com>
+
+This file is part of jpen.
+
+jpen is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License,
+or (at your option) any later version.
+
+jpen is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with jpen.  If not, see <http://www.gnu.org/licenses/>.
+}] */
+package jpen.provider;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+import jpen.PenDevice;
+import jpen.PLevel;
+import jpen.internal.Range;
+
+/**
+Immutable snapshot of the metadata of a {@link PenDevice}: name, physical id, absolute/relative mode and the device range of each {@link PLevel.Type} it reports (its capabilities).<p>
+
+The provider captures the descriptor when the device is enumerated and replaces it only when the device is reset or re-enumerated (hotplug). Reading it does not call native code nor interrupt the provider reader threads.
+
+@see AbstractPenDevice#getDescriptor()
+*/
+public final class DeviceDescriptor{
+	private final String name;
+	private final String physicalId;
+	private final boolean isAbsoluteMode;
+	private final Range[] levelRanges; // by PLevel.Type ordinal, null if the device does not report the level type
+	private final Set<PLevel.Type> levelTypes;
+
+	/**
+	@param levelRanges the device ranges by {@link PLevel.Type} ordinal, {@code null} elements for the level types the device does not report. The array is copied.
+	*/
+	public DeviceDescriptor(String name, String physicalId, boolean isAbsoluteMode, Range[] levelRanges){
+		this.name=name;
+		this.physicalId=physicalId;
+		this.isAbsoluteMode=isAbsoluteMode;
+		this.levelRanges=new Range[PLevel.Type.VALUES.size()];
+		System.arraycopy(levelRanges, 0, this.levelRanges, 0, Math.min(levelRanges.length, this.levelRanges.length));
+		Set<PLevel.Type> levelTypes=EnumSet.noneOf(PLevel.Type.class);
+		for(int i=this.levelRanges.length; --i>=0;)
+			if(this.levelRanges[i]!=null)
+				levelTypes.add(PLevel.Type.VALUES.get(i));
+		this.levelTypes=Collections.unmodifiableSet(levelTypes);
+	}
+
+	public String getName(){
+		return name;
+	}
+
+	public String getPhysicalId(){
+		return physicalId;
+	}
+
+	public boolean getIsAbsoluteMode(){
+		return isAbsoluteMode;
+	}
+
+	/**
+	@return the device range of the given level type, {@code null} if the device does not report it.
+	*/
+	public Range getLevelRange(PLevel.Type levelType){
+		return levelRanges[levelType.ordinal()];
+	}
+
+	/**
+	@return the level types reported by the device (the ones having a {@link #getLevelRange(PLevel.Type)}).
+	*/
+	public Set<PLevel.Type> getLevelTypes(){
+		return levelTypes;
+	}
+
+	@Override
+	public String toString(){
+		StringBuilder sb=new StringBuilder();
+		sb.append("[DeviceDescriptor: name=").append(name);
+		sb.append(", physicalId=").append(physicalId);
+		sb.append(", isAbsoluteMode=").append(isAbsoluteMode);
+		sb.append(", levelRanges=(");
+		for(PLevel.Type levelType: levelTypes)
+			sb.append(" ").append(levelType).append("=").append(getLevelRange(levelType));
+		sb.append(" )]");
+		return sb.toString();
+	}
+}
@@ -18,10 +18,19 @@ along with jpen.  If not, see <http://www.gnu.org/licenses/>.
 }] */
 package jpen.provider;
 
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.security.AccessController;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.security.PrivilegedAction;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.logging.Logger;
 import java.util.Map;
@@ -29,10 +38,19 @@ import java.util.prefs.Preferences;
 import jpen.internal.BuildInfo;
 import jpen.PenManager;
 
+/**
+Loads the JNI library of a provider trying each architecture of the JVM data model. By default the library is looked up on the {@code java.library.path} and the architecture which loaded is remembered using {@link Preferences}.<p>
+
+If the {@value #EXTRACT_PROPERTY} system property is {@code true}, the library is instead extracted from the classpath ({@code jpen/provider/native/}, where the Maven build bundles the libraries it builds) to a cache directory named after the SHA-1 of its content, only when it is not already there, and loaded by its absolute path: no {@link Preferences} access and no {@code java.library.path} setup are needed, and the JVMs sharing the cache extract each library version once. The cache directory is {@code ${user.home}/.jpen/native} unless set by the {@value #CACHE_DIR_PROPERTY} system property. The libraries not bundled in the classpath are looked up on the {@code java.library.path}.
+*/
 public class NativeLibraryLoader{
 	private static final Logger L=Logger.getLogger(NativeLibraryLoader.class.getName());
 	// static{L.setLevel(Level.ALL);	}
 	private static String PREFERENCE_KEY$ARCHITECTURE="NativeLibraryLoader.architecture";
+	public static final String EXTRACT_PROPERTY="jpen.provider.nativeLibrary.extract";
+	public static final String CACHE_DIR_PROPERTY="jpen.provider.nativeLibrary.cacheDir";
+	private static final String RESOURCES_PATH="native/";
+	private static final String ARCHITECTURE_PROPERTY="jpen.provider.architecture";
 
 	private final Map<String, Collection<String>> dataModelToArchitectures=new HashMap<String, Collection<String>>();
 	private boolean loaded;
@@ -67,7 +85,12 @@ public class NativeLibraryLoader{
 	public synchronized void load(){
 		if(!loaded){
 			L.finest("v");
-			Throwable loadExceptionCause=doLoad();
+			Throwable loadExceptionCause=AccessController.doPrivileged(new PrivilegedAction<Throwable>(){
+				                             //@Override
+				                             public Throwable run(){
+					                             return Boolean.valueOf(System.getProperty(EXTRACT_PROPERTY))? doLoadExtracted(): doLoad();
+				                             }
+			                             });
 			loaded=true;
 			if(loadExceptionCause!=null){
 				L.info("no suitable JNI library found");
@@ -110,6 +133,39 @@ public class NativeLibraryLoader{
 		return loadExceptionCause;
 	}
 
+	/**
+	Like {@link #doLoad()} but loading the libraries extracted from the classpath and without touching the {@link Preferences}. Called on the privileged block of {@link #load()}: it reads the system properties, writes the cache directory and loads the library without privileged blocks of its own.
+	*/
+	private Throwable doLoadExtracted(){
+		String architectureOverride=System.getProperty(ARCHITECTURE_PROPERTY);
+		Collection<String> architectures;
+		if(architectureOverride!=null)
+			architectures=Collections.singleton(architectureOverride);
+		else{
+			String dataModel=getJavaVMDataModel();
+			architectures=dataModelToArchitectures.get(dataModel);
+			if(architectures==null)
+				throw new IllegalStateException("Unsupported data model: "+dataModel);
+		}
+		Throwable loadExceptionCause=null;
+		for(String architecture: architectures){
+			try{
+				File libFile=extractLibrary(getJniLibName(architecture, nativeVersion));
+				if(libFile==null)
+					loadLibrary(architecture, nativeVersion);
+				else
+					loadLibrary(libFile);
+				return null;
+			}catch(IOException ex){
+				L.info(ex+" extracting the JNI library");
+				loadExceptionCause=ex;
+			}catch(Throwable t){
+				loadExceptionCause=t;
+			}
+		}
+		return loadExceptionCause;
+	}
+
 	public static class LoadException
 		extends RuntimeException{
 		LoadException(Throwable cause){
@@ -131,7 +187,7 @@ public class NativeLibraryLoader{
 		return AccessController.doPrivileged(new PrivilegedAction<String>(){
 			       //@Override
 			       public String run(){
-				       String override=System.getProperty("jpen.provider.architecture");
+				       String override=System.getProperty(ARCHITECTURE_PROPERTY);
 				       if(override!=null)
 					       return override;
 				       Preferences preferences=Preferences.userNodeForPackage(NativeLibraryLoader.class);
@@ -181,6 +237,110 @@ public class NativeLibraryLoader{
 		    });
 	}
 	
+	private static void loadLibrary(File libFile){
+		L.info("loading JPen "+PenManager.getJPenFullVersion()+" JNI library: "+libFile+" ...");
+		try{
+			System.load(libFile.getAbsolutePath());
+		}catch(UnsatisfiedLinkError ex){
+			L.info(libFile+" couldn't be loaded");
+			throw ex;
+		}
+		L.info(libFile+" loaded");
+	}
+
+	/**
+	@return the file of the extracted library or {@code null} if the library is not bundled in the classpath.
+	*/
+	private static File extractLibrary(String jniLibName) throws IOException{
+		for(String resourceName: getResourceNames(jniLibName)){
+			File libFile=extractResource(resourceName);
+			if(libFile!=null)
+				return libFile;
+		}
+		return null;
+	}
+
+	/**
+	@return the file of the extracted {@code jpen/provider/native/} resource or {@code null} if the resource is not in the classpath.
+	*/
+	static File extractResource(String resourceName) throws IOException{
+		InputStream in=NativeLibraryLoader.class.getResourceAsStream(RESOURCES_PATH+resourceName);
+		if(in==null)
+			return null;
+		byte[] content;
+		try{
+			content=readFully(in);
+		}finally{
+			in.close();
+		}
+		File libFile=new File(new File(getCacheDir(), evalHash(content)), resourceName);
+		if(libFile.length()!=content.length) // absent or partially written
+			writeAtomically(libFile, content);
+		else
+			L.fine("using cached "+libFile);
+		return libFile;
+	}
+
+	private static String[] getResourceNames(String jniLibName){
+		String resourceName=System.mapLibraryName(jniLibName);
+		if(resourceName.endsWith(".dylib")) // older Mac OS X JVMs map to .jnilib
+			return new String[]{resourceName, resourceName.substring(0, resourceName.length()-".dylib".length())+".jnilib"};
+		return new String[]{resourceName};
+	}
+
+	private static File getCacheDir(){
+		String cacheDirPath=System.getProperty(CACHE_DIR_PROPERTY);
+		if(cacheDirPath!=null)
+			return new File(cacheDirPath);
+		return new File(new File(System.getProperty("user.home"), ".jpen"), "native");
+	}
+
+	private static byte[] readFully(InputStream in) throws IOException{
+		ByteArrayOutputStream out=new ByteArrayOutputStream(64*1024);
+		byte[] buffer=new byte[8*1024];
+		for(int n; (n=in.read(buffer))!=-1;)
+			out.write(buffer, 0, n);
+		return out.toByteArray();
+	}
+
+	private static String evalHash(byte[] content){
+		MessageDigest messageDigest;
+		try{
+			messageDigest=MessageDigest.getInstance("SHA-1");
+		}catch(NoSuchAlgorithmException ex){
+			throw new AssertionError(ex);
+		}
+		StringBuilder hash=new StringBuilder(40);
+		for(byte b: messageDigest.digest(content)){
+			hash.append(Character.forDigit((b>>4)&0xF, 16));
+			hash.append(Character.forDigit(b&0xF, 16));
+		}
+		return hash.toString();
+	}
+
+	/**
+	Writes a temporary file and renames it, so other JVMs extracting the same library concurrently never load a partially written file.
+	*/
+	private static void writeAtomically(File libFile, byte[] content) throws IOException{
+		File dir=libFile.getParentFile();
+		if(!dir.isDirectory() && !dir.mkdirs() && !dir.isDirectory())
+			throw new IOException("couldn't create "+dir);
+		File tmpFile=File.createTempFile(libFile.getName(), ".tmp", dir);
+		try{
+			OutputStream out=new FileOutputStream(tmpFile);
+			try{
+				out.write(content);
+			}finally{
+				out.close();
+			}
+			if(!tmpFile.renameTo(libFile) && libFile.length()!=content.length) // the rename fails on Windows if another JVM extracted it first
+				throw new IOException("couldn't rename "+tmpFile+" to "+libFile);
+			L.info(libFile+" extracted");
+		}finally{
+			tmpFile.delete();
+		}
+	}
+
 	private static final String getJniLibName(String architecture, int nativeVersion) {
 		StringBuilder jniLibName=new StringBuilder(64);
 		jniLibName.append(BuildInfo.getModuleId());
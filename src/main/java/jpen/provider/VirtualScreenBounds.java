@@ -20,58 +20,384 @@
 % }] */
 package jpen.provider;
 
-import java.awt.DisplayMode;
-import java.awt.geom.AffineTransform;
-import java.awt.geom.Rectangle2D;
 import java.awt.GraphicsConfiguration;
 import java.awt.GraphicsDevice;
 import java.awt.GraphicsEnvironment;
+import java.awt.Rectangle;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import jpen.PenRuntime;
 import jpen.PLevel;
+import jpen.internal.ThrowableUtils;
+
+/**
+The layout of the screens, used by the providers to map the normalized (0 to 1) tablet X and Y values to the screen coordinates (see {@link Layout#map(float, float, float[])}).<p>
 
+The tablet drivers map the tablet to the whole virtual desktop in device pixels, while the AWT uses user space coordinates which are scaled on HiDPI screens. A {@link Screen} is precomputed for each {@link GraphicsDevice} with the normalized region it covers and the multiply-add giving the user space coordinates on it, so mixed DPI multi-monitor setups are mapped right and no AWT graphics state is queried on the input path.<p>
+
+The {@link Layout} is computed once in a background thread and is refreshed when the display configuration may have changed:<ul>
+<li>on {@link #refresh()}, called by the providers when unpaused and by the {@link jpen.owner.awt.ComponentPenOwner} when the window of its component is moved or resized (moving a window to another screen or changing the screens moves or resizes it). This path needs no access to the JDK internals.</li>
+<li>on the {@code sun.awt.DisplayChangedListener} notifications, only if accessible: the {@code sun.awt} package is not exported on Java 9 and later unless the application is run with {@code --add-exports java.desktop/sun.awt=ALL-UNNAMED}.</li>
+<li>else the configuration is polled every {@link #POLL_PERIOD_MILLIS} in the background: this is the usual path on Java 9 and later.</li>
+</ul>
+*/
 public final class VirtualScreenBounds{
 	static final Logger L=Logger.getLogger(VirtualScreenBounds.class.getName());
+	//static{L.setLevel(Level.ALL);}
+	static final long POLL_PERIOD_MILLIS=3000;
 	private static VirtualScreenBounds INSTANCE;
-	private final Rectangle2D.Float r=new Rectangle2D.Float();
-
-	{
-		// first time calc is expensive... I do it once in a background thread
-		new Thread(){
-			{
-				setName("jpen-VirtualScreenBounds");
-				setDaemon(true);
+	private volatile Layout layout;
+	private final AtomicBoolean refreshPending=new AtomicBoolean();
+	/**
+	Strongly referenced: the AWT keeps only weak references to its display change listeners.
+	*/
+	private Object displayChangedListener;
+
+	/**
+	A screen of the {@link Layout}. Immutable.
+	*/
+	public static final class Screen{
+		private final Rectangle bounds;
+		private final float scaleX, scaleY;
+		//v normalized region covered by this screen:
+		private final float minX, minY, maxX, maxY;
+		//^
+		private final float offsetX, multX, offsetY, multY;
+
+		Screen(Rectangle bounds, float scaleX, float scaleY, Rectangle2D deviceBounds, Rectangle2D virtualDeviceBounds){
+			this.bounds=bounds;
+			this.scaleX=scaleX;
+			this.scaleY=scaleY;
+			double width=virtualDeviceBounds.getWidth(), height=virtualDeviceBounds.getHeight();
+			minX=(float)((deviceBounds.getMinX()-virtualDeviceBounds.getX())/width);
+			maxX=(float)((deviceBounds.getMaxX()-virtualDeviceBounds.getX())/width);
+			minY=(float)((deviceBounds.getMinY()-virtualDeviceBounds.getY())/height);
+			maxY=(float)((deviceBounds.getMaxY()-virtualDeviceBounds.getY())/height);
+			multX=(float)(width/scaleX);
+			multY=(float)(height/scaleY);
+			offsetX=(float)(bounds.x+(virtualDeviceBounds.getX()-deviceBounds.getX())/scaleX);
+			offsetY=(float)(bounds.y+(virtualDeviceBounds.getY()-deviceBounds.getY())/scaleY);
+		}
+
+		/**
+		@return the bounds of this screen in the AWT user space.
+		*/
+		public Rectangle getBounds(){
+			return new Rectangle(bounds);
+		}
+
+		/**
+		@return the HiDPI scale of the X axis (device pixels per user space unit).
+		*/
+		public float getScaleX(){
+			return scaleX;
+		}
+
+		public float getScaleY(){
+			return scaleY;
+		}
+
+		/**
+		@return the squared distance from the given normalized point to the region covered by this screen, {@code 0} if the point is on it.
+		*/
+		float evalDistanceSq(float x, float y){
+			float dx=x<minX? minX-x: x>maxX? x-maxX: 0;
+			float dy=y<minY? minY-y: y>maxY? y-maxY: 0;
+			return dx*dx+dy*dy;
+		}
+
+		float clampX(float x){
+			return x<minX? minX: x>maxX? maxX: x;
+		}
+
+		float clampY(float y){
+			return y<minY? minY: y>maxY? maxY: y;
+		}
+
+		public float mapX(float x){
+			return offsetX+x*multX;
+		}
+
+		public float mapY(float y){
+			return offsetY+y*multY;
+		}
+
+		@Override
+		public boolean equals(Object o){
+			if(!(o instanceof Screen))
+				return false;
+			Screen screen=(Screen)o;
+			return bounds.equals(screen.bounds) && scaleX==screen.scaleX && scaleY==screen.scaleY;
+		}
+
+		@Override
+		public int hashCode(){
+			return bounds.hashCode()^Float.floatToIntBits(scaleX)^Float.floatToIntBits(scaleY);
+		}
+
+		@Override
+		public String toString(){
+			return "[Screen: bounds="+bounds+", scaleX="+scaleX+", scaleY="+scaleY+"]";
+		}
+	}
+
+	/**
+	The screens of the virtual desktop. Immutable: a new {@code Layout} is set when the display configuration changes.
+	*/
+	public static final class Layout{
+		static final Layout EMPTY=new Layout(new Screen[0], new Rectangle());
+
+		private final Screen[] screens;
+		private final Rectangle bounds;
+
+		Layout(Screen[] screens, Rectangle bounds){
+			this.screens=screens;
+			this.bounds=bounds;
+		}
+
+		public int getScreensCount(){
+			return screens.length;
+		}
+
+		public Screen getScreen(int index){
+			return screens[index];
+		}
+
+		/**
+		@return the bounds of the virtual desktop in the AWT user space.
+		*/
+		public Rectangle getBounds(){
+			return new Rectangle(bounds);
+		}
+
+		/**
+		@return the screen on which the given normalized point falls, or the nearest one if it falls on a gap of the virtual desktop. {@code null} if there are no screens.
+		*/
+		public Screen getScreen(float x, float y){
+			Screen nearestScreen=null;
+			float nearestDistanceSq=Float.MAX_VALUE;
+			for(Screen screen: screens){
+				float distanceSq=screen.evalDistanceSq(x, y);
+				if(distanceSq==0)
+					return screen;
+				if(distanceSq<nearestDistanceSq){
+					nearestDistanceSq=distanceSq;
+					nearestScreen=screen;
+				}
 			}
-			@Override
-			public void run(){
-				reset();
-				L.fine("first calculation done.");
+			return nearestScreen;
+		}
+
+		/**
+		Maps the given normalized (0 to 1 over the whole virtual desktop) tablet point to the AWT user space.
+
+		@param screenXY where the mapped point is stored.
+		*/
+		public void map(float x, float y, float[] screenXY){
+			Screen screen=getScreen(x, y);
+			if(screen==null){
+				screenXY[0]=screenXY[1]=0;
+				return;
 			}
-		}.start();
+			if(x>=0 && x<=1 && y>=0 && y<=1){ // on a gap of the virtual desktop: moved to the nearest screen
+				x=screen.clampX(x);
+				y=screen.clampY(y);
+			}
+			screenXY[0]=screen.mapX(x);
+			screenXY[1]=screen.mapY(y);
+		}
+
+		@Override
+		public boolean equals(Object o){
+			return o instanceof Layout && Arrays.equals(screens, ((Layout)o).screens);
+		}
+
+		@Override
+		public int hashCode(){
+			return Arrays.hashCode(screens);
+		}
+
+		@Override
+		public String toString(){
+			return "[Layout: bounds="+bounds+", screens="+Arrays.asList(screens)+"]";
+		}
 	}
 
 	private VirtualScreenBounds(){}
 
-	public static VirtualScreenBounds getInstance(){
-		if(INSTANCE==null)
+	public static synchronized VirtualScreenBounds getInstance(){
+		if(INSTANCE==null){
 			INSTANCE=new VirtualScreenBounds();
+			INSTANCE.start();
+		}
 		return INSTANCE;
 	}
 
+	/**
+	The first calculation is expensive: it is done in a background thread.
+	*/
+	private void start(){
+		PenRuntime.getScheduledExecutor().execute(new Runnable(){
+			//@Override
+			public void run(){
+				getLayout();
+				L.fine("first calculation done.");
+				if(GraphicsEnvironment.isHeadless() || addDisplayChangedListener())
+					return;
+				PenRuntime.getScheduledExecutor().scheduleWithFixedDelay(new Runnable(){
+					//@Override
+					public void run(){
+						reset();
+					}
+				}, POLL_PERIOD_MILLIS, POLL_PERIOD_MILLIS, TimeUnit.MILLISECONDS);
+			}
+		});
+	}
+
+	/**
+	Registers a {@code sun.awt.DisplayChangedListener} if the graphics environment supports it and the JVM allows the access.
+
+	@return {@code false} if the listener couldn't be registered.
+	*/
+	private boolean addDisplayChangedListener(){
+		try{
+			GraphicsEnvironment graphicsEnvironment=GraphicsEnvironment.getLocalGraphicsEnvironment();
+			Class<?> listenerClass=Class.forName("sun.awt.DisplayChangedListener");
+			Method addMethod=graphicsEnvironment.getClass().getMethod("addDisplayChangedListener", listenerClass);
+			Object displayChangedListener=Proxy.newProxyInstance(listenerClass.getClassLoader(), new Class<?>[]{listenerClass}, new InvocationHandler(){
+				                    //@Override
+				                    public Object invoke(Object proxy, Method method, Object[] args){
+					                    String methodName=method.getName();
+					                    if(methodName.equals("equals"))
+						                    return proxy==args[0];
+					                    if(methodName.equals("hashCode"))
+						                    return System.identityHashCode(proxy);
+					                    if(methodName.equals("toString"))
+						                    return "VirtualScreenBounds.displayChangedListener";
+					                    // displayChanged or paletteChanged: called from an AWT thread
+					                    PenRuntime.getScheduledExecutor().execute(new Runnable(){
+						                    //@Override
+						                    public void run(){
+							                    reset();
+						                    }
+					                    });
+					                    return null;
+				                    }
+			                    });
+			addMethod.invoke(graphicsEnvironment, displayChangedListener);
+			this.displayChangedListener=displayChangedListener;
+			L.fine("listening to display changes");
+			return true;
+		}catch(Exception ex){
+			L.fine("display changes can't be listened, polling: "+ex);
+			return false;
+		}catch(LinkageError ex){
+			L.fine("display changes can't be listened, polling: "+ex);
+			return false;
+		}
+	}
+
+	/**
+	@return the current layout. It is computed on the calling thread only if the background calculation has not finished yet: the providers call this method (and {@link #refresh()}) when unpaused to avoid it on the input path.
+	*/
+	public Layout getLayout(){
+		Layout layout=this.layout;
+		if(layout!=null)
+			return layout;
+		synchronized(this){
+			if(this.layout==null)
+				reset();
+			return this.layout;
+		}
+	}
+
+	/**
+	Schedules a recomputation of the layout in the background. The calls made while one is pending are coalesced. Cheap: can be called from the AWT event dispatch thread.
+	*/
+	public void refresh(){
+		if(!refreshPending.compareAndSet(false, true))
+			return;
+		PenRuntime.getScheduledExecutor().execute(new Runnable(){
+			//@Override
+			public void run(){
+				refreshPending.set(false);
+				reset();
+			}
+		});
+	}
+
+	/**
+	Recomputes the layout now, on the calling thread. Not needed by the providers: see {@link #refresh()}.
+	*/
 	public synchronized void reset(){
-		r.x=r.y=r.width=r.height=0;
-		calc(r);
+		Layout layout;
+		try{
+			layout=evalLayout();
+		}catch(RuntimeException ex){
+			L.warning("couldn't compute the screens layout: "+ThrowableUtils.evalStackTraceString(ex));
+			if(this.layout!=null)
+				return;
+			layout=Layout.EMPTY;
+		}
+		if(layout.equals(this.layout))
+			return;
+		this.layout=layout;
+		if(L.isLoggable(Level.FINE))
+			L.fine("layout set: "+layout);
 	}
 
-	static void calc(Rectangle2D r){
-		for (GraphicsDevice gd: GraphicsEnvironment.
-		        getLocalGraphicsEnvironment().getScreenDevices()){
-			GraphicsConfiguration graphicsConfiguration=gd.getDefaultConfiguration();
-			r.add(graphicsConfiguration.getBounds());
+	static Layout evalLayout(){
+		if(GraphicsEnvironment.isHeadless())
+			return Layout.EMPTY;
+		GraphicsDevice[] graphicsDevices=GraphicsEnvironment.getLocalGraphicsEnvironment().getScreenDevices();
+		// the Windows JVMs keep the screen origins in device pixels, the others scale them as the sizes:
+		boolean deviceOrigins=System.getProperty("os.name").toLowerCase().contains("windows");
+		Rectangle[] bounds=new Rectangle[graphicsDevices.length];
+		float[] scalesX=new float[graphicsDevices.length], scalesY=new float[graphicsDevices.length];
+		Rectangle2D[] devicesBounds=new Rectangle2D[graphicsDevices.length];
+		Rectangle virtualBounds=new Rectangle();
+		Rectangle2D virtualDeviceBounds=null;
+		for(int i=0; i<graphicsDevices.length; i++){
+			GraphicsConfiguration graphicsConfiguration=graphicsDevices[i].getDefaultConfiguration();
+			bounds[i]=graphicsConfiguration.getBounds();
+			AffineTransform defaultTransform=graphicsConfiguration.getDefaultTransform(); // the HiDPI scale (identity before Java 9)
+			scalesX[i]=defaultTransform.getScaleX()>0? (float)defaultTransform.getScaleX(): 1f;
+			scalesY[i]=defaultTransform.getScaleY()>0? (float)defaultTransform.getScaleY(): 1f;
+			devicesBounds[i]=new Rectangle2D.Double(
+				deviceOrigins? bounds[i].x: bounds[i].x*(double)scalesX[i],
+				deviceOrigins? bounds[i].y: bounds[i].y*(double)scalesY[i],
+				bounds[i].width*(double)scalesX[i],
+				bounds[i].height*(double)scalesY[i]);
+			if(i==0){
+				virtualBounds.setBounds(bounds[i]);
+				virtualDeviceBounds=(Rectangle2D)devicesBounds[i].clone();
+			}else{
+				virtualBounds.add(bounds[i]);
+				virtualDeviceBounds.add(devicesBounds[i]);
+			}
 		}
+		if(virtualDeviceBounds==null || virtualDeviceBounds.isEmpty())
+			return Layout.EMPTY;
+		Screen[] screens=new Screen[graphicsDevices.length];
+		for(int i=0; i<screens.length; i++)
+			screens[i]=new Screen(bounds[i], scalesX[i], scalesY[i], devicesBounds[i], virtualDeviceBounds);
+		return new Layout(screens, virtualBounds);
 	}
 
+	/**
+	@deprecated replacement: {@link Layout#map(float, float, float[])}, which maps mixed DPI multi-monitor setups right.
+	*/
+	@Deprecated
 	public float getLevelRangeMult(PLevel.Type type) {
+		Rectangle r=getLayout().bounds;
 		switch(type){
 		case X:
 			return r.width;
@@ -82,7 +408,12 @@ public final class VirtualScreenBounds{
 		}
 	}
 
+	/**
+	@deprecated replacement: {@link Layout#map(float, float, float[])}.
+	*/
+	@Deprecated
 	public float getLevelRangeOffset(PLevel.Type type){
+		Rectangle r=getLayout().bounds;
 		switch(type){
 		case X:
 			return r.x;
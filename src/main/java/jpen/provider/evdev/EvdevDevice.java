@@ -0,0 +1,52 @@
+/* [{
+Copyright 2007, 2008 Nicolas Carranza <nicarran at gmail.com>
+
+This file is part of jpen.
+
+jpen is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License,
+or (at your option) any later version.
+
+jpen is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with jpen.  If not, see <http://www.gnu.org/licenses/>.
+}] */
+package jpen.provider.evdev;
+
+import jpen.PKind;
+import jpen.provider.AbstractPenDevice;
+
+/**
+One tool kind (stylus, eraser or cursor) of an {@link EvdevNode}: evdev reports all the tools of a tablet on the same node, the {@link EvdevReader} routes each frame to the device of the tool in proximity.
+*/
+final class EvdevDevice extends AbstractPenDevice {
+
+	private final EvdevReader reader;
+	private final String name;
+
+	EvdevDevice(EvdevProvider evdevProvider, EvdevReader reader, PKind.Type kindType) {
+		super(evdevProvider);
+		this.reader=reader;
+		this.name=reader.node.name+" ("+kindType.name().toLowerCase()+")";
+		setKindTypeNumber(kindType.ordinal());
+		setEnabled(true);
+	}
+
+	//@Override
+	public String getName() {
+		return name;
+	}
+
+	/**
+	Closes the node reader (shared by the devices of all the tool kinds of the node).
+	*/
+	@Override
+	public void close() {
+		reader.close();
+	}
+}
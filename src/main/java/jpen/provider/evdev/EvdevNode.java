@@ -0,0 +1,185 @@
+/* [{
+Copyright 2007, 2008 Nicolas Carranza <nicarran at gmail.com>
+
+This file is part of jpen.
+
+jpen is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License,
+or (at your option) any later version.
+
+jpen is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with jpen.  If not, see <http://www.gnu.org/licenses/>.
+}] */
+package jpen.provider.evdev;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+import static jpen.provider.evdev.InputEventDecoder.*;
+
+/**
+An evdev device node ({@code /dev/input/eventN}) and its capabilities, as listed on {@code /proc/bus/input/devices}.
+*/
+final class EvdevNode {
+	private static final Logger L=Logger.getLogger(EvdevNode.class.getName());
+	//static{L.setLevel(Level.ALL);}
+
+	static final String DEVICES_LIST_PATH="/proc/bus/input/devices";
+	static final String NODES_DIR_PATH="/dev/input";
+
+	final String name;
+	final String path;
+	/**
+	The {@code KEY} capabilities bitmap, bit per key code. {@code null} if unknown: all the keys are assumed.
+	*/
+	private final long[] keyBits;
+	/**
+	The {@code ABS} capabilities bitmap, bit per axis code. {@code null} if unknown: all the axes are assumed.
+	*/
+	private final long[] absBits;
+
+	EvdevNode(String name, String path, long[] keyBits, long[] absBits) {
+		this.name=name;
+		this.path=path;
+		this.keyBits=keyBits;
+		this.absBits=absBits;
+	}
+
+	boolean hasKey(int keyCode) {
+		return hasBit(keyBits, keyCode);
+	}
+
+	boolean hasAbs(int absCode) {
+		return hasBit(absBits, absCode);
+	}
+
+	private static boolean hasBit(long[] bits, int bit) {
+		if(bits==null)
+			return true;
+		int wordIndex=bit>>>6;
+		return wordIndex<bits.length && (bits[wordIndex] & (1l<<(bit&63)))!=0;
+	}
+
+	boolean hasStylusTool() {
+		return hasKey(BTN_TOOL_PEN) || hasKey(BTN_TOOL_BRUSH) || hasKey(BTN_TOOL_PENCIL) || hasKey(BTN_TOOL_AIRBRUSH);
+	}
+
+	boolean hasEraserTool() {
+		return hasKey(BTN_TOOL_RUBBER);
+	}
+
+	boolean hasCursorTool() {
+		return hasKey(BTN_TOOL_MOUSE) || hasKey(BTN_TOOL_LENS);
+	}
+
+	/**
+	@return {@code true} if this node reports absolute positions and pressure, or a tablet tool.
+	*/
+	boolean isTablet() {
+		return hasAbs(ABS_X) && hasAbs(ABS_Y) &&
+					 (hasAbs(ABS_PRESSURE) || hasStylusTool() || hasEraserTool());
+	}
+
+	/**
+	@return the nodes given on the {@code pathsList} (a comma separated list of paths) if not {@code null}, else the tablet nodes listed on {@link #DEVICES_LIST_PATH}. The capabilities of the nodes given on the {@code pathsList} are unknown (see {@link #hasKey(int)}), these can be recorded event files or FIFOs.
+	*/
+	static List<EvdevNode> getTabletNodes(String pathsList) throws IOException {
+		List<EvdevNode> nodes=new ArrayList<EvdevNode>();
+		if(pathsList!=null) {
+			for(String path: pathsList.split(",")) {
+				path=path.trim();
+				if(path.length()!=0)
+					nodes.add(new EvdevNode(new File(path).getName(), path, null, null));
+			}
+			return nodes;
+		}
+		Reader reader=new FileReader(DEVICES_LIST_PATH);
+		try {
+			for(EvdevNode node: parseDevicesList(reader, InputEventDecoder.LONG_SIZE*8))
+				if(node.isTablet())
+					nodes.add(node);
+		} finally {
+			reader.close();
+		}
+		return nodes;
+	}
+
+	/**
+	Parses the {@link #DEVICES_LIST_PATH} format: one block per device separated by empty lines, e.g.:
+	<pre>
+	N: Name="Wacom Intuos5 M Pen"
+	H: Handlers=mouse2 event12
+	B: KEY=1c03 0 0 0 0 0 0 0 0 0 0
+	B: ABS=f000163
+	</pre>
+	The bitmaps are hexadecimal C {@code long}s, the most significant first.
+
+	@param bitmapWordBits the number of bits of each bitmap word (of a C {@code long}).
+	@return the devices having an event handler.
+	*/
+	static List<EvdevNode> parseDevicesList(Reader reader, int bitmapWordBits) throws IOException {
+		List<EvdevNode> nodes=new ArrayList<EvdevNode>();
+		BufferedReader bufferedReader=new BufferedReader(reader);
+		String name=null, eventHandler=null;
+		long[] keyBits=new long[0], absBits=new long[0];
+		String line;
+		do {
+			line=bufferedReader.readLine();
+			if(line==null || line.trim().length()==0) {
+				if(eventHandler!=null)
+					nodes.add(new EvdevNode(name==null? eventHandler: name, NODES_DIR_PATH+"/"+eventHandler, keyBits, absBits));
+				name=eventHandler=null;
+				keyBits=absBits=new long[0];
+			} else if(line.startsWith("N: Name=")) {
+				name=line.substring("N: Name=".length()).trim();
+				if(name.length()>=2 && name.startsWith("\"") && name.endsWith("\""))
+					name=name.substring(1, name.length()-1);
+			} else if(line.startsWith("H: Handlers=")) {
+				for(String handler: line.substring("H: Handlers=".length()).trim().split("\\s+"))
+					if(handler.startsWith("event"))
+						eventHandler=handler;
+			} else if(line.startsWith("B: KEY="))
+				keyBits=parseBitmap(line.substring("B: KEY=".length()), bitmapWordBits);
+			else if(line.startsWith("B: ABS="))
+				absBits=parseBitmap(line.substring("B: ABS=".length()), bitmapWordBits);
+		} while(line!=null);
+		return nodes;
+	}
+
+	/**
+	@return the bitmap as 64 bits words, the least significant first.
+	*/
+	static long[] parseBitmap(String bitmap, int wordBits) {
+		String[] words=bitmap.trim().split("\\s+");
+		long[] bits=new long[(words.length*wordBits+63)>>>6];
+		for(int i=0; i<words.length; i++) {
+			long word;
+			try {
+				word=new BigInteger(words[words.length-1-i], 16).longValue(); // the word may not fit on a signed long
+			} catch(NumberFormatException ex) {
+				L.warning("invalid capabilities bitmap: "+bitmap);
+				return new long[0];
+			}
+			int bit=i*wordBits;
+			bits[bit>>>6]|=word<<(bit&63);
+		}
+		return bits;
+	}
+
+	@Override
+	public String toString() {
+		return "{EvdevNode: name="+name+", path="+path+"}";
+	}
+}
@@ -0,0 +1,144 @@
+/* [{
+Copyright 2007, 2008 Nicolas Carranza <nicarran at gmail.com>
+
+This file is part of jpen.
+
+jpen is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License,
+or (at your option) any later version.
+
+jpen is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with jpen.  If not, see <http://www.gnu.org/licenses/>.
+}] */
+package jpen.provider.evdev;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+import jpen.PenManager;
+import jpen.PenProvider;
+import jpen.PLevel;
+import jpen.internal.Range;
+import jpen.provider.AbstractPenProvider;
+import jpen.provider.VirtualScreenBounds;
+
+/**
+Reads the tablets directly from the Linux evdev device nodes ({@code /dev/input/event*}) using NIO bulk reads: it needs no compiled library and no X server (works under Wayland), and the events do not go through the X server queue.<p>
+
+This provider is used only when {@link #SYSTEM_PROPERTY} is set to true, then it replaces the {@link jpen.provider.xinput.XinputProvider} (and the {@link jpen.provider.hidraw.HidrawProvider}, if enabled too). The tablet X and Y ranges must be given on {@link #ABS_RANGES_SYSTEM_PROPERTY}. The device nodes are not grabbed: the user must have read access to them (usually by being in the {@code input} group).
+*/
+public final class EvdevProvider
+	extends AbstractPenProvider {
+	private static final Logger L=Logger.getLogger(EvdevProvider.class.getName());
+	//static{L.setLevel(Level.ALL);}
+
+	/**
+	When this system property is set to true the tablets are read using the evdev provider instead of the XInput provider.
+	*/
+	public static final String SYSTEM_PROPERTY="jpen.provider.evdev";
+	public static final boolean ENABLED=Boolean.valueOf(System.getProperty(SYSTEM_PROPERTY));
+	/**
+	Comma separated list of the event files to read, instead of the tablet nodes listed on {@code /proc/bus/input/devices}. Recorded event files or FIFOs can be given to replay events.
+	*/
+	public static final String DEVICES_SYSTEM_PROPERTY="jpen.provider.evdev.devices";
+	/**
+	Comma separated list of the device ranges of the X, Y and PRESSURE levels (e.g. {@code X=0:44704,Y=0:27940,PRESSURE=0:2047}, as reported by {@code evtest}). The axis ranges can't be read without native code (the {@code EVIOCGABS} ioctl) and they are not exported on sysfs: the X and Y ranges are required, if these are not given no tablet node is read. The PRESSURE range, if not given, is learned from the values read (see {@link EvdevReader}).
+	*/
+	public static final String ABS_RANGES_SYSTEM_PROPERTY="jpen.provider.evdev.absRanges";
+	static{
+		if(ENABLED)
+			L.info("ENABLED set to true");
+	}
+
+	final VirtualScreenBounds screenBounds=VirtualScreenBounds.getInstance();
+	final Range[] configuredLevelRanges=parseLevelRanges(System.getProperty(ABS_RANGES_SYSTEM_PROPERTY));
+	private final List<EvdevReader> readers=new ArrayList<EvdevReader>();
+
+	public static class Constructor
+		extends AbstractPenProvider.AbstractConstructor {
+
+		//@Override
+		public String getName() {
+			return "evdev";
+		}
+		//@Override
+		public boolean constructable(PenManager penManager) {
+			return ENABLED && System.getProperty("os.name").toLowerCase().contains("linux") &&
+						 new File(EvdevNode.NODES_DIR_PATH).isDirectory();
+		}
+
+		@Override
+		public PenProvider constructProvider() throws Throwable {
+			return new EvdevProvider(this);
+		}
+	}
+
+	private EvdevProvider(Constructor constructor) throws IOException {
+		super(constructor);
+		L.fine("start");
+		if(configuredLevelRanges[PLevel.Type.X.ordinal()]==null || configuredLevelRanges[PLevel.Type.Y.ordinal()]==null) {
+			L.warning("the X and Y ranges are not given on "+ABS_RANGES_SYSTEM_PROPERTY+" (e.g. -D"+ABS_RANGES_SYSTEM_PROPERTY+
+								"=X=0:44704,Y=0:27940 as reported by evtest), the tablet nodes are not read");
+			return;
+		}
+		for(EvdevNode node: EvdevNode.getTabletNodes(System.getProperty(DEVICES_SYSTEM_PROPERTY))) {
+			EvdevReader reader;
+			try {
+				reader=new EvdevReader(this, node);
+			} catch(IOException ex) {
+				L.info("can not read "+node+": "+ex);
+				continue;
+			}
+			readers.add(reader);
+			devices.addAll(reader.devices);
+		}
+		L.fine("end");
+	}
+
+	static Range[] parseLevelRanges(String levelRanges) {
+		Range[] ranges=new Range[PLevel.Type.VALUES.size()];
+		if(levelRanges==null)
+			return ranges;
+		for(String levelRange: levelRanges.split(",")) {
+			try {
+				String[] typeAndRange=levelRange.split("=");
+				String[] minAndMax=typeAndRange[1].split(":");
+				ranges[PLevel.Type.valueOf(typeAndRange[0].trim()).ordinal()]=
+					new Range(Integer.parseInt(minAndMax[0].trim()), Integer.parseInt(minAndMax[1].trim()));
+			} catch(RuntimeException ex) {
+				L.warning("invalid "+ABS_RANGES_SYSTEM_PROPERTY+" entry: "+levelRange);
+			}
+		}
+		return ranges;
+	}
+
+	//@Override
+	public void penManagerPaused(boolean paused) {
+		if(!paused) {
+			screenBounds.getLayout(); // computed here, not on the input path
+			screenBounds.refresh(); // the display configuration may have changed while paused
+		}
+		for(EvdevReader reader: readers) {
+			reader.setPaused(paused);
+			if(!paused)
+				reader.start(); // the devices are published: the reader can fire events on them
+		}
+	}
+
+	/**
+	Closes the device nodes and stops the reader threads.
+	*/
+	@Override
+	public void close() {
+		for(EvdevReader reader: readers)
+			reader.close();
+	}
+}
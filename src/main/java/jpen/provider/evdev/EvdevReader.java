@@ -0,0 +1,287 @@
+/* [{
+Copyright 2007, 2008 Nicolas Carranza <nicarran at gmail.com>
+
+This file is part of jpen.
+
+jpen is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License,
+or (at your option) any later version.
+
+jpen is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with jpen.  If not, see <http://www.gnu.org/licenses/>.
+}] */
+package jpen.provider.evdev;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jpen.PButton;
+import jpen.Pen;
+import jpen.PenManager;
+import jpen.PenRuntime;
+import jpen.PKind;
+import jpen.PLevel;
+import jpen.internal.Range;
+import jpen.internal.ThreadUtils;
+import static jpen.provider.evdev.InputEventDecoder.*;
+
+/**
+Reads the events of one {@link EvdevNode} on its own thread. The events are read in bulk (up to {@link #BATCH_CAPACITY} per read) into a reusable direct buffer and decoded by frame. Each frame is scheduled on the {@link EvdevDevice} of the tool in proximity.
+*/
+final class EvdevReader
+	implements Runnable, InputEventDecoder.Listener {
+	private static final Logger L=Logger.getLogger(EvdevReader.class.getName());
+	//static{L.setLevel(Level.ALL);}
+
+	static final int BATCH_CAPACITY=64;
+
+	private static final float RADS_PER_DEG=(float)(Math.PI/180);
+
+	final EvdevNode node;
+	private final EvdevProvider evdevProvider;
+	private final FileChannel channel;
+	private final ByteBuffer events;
+	private final InputEventDecoder decoder;
+	final List<EvdevDevice> devices=new ArrayList<EvdevDevice>();
+	private final EvdevDevice stylusDevice, eraserDevice, cursorDevice;
+	/**
+	Ranges of the X, Y and PRESSURE levels by {@link PLevel.Type} ordinal. The X and Y ranges are always configured (see {@link EvdevProvider#ABS_RANGES_SYSTEM_PROPERTY}). Only read and written by the reader thread.
+	*/
+	private final Range[] levelRanges=new Range[PLevel.Type.VALUES.size()];
+	/**
+	The device of the tool in proximity. Only read and written by the reader thread.
+	*/
+	private EvdevDevice device;
+	private final List<PLevel> changedLevels=new ArrayList<PLevel>();
+	private final float[] screenXY=new float[2];
+	private float rangedX, rangedY; // the last ones read: an event frame may change only one of them
+	private volatile boolean paused=true;
+	private volatile boolean closed;
+	private Thread thread;
+
+	EvdevReader(EvdevProvider evdevProvider, EvdevNode node) throws IOException {
+		this.evdevProvider=evdevProvider;
+		this.node=node;
+		this.channel=new FileInputStream(node.path).getChannel();
+		this.decoder=new InputEventDecoder(this);
+		this.events=ByteBuffer.allocateDirect(BATCH_CAPACITY*decoder.eventSize).order(ByteOrder.nativeOrder());
+		System.arraycopy(evdevProvider.configuredLevelRanges, 0, levelRanges, 0, levelRanges.length);
+		stylusDevice=node.hasStylusTool() || !node.hasEraserTool() && !node.hasCursorTool()?
+								 addDevice(PKind.Type.STYLUS): null;
+		eraserDevice=node.hasEraserTool()? addDevice(PKind.Type.ERASER): null;
+		cursorDevice=node.hasCursorTool()? addDevice(PKind.Type.CURSOR): null;
+	}
+
+	private EvdevDevice addDevice(PKind.Type kindType) {
+		EvdevDevice device=new EvdevDevice(evdevProvider, this, kindType);
+		devices.add(device);
+		return device;
+	}
+
+	/**
+	Starts the reader thread, if not started. Called when the devices are already published (on the first unpause): a recorded events file is read from its beginning.
+	*/
+	synchronized void start() {
+		if(thread!=null || closed)
+			return;
+		thread=PenRuntime.newThread("jpen-EvdevReader-"+node.name, this);
+		thread.start();
+	}
+
+	/**
+	While paused the events are read and dropped.
+	*/
+	void setPaused(boolean paused) {
+		this.paused=paused;
+	}
+
+	/**
+	Closes the node, the blocked read returns and the reader thread ends.
+	*/
+	void close() {
+		Thread thread;
+		synchronized(this) {
+			if(closed)
+				return;
+			closed=true;
+			thread=this.thread;
+		}
+		try {
+			channel.close();
+		} catch(IOException ex) {
+			L.warning("closing "+node+" failed: "+ex);
+		}
+		if(thread!=null && thread!=Thread.currentThread())
+			ThreadUtils.joinUninterrupted(thread);
+	}
+
+	//@Override
+	public void run() {
+		try {
+			while(!closed) {
+				if(channel.read(events)<0) { // end of a recorded events file
+					L.fine("end of "+node);
+					break;
+				}
+				events.flip();
+				decoder.decode(events);
+				events.compact();
+			}
+		} catch(ClosedChannelException ex) { // closed by close()
+		} catch(IOException ex) {
+			if(!closed)
+				L.warning("reading "+node+" failed: "+ex);
+		} catch(RuntimeException ex) {
+			L.severe("jpen-EvdevReader thread threw an exception: "+ex);
+			throw ex;
+		}
+	}
+
+	//@Override
+	public void frameDecoded(InputEventDecoder decoder) {
+		if(paused)
+			return;
+		long time=decoder.getFrameTime();
+		PenManager penManager=evdevProvider.getPenManager();
+		for(int i=0; i<decoder.getKeysSize(); i++) {
+			int keyCode=decoder.getKeyCode(i);
+			int keyValue=decoder.getKeyValue(i);
+			if(keyValue==2) // autorepeat
+				continue;
+			EvdevDevice toolDevice=getToolDevice(keyCode);
+			if(toolDevice!=null) {
+				if(keyValue!=0) {
+					device=toolDevice;
+					penManager.firePenProximity(device, true);
+				} else if(device==toolDevice) {
+					penManager.firePenProximity(device, false);
+					device=null;
+				}
+				continue;
+			}
+			PButton.Type buttonType=getButtonType(keyCode);
+			if(buttonType!=null) {
+				EvdevDevice device=getFrameDevice();
+				if(device!=null && device.getEnabled())
+					penManager.scheduleButtonEvent(device, time, new PButton(buttonType, keyValue!=0));
+			}
+		}
+		if(decoder.isAnyAbsChanged())
+			scheduleLevelEvent(decoder, time);
+	}
+
+	/**
+	@return the device of the tool in proximity, or the stylus device if the node does not report tools.
+	*/
+	private EvdevDevice getFrameDevice() {
+		if(device==null && !node.hasStylusTool() && !node.hasEraserTool() && !node.hasCursorTool())
+			return stylusDevice;
+		return device;
+	}
+
+	private EvdevDevice getToolDevice(int keyCode) {
+		switch(keyCode) {
+		case BTN_TOOL_PEN:
+		case BTN_TOOL_BRUSH:
+		case BTN_TOOL_PENCIL:
+		case BTN_TOOL_AIRBRUSH:
+			return stylusDevice;
+		case BTN_TOOL_RUBBER:
+			return eraserDevice;
+		case BTN_TOOL_MOUSE:
+		case BTN_TOOL_LENS:
+			return cursorDevice;
+		default:
+			return null;
+		}
+	}
+
+	/**
+	@return the button type or {@code null} if the key is not a button. {@code BTN_TOUCH} is ignored: JPen emulates {@link PButton.Type#ON_PRESSURE}.
+	*/
+	private static PButton.Type getButtonType(int keyCode) {
+		switch(keyCode) {
+		case BTN_LEFT:
+			return PButton.Type.LEFT;
+		case BTN_STYLUS:
+		case BTN_MIDDLE:
+			return PButton.Type.CENTER;
+		case BTN_STYLUS2:
+		case BTN_RIGHT:
+			return PButton.Type.RIGHT;
+		default:
+			return null;
+		}
+	}
+
+	private void scheduleLevelEvent(InputEventDecoder decoder, long time) {
+		EvdevDevice device=getFrameDevice();
+		if(device==null || !device.getEnabled())
+			return;
+		Pen pen=device.getPen();
+		boolean xChanged=decoder.isAbsChanged(ABS_X), yChanged=decoder.isAbsChanged(ABS_Y);
+		if(xChanged || yChanged) { // X and Y are mapped together: the screen depends on both
+			if(xChanged)
+				rangedX=getRangedValue(PLevel.Type.X, decoder.getAbsValue(ABS_X));
+			if(yChanged)
+				rangedY=getRangedValue(PLevel.Type.Y, decoder.getAbsValue(ABS_Y));
+			evdevProvider.screenBounds.getLayout().map(rangedX, rangedY, screenXY);
+			changedLevels.add(new PLevel(PLevel.Type.X, screenXY[0]));
+			changedLevels.add(new PLevel(PLevel.Type.Y, screenXY[1]));
+		}
+		addChangedLevel(pen, decoder, ABS_PRESSURE, PLevel.Type.PRESSURE);
+		addChangedLevel(pen, decoder, ABS_TILT_X, PLevel.Type.TILT_X);
+		addChangedLevel(pen, decoder, ABS_TILT_Y, PLevel.Type.TILT_Y);
+		if(changedLevels.isEmpty())
+			return;
+		if(L.isLoggable(Level.FINE))
+			L.fine("scheduling levels: "+changedLevels);
+		evdevProvider.getPenManager().scheduleLevelEvent(device, time, changedLevels, true);
+		changedLevels.clear();
+	}
+
+	private void addChangedLevel(Pen pen, InputEventDecoder decoder, int absCode, PLevel.Type levelType) {
+		if(!decoder.isAbsChanged(absCode) || !pen.isLevelTypeListened(levelType))
+			return;
+		changedLevels.add(new PLevel(levelType, getMultRangedValue(levelType, decoder.getAbsValue(absCode))));
+	}
+
+	private float getMultRangedValue(PLevel.Type levelType, int absValue) {
+		if(PLevel.Type.TILT_TYPES.contains(levelType)) // the tablet drivers report the tilt in degrees
+			return absValue*RADS_PER_DEG;
+		return getRangedValue(levelType, absValue);
+	}
+
+	/**
+	The axis ranges (given by the {@code EVIOCGABS} ioctl) can't be read without native code: the X and Y ranges must be configured (see {@link EvdevProvider#ABS_RANGES_SYSTEM_PROPERTY}), the X and Y values out of them are mapped out of the screens. If the PRESSURE range is not configured, or a value greater than its maximum is read, it is learned: it starts as 0-1023 and its maximum grows to the next power of two minus one, the tablet pressure ranges are powers of two.
+	*/
+	private float getRangedValue(PLevel.Type levelType, int absValue) {
+		Range range=levelRanges[levelType.ordinal()];
+		if(PLevel.Type.PRESSURE.equals(levelType) && (range==null || absValue>range.max)) {
+			int max=range==null? 1023: (int)range.max;
+			while(max<absValue)
+				max=max*2+1;
+			levelRanges[levelType.ordinal()]=range=new Range(0, max);
+			L.info(node.name+" PRESSURE range learned: "+range);
+		}
+		return range.max==range.min? 0: range.getRangedValue(absValue);
+	}
+
+	@Override
+	public String toString() {
+		return "{EvdevReader: node="+node+"}";
+	}
+}
@@ -0,0 +1,182 @@
+/* [{
+Copyright 2007, 2008 Nicolas Carranza <nicarran at gmail.com>
+
+This file is part of jpen.
+
+jpen is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License,
+or (at your option) any later version.
+
+jpen is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with jpen.  If not, see <http://www.gnu.org/licenses/>.
+}] */
+package jpen.provider.evdev;
+
+import java.nio.ByteBuffer;
+
+/**
+Decodes the {@code struct input_event}s read from an evdev device node and groups them in frames: the events between two {@code SYN_REPORT}s describe one state change of the device. evdev only reports the values which changed, the last value of each absolute axis is kept by this decoder. The {@link Listener} is notified at the end of each frame.<p>
+
+The {@code struct input_event} layout is {@code {struct timeval time; __u16 type; __u16 code; __s32 value;}}, the {@code timeval} fields are C {@code long}s.
+*/
+final class InputEventDecoder {
+	static final int EV_SYN=0x00, EV_KEY=0x01, EV_ABS=0x03;
+	static final int SYN_REPORT=0, SYN_DROPPED=3;
+	static final int ABS_X=0x00, ABS_Y=0x01, ABS_WHEEL=0x08, ABS_PRESSURE=0x18, ABS_TILT_X=0x1a, ABS_TILT_Y=0x1b,
+		ABS_CNT=0x40;
+	static final int BTN_LEFT=0x110, BTN_RIGHT=0x111, BTN_MIDDLE=0x112,
+		BTN_TOOL_PEN=0x140, BTN_TOOL_RUBBER=0x141, BTN_TOOL_BRUSH=0x142, BTN_TOOL_PENCIL=0x143, BTN_TOOL_AIRBRUSH=0x144, BTN_TOOL_MOUSE=0x146, BTN_TOOL_LENS=0x147,
+		BTN_TOUCH=0x14a, BTN_STYLUS=0x14b, BTN_STYLUS2=0x14c;
+
+	/**
+	Key events after this number on the same frame are ignored.
+	*/
+	static final int MAX_FRAME_KEYS=16;
+
+	interface Listener {
+		/**
+		Called on each {@code SYN_REPORT}. The frame values of the decoder are valid only during this call.
+		*/
+		void frameDecoded(InputEventDecoder decoder);
+	}
+
+	/**
+	The size of a C {@code long} (4 or 8 bytes) on this platform.
+	*/
+	static final int LONG_SIZE=evalLongSize();
+	/**
+	The size of the {@code struct input_event} on this platform.
+	*/
+	static final int EVENT_SIZE=2*LONG_SIZE+8;
+
+	private static int evalLongSize() {
+		String dataModel=System.getProperty("sun.arch.data.model");
+		if(dataModel!=null)
+			return "64".equals(dataModel)? 8: 4;
+		return System.getProperty("os.arch").contains("64")? 8: 4;
+	}
+
+	private final int longSize;
+	final int eventSize;
+	private final Listener listener;
+	private final int[] absValues=new int[ABS_CNT];
+	private long absChangedBits;
+	private final int[] keyCodes=new int[MAX_FRAME_KEYS];
+	private final int[] keyValues=new int[MAX_FRAME_KEYS];
+	private int keysSize;
+	private long frameTime;
+	/**
+	{@code true} after a {@code SYN_DROPPED}: the kernel buffer overrun and the events up to the next {@code SYN_REPORT} are not a consistent frame.
+	*/
+	private boolean dropping;
+
+	InputEventDecoder(Listener listener) {
+		this(LONG_SIZE, listener);
+	}
+
+	/**
+	@param longSize the size of a C {@code long} on the platform which produced the events (e.g. to decode events recorded on another platform).
+	*/
+	InputEventDecoder(int longSize, Listener listener) {
+		if(longSize!=4 && longSize!=8)
+			throw new IllegalArgumentException("longSize must be 4 or 8");
+		this.longSize=longSize;
+		this.eventSize=2*longSize+8;
+		this.listener=listener;
+	}
+
+	/**
+	Decodes all the whole events between the position and the limit of the given buffer, which must be on native byte order. The position is left on the first byte of the trailing incomplete event, if any: use {@link ByteBuffer#compact()} before reading more bytes into the buffer.
+	*/
+	void decode(ByteBuffer events) {
+		int position=events.position();
+		int limit=events.limit();
+		for(; limit-position>=eventSize; position+=eventSize) {
+			long seconds, microseconds;
+			if(longSize==8) {
+				seconds=events.getLong(position);
+				microseconds=events.getLong(position+8);
+			} else {
+				seconds=events.getInt(position);
+				microseconds=events.getInt(position+4);
+			}
+			int fieldsOffset=position+2*longSize;
+			decode(seconds*1000+microseconds/1000,
+					 events.getShort(fieldsOffset)&0xffff,
+					 events.getShort(fieldsOffset+2)&0xffff,
+					 events.getInt(fieldsOffset+4));
+		}
+		events.position(position);
+	}
+
+	private void decode(long time, int type, int code, int value) {
+		switch(type) {
+		case EV_SYN:
+			if(code==SYN_REPORT) {
+				if(dropping)
+					dropping=false;
+				else {
+					frameTime=time;
+					listener.frameDecoded(this);
+				}
+				absChangedBits=0;
+				keysSize=0;
+			} else if(code==SYN_DROPPED)
+				dropping=true;
+			break;
+		case EV_ABS:
+			if(code<ABS_CNT) { // the axis values are kept even when dropping: they are absolute
+				absValues[code]=value;
+				absChangedBits|=1l<<code;
+			}
+			break;
+		case EV_KEY:
+			if(keysSize<MAX_FRAME_KEYS) {
+				keyCodes[keysSize]=code;
+				keyValues[keysSize++]=value;
+			}
+			break;
+		default:
+		}
+	}
+
+	/**
+	@return the time (milliseconds since the device clock epoch) of the {@code SYN_REPORT} ending the current frame.
+	*/
+	long getFrameTime() {
+		return frameTime;
+	}
+
+	boolean isAbsChanged(int absCode) {
+		return (absChangedBits & (1l<<absCode))!=0;
+	}
+
+	boolean isAnyAbsChanged() {
+		return absChangedBits!=0;
+	}
+
+	int getAbsValue(int absCode) {
+		return absValues[absCode];
+	}
+
+	int getKeysSize() {
+		return keysSize;
+	}
+
+	int getKeyCode(int keyIndex) {
+		return keyCodes[keyIndex];
+	}
+
+	/**
+	@return 1 if pressed, 0 if released, 2 if autorepeated.
+	*/
+	int getKeyValue(int keyIndex) {
+		return keyValues[keyIndex];
+	}
+}
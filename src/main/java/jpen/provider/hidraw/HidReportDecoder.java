@@ -0,0 +1,312 @@
+/* [{
+Copyright 2007, 2008 Nicolas Carranza <nicarran at gmail.com>
+
+This file is part of jpen.
+
+jpen is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License,
+or (at your option) any later version.
+
+jpen is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with jpen.  If not, see <http://www.gnu.org/licenses/>.
+}] */
+package jpen.provider.hidraw;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+Extracts the pen fields from the input reports of a HID device. The report descriptor is parsed once (see {@link #parse(byte[])}) into a table giving the report ID, bit offset, bit size and ranges of each pen field; decoding a report takes no allocation.<p>
+
+Only the fields of one input report containing the pen {@link #X} and {@link #Y} are decoded: the report on the digitizer pen application collection is preferred, many tablets also describe a mouse mode report with X and Y on a mouse application collection. The array (non variable) fields are not supported.
+*/
+final class HidReportDecoder {
+	private static final Logger L=Logger.getLogger(HidReportDecoder.class.getName());
+	//static{L.setLevel(Level.ALL);}
+
+	//v the decoded fields:
+	static final int X=0, Y=1, TIP_PRESSURE=2, X_TILT=3, Y_TILT=4,
+		IN_RANGE=5, TIP_SWITCH=6, BARREL_SWITCH=7, SECONDARY_BARREL_SWITCH=8, INVERT=9, ERASER=10,
+		FIELDS_SIZE=11;
+	//^
+	/**
+	The usage of each field: usage page on the high 16 bits, usage ID on the low 16 bits.
+	*/
+	private static final int[] FIELD_USAGES={
+		0x010030, 0x010031, // generic desktop page: X, Y
+		0x0d0030, 0x0d003d, 0x0d003e, // digitizer page: tip pressure, X tilt, Y tilt
+		0x0d0032, 0x0d0042, 0x0d0044, 0x0d005a, 0x0d003c, 0x0d0045 // in range, tip switch, barrel switch, secondary barrel switch, invert, eraser
+	};
+	//v application collection usages:
+	static final int DIGITIZER_USAGE=0x0d0001, PEN_USAGE=0x0d0002;
+	//^
+
+	/**
+	{@code -1} if the device does not use report IDs (the reports have no ID prefix byte).
+	*/
+	final int reportId;
+	/**
+	The usage of the application collection of the report, {@code 0} if the report is not on a collection.
+	*/
+	final int applicationUsage;
+	//v the table, by field. bitSizes[field]==0 if the report has not the field:
+	private final int[] bitOffsets=new int[FIELDS_SIZE];
+	private final int[] bitSizes=new int[FIELDS_SIZE];
+	private final int[] logicalMins=new int[FIELDS_SIZE];
+	private final int[] logicalMaxs=new int[FIELDS_SIZE];
+	private final float[] physicalMins=new float[FIELDS_SIZE];
+	private final float[] physicalMaxs=new float[FIELDS_SIZE];
+	//^
+
+	private HidReportDecoder(int reportId, int applicationUsage) {
+		this.reportId=reportId;
+		this.applicationUsage=applicationUsage;
+	}
+
+	/**
+	Descriptor parser state: the HID global items (with its push/pop stack) and local items.
+	*/
+	private static final class ParserState
+		implements Cloneable {
+		int usagePage;
+		int logicalMin, logicalMax;
+		int physicalMin, physicalMax;
+		int unitExponent;
+		int reportSize, reportCount;
+		int reportId=-1;
+
+		@Override
+		public ParserState clone() {
+			try {
+				return (ParserState)super.clone();
+			} catch(CloneNotSupportedException ex) {
+				throw new AssertionError(ex);
+			}
+		}
+	}
+
+	/**
+	@return the decoder of the pen input report described by the given HID report descriptor, or {@code null} if the descriptor describes no report with the pen {@link #X} and {@link #Y}. If several reports have X and Y then the one on the {@link #PEN_USAGE} application collection is chosen, else the one on a digitizer page application collection (e.g. {@link #DIGITIZER_USAGE}), else the first one.
+	*/
+	static HidReportDecoder parse(byte[] descriptor) {
+		ParserState state=new ParserState();
+		ParserState[] stack=new ParserState[8];
+		int stackSize=0;
+		int[] usages=new int[64];
+		int usagesSize=0;
+		int usageMin=-1, usageMax=-1;
+		int[] applicationUsages=new int[16]; // the application usage outside each open collection
+		int collectionsSize=0;
+		int applicationUsage=0;
+		int[] reportBitOffsets=new int[256]; // input report bit offsets by report ID (0 if not used)
+		HidReportDecoder decoder=null;
+		HidReportDecoder[] candidates=new HidReportDecoder[256];
+
+		for(int i=0; i<descriptor.length; ) {
+			int prefix=descriptor[i]&0xff;
+			if(prefix==0xfe) { // long item: bDataSize, bLongItemTag, data
+				i+=3+(i+1<descriptor.length? descriptor[i+1]&0xff: 0);
+				continue;
+			}
+			int size=prefix&3;
+			if(size==3)
+				size=4;
+			int type=(prefix>>2)&3;
+			int tag=prefix>>4;
+			if(i+1+size>descriptor.length) {
+				L.warning("truncated report descriptor");
+				break;
+			}
+			int unsignedData=0;
+			for(int j=size; --j>=0;)
+				unsignedData=(unsignedData<<8)|(descriptor[i+1+j]&0xff);
+			int signedData=size==0 || size==4? unsignedData: (unsignedData<<(32-8*size))>>(32-8*size);
+			i+=1+size;
+
+			switch(type) {
+			case 0: // main
+				if(tag==0x8) { // input
+					int reportIdIndex=state.reportId<0? 0: state.reportId;
+					int bitOffset=reportBitOffsets[reportIdIndex];
+					if(bitOffset==0 && state.reportId>=0)
+						bitOffset=8; // the report ID prefix byte
+					boolean constant=(unsignedData&1)!=0;
+					boolean variable=(unsignedData&2)!=0;
+					if(!constant && variable) {
+						for(int k=0; k<state.reportCount; k++) {
+							int usage;
+							if(usageMin>=0)
+								usage=Math.min(usageMin+k, usageMax);
+							else if(usagesSize!=0)
+								usage=usages[Math.min(k, usagesSize-1)];
+							else
+								continue;
+							if((usage>>>16)==0)
+								usage|=state.usagePage<<16;
+							HidReportDecoder candidate=candidates[reportIdIndex];
+							if(candidate==null)
+								candidate=candidates[reportIdIndex]=new HidReportDecoder(state.reportId, applicationUsage);
+							candidate.setField(usage, bitOffset+k*state.reportSize, state);
+						}
+					}
+					reportBitOffsets[reportIdIndex]=bitOffset+state.reportSize*state.reportCount;
+				} else if(tag==0xa) { // collection
+					if(collectionsSize<applicationUsages.length)
+						applicationUsages[collectionsSize]=applicationUsage;
+					collectionsSize++;
+					if(unsignedData==1) // application
+						applicationUsage=usagesSize!=0? usages[0]: usageMin>=0? usageMin: 0;
+				} else if(tag==0xc) { // end collection
+					if(collectionsSize>0 && --collectionsSize<applicationUsages.length)
+						applicationUsage=applicationUsages[collectionsSize];
+				}
+				if(tag==0x8 || tag==0x9 || tag==0xa || tag==0xb) { // input, output, collection, feature: the local items are cleared
+					usagesSize=0;
+					usageMin=usageMax=-1;
+				}
+				break;
+			case 1: // global
+				switch(tag) {
+				case 0x0: state.usagePage=unsignedData; break;
+				case 0x1: state.logicalMin=signedData; break;
+				case 0x2: state.logicalMax=state.logicalMin>=0? unsignedData: signedData; break; // like the linux HID core: unsigned if the minimum is not negative
+				case 0x3: state.physicalMin=signedData; break;
+				case 0x4: state.physicalMax=state.physicalMin>=0? unsignedData: signedData; break;
+				case 0x5: state.unitExponent=unsignedData<=0xf? (unsignedData<<28)>>28: signedData; break; // usually a 4 bits signed nibble
+				case 0x7: state.reportSize=unsignedData; break;
+				case 0x8: state.reportId=unsignedData&0xff; break;
+				case 0x9: state.reportCount=unsignedData; break;
+				case 0xa: // push
+					if(stackSize<stack.length)
+						stack[stackSize++]=state.clone();
+					break;
+				case 0xb: // pop
+					if(stackSize>0)
+						state=stack[--stackSize];
+					break;
+				default:
+				}
+				break;
+			case 2: // local
+				int usage=size==4? unsignedData: unsignedData|(state.usagePage<<16);
+				switch(tag) {
+				case 0x0:
+					if(usagesSize<usages.length)
+						usages[usagesSize++]=usage;
+					break;
+				case 0x1: usageMin=usage; break;
+				case 0x2: usageMax=usage; break;
+				default:
+				}
+				break;
+			default:
+			}
+		}
+
+		for(HidReportDecoder candidate: candidates)
+			if(candidate!=null && candidate.hasField(X) && candidate.hasField(Y) &&
+				 (decoder==null || candidate.getApplicationPreference()>decoder.getApplicationPreference()))
+				decoder=candidate;
+		if(decoder!=null && L.isLoggable(Level.FINE))
+			L.fine("pen report decoder: "+decoder);
+		return decoder;
+	}
+
+	private int getApplicationPreference() {
+		if(applicationUsage==PEN_USAGE)
+			return 2;
+		return (applicationUsage>>>16)==(PEN_USAGE>>>16)? 1: 0;
+	}
+
+	private void setField(int usage, int bitOffset, ParserState state) {
+		for(int field=FIELDS_SIZE; --field>=0;)
+			if(FIELD_USAGES[field]==usage && bitSizes[field]==0) {
+				if(state.reportSize<1 || state.reportSize>32)
+					return;
+				bitOffsets[field]=bitOffset;
+				bitSizes[field]=state.reportSize;
+				logicalMins[field]=state.logicalMin;
+				logicalMaxs[field]=state.logicalMax;
+				float unit=(float)Math.pow(10, state.unitExponent);
+				physicalMins[field]=state.physicalMin*unit;
+				physicalMaxs[field]=state.physicalMax*unit;
+				return;
+			}
+	}
+
+	boolean hasField(int field) {
+		return bitSizes[field]!=0;
+	}
+
+	/**
+	@return the size in bytes of the pen report (including the report ID prefix byte).
+	*/
+	int getReportSize() {
+		int bits=0;
+		for(int field=FIELDS_SIZE; --field>=0;)
+			bits=Math.max(bits, bitOffsets[field]+bitSizes[field]);
+		return (bits+7)>>>3;
+	}
+
+	/**
+	@return {@code true} if the given report (from its position 0 to its limit) is the pen report.
+	*/
+	boolean isPenReport(ByteBuffer report) {
+		if(report.limit()<getReportSize())
+			return false;
+		return reportId<0 || (report.get(0)&0xff)==reportId;
+	}
+
+	/**
+	@return the logical value of the given field. {@code 0} if the pen report has not the field.
+	*/
+	int getValue(ByteBuffer report, int field) {
+		int bitSize=bitSizes[field];
+		if(bitSize==0)
+			return 0;
+		int bitOffset=bitOffsets[field];
+		long bits=0;
+		for(int i=(bitOffset+bitSize-1)>>>3; i>=bitOffset>>>3; i--)
+			bits=(bits<<8)|(report.get(i)&0xff);
+		bits>>>=bitOffset&7;
+		bits&=(1l<<bitSize)-1;
+		if(logicalMins[field]<0 && bitSize<32 && (bits & (1l<<(bitSize-1)))!=0) // sign extension
+			bits|=-1l<<bitSize;
+		return (int)bits;
+	}
+
+	boolean getBoolean(ByteBuffer report, int field) {
+		return getValue(report, field)!=0;
+	}
+
+	/**
+	@return the value of the given field ranged between its logical minimum (0) and maximum (1).
+	*/
+	float getRangedValue(ByteBuffer report, int field) {
+		int range=logicalMaxs[field]-logicalMins[field];
+		return range==0? 0: (getValue(report, field)-logicalMins[field])/(float)range;
+	}
+
+	/**
+	@return the value of the given field in physical units, or the logical value if the field has no physical range.
+	*/
+	float getPhysicalValue(ByteBuffer report, int field) {
+		float physicalRange=physicalMaxs[field]-physicalMins[field];
+		if(physicalRange==0)
+			return getValue(report, field);
+		return physicalMins[field]+getRangedValue(report, field)*physicalRange;
+	}
+
+	@Override
+	public String toString() {
+		return "{HidReportDecoder: reportId="+reportId+", applicationUsage=0x"+Integer.toHexString(applicationUsage)+", bitOffsets="+Arrays.toString(bitOffsets)+", bitSizes="+Arrays.toString(bitSizes)+", logicalMins="+Arrays.toString(logicalMins)+", logicalMaxs="+Arrays.toString(logicalMaxs)+"}";
+	}
+}
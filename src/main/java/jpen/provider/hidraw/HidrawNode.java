@@ -0,0 +1,111 @@
+/* [{
+Copyright 2007, 2008 Nicolas Carranza <nicarran at gmail.com>
+
+This file is part of jpen.
+
+jpen is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License,
+or (at your option) any later version.
+
+jpen is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with jpen.  If not, see <http://www.gnu.org/licenses/>.
+}] */
+package jpen.provider.hidraw;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+A hidraw device node ({@code /dev/hidrawN}) and the decoder of its pen report, built from the report descriptor published on {@code /sys/class/hidraw/hidrawN/device/report_descriptor}.
+*/
+final class HidrawNode {
+	private static final Logger L=Logger.getLogger(HidrawNode.class.getName());
+	//static{L.setLevel(Level.ALL);}
+
+	static final String SYSFS_DIR_PATH="/sys/class/hidraw";
+	static final String NODES_DIR_PATH="/dev";
+
+	final String name;
+	final String path;
+	final HidReportDecoder decoder;
+
+	HidrawNode(String name, String path, HidReportDecoder decoder) {
+		this.name=name;
+		this.path=path;
+		this.decoder=decoder;
+	}
+
+	/**
+	@return the hidraw nodes having a pen report.
+	*/
+	static List<HidrawNode> getTabletNodes() {
+		List<HidrawNode> nodes=new ArrayList<HidrawNode>();
+		File[] sysfsDirs=new File(SYSFS_DIR_PATH).listFiles();
+		if(sysfsDirs==null)
+			return nodes;
+		for(File sysfsDir: sysfsDirs) {
+			HidReportDecoder decoder;
+			String name;
+			try {
+				decoder=HidReportDecoder.parse(readBytes(new File(sysfsDir, "device/report_descriptor")));
+				if(decoder==null)
+					continue;
+				name=readHidName(new File(sysfsDir, "device/uevent"));
+			} catch(IOException ex) {
+				L.fine("can not read "+sysfsDir+": "+ex);
+				continue;
+			}
+			nodes.add(new HidrawNode(name==null? sysfsDir.getName(): name, NODES_DIR_PATH+"/"+sysfsDir.getName(), decoder));
+		}
+		return nodes;
+	}
+
+	static byte[] readBytes(File file) throws IOException {
+		InputStream inputStream=new FileInputStream(file);
+		try {
+			ByteArrayOutputStream bytes=new ByteArrayOutputStream();
+			byte[] buffer=new byte[4096];
+			int size;
+			while((size=inputStream.read(buffer))>=0)
+				bytes.write(buffer, 0, size);
+			return bytes.toByteArray();
+		} finally {
+			inputStream.close();
+		}
+	}
+
+	/**
+	@return the {@code HID_NAME} given on the uevent file, or {@code null} if none.
+	*/
+	private static String readHidName(File ueventFile) throws IOException {
+		BufferedReader reader=new BufferedReader(new FileReader(ueventFile));
+		try {
+			String line;
+			while((line=reader.readLine())!=null)
+				if(line.startsWith("HID_NAME="))
+					return line.substring("HID_NAME=".length()).trim();
+			return null;
+		} finally {
+			reader.close();
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "{HidrawNode: name="+name+", path="+path+"}";
+	}
+}
@@ -0,0 +1,116 @@
+/* [{
+Copyright 2007, 2008 Nicolas Carranza <nicarran at gmail.com>
+
+This file is part of jpen.
+
+jpen is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License,
+or (at your option) any later version.
+
+jpen is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with jpen.  If not, see <http://www.gnu.org/licenses/>.
+}] */
+package jpen.provider.hidraw;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+import jpen.PenManager;
+import jpen.PenProvider;
+import jpen.provider.AbstractPenProvider;
+import jpen.provider.VirtualScreenBounds;
+import jpen.provider.evdev.EvdevProvider;
+
+/**
+Reads the tablets from the Linux hidraw device nodes ({@code /dev/hidraw*}), decoding their HID reports in Java. Gives the data as sent by the tablet (e.g. full resolution pressure, raw tilt and the barrel buttons) when the evdev or XInput drivers hide or scale it. Only the tablets describing their pen report using the standard HID digitizer usages are supported: the tablets using vendor specific reports are not found.<p>
+
+This provider is used only when {@link #SYSTEM_PROPERTY} is set to true, then it replaces the {@link jpen.provider.xinput.XinputProvider}. It is not used if the {@link EvdevProvider} is enabled too: both read the same tablets. The user must have read access to the hidraw nodes.
+*/
+public final class HidrawProvider
+	extends AbstractPenProvider {
+	private static final Logger L=Logger.getLogger(HidrawProvider.class.getName());
+	//static{L.setLevel(Level.ALL);}
+
+	/**
+	When this system property is set to true the tablets are read using the hidraw provider instead of the XInput provider.
+	*/
+	public static final String SYSTEM_PROPERTY="jpen.provider.hidraw";
+	public static final boolean ENABLED=Boolean.valueOf(System.getProperty(SYSTEM_PROPERTY));
+	static{
+		if(ENABLED){
+			if(EvdevProvider.ENABLED)
+				L.warning(SYSTEM_PROPERTY+" ignored: "+EvdevProvider.SYSTEM_PROPERTY+" is also set, the tablets are read by the evdev provider");
+			else
+				L.info("ENABLED set to true");
+		}
+	}
+
+	final VirtualScreenBounds screenBounds=VirtualScreenBounds.getInstance();
+	private final List<HidrawReader> readers=new ArrayList<HidrawReader>();
+
+	public static class Constructor
+		extends AbstractPenProvider.AbstractConstructor {
+
+		//@Override
+		public String getName() {
+			return "hidraw";
+		}
+		//@Override
+		public boolean constructable(PenManager penManager) {
+			return ENABLED && !EvdevProvider.ENABLED && System.getProperty("os.name").toLowerCase().contains("linux") &&
+						 new File(HidrawNode.SYSFS_DIR_PATH).isDirectory();
+		}
+
+		@Override
+		public PenProvider constructProvider() throws Throwable {
+			return new HidrawProvider(this);
+		}
+	}
+
+	private HidrawProvider(Constructor constructor) {
+		super(constructor);
+		L.fine("start");
+		for(HidrawNode node: HidrawNode.getTabletNodes()) {
+			HidrawReader reader;
+			try {
+				reader=new HidrawReader(this, node);
+			} catch(IOException ex) {
+				L.info("can not read "+node+": "+ex);
+				continue;
+			}
+			readers.add(reader);
+			devices.addAll(reader.devices);
+		}
+		L.fine("end");
+	}
+
+	//@Override
+	public void penManagerPaused(boolean paused) {
+		if(!paused) {
+			screenBounds.getLayout(); // computed here, not on the input path
+			screenBounds.refresh(); // the display configuration may have changed while paused
+		}
+		for(HidrawReader reader: readers) {
+			reader.setPaused(paused);
+			if(!paused)
+				reader.start(); // the devices are published: the reader can fire events on them
+		}
+	}
+
+	/**
+	Closes the device nodes and stops the reader threads.
+	*/
+	@Override
+	public void close() {
+		for(HidrawReader reader: readers)
+			reader.close();
+	}
+}
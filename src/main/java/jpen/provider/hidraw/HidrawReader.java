@@ -0,0 +1,244 @@
+/* [{
+Copyright 2007, 2008 Nicolas Carranza <nicarran at gmail.com>
+
+This file is part of jpen.
+
+jpen is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License,
+or (at your option) any later version.
+
+jpen is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with jpen.  If not, see <http://www.gnu.org/licenses/>.
+}] */
+package jpen.provider.hidraw;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+import jpen.PButton;
+import jpen.Pen;
+import jpen.PenManager;
+import jpen.PenRuntime;
+import jpen.PKind;
+import jpen.PLevel;
+import jpen.internal.ThreadUtils;
+import static jpen.provider.hidraw.HidReportDecoder.*;
+
+/**
+Reads the reports of one {@link HidrawNode} on its own thread, into a reusable direct buffer. Each read returns one report (the hidraw reads are report sized), which is decoded and scheduled at the device rate on the {@link HidrawDevice} of the tool in range.
+*/
+final class HidrawReader
+	implements Runnable {
+	private static final Logger L=Logger.getLogger(HidrawReader.class.getName());
+	//static{L.setLevel(Level.ALL);}
+
+	/**
+	The maximum size of a HID report.
+	*/
+	static final int MAX_REPORT_SIZE=4096;
+
+	private static final float RADS_PER_DEG=(float)(Math.PI/180);
+
+	final HidrawNode node;
+	private final HidReportDecoder decoder;
+	private final HidrawProvider hidrawProvider;
+	private final FileChannel channel;
+	private final ByteBuffer report=ByteBuffer.allocateDirect(MAX_REPORT_SIZE);
+	final List<HidrawDevice> devices=new ArrayList<HidrawDevice>();
+	private final HidrawDevice stylusDevice, eraserDevice;
+	//v only read and written by the reader thread:
+	private HidrawDevice device;
+	private boolean barrelSwitch, secondaryBarrelSwitch;
+	private final List<PLevel> changedLevels=new ArrayList<PLevel>();
+	private final float[] screenXY=new float[2];
+	//^
+	private volatile boolean paused=true;
+	private volatile boolean closed;
+	private Thread thread;
+
+	HidrawReader(HidrawProvider hidrawProvider, HidrawNode node) throws IOException {
+		this.hidrawProvider=hidrawProvider;
+		this.node=node;
+		this.decoder=node.decoder;
+		this.channel=new FileInputStream(node.path).getChannel();
+		stylusDevice=new HidrawDevice(hidrawProvider, this, PKind.Type.STYLUS);
+		devices.add(stylusDevice);
+		if(decoder.hasField(INVERT) || decoder.hasField(ERASER)) {
+			eraserDevice=new HidrawDevice(hidrawProvider, this, PKind.Type.ERASER);
+			devices.add(eraserDevice);
+		} else
+			eraserDevice=null;
+	}
+
+	/**
+	Starts the reader thread, if not started. Called when the devices are already published (on the first unpause).
+	*/
+	synchronized void start() {
+		if(thread!=null || closed)
+			return;
+		thread=PenRuntime.newThread("jpen-HidrawReader-"+node.name, this);
+		thread.start();
+	}
+
+	/**
+	While paused the reports are read and dropped.
+	*/
+	void setPaused(boolean paused) {
+		this.paused=paused;
+	}
+
+	/**
+	Closes the node, the blocked read returns and the reader thread ends.
+	*/
+	void close() {
+		Thread thread;
+		synchronized(this) {
+			if(closed)
+				return;
+			closed=true;
+			thread=this.thread;
+		}
+		try {
+			channel.close();
+		} catch(IOException ex) {
+			L.warning("closing "+node+" failed: "+ex);
+		}
+		if(thread!=null && thread!=Thread.currentThread())
+			ThreadUtils.joinUninterrupted(thread);
+	}
+
+	//@Override
+	public void run() {
+		try {
+			while(!closed) {
+				report.clear();
+				if(channel.read(report)<0) {
+					L.fine("end of "+node);
+					break;
+				}
+				report.flip();
+				if(!paused && decoder.isPenReport(report))
+					processReport(System.currentTimeMillis()); // the reports have no timestamp
+			}
+		} catch(ClosedChannelException ex) { // closed by close()
+		} catch(IOException ex) {
+			if(!closed)
+				L.warning("reading "+node+" failed: "+ex);
+		} catch(RuntimeException ex) {
+			L.severe("jpen-HidrawReader thread threw an exception: "+ex);
+			throw ex;
+		}
+	}
+
+	private void processReport(long time) {
+		PenManager penManager=hidrawProvider.getPenManager();
+		boolean inRange=!decoder.hasField(IN_RANGE) || decoder.getBoolean(report, IN_RANGE);
+		HidrawDevice toolDevice=null;
+		if(inRange)
+			toolDevice=eraserDevice!=null && (decoder.getBoolean(report, INVERT) || decoder.getBoolean(report, ERASER))?
+								 eraserDevice: stylusDevice;
+		if(toolDevice!=device) {
+			if(device!=null) {
+				releaseBarrelSwitches(time);
+				penManager.firePenProximity(device, false);
+			}
+			device=toolDevice;
+			if(device!=null)
+				penManager.firePenProximity(device, true);
+		}
+		if(device==null || !device.getEnabled())
+			return;
+
+		boolean barrelSwitch=decoder.getBoolean(report, BARREL_SWITCH);
+		if(barrelSwitch!=this.barrelSwitch) {
+			this.barrelSwitch=barrelSwitch;
+			penManager.scheduleButtonEvent(device, time, new PButton(PButton.Type.CENTER, barrelSwitch));
+		}
+		boolean secondaryBarrelSwitch=decoder.getBoolean(report, SECONDARY_BARREL_SWITCH);
+		if(secondaryBarrelSwitch!=this.secondaryBarrelSwitch) {
+			this.secondaryBarrelSwitch=secondaryBarrelSwitch;
+			penManager.scheduleButtonEvent(device, time, new PButton(PButton.Type.RIGHT, secondaryBarrelSwitch));
+		}
+
+		Pen pen=device.getPen();
+		if(decoder.hasField(X) || decoder.hasField(Y)) { // X and Y are mapped together: the screen depends on both
+			hidrawProvider.screenBounds.getLayout().map(
+				decoder.hasField(X)? decoder.getRangedValue(report, X): 0,
+				decoder.hasField(Y)? decoder.getRangedValue(report, Y): 0,
+				screenXY);
+			if(decoder.hasField(X))
+				changedLevels.add(new PLevel(PLevel.Type.X, screenXY[0]));
+			if(decoder.hasField(Y))
+				changedLevels.add(new PLevel(PLevel.Type.Y, screenXY[1]));
+		}
+		addPressureLevel(pen);
+		addLevel(pen, PLevel.Type.TILT_X, X_TILT);
+		addLevel(pen, PLevel.Type.TILT_Y, Y_TILT);
+		if(changedLevels.isEmpty())
+			return;
+		penManager.scheduleLevelEvent(device, time, changedLevels, true);
+		changedLevels.clear();
+	}
+
+	/**
+	Releases the barrel buttons pressed on the current device, which is leaving: the out of range reports may not clear the switches.
+	*/
+	private void releaseBarrelSwitches(long time) {
+		if(!device.getEnabled()) {
+			barrelSwitch=secondaryBarrelSwitch=false;
+			return;
+		}
+		PenManager penManager=hidrawProvider.getPenManager();
+		if(barrelSwitch) {
+			barrelSwitch=false;
+			penManager.scheduleButtonEvent(device, time, new PButton(PButton.Type.CENTER, false));
+		}
+		if(secondaryBarrelSwitch) {
+			secondaryBarrelSwitch=false;
+			penManager.scheduleButtonEvent(device, time, new PButton(PButton.Type.RIGHT, false));
+		}
+	}
+
+	/**
+	The {@link HidReportDecoder#TIP_SWITCH} gates the pressure: some digitizers report a residual pressure while the tip is not touching. A report with the tip switch and without pressure gives a pressure of 1 while touching, so the {@link PButton.Type#ON_PRESSURE} button works.
+	*/
+	private void addPressureLevel(Pen pen) {
+		if(!decoder.hasField(TIP_SWITCH)) {
+			addLevel(pen, PLevel.Type.PRESSURE, TIP_PRESSURE);
+			return;
+		}
+		if(!pen.isLevelTypeListened(PLevel.Type.PRESSURE))
+			return;
+		float value=0;
+		if(decoder.getBoolean(report, TIP_SWITCH))
+			value=decoder.hasField(TIP_PRESSURE)? decoder.getRangedValue(report, TIP_PRESSURE): 1;
+		changedLevels.add(new PLevel(PLevel.Type.PRESSURE, value));
+	}
+
+	private void addLevel(Pen pen, PLevel.Type levelType, int field) {
+		if(!decoder.hasField(field) || !pen.isLevelTypeListened(levelType))
+			return;
+		float value;
+		if(PLevel.Type.TILT_TYPES.contains(levelType)) // the digitizers give the tilt in degrees
+			value=decoder.getPhysicalValue(report, field)*RADS_PER_DEG;
+		else
+			value=decoder.getRangedValue(report, field);
+		changedLevels.add(new PLevel(levelType, value));
+	}
+
+	@Override
+	public String toString() {
+		return "{HidrawReader: node="+node+"}";
+	}
+}
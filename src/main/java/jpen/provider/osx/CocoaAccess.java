@@ -23,11 +23,13 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.logging.Logger;
 
-import javax.swing.SwingUtilities;
-
 import jpen.PButton;
+import jpen.Pen;
+import jpen.PenRuntime;
 import jpen.PKind;
 import jpen.PLevel;
+import jpen.internal.ThreadUtils;
+import jpen.internal.ThrowableUtils;
 
 final class CocoaAccess {
 
@@ -53,6 +55,7 @@ final class CocoaAccess {
 	public void start() {
 		if (! active) {
 			active = true;
+			startIngestion();
 			startup();
 			// we need to monitor this regardless of whether the mouse is on the component, 
 			// or we'll likely miss transitions to stylus/eraser
@@ -64,14 +67,10 @@ final class CocoaAccess {
 		if (active) {
 			active = false;
 			shutdown();
+			stopIngestion();
 		}
 	}
 
-	public void finalize() throws Throwable {
-        stop();
-        super.finalize();
-	}
-
 	public void enable() {
 		setTabletEventsEnabled(true);
 	}
@@ -194,8 +193,19 @@ final class CocoaAccess {
 	protected static final int NSPenUpperSideMask = 4;
 
 
-	private CocoaDevice device = null;
-	
+	/**
+	Capacity of the {@link CocoaEventQueue}: about 4 seconds of a 200Hz tablet stalled.
+	*/
+	private static final int QUEUE_CAPACITY=1024;
+
+	private final CocoaEventQueue queue=new CocoaEventQueue(QUEUE_CAPACITY);
+	private Thread ingestionThread;
+	private volatile boolean ingesting;
+	private CocoaDevice device = null; // used only by the ingestion thread
+
+	/**
+	Called by the native side (on the AppKit thread). Only queues the event, see {@link #processProximityEvent(double, boolean, int)}.
+	*/
 	protected void postProximityEvent(
 	  double eventTimeSeconds,
 	  int cocoaModifierFlags,
@@ -211,6 +221,79 @@ final class CocoaAccess {
 	  int vendorID, // UInt16
 	  int vendorPointingDeviceType // UInt16
 	) {
+		queue.offerProximity(eventTimeSeconds, enteringProximity, pointingDeviceType);
+	}
+
+	/**
+	 * Called by the native side (on the AppKit thread). Only queues the event: the event is processed by the ingestion thread, not on the AWT event dispatch thread. No objects are allocated here.
+	 * Note that proximity events are not generated when switching between the mouse and tablet.
+	 */
+	protected void postEvent(
+	  int type,
+	  double eventTimeSeconds,
+	  int cocoaModifierFlags,
+	  float screenX, float screenY,
+	  boolean tabletEvent,
+	  int absoluteX, int absoluteY,  int absoluteZ,
+	  int buttonMask,
+	  float pressure, float rotation,
+	  float tiltX, float tiltY,
+	  float tangentialPressure
+	) {
+		queue.offerPoint(type, eventTimeSeconds, tabletEvent, screenX, screenY, pressure, rotation, tiltX, tiltY, tangentialPressure);
+	}
+
+	private void startIngestion() {
+		ingesting=true;
+		ingestionThread=PenRuntime.newThread("jpen-CocoaAccess-ingestion", new IngestionRunnable());
+		ingestionThread.setPriority(Thread.MAX_PRIORITY);
+		ingestionThread.start();
+	}
+
+	private void stopIngestion() {
+		ingesting=false;
+		CocoaEventQueue.wakeUp(ingestionThread);
+		ThreadUtils.joinUninterrupted(ingestionThread);
+		ingestionThread=null;
+	}
+
+	/**
+	Drains the {@link CocoaEventQueue} into the {@link jpen.PenManager}.
+	*/
+	private final class IngestionRunnable
+		implements Runnable, CocoaEventQueue.Handler {
+		private int droppedCount;
+
+		//@Override
+		public void run() {
+			try {
+				while(ingesting) {
+					if(queue.drain(this)==0)
+						queue.awaitEvents();
+					if(droppedCount!=queue.getDroppedCount()) {
+						droppedCount=queue.getDroppedCount();
+						L.warning("events queue full, "+droppedCount+" events dropped so far");
+					}
+				}
+			} catch(RuntimeException ex) {
+				L.severe("jpen-CocoaAccess-ingestion thread threw an exception: "+ThrowableUtils.evalStackTraceString(ex));
+			}
+		}
+
+		//@Override
+		public void point(int type, double eventTimeSeconds, boolean tabletEvent, float[] floats, int floatsOffset) {
+			processEvent(type, eventTimeSeconds, tabletEvent, floats, floatsOffset);
+		}
+
+		//@Override
+		public void proximity(double eventTimeSeconds, boolean enteringProximity, int pointingDeviceType) {
+			processProximityEvent(eventTimeSeconds, enteringProximity, pointingDeviceType);
+		}
+	}
+
+	private void processProximityEvent(double eventTimeSeconds, boolean enteringProximity, int pointingDeviceType) {
+		if (!enteringProximity && device != null)
+			cocoaProvider.getPenManager().firePenProximity(device, false);
 
 		if (enteringProximity) {
 			switch (pointingDeviceType) {
@@ -228,103 +311,73 @@ final class CocoaAccess {
 					device = cocoaProvider.getDevice(PKind.Type.CURSOR);
 					break;
 			}
+			cocoaProvider.getPenManager().firePenProximity(device, true);
 		} else {
 			device = cocoaProvider.getDevice(PKind.Type.CURSOR);
 		}
-		
-		// This works on my Intuos2:
-		if (vendorID == WACOM_VENDOR_ID) {
-			
-			// vendorPointingDeviceType seems to always be zero (even if I print out the value in Objective-C)
-//			switch (vendorPointingDeviceType & WACOM_POINTER_TYPE_MASK) {
-//				case WACOM_POINTER_TYPE_GENERAL_STYLUS:
-//				case WACOM_POINTER_TYPE_AIRBRUSH:
-//				case WACOM_POINTER_TYPE_GENERAL_MOUSE:
-//				case WACOM_POINTER_TYPE_PRO_MOUSE:
-//				case WACOM_POINTER_TYPE_ROTATION_STYLUS:
-//					break;
-//			}
+	}
+
 
+	private final Collection<PLevel> levels = new ArrayList<PLevel>(8);
+
+	private void processEvent(int type, double eventTimeSeconds, boolean tabletEvent, float[] floats, int floatsOffset) {
+		if (device == null) {
+			device = cocoaProvider.getDevice(PKind.Type.CURSOR);
 		}
-	}
 
+		// If we have a tablet event, don't use the cursor 
+		if (tabletEvent && device.getType() == PKind.Type.CURSOR) {
+			device = cocoaProvider.getDevice(PKind.Type.STYLUS);
+		}
 
-	private Collection<PLevel> levels = new ArrayList<PLevel>(8);
-	
-	/**
-	 * Note that proximity events are not generated when switching between the mouse and tablet.
-	 */
-	protected void postEvent(
-	  final int type,
-	  final double eventTimeSeconds,
-	  final int cocoaModifierFlags,
-	  final float screenX, final float screenY,
-	  final boolean tabletEvent,
-	  final int absoluteX, final int absoluteY,  final int absoluteZ,
-	  final int buttonMask,
-	  final float pressure, final float rotation,
-	  final float tiltX, final float tiltY,
-	  final float tangentialPressure
-	) {
-		// If we try to run this directly, we get a threadlock on AWT-AppKit... 
-		invokeOnEventThread(new Runnable() {
-			public void run() {
-				
-				if (device == null) {
-					device = cocoaProvider.getDevice(PKind.Type.CURSOR);
-				}
-				
-				// If we have a tablet event, don't use the cursor 
-				if (tabletEvent && device.getType() == PKind.Type.CURSOR) {
-					device = cocoaProvider.getDevice(PKind.Type.STYLUS);
-				}
-				
-				if(!device.getEnabled())
-					return;
-
-				long deviceTime = (long)(eventTimeSeconds*1000);
-				
-				switch (type) {
-					case NS_EVENT_TYPE_LeftMouseDown:
-						scheduleButtonEvent(deviceTime, PButton.Type.LEFT, true);
-						break;
-					case NS_EVENT_TYPE_LeftMouseUp:
-						scheduleButtonEvent(deviceTime, PButton.Type.LEFT, false);
-						break;
-					case NS_EVENT_TYPE_RightMouseDown:
-						scheduleButtonEvent(deviceTime, PButton.Type.RIGHT, true);
-						break;
-					case NS_EVENT_TYPE_RightMouseUp:
-						scheduleButtonEvent(deviceTime, PButton.Type.RIGHT, false);
-						break;
-					case NS_EVENT_TYPE_OtherMouseDown:
-						scheduleButtonEvent(deviceTime, PButton.Type.CENTER, true);
-						break;
-					case NS_EVENT_TYPE_OtherMouseUp:
-						scheduleButtonEvent(deviceTime, PButton.Type.CENTER, false);
-						break;
+		if(!device.getEnabled())
+			return;
+
+		long deviceTime = (long)(eventTimeSeconds*1000);
+
+		switch (type) {
+			case NS_EVENT_TYPE_LeftMouseDown:
+				scheduleButtonEvent(deviceTime, PButton.Type.LEFT, true);
+				break;
+			case NS_EVENT_TYPE_LeftMouseUp:
+				scheduleButtonEvent(deviceTime, PButton.Type.LEFT, false);
+				break;
+			case NS_EVENT_TYPE_RightMouseDown:
+				scheduleButtonEvent(deviceTime, PButton.Type.RIGHT, true);
+				break;
+			case NS_EVENT_TYPE_RightMouseUp:
+				scheduleButtonEvent(deviceTime, PButton.Type.RIGHT, false);
+				break;
+			case NS_EVENT_TYPE_OtherMouseDown:
+				scheduleButtonEvent(deviceTime, PButton.Type.CENTER, true);
+				break;
+			case NS_EVENT_TYPE_OtherMouseUp:
+				scheduleButtonEvent(deviceTime, PButton.Type.CENTER, false);
+				break;
 
-				}
+		}
 
-				levels.clear();
-								
-				levels.add(new PLevel(PLevel.Type.X, screenX));
-				levels.add(new PLevel(PLevel.Type.Y, screenY));
-				
-
-				// JPen expects tilt to be -pi/2 to pi/2 from vertical;
-				// Cocoa delivers tilt as -1 to 1 from vertical, see rant on TILT_TO_RADIANS up above...
-				levels.add(new PLevel(PLevel.Type.TILT_X, tiltX * TILT_TO_RADIANS));
-				// flip Y: Mac OS X reports positive Y when tilting toward the top of the tablet
-				levels.add(new PLevel(PLevel.Type.TILT_Y, -tiltY * TILT_TO_RADIANS));
-				
-				levels.add(new PLevel(PLevel.Type.PRESSURE, pressure));
-				levels.add(new PLevel(PLevel.Type.SIDE_PRESSURE, tangentialPressure));
-				// Cocoa tablet rotation is in degrees
-				levels.add(new PLevel(PLevel.Type.ROTATION, rotation*RADIANS_PER_DEGREE));
-				cocoaProvider.getPenManager().scheduleLevelEvent(device, deviceTime, levels, true);
-			}
-		});
+		levels.clear();
+		Pen pen=device.getPen();
+
+		levels.add(new PLevel(PLevel.Type.X, floats[floatsOffset+CocoaEventQueue.SCREEN_X]));
+		levels.add(new PLevel(PLevel.Type.Y, floats[floatsOffset+CocoaEventQueue.SCREEN_Y]));
+
+		// JPen expects tilt to be -pi/2 to pi/2 from vertical;
+		// Cocoa delivers tilt as -1 to 1 from vertical, see rant on TILT_TO_RADIANS up above...
+		if(pen.isLevelTypeListened(PLevel.Type.TILT_X))
+			levels.add(new PLevel(PLevel.Type.TILT_X, floats[floatsOffset+CocoaEventQueue.TILT_X] * TILT_TO_RADIANS));
+		// flip Y: Mac OS X reports positive Y when tilting toward the top of the tablet
+		if(pen.isLevelTypeListened(PLevel.Type.TILT_Y))
+			levels.add(new PLevel(PLevel.Type.TILT_Y, -floats[floatsOffset+CocoaEventQueue.TILT_Y] * TILT_TO_RADIANS));
+
+		levels.add(new PLevel(PLevel.Type.PRESSURE, floats[floatsOffset+CocoaEventQueue.PRESSURE]));
+		if(pen.isLevelTypeListened(PLevel.Type.SIDE_PRESSURE))
+			levels.add(new PLevel(PLevel.Type.SIDE_PRESSURE, floats[floatsOffset+CocoaEventQueue.TANGENTIAL_PRESSURE]));
+		// Cocoa tablet rotation is in degrees
+		if(pen.isLevelTypeListened(PLevel.Type.ROTATION))
+			levels.add(new PLevel(PLevel.Type.ROTATION, floats[floatsOffset+CocoaEventQueue.ROTATION]*RADIANS_PER_DEGREE));
+		cocoaProvider.getPenManager().scheduleLevelEvent(device, deviceTime, levels, true);
 	}
 	protected void postScrollEvent(
 			  double eventTimeSeconds,
@@ -360,14 +413,6 @@ final class CocoaAccess {
 		
 	}
 	
-	protected void invokeOnEventThread(Runnable r) {
-		if (SwingUtilities.isEventDispatchThread()) {
-			r.run();
-		} else {
-			SwingUtilities.invokeLater(r);
-		}
-	}
-
 	private void scheduleButtonEvent(long deviceTime, PButton.Type type, boolean pressed) {
 		cocoaProvider.getPenManager().scheduleButtonEvent(device, deviceTime, new PButton(type.ordinal(),pressed));
 	}
@@ -0,0 +1,181 @@
+/* [{
+Copyright 2007, 2008 Nicolas Carranza <nicarran at gmail.com>
+
+This file is part of jpen.
+
+jpen is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License,
+or (at your option) any later version.
+
+jpen is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with jpen.  If not, see <http://www.gnu.org/licenses/>.
+}] */
+package jpen.provider.osx;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+Preallocated single-producer single-consumer ring of the Cocoa events: {@link CocoaAccess#postEvent} and {@link CocoaAccess#postProximityEvent} (called by the native side on the AppKit thread) write the event values on the slots without locking nor allocating, and the ingestion thread reads them in order.<p>
+
+The slots are published by the volatile {@link #head} write and released by the volatile {@link #tail} write. When the ring is full the new events are dropped (the producer must not block the AppKit thread). The last {@link #PROXIMITY_RESERVE} slots are reserved to the proximity events: the points are dropped first, the tool in proximity stays right after a stall.
+*/
+final class CocoaEventQueue{
+	static final int KIND_POINT=0, KIND_PROXIMITY=1;
+
+	//v float values of each slot:
+	static final int SCREEN_X=0, SCREEN_Y=1, PRESSURE=2, ROTATION=3, TILT_X=4, TILT_Y=5, TANGENTIAL_PRESSURE=6;
+	private static final int FLOATS_SIZE=7;
+	//^
+
+	/**
+	Number of slots which only the proximity events can use.
+	*/
+	static final int PROXIMITY_RESERVE=8;
+
+	private final int capacity;
+	private final int mask;
+	//v slots:
+	private final int[] kinds;
+	private final int[] types; // the NSEvent type of a point, the pointing device type of a proximity event
+	private final boolean[] flags; // tabletEvent of a point, enteringProximity of a proximity event
+	private final double[] timesSeconds;
+	private final float[] floats;
+	//^
+	private volatile long head; // next slot to write, written only by the producer
+	private volatile long tail; // next slot to read, written only by the consumer
+	private volatile Thread parkedConsumer;
+	private volatile int droppedCount;
+
+	/**
+	@param capacity a power of two greater than {@link #PROXIMITY_RESERVE}.
+	*/
+	CocoaEventQueue(int capacity){
+		if(capacity<=PROXIMITY_RESERVE || (capacity&(capacity-1))!=0)
+			throw new IllegalArgumentException("capacity must be a power of two greater than "+PROXIMITY_RESERVE);
+		this.capacity=capacity;
+		this.mask=capacity-1;
+		kinds=new int[capacity];
+		types=new int[capacity];
+		flags=new boolean[capacity];
+		timesSeconds=new double[capacity];
+		floats=new float[capacity*FLOATS_SIZE];
+	}
+
+	/**
+	Producer side.
+
+	@return {@code false} if the ring is full up to the {@link #PROXIMITY_RESERVE}: the event is dropped.
+	*/
+	boolean offerPoint(int type, double eventTimeSeconds, boolean tabletEvent, float screenX, float screenY, float pressure, float rotation, float tiltX, float tiltY, float tangentialPressure){
+		long head=this.head;
+		if(head-tail>=capacity-PROXIMITY_RESERVE){
+			droppedCount++;
+			return false;
+		}
+		int slot=(int)head&mask;
+		kinds[slot]=KIND_POINT;
+		types[slot]=type;
+		flags[slot]=tabletEvent;
+		timesSeconds[slot]=eventTimeSeconds;
+		int floatsOffset=slot*FLOATS_SIZE;
+		floats[floatsOffset+SCREEN_X]=screenX;
+		floats[floatsOffset+SCREEN_Y]=screenY;
+		floats[floatsOffset+PRESSURE]=pressure;
+		floats[floatsOffset+ROTATION]=rotation;
+		floats[floatsOffset+TILT_X]=tiltX;
+		floats[floatsOffset+TILT_Y]=tiltY;
+		floats[floatsOffset+TANGENTIAL_PRESSURE]=tangentialPressure;
+		publish(head);
+		return true;
+	}
+
+	/**
+	Producer side.
+
+	@return {@code false} if the ring is full (the reserved slots too): the event is dropped.
+	*/
+	boolean offerProximity(double eventTimeSeconds, boolean enteringProximity, int pointingDeviceType){
+		long head=this.head;
+		if(head-tail==capacity){
+			droppedCount++;
+			return false;
+		}
+		int slot=(int)head&mask;
+		kinds[slot]=KIND_PROXIMITY;
+		types[slot]=pointingDeviceType;
+		flags[slot]=enteringProximity;
+		timesSeconds[slot]=eventTimeSeconds;
+		publish(head);
+		return true;
+	}
+
+	private void publish(long head){
+		this.head=head+1;
+		Thread parkedConsumer=this.parkedConsumer;
+		if(parkedConsumer!=null)
+			LockSupport.unpark(parkedConsumer);
+	}
+
+	/**
+	Consumer side: reads the events from the ring.
+	*/
+	interface Handler{
+		void point(int type, double eventTimeSeconds, boolean tabletEvent, float[] floats, int floatsOffset);
+		void proximity(double eventTimeSeconds, boolean enteringProximity, int pointingDeviceType);
+	}
+
+	/**
+	Consumer side: hands all the available events to the given handler, in order.
+
+	@return the number of events handled.
+	*/
+	int drain(Handler handler){
+		long tail=this.tail;
+		long head=this.head;
+		int size=0;
+		for(; tail!=head; tail++, size++){
+			int slot=(int)tail&mask;
+			if(kinds[slot]==KIND_POINT)
+				handler.point(types[slot], timesSeconds[slot], flags[slot], floats, slot*FLOATS_SIZE);
+			else
+				handler.proximity(timesSeconds[slot], flags[slot], types[slot]);
+			this.tail=tail+1; // the slot can be reused by the producer
+		}
+		return size;
+	}
+
+	/**
+	Consumer side: parks the calling thread until an event is available or {@link #wakeUp(Thread)} is called.
+	*/
+	void awaitEvents(){
+		Thread currentThread=Thread.currentThread();
+		parkedConsumer=currentThread;
+		if(head==tail)
+			LockSupport.park();
+		parkedConsumer=null;
+	}
+
+	/**
+	Makes {@link #awaitEvents()} return.
+	*/
+	static void wakeUp(Thread consumer){
+		LockSupport.unpark(consumer);
+	}
+
+	boolean isEmpty(){
+		return head==tail;
+	}
+
+	/**
+	@return the number of events dropped because the ring was full.
+	*/
+	int getDroppedCount(){
+		return droppedCount;
+	}
+}
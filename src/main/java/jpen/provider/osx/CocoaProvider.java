@@ -99,7 +99,20 @@ public class CocoaProvider extends AbstractPenProvider {
 	}
 
 
-	public void dispose() {
+	/**
+	Shuts down the Cocoa event monitoring. The native side holds a global reference to the {@link CocoaAccess} while started, so it is only released by this method (not by garbage collection).
+	*/
+	@Override
+	public void close() {
 		cocoaAccess.stop();
+		super.close();
+	}
+
+	/**
+	@deprecated use {@link #close()}.
+	*/
+	@Deprecated
+	public void dispose() {
+		close();
 	}
 }
\ No newline at end of file
@@ -65,6 +65,11 @@ final class KeyboardDevice
 		}
 	}
 
+	@Override
+	public void close(){
+		setEnabled(false);
+	}
+
 	@Override
 	public boolean getUseFractionalMovements(){
 		return false;
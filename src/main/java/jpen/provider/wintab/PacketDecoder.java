@@ -0,0 +1,102 @@
+/* [{
+Copyright 2007, 2008 Nicolas Carranza <nicarran at gmail.com>
+
+This file is part of jpen.
+
+jpen is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License,
+or (at your option) any later version.
+
+jpen is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with jpen.  If not, see <http://www.gnu.org/licenses/>.
+}] */
+package jpen.provider.wintab;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+Decodes the Wintab packets written by {@link WintabAccess#fillPackets(ByteBuffer)}. Pure Java: it can be fed with synthetic packet bytes.<p>
+
+The layout is the PACKET struct generated by PKTDEF.H for the PACKETDATA of Access.h ({@code PK_STATUS | PK_TIME | PK_CURSOR | PK_BUTTONS | PK_X | PK_Y | PK_NORMAL_PRESSURE | PK_TANGENT_PRESSURE | PK_ORIENTATION}): 4 byte little endian fields in the PKTDEF.H order, no padding. {@link WintabProvider} checks it against {@link WintabAccess#getPacketSize()}.
+*/
+final class PacketDecoder
+	implements WintabPacket{
+
+	static final int STATUS=0, // UINT
+		TIME=4, // DWORD
+		CURSOR=8, // UINT
+		BUTTONS=12, // DWORD
+		X=16, // LONG
+		Y=20, // LONG
+		NORMAL_PRESSURE=24, // UINT
+		TANGENT_PRESSURE=28, // UINT
+		ORIENTATION_AZIMUTH=32, // int
+		ORIENTATION_ALTITUDE=36, // int
+		ORIENTATION_TWIST=40, // int
+		PACKET_SIZE=44;
+
+	/**
+	Byte offset of each value by {@code WintabAccess.LEVEL_TYPE_*}.
+	*/
+	private static final int[] VALUE_OFFSETS={X, Y, NORMAL_PRESSURE, ORIENTATION_AZIMUTH, ORIENTATION_ALTITUDE, TANGENT_PRESSURE, ORIENTATION_TWIST};
+
+	final ByteBuffer packets;
+	private int offset;
+
+	/**
+	@param capacity in packets.
+	*/
+	PacketDecoder(int capacity){
+		this(ByteBuffer.allocateDirect(capacity*PACKET_SIZE));
+	}
+
+	PacketDecoder(ByteBuffer packets){
+		this.packets=packets.order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	int getCapacity(){
+		return packets.capacity()/PACKET_SIZE;
+	}
+
+	/**
+	Selects the packet decoded by the {@code get...} methods.
+	*/
+	void setIndex(int index){
+		offset=index*PACKET_SIZE;
+	}
+
+	//@Override
+	public int getStatus(){
+		return packets.getInt(offset+STATUS);
+	}
+
+	/**
+	Signed, as the native {@link WintabAccess#getTime()}.
+	*/
+	//@Override
+	public long getTime(){
+		return packets.getInt(offset+TIME);
+	}
+
+	//@Override
+	public int getCursor(){
+		return packets.getInt(offset+CURSOR);
+	}
+
+	//@Override
+	public int getButtons(){
+		return packets.getInt(offset+BUTTONS);
+	}
+
+	//@Override
+	public int getValue(int valueIndex){
+		return packets.getInt(offset+VALUE_OFFSETS[valueIndex]);
+	}
+}
@@ -19,13 +19,16 @@ along with jpen.  If not, see <http://www.gnu.org/licenses/>.
 }] */
 package jpen.provider.wintab;
 
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import jpen.PLevel;
+import jpen.internal.Cleaner;
 import jpen.internal.Range;
 
-final class WintabAccess {
+final class WintabAccess
+	implements WintabPacket {
 	private static final Object LOCK=new Object();
 
 	/**
@@ -36,6 +39,23 @@ final class WintabAccess {
 	                      }
 
 	private final int cellIndex;
+	private final Cleaner.Cleanable cleanable;
+
+	private static final class Destroyer
+		implements Runnable {
+		private final int cellIndex;
+
+		Destroyer(int cellIndex){
+			this.cellIndex=cellIndex;
+		}
+
+		//@Override
+		public void run(){
+			synchronized(LOCK){
+				destroy(cellIndex);
+			}
+		}
+	}
 	
 	public WintabAccess() throws Exception {
 		synchronized(LOCK){
@@ -43,6 +63,7 @@ final class WintabAccess {
 			if(cellIndex==-1)
 				throw new Exception(getError());
 		}
+		cleanable=Cleaner.register(this, new Destroyer(cellIndex));
 	}
 
 	private static native int create();
@@ -95,6 +116,7 @@ final class WintabAccess {
 	public int getValue(PLevel.Type levelType) {
 		return getValue(getLevelTypeValueIndex(levelType));
 	}
+	//@Override
 	public int getValue(int type) {
 		synchronized(LOCK){
 			// tilt data is really azimuth and altitude and must be transformed!
@@ -113,6 +135,30 @@ final class WintabAccess {
 
 	private static native boolean nextPacket(int cellIndex);
 
+	/**
+	Bulk version of {@link #nextPacket()}: writes the pending packets on the given direct buffer (see {@link PacketDecoder}) using one native call. The last packet written becomes the current packet.
+
+	Must be called only if {@link #getPacketSize()} is {@link PacketDecoder#PACKET_SIZE}.
+
+	@return the number of packets written, at most {@code packets.capacity()/PacketDecoder.PACKET_SIZE}.
+	*/
+	public int fillPackets(ByteBuffer packets) {
+		int size;
+		synchronized(LOCK){
+			size=fillPackets(cellIndex, packets, packets.capacity()/PacketDecoder.PACKET_SIZE);
+		}
+		if(size<0)
+			throw new IllegalArgumentException("packets buffer is not direct");
+		return size;
+	}
+
+	private static native int fillPackets(int cellIndex, ByteBuffer packets, int capacity);
+
+	/**
+	@return the size in bytes of the native PACKET struct.
+	*/
+	public static native int getPacketSize();
+
 
 	public boolean getEnabled() {
 		synchronized(LOCK){
@@ -161,6 +207,7 @@ final class WintabAccess {
 	 */
 	private static native int[] getLevelRange(int cellIndex, int valueIndex);
 
+	//@Override
 	public int getCursor() {
 		synchronized(LOCK){
 			return getCursor(cellIndex);
@@ -169,6 +216,7 @@ final class WintabAccess {
 
 	private static native int getCursor(int cellIndex);
 
+	//@Override
 	public long getTime(){
 		synchronized(LOCK){
 			return getTime(cellIndex);
@@ -177,6 +225,7 @@ final class WintabAccess {
 
 	private static native long getTime(int cellIndex);
 
+	//@Override
 	public int getButtons() {
 		synchronized(LOCK){
 			return getButtons(cellIndex);
@@ -221,17 +270,16 @@ final class WintabAccess {
 	public static native String[] getButtonNames(int cursor);
 	public static native int getCapabilityMask(int cursor);
 	
-	@Override
-	protected void finalize() throws Throwable {
-		synchronized(LOCK){
-			if(cellIndex!=-1)
-				destroy(cellIndex);
-		}
-		super.finalize();
+	/**
+	Closes the Wintab context and destroys the native cell. This {@code WintabAccess} is not usable after calling this method.
+	*/
+	public void close(){
+		cleanable.clean();
 	}
 
 	private static native int destroy(int cellIndex);
 
+	//@Override
 	public int getStatus(){
 		synchronized(LOCK){
 			return getStatus(cellIndex);
@@ -37,6 +37,8 @@ import jpen.PKind;
 import jpen.PLevel;
 import jpen.PLevelEvent;
 import jpen.provider.AbstractPenDevice;
+import jpen.provider.DeviceDescriptor;
+import jpen.internal.Range;
 import static java.lang.Math.*;
 
 @SuppressWarnings("deprecation")
@@ -55,12 +57,20 @@ class WintabDevice
 	private final Point2D.Float componentLocation=new Point2D.Float();
 	private final Dimension componentSize=new Dimension();
 	private boolean useFractionalMovement=true;
+	/**
+	The Wintab ranges, by {@link PLevel.Type} ordinal.
+	*/
+	private final Range[] levelRanges;
 
 	WintabDevice(WintabProvider wintabProvider, int cursor) {
 		super(wintabProvider);
 		L.fine("start");
 		this.wintabProvider=wintabProvider;
 		this.cursor=cursor;
+		levelRanges=new Range[PLevel.Type.VALUES.size()];
+		for(int i=levelRanges.length; --i>=0;)
+			levelRanges[i]=wintabProvider.getLevelRange(PLevel.Type.VALUES.get(i));
+		setDescriptor(new DeviceDescriptor(WintabAccess.getCursorName(cursor).trim(), evalPhysicalId(), true, levelRanges));
 		setKindTypeNumber(getDefaultKindTypeNumber());
 		setEnabled(true);
 		L.fine("end");
@@ -106,18 +116,21 @@ class WintabDevice
 		}
 	}
 
+	/**
+	Read from the {@link #getDescriptor()}: it does not call native code.
+	*/
 	public String getName() {
-		return WintabAccess.getCursorName(cursor).trim();
+		return getDescriptor().getName();
 	}
 
-	void scheduleEvents() {
+	void scheduleEvents(WintabPacket packet) {
 		if(!getEnabled()) {
 			L.fine("disabled");
 			return;
 		}
 		//if(L.isLoggable(Level.FINE))
 		//L.fine(wintabProvider.wintabAccess.toString());
-		scheduleLevelEvent();
+		scheduleLevelEvent(packet);
 		// scheduleButtonEvents(); nicarran:  TODO use this to support extra buttons?
 	}
 
@@ -141,13 +154,25 @@ class WintabDevice
 	*/
 
 	private final List<PLevel> changedLevels=new ArrayList<PLevel>();
-	private void scheduleLevelEvent() {
+	private final float[] screenXY=new float[2];
+	private void scheduleLevelEvent(WintabPacket packet) {
+		Pen pen=getPen();
+		wintabProvider.screenBounds.getLayout().map(
+			getRangedValue(packet, PLevel.Type.X),
+			1f-getRangedValue(packet, PLevel.Type.Y),
+			screenXY);
 		for(int i=PLevel.Type.VALUES.size(); --i>=0;) {
 			PLevel.Type levelType=PLevel.Type.VALUES.get(i);
-			float value=getMultRangedValue(levelType);
+			if(!pen.isLevelTypeListened(levelType))
+				continue; // avoids the native getValue calls and the tilt trigonometry
+			if(PLevel.Type.MOVEMENT_TYPES.contains(levelType)) { // X and Y are mapped together: the screen depends on both
+				changedLevels.add(new PLevel(levelType, screenXY[levelType.ordinal()]));
+				continue;
+			}
+			float value=getMultRangedValue(packet, levelType);
 			changedLevels.add(new PLevel(levelType, value));
 		}
-		getPenManager().scheduleLevelEvent(this, wintabProvider.wintabAccess.getTime(), changedLevels, true);
+		getPenManager().scheduleLevelEvent(this, packet.getTime(), changedLevels, true);
 		changedLevels.clear();
 	}
 
@@ -155,12 +180,23 @@ class WintabDevice
 	private static final double PI_over_2=Math.PI/2;
 	private static final double PI_over_2_over_900=PI_over_2/900; // (/10) and (/90)
 
-	private float getMultRangedValue(PLevel.Type type) {
+	private float getMultRangedValue(WintabPacket packet, PLevel.Type type) {
+		return evalMultRangedValue(packet, type, levelRanges, getCorrectAzimuthRangeMax());
+	}
+
+	/**
+	Pure Java: it can be fed with a synthetic packet.
+
+	@param levelRanges the Wintab ranges, by {@link PLevel.Type} ordinal.
+	@param azimuthRangeMax the azimuth maximum corrected to 360deg (see {@link #evalCorrectAzimuthRangeMax(float)}).
+	@return the tilt converted from the altitude and azimuth of the packet, the rotation in radians or the ranged value of the given level type.
+	*/
+	static float evalMultRangedValue(WintabPacket packet, PLevel.Type type, Range[] levelRanges, float azimuthRangeMax) {
 		if(PLevel.Type.TILT_TYPES.contains(type)) {
-			double altitude=wintabProvider.wintabAccess.getValue(PLevel.Type.TILT_Y);
+			double altitude=packet.getValue(WintabAccess.getLevelTypeValueIndex(PLevel.Type.TILT_Y));
 			if(altitude<0)
 				altitude=-altitude; // when using the eraser the altitude is upside down.
-			double rangedAltitude=altitude/wintabProvider.getLevelRange(PLevel.Type.TILT_Y).max; // 0 (0deg) <= rangedAltitude <= 1 (90deg)
+			double rangedAltitude=altitude/levelRanges[PLevel.Type.TILT_Y.ordinal()].max; // 0 (0deg) <= rangedAltitude <= 1 (90deg)
 			if(rangedAltitude==1){ // optimization
 				if(PRINT_ALTITUDE_AND_AZIMUTH)
 					System.out.println("rangedAlt: 1");
@@ -168,8 +204,8 @@ class WintabDevice
 			}
 			double betha=rangedAltitude*PI_over_2; // see tiltOnWintab.xoj to understand the meaning of betha and theta
 			
-			double azimuth=wintabProvider.wintabAccess.getValue(PLevel.Type.TILT_X);
-			double rangedAzimuth=azimuth/getCorrectAzimuthRangeMax(); // 0 (0deg) <= rangedAzimuth < 1 (360deg)
+			double azimuth=packet.getValue(WintabAccess.getLevelTypeValueIndex(PLevel.Type.TILT_X));
+			double rangedAzimuth=azimuth/azimuthRangeMax; // 0 (0deg) <= rangedAzimuth < 1 (360deg)
 			double theta=rangedAzimuth*PI_2-PI_over_2;
 			
 			if(PRINT_ALTITUDE_AND_AZIMUTH)
@@ -185,15 +221,7 @@ class WintabDevice
 			}
 		}
 
-		float rangedValue=wintabProvider.getLevelRange(type).getRangedValue(
-					wintabProvider.wintabAccess.getValue(type));
-
-		if(PLevel.Type.MOVEMENT_TYPES.contains(type)){
-			if(type.equals(PLevel.Type.Y))
-				rangedValue=1f-rangedValue;
-			rangedValue=wintabProvider.screenBounds.getLevelRangeOffset(type)+
-									rangedValue*wintabProvider.screenBounds.getLevelRangeMult(type);
-		}
+		float rangedValue=evalRangedValue(packet, type, levelRanges[type.ordinal()]);
 
 		if(PLevel.Type.ROTATION.equals(type))
 			rangedValue*=PI_2;
@@ -201,18 +229,30 @@ class WintabDevice
 		return rangedValue;
 	}
 	
+	private float getRangedValue(WintabPacket packet, PLevel.Type type) {
+		return evalRangedValue(packet, type, wintabProvider.getLevelRange(type));
+	}
+
+	private static float evalRangedValue(WintabPacket packet, PLevel.Type type, Range range) {
+		return range.getRangedValue(packet.getValue(WintabAccess.getLevelTypeValueIndex(type)));
+	}
+
 	/**
 	The maximum value for the azimuth must be corrected to be the equivalent of 360deg. On Wacom Intuos the values is the corresponding Range.max but on other tablet it is assumed that the value could less than  360 (1 less than 360 given its resolution). So we simply add to the Range.max until we get a multiple of 360. See bug https://sourceforge.net/tracker/?func=detail&aid=3603044&group_id=209997&atid=1011964 . 
 	*/
 	private float getCorrectAzimuthRangeMax(){
 		if(correctAzimuthRangeMax!=-1)
 			return correctAzimuthRangeMax;
-		correctAzimuthRangeMax=wintabProvider.getLevelRange(PLevel.Type.TILT_X).max;
-		while(correctAzimuthRangeMax%360!=0)
-			correctAzimuthRangeMax++;
+		correctAzimuthRangeMax=evalCorrectAzimuthRangeMax(wintabProvider.getLevelRange(PLevel.Type.TILT_X).max);
 		//System.out.println("correctAzimuthRangeMax=" + ( correctAzimuthRangeMax ));
 		return correctAzimuthRangeMax;
 	}
+
+	static float evalCorrectAzimuthRangeMax(float azimuthRangeMax){
+		while(azimuthRangeMax%360!=0)
+			azimuthRangeMax++;
+		return azimuthRangeMax;
+	}
 	
 	private float correctAzimuthRangeMax=-1;
 }
\ No newline at end of file
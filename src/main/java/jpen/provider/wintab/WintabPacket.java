@@ -0,0 +1,33 @@
+/* [{
+Copyright 2007, 2008 Nicolas Carranza <nicarran at gmail.com>
+
+This file is part of jpen.
+
+jpen is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License,
+or (at your option) any later version.
+
+jpen is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with jpen.  If not, see <http://www.gnu.org/licenses/>.
+}] */
+package jpen.provider.wintab;
+
+/**
+The values of one Wintab packet, as used by {@link WintabDevice} to schedule the pen events. Implemented by {@link PacketDecoder} (bulk transfer, decoded in Java) and by {@link WintabAccess} (the current native packet, see {@link WintabAccess#nextPacket()}).
+*/
+interface WintabPacket{
+	int getStatus();
+	long getTime();
+	int getCursor();
+	int getButtons();
+	/**
+	@param valueIndex one of the {@code WintabAccess.LEVEL_TYPE_*} constants.
+	*/
+	int getValue(int valueIndex);
+}
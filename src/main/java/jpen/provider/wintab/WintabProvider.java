@@ -24,6 +24,7 @@ import java.awt.event.InputEvent;
 import java.awt.KeyboardFocusManager;
 import java.awt.Toolkit;
 import java.awt.Window;
+import java.io.File;
 import java.util.HashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -31,7 +32,9 @@ import java.util.Map;
 import jpen.internal.BuildInfo;
 import jpen.internal.ObjectUtils;
 import jpen.internal.Range;
+import jpen.internal.ThreadUtils;
 import jpen.PenManager;
+import jpen.PenRuntime;
 import jpen.PenProvider;
 import jpen.PLevel;
 import jpen.provider.AbstractPenProvider;
@@ -82,11 +85,25 @@ public class WintabProvider
 
 
 	public final WintabAccess wintabAccess;
+	/**
+	Maximum number of packets read on each native call. The Wintab queue size is set to 32 packets (see Access.c).
+	*/
+	private static final int PACKETS_CAPACITY=32;
+	/**
+	{@code null} if the native PACKET layout doesn't match the {@link PacketDecoder} one: then the packets are read one by one.
+	*/
+	private final PacketDecoder packetDecoder;
 	private final Map<Integer, WintabDevice> cursorToDevice=new HashMap<Integer, WintabDevice>();
 	private final Range[] levelRanges=new Range[PLevel.Type.VALUES.size()];
 	final VirtualScreenBounds screenBounds=VirtualScreenBounds.getInstance();
-	private final Thread thread;
+	private final MyThread thread;
 	private volatile boolean paused=true;
+	private volatile boolean idle;
+	private volatile boolean closed;
+	/**
+	While idle, the packet queue is checked with this period in case the pen comes back without AWT activity.
+	*/
+	private static final int IDLE_PERIOD=1000;
 	private boolean systemCursorEnabled=true; // by default the tablet device moves the system pointer (cursor)
 
 	public static class Constructor
@@ -97,7 +114,19 @@ public class WintabProvider
 		}
 		//@Override
 		public boolean constructable(PenManager penManager) {
-			return System.getProperty("os.name").toLowerCase().contains("windows");
+			return System.getProperty("os.name").toLowerCase().contains("windows") &&
+						 isWintabDriverInstalled();
+		}
+
+		/**
+		@return {@code false} if the {@code Wintab32.dll} installed by the tablet drivers is absent from the system directories: the native library loading is then skipped.
+		*/
+		private static boolean isWintabDriverInstalled(){
+			String systemRoot=System.getenv("SystemRoot");
+			if(systemRoot==null)
+				return true; // can't tell, try to load
+			return new File(systemRoot, "System32\\Wintab32.dll").exists() ||
+						 new File(systemRoot, "SysWOW64\\Wintab32.dll").exists();
 		}
 
 		@Override
@@ -122,8 +151,9 @@ public class WintabProvider
 	}
 
 	class MyThread
-		extends Thread implements AWTEventListener{
+		implements Runnable, AWTEventListener{
 
+		private final Thread thread=PenRuntime.newThread("jpen-WintabProvider", this);
 		private long scheduleTime;
 		private long awtEventTime;
 		private boolean waitingAwtEvent;
@@ -132,20 +162,26 @@ public class WintabProvider
 		private final Object awtLock=new Object();
 
 		{
-			setName("jpen-WintabProvider");
-			setDaemon(true);
-			setPriority(Thread.MAX_PRIORITY);
+			thread.setPriority(Thread.MAX_PRIORITY);
 			if(WAIT_AWT_ACTIVITY)
 				Toolkit.getDefaultToolkit().addAWTEventListener(this, ~0);
 		}
 
+		void start(){
+			thread.start();
+		}
+
+		void join(){
+			ThreadUtils.joinUninterrupted(thread);
+		}
+
 		public void run() {
 			try{
 				KeyboardFocusManager keyboardFocusManager=KeyboardFocusManager.getCurrentKeyboardFocusManager();
 				long processingTime;
 				long correctPeriod;
 				boolean waited=true;
-				while(true) {
+				while(!closed) {
 					processingTime=waited? System.currentTimeMillis(): scheduleTime;
 					schedule();
 					processingTime=scheduleTime-processingTime;
@@ -164,12 +200,17 @@ public class WintabProvider
 								waited=true;
 							}
 						}
-						while(paused){
+						while(paused && !closed){
 							L.fine("going to wait...");
 							wait();
 							L.fine("notified");
 							waited=true;
 						}
+						if(idle){
+							L.fine("idle, going to wait AWT activity...");
+							wait(IDLE_PERIOD);
+							waited=true;
+						}
 					}
 				}
 			}catch(InterruptedException ex){
@@ -188,7 +229,7 @@ public class WintabProvider
 				awtEventTime=System.currentTimeMillis();
 				if(inputEvent!=null)
 					inputEventModifiers=inputEvent.getModifiersEx();
-				if(!paused && waitingAwtEvent)
+				if(!paused && (waitingAwtEvent || idle))
 					notify();
 			}
 		}
@@ -198,6 +239,12 @@ public class WintabProvider
 		super(constructor);
 		L.fine("start");
 		this.wintabAccess=wintabAccess;
+		if(WintabAccess.getPacketSize()==PacketDecoder.PACKET_SIZE)
+			packetDecoder=new PacketDecoder(PACKETS_CAPACITY);
+		else{
+			L.warning("unexpected native packet size "+WintabAccess.getPacketSize()+", reading the packets one by one");
+			packetDecoder=null;
+		}
 
 		for(int i=PLevel.Type.VALUES.size(); --i>=0;){
 			PLevel.Type levelType=PLevel.Type.VALUES.get(i);
@@ -216,6 +263,17 @@ public class WintabProvider
 
 	private void processQueuedEvents() {
 		//L.finer("start");
+		if(packetDecoder!=null){
+			int size;
+			do{
+				size=wintabAccess.fillPackets(packetDecoder.packets); // one native call per drain
+				for(int i=0; i<size && !paused; i++){
+					packetDecoder.setIndex(i);
+					getDevice(packetDecoder.getCursor()).scheduleEvents(packetDecoder);
+				}
+			}while(size==PACKETS_CAPACITY && !paused);
+			return;
+		}
 		//boolean gotPacket=false;
 		while(wintabAccess.nextPacket() && !paused) {
 			//gotPacket=true;
@@ -224,7 +282,7 @@ public class WintabProvider
 				L.finer("device: ");
 				L.finer(device.getName());
 			}
-			device.scheduleEvents();
+			device.scheduleEvents(wintabAccess);
 		}
 		//System.out.println("gotPacket=" + ( gotPacket ));
 		//L.finer("end");
@@ -246,6 +304,25 @@ public class WintabProvider
 		setPaused(paused);
 	}
 
+	/**
+	Stops polling the Wintab packet queue while idle. The thread is waken up by AWT activity (the tablet moves the system cursor) and checks the packet queue each {@link #IDLE_PERIOD} millis, the first packet found ends the idle mode.
+	*/
+	@Override
+	public void penManagerIdle(boolean idle) {
+		if(this.idle==idle)
+			return;
+		this.idle=idle;
+		if(!WAIT_AWT_ACTIVITY) {
+			if(idle)
+				Toolkit.getDefaultToolkit().addAWTEventListener(thread, AWTEvent.MOUSE_MOTION_EVENT_MASK|AWTEvent.MOUSE_EVENT_MASK);
+			else
+				Toolkit.getDefaultToolkit().removeAWTEventListener(thread);
+		}
+		synchronized(thread) {
+			thread.notifyAll();
+		}
+	}
+
 	synchronized void setPaused(boolean paused) {
 		L.fine("start");
 		if(paused==this.paused)
@@ -253,7 +330,8 @@ public class WintabProvider
 		this.paused=paused;
 		if(!paused){
 			L.fine("false paused value");
-			screenBounds.reset();
+			screenBounds.getLayout(); // computed here, not on the input path
+			screenBounds.refresh(); // the display configuration may have changed while paused
 			synchronized(thread) {
 				L.fine("going to notify all...");
 				thread.notifyAll();
@@ -269,6 +347,25 @@ public class WintabProvider
 		return systemCursorEnabled;
 	}
 
+	/**
+	Stops the polling thread and closes the Wintab context.
+	*/
+	@Override
+	public void close(){
+		synchronized(this){
+			if(closed)
+				return;
+			closed=true;
+		}
+		Toolkit.getDefaultToolkit().removeAWTEventListener(thread);
+		synchronized(thread) {
+			thread.notifyAll();
+		}
+		thread.join();
+		super.close();
+		wintabAccess.close();
+	}
+
 	/**
 	@param systemCursorEnabled If {@code false} then tablet movement on Wintab devices doesn't cause movement on the system mouse pointer. {@code true} then tablet movement on Wintab devices cause movement on the system mouse pointer, this is the default value. 
 	*/
@@ -18,39 +18,75 @@ along with jpen.  If not, see <http://www.gnu.org/licenses/>.
 }] */
 package jpen.provider.xinput;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import jpen.PenManager;
+import jpen.internal.Cleaner;
 
 final class XiBus {
 	/**
-	To be thread-safe against the c/utils/macro.c-h framework we synchronize against {@code macrofLock} (private lock). To be thread-safe against the X-Server we synchronize against the XiBus instance (public lock):
-	<ul>
-	<li>The X server is not thread safe, requests must be made one at a time (per connection). Each XiBus instance holds one X server connection.
-	<li>The c/utils/macro.c-h framework is not thread safe, its functions must be serialized (per class-row).
-	</ul>
+	To be thread-safe against the X-Server we synchronize against the XiBus instance (public lock): the X server is not thread safe, requests must be made one at a time (per connection). Each XiBus instance holds one X server connection.<p>
 
-	Sometimes is needed to synchronize against the X-Server but not against the macro.c/f framework (1), sometimes is needed to synchronize against the macro.c/f framework alone (2), and sometimes is needed to synchronize against both (3). The locks must be acquired in this order: XiBus instance first (public lock), {@code macrofLock} later. Trying to hold XiBus instance lock after holding macrofLock will cause dead-locks.
+	The c/utils/macros.h cell rows are thread-safe and are not synchronized here: creating, destroying or grabbing a device on one bus does not block the other buses.
 	*/
-	static final Object macrofLock=new Object();
-
 	private final int cellIndex;
+	final Cell cell;
+	private final Cleaner.Cleanable cleanable;
 	private XiDevice xiDevice;
+	/**
+	All the {@link XiDevice}s created on this bus, by cell index. More than one in multiplexed mode (see {@link #addXiDevice(int)}).
+	*/
+	private final Map<Integer, XiDevice> cellIndexToXiDevice=new HashMap<Integer, XiDevice>();
+
+	/**
+	The bus native cell (holding the X server connection). It is destroyed when released by the {@code XiBus} and by each {@link XiDevice} created on it: the device cells use the X server connection when destroyed.
+	*/
+	static final class Cell
+		implements Runnable {
+		private final int cellIndex;
+		private int refCount=1;
+
+		Cell(int cellIndex){
+			this.cellIndex=cellIndex;
+		}
+
+		synchronized void retain(){
+			if(refCount==0)
+				throw new IllegalStateException("bus cell already destroyed");
+			refCount++;
+		}
+
+		void release(){
+			synchronized(this){
+				if(--refCount!=0)
+					return;
+			}
+			destroy(cellIndex);
+		}
+
+		//@Override
+		public void run(){
+			release();
+		}
+	}
 
 	public XiBus() throws Exception {
-		synchronized(macrofLock){
 		this.cellIndex=create();
 		if(cellIndex==-1)
 			throw new Exception(getError());
-		}
+		cell=new Cell(cellIndex);
+		cleanable=Cleaner.register(this, cell);
 	}
 
 	private static native int create();
 	private static native  String getError();
 
 	/**
-	This method does not use functions of the macro.c-h framework and does not use the X server connection, then it is safe to call outside the locks.
+	This method does not use the X server connection, then it is safe to call outside the lock.
 	*/
 	public static native int getNativeBuild();
 
@@ -61,40 +97,148 @@ final class XiBus {
 	private static native int getDevicesSize(int cellIndex);
 
 	public synchronized String getXiDeviceName(int xiDeviceIndex) {
-		//synchronized(macrofLock){ no macrof unsafe alive functions called
 		return getDeviceName(cellIndex, xiDeviceIndex);
-		//}
 	}
 
 	private static native String getDeviceName(int cellIndex, int xiDeviceIndex);
 
+	/**
+	@return the XID of the device at the given index. The XID identifies the device across the {@link #refreshXiDeviceInfo()} calls, the index does not.
+	*/
+	public synchronized int getXiDeviceId(int xiDeviceIndex) {
+		return getDeviceId(cellIndex, xiDeviceIndex);
+	}
+
+	private static native int getDeviceId(int cellIndex, int xiDeviceIndex);
+
+	/**
+	@return the index of the device having the given XID, {@code -1} if there is no such device.
+	*/
+	public synchronized int getXiDeviceIndex(int xiDeviceId) {
+		for(int i=getDevicesSize(cellIndex); --i>=0;)
+			if(getDeviceId(cellIndex, i)==xiDeviceId)
+				return i;
+		return -1;
+	}
+
 	public synchronized XiDevice getXiDevice() {
 		return xiDevice;
 	}
 
 	public synchronized void setXiDevice(int xiDeviceIndex) throws Exception {
-		synchronized(macrofLock){
 		if(xiDeviceIndex==-1) {
 			xiDevice=null;
 			return;
 		}
+		xiDevice=createXiDevice(xiDeviceIndex);
+	}
+
+	/**
+	Multiplexed mode: creates a new {@link XiDevice} on this bus (sharing its X server connection) without replacing the current {@link #getXiDevice()}. The events of all the devices created on this bus are read using {@link #waitNextEvent()}.
+	*/
+	public synchronized XiDevice addXiDevice(int xiDeviceIndex) throws Exception {
+		return createXiDevice(xiDeviceIndex);
+	}
+
+	private XiDevice createXiDevice(int xiDeviceIndex) throws Exception {
 		int xiDeviceCellIndex=setDevice(cellIndex, xiDeviceIndex);
 		if(xiDeviceCellIndex<0)
 			throw new Exception(getError());
-		xiDevice=new XiDevice(this, xiDeviceCellIndex, xiDeviceIndex);
-		}
+		XiDevice xiDevice=new XiDevice(this, xiDeviceCellIndex, xiDeviceIndex);
+		cellIndexToXiDevice.put(xiDeviceCellIndex, xiDevice);
+		return xiDevice;
+	}
+
+	/**
+	Called by {@link XiDevice#close()}.
+	*/
+	synchronized void removeXiDevice(XiDevice xiDevice){
+		cellIndexToXiDevice.remove(xiDevice.cellIndex);
+		if(this.xiDevice==xiDevice)
+			this.xiDevice=null;
+	}
+
+	/**
+	Waits the next event on the X server connection and routes it (by device XID) to the {@link XiDevice} created on this bus which generated it. The lock is held while waiting: use {@link #stopWaitingNextEvent()} to make it return.
+
+	@return the {@link XiDevice} which received the event (see its {@code getLastEvent...} methods), or {@code null} if the event was not a device event (e.g. {@link #stopWaitingNextEvent()} was called).
+	*/
+	public synchronized XiDevice waitNextEvent(){
+		int xiDeviceCellIndex=waitNextEvent(cellIndex);
+		return xiDeviceCellIndex<0? null: cellIndexToXiDevice.get(xiDeviceCellIndex);
+	}
+
+	private static native int waitNextEvent(int cellIndex);
+
+	/**
+	Layout of the event records written by {@link #fillEvents(ByteBuffer)}, in native byte order. Must correspond to the E_EventRecord enumeration of Device.h.
+	*/
+	static final int EVENT_RECORD_DEVICE_CELL_INDEX=0, // int
+		EVENT_RECORD_TYPE=4, // int, XiDevice.EventType ordinal
+		EVENT_RECORD_TIME=8, // long
+		EVENT_RECORD_BUTTON=16, // int
+		EVENT_RECORD_DEVICE_STATE=20, // int
+		EVENT_RECORD_VALUATORS=24, // int[EVENT_RECORD_VALUATORS_SIZE], indexed by PLevel.Type ordinal
+		EVENT_RECORD_VALUATORS_SIZE=6,
+		EVENT_RECORD_SIZE=EVENT_RECORD_VALUATORS+4*EVENT_RECORD_VALUATORS_SIZE;
+
+	/**
+	Bulk version of {@link #waitNextEvent()}: waits the next event and then routes all the already queued events (without blocking), writing one record of {@link #EVENT_RECORD_SIZE} bytes for each device event on the given direct {@code records} buffer. Takes one native call and one lock per batch instead of one per event and value.
+
+	@return the number of records written. {@code 0} if the first event was not a device event (e.g. {@link #stopWaitingNextEvent()} was called).
+	*/
+	public synchronized int fillEvents(ByteBuffer records){
+		int size=fillEvents(cellIndex, records, records.capacity()/EVENT_RECORD_SIZE);
+		if(size<0)
+			throw new IllegalArgumentException("records buffer is not direct");
+		return size;
+	}
+
+	private static native int fillEvents(int cellIndex, ByteBuffer records, int capacity);
+
+	/**
+	Forces {@link #waitNextEvent()} (or {@link #fillEvents(ByteBuffer)}) to return, or the next call if none is waiting. It writes on the wakeup pipe polled together with the X server connection: it doesn't use the connection and doesn't need the XiBus lock.
+	*/
+	public void stopWaitingNextEvent(){
+		stopWaitingNextEvent(cellIndex);
+	}
+
+	private static native void stopWaitingNextEvent(int cellIndex);
+
+	/**
+	Makes the X server notify this bus when an input device is added, removed, enabled or disabled (see {@link #waitDevicePresenceChange()}). The devices must not be created on this bus.
+
+	@throws Exception if the X server does not support the device presence notification (XInput 1.4).
+	*/
+	public synchronized void selectDevicePresence() throws Exception {
+		if(selectDevicePresence(cellIndex)!=0)
+			throw new Exception(getError());
+	}
+
+	private static native int selectDevicePresence(int cellIndex);
+
+	/**
+	Waits until the input devices change (see {@link #selectDevicePresence()}). The lock is held while waiting: use {@link #stopWaitingNextEvent()} to make it return.
+
+	@return {@code true} if the input devices changed, {@code false} if {@link #stopWaitingNextEvent()} was called. Call {@link #refreshXiDeviceInfo()} to get the new devices.
+	*/
+	public synchronized boolean waitDevicePresenceChange(){
+		return waitDevicePresenceChange(cellIndex);
 	}
 
+	private static native boolean waitDevicePresenceChange(int cellIndex);
+
 	/**
 	This method creates the new XiDevice cell.
 	*/
 	private static native int setDevice(int cellIndex, int deviceIndex);
 
+	/**
+	Refreshes the device information (the list returned by {@link #getXiDevicesSize()}, {@link #getXiDeviceId(int)}...). The devices created on this bus are not affected.
+	*/
 	public synchronized void refreshXiDeviceInfo(){
-		synchronized(macrofLock){
 		if(refreshDeviceInfo(cellIndex)!=0)
 			throw new IllegalStateException(getError());
-		}
 	}
 
 	private static native int refreshDeviceInfo(int cellIndex);
@@ -103,20 +247,20 @@ final class XiBus {
 	Prints the next X request serial number on std. out for debugging purposes.
 	*/
 	synchronized void printXNextRequestSerial(){
-		//synchronized(macrofLock){ no macrof unsafe functions called
 		printXNextRequestSerial(cellIndex);
-		//}
 	}
 
 	private static native void printXNextRequestSerial(int cellIndex);
 
-	@Override
-	protected synchronized void finalize() {
-		synchronized(macrofLock){
-		if(cellIndex!=-1)
-			destroy(cellIndex);
-		}
+	/**
+	Closes the {@link XiDevice}s created on this bus and releases the X server connection. This {@code XiBus} is not usable after calling this method.
+	*/
+	public synchronized void close(){
+		for(XiDevice xiDevice: cellIndexToXiDevice.values().toArray(new XiDevice[0]))
+			xiDevice.close();
+		cleanable.clean();
 	}
+
 	static native int destroy(int cellIndex);
 
 	@Override
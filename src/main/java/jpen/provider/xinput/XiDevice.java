@@ -25,6 +25,7 @@ import java.util.logging.Logger;
 import jpen.PenDevice;
 import jpen.PenManager;
 import jpen.PLevel;
+import jpen.internal.Cleaner;
 import jpen.internal.Range;
 import jpen.internal.ThreadUtils;
 
@@ -40,22 +41,50 @@ final class XiDevice {
 	final int cellIndex;
 	final XiBus xiBus;
 	final int xiDeviceIndex;
+	/**
+	The XID of the device. The {@link #xiDeviceIndex} is not valid after {@link XiBus#refreshXiDeviceInfo()}.
+	*/
+	final int id;
+	private final String name;
+	private final Cleaner.Cleanable cleanable;
+
+	/**
+	Destroys the device cell (ungrabbing and closing the X device) and releases the bus cell. It does not reference the {@code XiDevice} nor the {@link XiBus}, to let them be phantom reachable.
+	*/
+	private static final class Destroyer
+		implements Runnable {
+		private final int cellIndex;
+		private final XiBus.Cell busCell;
+
+		Destroyer(int cellIndex, XiBus.Cell busCell){
+			this.cellIndex=cellIndex;
+			this.busCell=busCell;
+		}
+
+		//@Override
+		public void run(){
+			destroy(cellIndex);
+			busCell.release();
+		}
+	}
 
 	XiDevice(XiBus xiBus, int cellIndex, int xiDeviceIndex) {
 		this.cellIndex=cellIndex;
 		this.xiBus=xiBus;
 		this.xiDeviceIndex=xiDeviceIndex;
+		this.id=xiBus.getXiDeviceId(xiDeviceIndex);
+		this.name=xiBus.getXiDeviceName(xiDeviceIndex);
+		xiBus.cell.retain();
+		this.cleanable=Cleaner.register(this, new Destroyer(cellIndex, xiBus.cell));
 	}
 
 	public String getName() {
-		return xiBus.getXiDeviceName(xiDeviceIndex);
+		return name;
 	}
 
 	public boolean getIsListening(){
 		synchronized(xiBus){
-			//synchronized(XiBus.macrofLock){ no macrof unsafe alive functions called
 			return getIsListening(cellIndex);
-			//}
 		}
 	}
 
@@ -63,33 +92,30 @@ final class XiDevice {
 
 	public void setIsListening(boolean isListening){
 		synchronized(xiBus){
-			synchronized(XiBus.macrofLock){
-				int attempts=0;
-				while(true){
-					// TODO: change setIsListening to return true on success to avoid doing a getIsListening... this requires a nativeVersion change.
-					setIsListening(cellIndex, isListening);
-					if(isListening && !getIsListening()){ // the device couldn't be grabbed
-						if(attempts++>20){
-							L.severe("the tablet device couldn't be grabbed");
-							break;
-						}
-						ThreadUtils.sleepUninterrupted(40);
-					}
-					else
+			int attempts=0;
+			while(true){
+				if(setIsListeningAndGet(cellIndex, isListening)!=isListening){ // the device couldn't be grabbed
+					if(attempts++>20){
+						L.severe("the tablet device couldn't be grabbed");
 						break;
+					}
+					ThreadUtils.sleepUninterrupted(40);
 				}
+				else
+					break;
 			}
 		}
 	}
 
-	private static native void setIsListening(int cellIndex, boolean isListening);
+	/**
+	@return the listening state after the call: one native call per grab attempt.
+	*/
+	private static native boolean setIsListeningAndGet(int cellIndex, boolean isListening);
 
 	public Range getLevelRange(PLevel.Type levelType) {
 		synchronized(xiBus){
-			//synchronized(XiBus.macrofLock){ no macrof unsafe alive functions called
 			int typeIndex=getLevelTypeValueIndex(levelType);
 			return new Range(getLevelRangeMin(cellIndex, typeIndex), getLevelRangeMax(cellIndex, typeIndex));
-			//}
 		}
 	}
 
@@ -101,9 +127,7 @@ final class XiDevice {
 
 	public int getValue(PLevel.Type levelType) {
 		synchronized(xiBus){
-			//synchronized(XiBus.macrofLock){ no macrof unsafe alive functions called
 			return getValue(cellIndex, getLevelTypeValueIndex(levelType));
-			//}
 		}
 	}
 
@@ -111,11 +135,9 @@ final class XiDevice {
 
 	public boolean nextEvent() {
 		synchronized(xiBus){
-			//synchronized(XiBus.macrofLock){ no macrof unsafe alive functions called
 			//if(xiBus.getXiDevice()!=this)
 			//throw new IllegalStateException("This device is not the xiBus owner.");
 			return nextEvent(cellIndex);
-			//}
 		}
 	}
 
@@ -123,30 +145,22 @@ final class XiDevice {
 
 	public boolean waitNextEvent(){
 		synchronized(xiBus){
-			//synchronized(XiBus.macrofLock){ no macrof unsafe alive functions called
 			return waitNextEvent(cellIndex);
-			//}
 		}
 	}
 
 	private static native boolean waitNextEvent(int cellIndex);
 
 	/**
-	This method opens its own X server connection, it must be synchronized against this XiDevice
+	Forces {@link #waitNextEvent()} to return. See {@link XiBus#stopWaitingNextEvent()}.
 	*/
-	public synchronized void stopWaitingNextEvent(){
-		//synchronized(XiBus.macrofLock){ no macrof unsafe alive functions called
-		stopWaitingNextEvent(cellIndex);
-		//}
+	public void stopWaitingNextEvent(){
+		xiBus.stopWaitingNextEvent();
 	}
 
-	private static native void stopWaitingNextEvent(int cellIndex);
-
 	public long getLastEventTime(){
 		synchronized(xiBus){
-			//synchronized(XiBus.macrofLock){ no macrof unsafe alive functions called
 			return getLastEventTime(cellIndex);
-			//}
 		}
 	}
 
@@ -154,12 +168,10 @@ final class XiDevice {
 
 	public EventType getLastEventType() {
 		synchronized(xiBus){
-			//synchronized(XiBus.macrofLock){ no macrof unsafe alive functions called
 			int lastEventTypeOrdinal=getLastEventType(cellIndex);
 			if(lastEventTypeOrdinal<0)
 				return null;
 			return EventType.VALUES.get(lastEventTypeOrdinal);
-			//}
 		}
 	}
 
@@ -167,9 +179,7 @@ final class XiDevice {
 
 	public int getLastEventButton() {
 		synchronized(xiBus){
-			//synchronized(XiBus.macrofLock){ no macrof unsafe alive functions called
 			return getLastEventButton(cellIndex);
-			//}
 		}
 	}
 
@@ -177,9 +187,7 @@ final class XiDevice {
 
 	public long getLastEventDeviceState(){
 		synchronized(xiBus){
-			//synchronized(XiBus.macrofLock){ no macrof unsafe alive functions called
 			return getLastEventDeviceState(cellIndex);
-			//}
 		}
 	}
 
@@ -187,9 +195,7 @@ final class XiDevice {
 
 	public boolean getLastEventProximity() {
 		synchronized(xiBus){
-			//synchronized(XiBus.macrofLock){ no macrof unsafe alive functions called
 			return getLastEventProximity(cellIndex);
-			//}
 		}
 	}
 
@@ -197,19 +203,36 @@ final class XiDevice {
 
 	public void refreshLevelRanges(){
 		synchronized(xiBus){
-			//synchronized(XiBus.macrofLock){ no macrof unsafe alive functions called
 			refreshLevelRanges(cellIndex);
-			//}
 		}
 	}
 
 	private static native void refreshLevelRanges(int cellIndex);
 
+	/**
+	Refreshes the valuator ranges and gets all of them using one native call.
+
+	@return the ranges by {@link PLevel.Type} ordinal. {@code null} for the level types having no valuator (the ordinals greater or equal than {@link XiBus#EVENT_RECORD_VALUATORS_SIZE}).
+	*/
+	public Range[] getRefreshedLevelRanges(){
+		int[] minMaxs;
+		synchronized(xiBus){
+			minMaxs=getRefreshedLevelRanges(cellIndex);
+		}
+		Range[] levelRanges=new Range[PLevel.Type.VALUES.size()];
+		for(int i=Math.min(levelRanges.length, minMaxs.length/2); --i>=0;)
+			levelRanges[i]=new Range(minMaxs[2*i], minMaxs[2*i+1]);
+		return levelRanges;
+	}
+
+	/**
+	@return {min, max} pairs by valuator.
+	*/
+	private static native int[] getRefreshedLevelRanges(int cellIndex);
+
 	public boolean getIsAbsoluteMode(){
 		synchronized(xiBus){
-			//synchronized(XiBus.macrofLock){ no macrof unsafe alive functions called
 			return getIsAbsoluteMode(cellIndex);
-			//}
 		}
 	}
 
@@ -218,7 +241,6 @@ final class XiDevice {
 	@Override
 	public String toString() {
 		synchronized(xiBus){
-			//synchronized(XiBus.macrofLock){ no macrof unsafe alive functions called
 			StringBuffer sb=new StringBuffer();
 			sb.append("{Device: name=");
 			sb.append(getName());
@@ -246,19 +268,19 @@ final class XiDevice {
 			sb.append(getLastEventProximity());
 			sb.append("}");
 			return sb.toString();
-			//}
 		}
 	}
 
-	@Override
-	protected void finalize() {
+	/**
+	Ungrabs and closes the X device and destroys its native cell. This {@code XiDevice} is not usable after calling this method.
+	*/
+	public void close(){
 		synchronized(xiBus){
-			synchronized(XiBus.macrofLock){
-				if(cellIndex!=-1)
-					destroy(cellIndex);
-			}
+			cleanable.clean();
+			xiBus.removeXiDevice(this);
 		}
 	}
+
 	private static native int destroy(int cellIndex);
 	private static native String getError();
 }
\ No newline at end of file
@@ -25,6 +25,7 @@ import java.awt.event.MouseListener;
 import java.awt.geom.Point2D;
 import java.awt.Point;
 import java.awt.Toolkit;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.logging.Level;
@@ -39,10 +40,10 @@ import jpen.PKind;
 import jpen.PLevel;
 import jpen.PLevelEvent;
 import jpen.provider.AbstractPenDevice;
+import jpen.provider.DeviceDescriptor;
 import jpen.provider.VirtualScreenBounds;
 import jpen.PScroll;
 import jpen.PScrollEvent;
-import jpen.internal.ObjectUtils;
 import jpen.internal.Range;
 import static jpen.provider.xinput.XiDevice.*;
 
@@ -51,104 +52,112 @@ final class XinputDevice extends AbstractPenDevice {
 	private static final Logger L=Logger.getLogger(XinputDevice.class.getName());
 	//static{L.setLevel(Level.ALL);}
 
-	private final XiDevice xiDevice;
-	private final Range[] levelRanges;
+	final XiDevice xiDevice;
 	private final XinputProvider xinputProvider;
 	private final Point2D.Float componentLocation=new Point2D.Float();
 	private final Dimension componentSize=new Dimension();
 	private final boolean isPad;
-	private final Thread thread;
+	/**
+	Reads the events of this device. Its lock guards the state of this device and the access to the X server connection.
+	*/
+	private final XinputReader reader;
 	private boolean isListening;
+	private boolean closed;
 
-	XinputDevice(XinputProvider xinputProvider, XiDevice xiDevice) {
+	XinputDevice(XinputProvider xinputProvider, XiDevice xiDevice, XinputReader reader) {
 		super(xinputProvider);
 		this.xiDevice=xiDevice;
 		this.xinputProvider=xinputProvider;
-		levelRanges=new Range[PLevel.Type.VALUES.size()];
-		resetLevelRanges();
+		this.reader=reader;
+		synchronized(reader){
+			reader.stopWaiting(); // the reader may be reading other devices (multiplexed mode)
+			refreshDescriptor();
+		}
 		isPad=getName().toLowerCase().contains(" pad");
 		setKindTypeNumber(getDefaultKindTypeNumber());
-		thread=new Thread("jpen-XinputDevice-"+getName()){
-					 @Override
-					 public void run(){
-						 while(true){
-							 while(!isWorking())
-								 ObjectUtils.synchronizedWait(this, 0);
-							 if(XinputDevice.this.xiDevice.waitNextEvent())
-								 processLastEvent();
-							 else {// then a call to xiDevice.stopWaitingNextEvent was made
-								 //System.out.println("stopWaitingNextEvent was called");
-								 synchronized(XinputDevice.this){ // try to aquire this lock to wait until the XinputDevice.this sync methods return
-								 }
-							 }
-						 }
-					 }
-				 };
-		thread.setPriority(Thread.MAX_PRIORITY);
-		thread.setDaemon(true);
-		thread.start();
+		reader.addDevice(this);
 		setEnabled(true);
 	}
 
-	private synchronized boolean isWorking(){
-		return getIsListening() && getEnabled();
+	boolean isWorking(){
+		synchronized(reader){
+			return !closed && isListening && getEnabled();
+		}
 	}
 
-	synchronized void  setIsListening(boolean isListening){
-		if(this.isListening==isListening)
-			return;
-		this.isListening=isListening;
-		xiDevice.stopWaitingNextEvent(); // xiDevice.waitNextEvent has the xiDevice sync lock. stopWaitingNextEvent force xiDevice.waitNextEvent to return and release the xiDevice lock.
-		xiDevice.setIsListening(isListening); // blocks until xiDevice.waitNextEvent() returns
-		synchronized(thread){
-			thread.notify();
+	/**
+	Ungrabs the device and releases its native resources. The X server connection is closed (and the reader thread stopped) when no other device uses it.
+	*/
+	@Override
+	public void close(){
+		synchronized(reader){
+			if(closed)
+				return;
+			closed=true;
 		}
+		reader.removeDevice(this, xiDevice);
 	}
 
-	private synchronized boolean getIsListening(){
-		return isListening;
+	void setIsListening(boolean isListening){
+		synchronized(reader){
+			if(this.isListening==isListening)
+				return;
+			this.isListening=isListening;
+			reader.stopWaiting(); // the reader holds the X server connection while waiting the next event.
+			xiDevice.setIsListening(isListening); // blocks until the reader releases the X server connection
+			reader.stateChanged();
+		}
 	}
 
 	@Override
-	public synchronized void setEnabled(boolean enabled){
-		if(getEnabled()==enabled)
-			return;
-		super.setEnabled(enabled);
-		synchronized(thread){
-			thread.notify();
+	public void setEnabled(boolean enabled){
+		synchronized(reader){
+			if(getEnabled()==enabled)
+				return;
+			super.setEnabled(enabled);
+			reader.stateChanged();
 		}
 	}
 
 	@Override
-	public synchronized boolean getEnabled(){
-		return super.getEnabled();
+	public boolean getEnabled(){
+		synchronized(reader){
+			return super.getEnabled();
+		}
 	}
 
 
+	/**
+	Read from the {@link #getDescriptor()}: it does not interrupt the reader.
+	*/
 	//@Override
-	public synchronized String getName() {
-		xiDevice.stopWaitingNextEvent();
-		return xiDevice.getName();
+	public String getName() {
+		return getDescriptor().getName();
 	}
 
-	public synchronized boolean getIsAbsoluteMode(){
-		xiDevice.stopWaitingNextEvent();
-		return xiDevice.getIsAbsoluteMode();
+	/**
+	Read from the {@link #getDescriptor()}: it does not interrupt the reader.
+	*/
+	public boolean getIsAbsoluteMode(){
+		return getDescriptor().getIsAbsoluteMode();
 	}
 
-	synchronized void reset(){
-		xiDevice.stopWaitingNextEvent();
-		while(xiDevice.nextEvent()) // flush pending events
-			;
-		resetLevelRanges();
+	void reset(){
+		synchronized(reader){
+			reader.stopWaiting();
+			while(xiDevice.nextEvent()) // flush pending events
+				;
+			refreshDescriptor();
+		}
 	}
 
-	private void resetLevelRanges(){
-		xiDevice.refreshLevelRanges();
-		for(int i=PLevel.Type.VALUES.size(); --i>=0; ){
-			PLevel.Type levelType=PLevel.Type.VALUES.get(i);
-			levelRanges[levelType.ordinal()]=xiDevice.getLevelRange(levelType);
-		}
+	/**
+	Must be called holding the reader lock, after stopping the reader.
+	*/
+	private void refreshDescriptor(){
+		Range[] levelRanges=xiDevice.getRefreshedLevelRanges(); // refreshes the absolute mode too
+		String name=xiDevice.getName();
+		setDescriptor(new DeviceDescriptor(name, evalPhysicalId(name), xiDevice.getIsAbsoluteMode(), levelRanges));
 	}
 
 	private int getDefaultKindTypeNumber() {
@@ -159,48 +168,73 @@ final class XinputDevice extends AbstractPenDevice {
 			return PKind.Type.ERASER.ordinal();
 		if(lowerCaseName.contains("cursor"))
 			return PKind.Type.CURSOR.ordinal();
-		Range pressureRange=levelRanges[PLevel.Type.PRESSURE.ordinal()];
+		Range pressureRange=getDescriptor().getLevelRange(PLevel.Type.PRESSURE);
 		return pressureRange.max-pressureRange.min>1?
 				 PKind.Type.STYLUS.ordinal():
 				 PKind.Type.CURSOR.ordinal();
 	}
 
-	private void processLastEvent(){
-		EventType eventType=xiDevice.getLastEventType();
+	/**
+	Processes the event record written by {@link XiBus#fillEvents(ByteBuffer)} at the given {@code offset}.
+	*/
+	void processEventRecord(ByteBuffer records, int offset){
+		EventType eventType=EventType.VALUES.get(records.getInt(offset+XiBus.EVENT_RECORD_TYPE));
 		switch(eventType) {
 			/* nicarran: TODO: support buttons?
 			case BUTTON_PRESS:
-				//scheduleButtonEvent(xiDevice.getLastEventButton(), true); 
+				//scheduleButtonEvent(records.getLong(offset+XiBus.EVENT_RECORD_TIME), records.getInt(offset+XiBus.EVENT_RECORD_BUTTON), true); 
 				break;
 			case BUTTON_RELEASE:
-				//scheduleButtonEvent(xiDevice.getLastEventButton(), false);
+				//scheduleButtonEvent(records.getLong(offset+XiBus.EVENT_RECORD_TIME), records.getInt(offset+XiBus.EVENT_RECORD_BUTTON), false);
 				break;
 			*/
 		case MOTION_NOTIFY:
-			scheduleLevelEvent();
+			scheduleLevelEvent(records, offset);
+			break;
+		case PROXIMITY_IN:
+			getPenManager().firePenProximity(this, true);
+			break;
+		case PROXIMITY_OUT:
+			getPenManager().firePenProximity(this, false);
 			break;
 		default:
 		}
 	}
 
-	private void scheduleScrollEvent(int number) {
-		getPenManager().scheduleScrollEvent(this, xiDevice.getLastEventTime(), new PScroll(number==5? PScroll.Type.DOWN.ordinal(): PScroll.Type.UP.ordinal(),1));
+	private void scheduleScrollEvent(long time, int number) {
+		getPenManager().scheduleScrollEvent(this, time, new PScroll(number==5? PScroll.Type.DOWN.ordinal(): PScroll.Type.UP.ordinal(),1));
 	}
 
 	private final List<PLevel> changedLevels=new ArrayList<PLevel>();
-
-	private void scheduleLevelEvent() {
+	private final float[] screenXY=new float[2];
+
+	private void scheduleLevelEvent(ByteBuffer records, int offset) {
+		Pen pen=getPen();
+		DeviceDescriptor descriptor=getDescriptor();
+		xinputProvider.screenBounds.getLayout().map(
+			descriptor.getLevelRange(PLevel.Type.X).getRangedValue(records.getInt(offset+XiBus.EVENT_RECORD_VALUATORS+4*PLevel.Type.X.ordinal())),
+			descriptor.getLevelRange(PLevel.Type.Y).getRangedValue(records.getInt(offset+XiBus.EVENT_RECORD_VALUATORS+4*PLevel.Type.Y.ordinal())),
+			screenXY);
 		for(int i=PLevel.Type.VALUES.size(); --i>=0;) {
 			PLevel.Type levelType=PLevel.Type.VALUES.get(i);
-			float value=getMultRangedValue(levelType);
+			if(!pen.isLevelTypeListened(levelType))
+				continue;
+			int valuatorIndex=getValuatorLevelType(levelType).ordinal();
+			if(valuatorIndex>=XiBus.EVENT_RECORD_VALUATORS_SIZE) // no xinput valuator for this level type
+				continue;
+			if(PLevel.Type.MOVEMENT_TYPES.contains(levelType)) { // X and Y are mapped together: the screen depends on both
+				changedLevels.add(new PLevel(levelType, screenXY[levelType.ordinal()]));
+				continue;
+			}
+			float value=getMultRangedValue(descriptor, levelType, records.getInt(offset+XiBus.EVENT_RECORD_VALUATORS+4*valuatorIndex));
 			changedLevels.add(new PLevel(levelType, value));
 		}
-		getPenManager().scheduleLevelEvent(this, xiDevice.getLastEventTime(), changedLevels, true);
+		getPenManager().scheduleLevelEvent(this, records.getLong(offset+XiBus.EVENT_RECORD_TIME), changedLevels, true);
 		changedLevels.clear();
 	}
 
 	/* nicarran: TODO: support buttons?
-	private void scheduleButtonEvent(int number, boolean state) {
+	private void scheduleButtonEvent(long time, int number, boolean state) {
 		if(L.isLoggable(Level.FINE))
 			L.fine("scheduling button event: number="+number+", state="+state+	", isPad="+isPad);
 		PButton.Type.Group buttonTypeGroup=isPad? PButton.Type.Group.PAD:
@@ -210,32 +244,36 @@ final class XinputDevice extends AbstractPenDevice {
 			L.warning("Unsupported button number:"+number);
 			return;
 		}
-		getPenManager().scheduleButtonEvent(this, xiDevice.getLastEventTime(), new PButton(types.get(number-1), state));
+		getPenManager().scheduleButtonEvent(this, time, new PButton(types.get(number-1), state));
 }
 	*/
 
 	private static final float RADS_PER_DEG=(float)(Math.PI/180);
 	private static final float PI_2=(float)(2f*Math.PI);
 
-	private final float getMultRangedValue(PLevel.Type levelType) {
+	/**
+	@return the level type whose xinput valuator gives the value of the given level type.
+	*/
+	private static PLevel.Type getValuatorLevelType(PLevel.Type levelType){
+		if(PLevel.Type.ROTATION.equals(levelType)) // rotation and wheel are given using the same xinput valuator
+			return PLevel.Type.SIDE_PRESSURE;
+		return levelType;
+	}
+
+	private final float getMultRangedValue(DeviceDescriptor descriptor, PLevel.Type levelType, int valuatorValue) {
 		boolean isRotation=PLevel.Type.ROTATION.equals(levelType);
-		if(isRotation) // rotation and wheel are given using the same xinput valuator
-			levelType=PLevel.Type.SIDE_PRESSURE;
-		float devValue=xiDevice.getValue(levelType);
+		levelType=getValuatorLevelType(levelType);
+		float devValue=valuatorValue;
 		// nicarran: TODO: ignore rotation or SIDE_PRESSURE depending on the name of the device? wait feedback
 
 		if(PLevel.Type.TILT_TYPES.contains(levelType))
 			return devValue*RADS_PER_DEG;
 
-		devValue=levelRanges[levelType.ordinal()].getRangedValue(devValue);
+		devValue=descriptor.getLevelRange(levelType).getRangedValue(devValue);
 
 		if(isRotation)
 			return devValue*PI_2;
 
-		if(PLevel.Type.MOVEMENT_TYPES.contains(levelType))
-			devValue=xinputProvider.screenBounds.getLevelRangeOffset(levelType)+
-						devValue*xinputProvider.screenBounds.getLevelRangeMult(levelType);
-
 		return devValue;
 	}
 
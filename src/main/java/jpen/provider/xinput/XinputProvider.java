@@ -21,16 +21,26 @@ package jpen.provider.xinput;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.logging.Logger;
 import jpen.PenDevice;
 import jpen.PenManager;
 import jpen.PenProvider;
+import jpen.PenRuntime;
 import jpen.PKind;
 import jpen.provider.AbstractPenProvider;
 import jpen.provider.NativeLibraryLoader;
 import jpen.provider.VirtualScreenBounds;
+import jpen.provider.evdev.EvdevProvider;
+import jpen.provider.hidraw.HidrawProvider;
 import jpen.internal.BuildInfo;
+import jpen.internal.ThreadUtils;
+import jpen.internal.ThrowableUtils;
 
 public final class XinputProvider
 	extends AbstractPenProvider {
@@ -45,7 +55,40 @@ public final class XinputProvider
 		LIB_LOADER.load();
 	}
 
-	private final XinputDevice[] xinputDevices;
+	/**
+	When this system property is set to true then all the XInput devices are read using one X server connection and one reader thread, the events are routed to each device by its XID (multiplexed mode). By default each device uses its own X server connection and reader thread.
+	*/
+	public static final String MULTIPLEXED_SYSTEM_PROPERTY="jpen.provider.xinput.multiplexed";
+	public static final boolean MULTIPLEXED=Boolean.valueOf(
+				System.getProperty(MULTIPLEXED_SYSTEM_PROPERTY));
+	static{
+		if(MULTIPLEXED)
+			L.info("MULTIPLEXED set to true");
+	}
+
+	/**
+	Copy on write: the devices are added and removed by the device presence thread.
+	*/
+	private volatile XinputDevice[] xinputDevices=new XinputDevice[0];
+	private final Map<Integer, XinputDevice> xiDeviceIdToDevice=new HashMap<Integer, XinputDevice>();
+	/**
+	XIDs of the devices which are not tablets (or couldn't be opened): they are not tried again until they are removed.
+	*/
+	private final Set<Integer> rejectedXiDeviceIds=new HashSet<Integer>();
+	/**
+	Enumerates the devices and receives the device presence notifications. {@code null} if the X server does not support them.
+	*/
+	private final XiBus presenceXiBus;
+	/**
+	Started on the first unpause: the devices are published then, the notifications are queued on the {@link #presenceXiBus} meanwhile.
+	*/
+	private Thread presenceThread;
+	/**
+	The reader of all the devices in multiplexed mode. A new one is created when a device is added after the last one was removed.
+	*/
+	private XinputReader multiplexedReader;
+	private boolean paused=true;
+	private volatile boolean closed;
 	final VirtualScreenBounds screenBounds=VirtualScreenBounds.getInstance();
 
 	public static class Constructor
@@ -58,7 +101,10 @@ public final class XinputProvider
 		//@Override
 		public boolean constructable(PenManager penManager) {
 			String os = System.getProperty("os.name").toLowerCase();
-			return os.contains("linux") || os.contains("bsd");
+			if((EvdevProvider.ENABLED || HidrawProvider.ENABLED) && os.contains("linux")) // the evdev or hidraw provider reads the same tablets
+				return false;
+			return (os.contains("linux") || os.contains("bsd")) &&
+						 System.getenv("DISPLAY")!=null; // no X server: skip the native library loading
 		}
 
 		@Override
@@ -86,41 +132,197 @@ public final class XinputProvider
 		L.fine("start");
 
 		XiBus xiBus=new XiBus();
+		try {
+			updateXinputDevices(xiBus, null, null);
+		} catch(Exception ex) {
+			xiBus.close();
+			throw ex;
+		}
+		if(devices.size()==1) {
+			xinputDevices[0].setKindTypeNumber(PKind.Type.STYLUS.ordinal());
+		}
+
+		XiBus presenceXiBus=null;
+		try {
+			xiBus.selectDevicePresence();
+			presenceXiBus=xiBus;
+		} catch(Exception ex) {
+			L.info("device hotplug not supported: "+ex.getMessage());
+			xiBus.close();
+		}
+		this.presenceXiBus=presenceXiBus;
+		L.fine("end");
+	}
+
+	/**
+	Creates the devices which are on the given bus device information list and are not created yet, and closes the devices which are not on the list anymore. The other devices (their readers and grabs) are not touched.
+	*/
+	private synchronized void updateXinputDevices(XiBus xiBus, List<XinputDevice> addedDevices, List<XinputDevice> removedDevices) throws Exception {
+		Set<Integer> xiDeviceIds=new HashSet<Integer>();
+		for(int xiDeviceIndex=xiBus.getXiDevicesSize(); --xiDeviceIndex>=0; )
+			xiDeviceIds.add(xiBus.getXiDeviceId(xiDeviceIndex));
+
+		for(Iterator<Map.Entry<Integer, XinputDevice>> it=xiDeviceIdToDevice.entrySet().iterator(); it.hasNext();) {
+			Map.Entry<Integer, XinputDevice> entry=it.next();
+			if(xiDeviceIds.contains(entry.getKey()))
+				continue;
+			it.remove();
+			XinputDevice device=entry.getValue();
+			device.close();
+			devices.remove(device);
+			if(removedDevices!=null)
+				removedDevices.add(device);
+		}
+		rejectedXiDeviceIds.retainAll(xiDeviceIds);
 
 		for(int xiDeviceIndex=xiBus.getXiDevicesSize(); --xiDeviceIndex>=0; ) {
-			XiBus xiBus2=new XiBus(); // each XiBus opens a connection to the X server.
-			try {
-				xiBus2.setXiDevice(xiDeviceIndex);
-			} catch(Exception ex) {
+			Integer xiDeviceId=xiBus.getXiDeviceId(xiDeviceIndex);
+			if(xiDeviceIdToDevice.containsKey(xiDeviceId) || rejectedXiDeviceIds.contains(xiDeviceId))
+				continue;
+			XinputDevice device=createXinputDevice(xiDeviceId);
+			if(device==null) {
+				rejectedXiDeviceIds.add(xiDeviceId);
 				continue;
 			}
-			XinputDevice xinputDevice=new XinputDevice(this, xiBus2.getXiDevice());
-			devices.add(xinputDevice);
+			xiDeviceIdToDevice.put(xiDeviceId, device);
+			devices.add(device);
+			if(addedDevices!=null) {
+				addedDevices.add(device);
+				if(!paused)
+					device.setIsListening(true);
+			}
 		}
+		if(multiplexedReader!=null && multiplexedReader.closeIfUnused())
+			multiplexedReader=null;
 
-		xinputDevices=devices.toArray(new XinputDevice[devices.size()]);
-		if(devices.size()==1) {
-			xinputDevices[0].setKindTypeNumber(PKind.Type.STYLUS.ordinal());
+		xinputDevices=xiDeviceIdToDevice.values().toArray(new XinputDevice[xiDeviceIdToDevice.size()]);
+	}
+
+	/**
+	@return the new device, or {@code null} if the device having the given XID is not a tablet device or couldn't be opened.
+	@throws Exception if a connection to the X server couldn't be opened.
+	*/
+	private XinputDevice createXinputDevice(int xiDeviceId) throws Exception {
+		if(MULTIPLEXED) {
+			if(multiplexedReader==null || multiplexedReader.isClosed())
+				multiplexedReader=new XinputReader(new XiBus(), "multiplexed");
+			XinputReader reader=multiplexedReader;
+			XiDevice xiDevice;
+			synchronized(reader) {
+				reader.stopWaiting();
+				try {
+					reader.xiBus.refreshXiDeviceInfo();
+					int xiDeviceIndex=reader.xiBus.getXiDeviceIndex(xiDeviceId);
+					if(xiDeviceIndex<0)
+						return null;
+					xiDevice=reader.xiBus.addXiDevice(xiDeviceIndex);
+				} catch(Exception ex) {
+					return null;
+				}
+			}
+			return new XinputDevice(this, xiDevice, reader);
+		}
+		XiBus xiBus=new XiBus(); // each XiBus opens a connection to the X server.
+		try {
+			int xiDeviceIndex=xiBus.getXiDeviceIndex(xiDeviceId);
+			if(xiDeviceIndex<0)
+				throw new Exception("device not found");
+			xiBus.setXiDevice(xiDeviceIndex);
+		} catch(Exception ex) {
+			xiBus.close();
+			return null;
+		}
+		XinputReader reader=new XinputReader(xiBus, xiBus.getXiDevice().getName());
+		return new XinputDevice(this, xiBus.getXiDevice(), reader);
+	}
+
+	/**
+	Waits the device presence notifications and updates the devices, firing the differences on the {@link PenManager}.
+	*/
+	private final class DevicePresenceRunnable
+		implements Runnable {
+		//@Override
+		public void run() {
+			try {
+				List<XinputDevice> addedDevices=new ArrayList<XinputDevice>();
+				List<XinputDevice> removedDevices=new ArrayList<XinputDevice>();
+				while(presenceXiBus.waitDevicePresenceChange() && !closed) {
+					try {
+						presenceXiBus.refreshXiDeviceInfo();
+						updateXinputDevices(presenceXiBus, addedDevices, removedDevices);
+					} catch(Exception ex) {
+						L.warning("devices update failed: "+ex.getMessage());
+					}
+					for(XinputDevice device: removedDevices)
+						try {
+							getPenManager().firePenDeviceRemoved(getConstructor(), device);
+						} catch(RuntimeException ex) { // keep receiving the notifications
+							L.warning("firing removed device "+device+" failed: "+ThrowableUtils.evalStackTraceString(ex));
+						}
+					for(XinputDevice device: addedDevices)
+						try {
+							getPenManager().firePenDeviceAdded(getConstructor(), device);
+						} catch(RuntimeException ex) {
+							L.warning("firing added device "+device+" failed: "+ThrowableUtils.evalStackTraceString(ex));
+						}
+					removedDevices.clear();
+					addedDevices.clear();
+				}
+			} catch(RuntimeException ex) {
+				L.severe("jpen-XinputProvider-devicePresence thread threw an exception: "+ThrowableUtils.evalStackTraceString(ex));
+			}
 		}
-		L.fine("end");
 	}
 
 	private void resetXinputDevices() {
+		XinputDevice[] xinputDevices=this.xinputDevices;
 		for(int i=xinputDevices.length; --i>=0;)
 			xinputDevices[i].reset();
 	}
 
 	private void pauseXinputDevices(boolean paused) {
+		XinputDevice[] xinputDevices=this.xinputDevices;
 		for(int i=xinputDevices.length; --i>=0;)
 			xinputDevices[i].setIsListening(!paused);
 	}
 
 	//@Override
-	public void penManagerPaused(boolean paused) {
+	public synchronized void penManagerPaused(boolean paused) {
+		this.paused=paused;
 		pauseXinputDevices(paused);
 		if(!paused) {
-			screenBounds.reset();
+			screenBounds.getLayout(); // computed here, not on the input path
+			screenBounds.refresh(); // the display configuration may have changed while paused
 			resetXinputDevices();
+			if(presenceXiBus!=null && presenceThread==null && !closed) {
+				presenceThread=PenRuntime.newThread("jpen-XinputProvider-devicePresence", new DevicePresenceRunnable());
+				presenceThread.start();
+			}
+		}
+	}
+
+	/**
+	Stops the device presence thread and closes the devices.
+	*/
+	@Override
+	public void close() {
+		Thread presenceThread;
+		synchronized(this) {
+			closed=true;
+			presenceThread=this.presenceThread;
+		}
+		if(presenceXiBus!=null) {
+			if(presenceThread!=null) {
+				presenceXiBus.stopWaitingNextEvent();
+				ThreadUtils.joinUninterrupted(presenceThread);
+			}
+			presenceXiBus.close();
+		}
+		synchronized(this) {
+			super.close();
+			devices.clear();
+			xiDeviceIdToDevice.clear();
+			xinputDevices=new XinputDevice[0];
 		}
 	}
 
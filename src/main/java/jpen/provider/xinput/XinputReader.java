@@ -0,0 +1,192 @@
+/* [{
+Copyright 2007, 2008 Nicolas Carranza <nicarran at gmail.com>
+
+This file is part of jpen.
+
+jpen is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License,
+or (at your option) any later version.
+
+jpen is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with jpen.  If not, see <http://www.gnu.org/licenses/>.
+}] */
+package jpen.provider.xinput;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.logging.Logger;
+import jpen.PenRuntime;
+import jpen.internal.ObjectUtils;
+import jpen.internal.ThreadUtils;
+import jpen.internal.ThrowableUtils;
+
+/**
+Reads the events of one {@link XiBus} (X server connection) in its own thread and routes them to the {@link XinputDevice}s created on it: one device per connection, or all the devices when using the multiplexed mode (see {@link XinputProvider#MULTIPLEXED_SYSTEM_PROPERTY}).<p>
+
+The reader holds the X server connection while waiting for events. Other threads must hold this reader lock and call {@link #stopWaiting()} before using the connection: the reader then waits on this lock until they are done.
+*/
+final class XinputReader
+	implements Runnable {
+	private static final Logger L=Logger.getLogger(XinputReader.class.getName());
+	//static{L.setLevel(Level.ALL);}
+
+	/**
+	Maximum number of events read on each wake-up.
+	*/
+	private static final int BATCH_CAPACITY=64;
+
+	final XiBus xiBus;
+	private final Thread thread;
+	private final ByteBuffer records=ByteBuffer.allocateDirect(BATCH_CAPACITY*XiBus.EVENT_RECORD_SIZE).order(ByteOrder.nativeOrder());
+	private volatile XinputDevice[] devices=new XinputDevice[0]; // copy on write: the reader routes the events without locking
+	private boolean started;
+	private boolean closed;
+
+	XinputReader(XiBus xiBus, String name){
+		this.xiBus=xiBus;
+		this.thread=PenRuntime.newThread("jpen-XinputReader-"+name, this);
+		thread.setPriority(Thread.MAX_PRIORITY);
+	}
+
+	synchronized void addDevice(XinputDevice device){
+		if(closed)
+			throw new IllegalStateException("reader closed");
+		XinputDevice[] devices=new XinputDevice[this.devices.length+1];
+		System.arraycopy(this.devices, 0, devices, 0, this.devices.length);
+		devices[this.devices.length]=device;
+		this.devices=devices;
+		if(!started){
+			started=true;
+			thread.start();
+		}
+	}
+
+	/**
+	Removes the device and closes its {@link XiDevice}. The reader thread is stopped and the X server connection closed when the last device is removed.
+	*/
+	void removeDevice(XinputDevice device, XiDevice xiDevice){
+		boolean last;
+		synchronized(this){
+			int index=indexOf(device);
+			if(index<0)
+				return;
+			XinputDevice[] devices=new XinputDevice[this.devices.length-1];
+			System.arraycopy(this.devices, 0, devices, 0, index);
+			System.arraycopy(this.devices, index+1, devices, index, devices.length-index);
+			this.devices=devices;
+			last=devices.length==0;
+			if(last)
+				closed=true;
+			stopWaiting();
+			xiDevice.close(); // blocks until the reader releases the X server connection
+			notifyAll();
+		}
+		if(last){
+			if(started && Thread.currentThread()!=thread)
+				ThreadUtils.joinUninterrupted(thread);
+			xiBus.close();
+		}
+	}
+
+	/**
+	@return {@code true} if the last device was removed: the X server connection is closed and no device can be added.
+	*/
+	synchronized boolean isClosed(){
+		return closed;
+	}
+
+	/**
+	Closes the X server connection if no device was added to this reader.
+
+	@return {@code true} if the connection was closed.
+	*/
+	boolean closeIfUnused(){
+		synchronized(this){
+			if(started || closed)
+				return false;
+			closed=true;
+		}
+		xiBus.close();
+		return true;
+	}
+
+	private int indexOf(XinputDevice device){
+		XinputDevice[] devices=this.devices;
+		for(int i=devices.length; --i>=0;)
+			if(devices[i]==device)
+				return i;
+		return -1;
+	}
+
+	/**
+	Forces the reader to release the X server connection. Must be called holding this reader lock.
+	*/
+	void stopWaiting(){
+		xiBus.stopWaitingNextEvent();
+	}
+
+	/**
+	Called holding this reader lock when the listening or enabled state of a device changes.
+	*/
+	void stateChanged(){
+		notifyAll();
+	}
+
+	private synchronized boolean isWorking(){
+		if(closed)
+			return false;
+		XinputDevice[] devices=this.devices;
+		for(int i=devices.length; --i>=0;)
+			if(devices[i].isWorking())
+				return true;
+		return false;
+	}
+
+	private XinputDevice getDevice(int xiDeviceCellIndex){
+		XinputDevice[] devices=this.devices;
+		for(int i=devices.length; --i>=0;)
+			if(devices[i].xiDevice.cellIndex==xiDeviceCellIndex)
+				return devices[i];
+		return null;
+	}
+
+	//@Override
+	public void run(){
+		try{
+			while(true){
+				synchronized(this){
+					while(!isWorking()){
+						if(closed)
+							return;
+						ObjectUtils.waitUninterrupted(this);
+					}
+				}
+				int size=xiBus.fillEvents(records);
+				if(size==0){ // then stopWaiting was called (or the event is not from a device)
+					synchronized(this){ // wait until the thread which called stopWaiting is done using the X server connection
+					}
+					continue;
+				}
+				XinputDevice device=null;
+				boolean isWorking=false;
+				for(int i=0, offset=0; i<size; i++, offset+=XiBus.EVENT_RECORD_SIZE){
+					int xiDeviceCellIndex=records.getInt(offset+XiBus.EVENT_RECORD_DEVICE_CELL_INDEX);
+					if(device==null || device.xiDevice.cellIndex!=xiDeviceCellIndex){ // the state is taken once per batch and device
+						device=getDevice(xiDeviceCellIndex);
+						isWorking=device!=null && device.isWorking();
+					}
+					if(isWorking)
+						device.processEventRecord(records, offset);
+				}
+			}
+		}catch(RuntimeException ex){
+			L.severe(thread.getName()+" thread threw an exception: "+ThrowableUtils.evalStackTraceString(ex));
+		}
+	}
+}
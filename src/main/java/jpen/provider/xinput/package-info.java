@@ -17,6 +17,6 @@ You should have received a copy of the GNU Lesser General Public License
 along with jpen.  If not, see <http://www.gnu.org/licenses/>.
 }] */
 /**
-Linux X Input tablet {@link jpen.PenProvider}.
+Linux X Input tablet {@link jpen.PenProvider}. It calls libX11/libXi through the compiled JNI library loaded by {@link jpen.provider.NativeLibraryLoader}. There is no {@code java.lang.foreign} (FFM) backend: JPen is compiled for Java 5 and the FFM API is final only since Java 22. The {@link jpen.provider.evdev} provider reads the tablets in pure Java, without the compiled library.
 */
 package jpen.provider.xinput;
\ No newline at end of file
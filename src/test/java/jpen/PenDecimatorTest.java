@@ -0,0 +1,122 @@
+/* [{
+Copyright 2007, 2008 Nicolas Carranza <nicarran at gmail.com>
+
+This file is part of jpen.
+
+jpen is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License,
+or (at your option) any later version.
+
+jpen is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with jpen.  If not, see <http://www.gnu.org/licenses/>.
+}] */
+package jpen;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import junit.framework.TestCase;
+
+public class PenDecimatorTest extends TestCase {
+
+	private static final int RATE=100; // one sample each 10 ms of device time
+	private static final int SAMPLES=1000; // one sample per ms of device time
+
+	/**
+	Records the kept samples instead of scheduling them.
+	*/
+	static final class RecordingDecimator
+		extends PenDecimator{
+		final List<float[]> kept=new ArrayList<float[]>(); // x, y, pressure
+
+		RecordingDecimator(){
+			super(null, null, RATE);
+		}
+
+		@Override
+		boolean scheduleUndecimated(long deviceTime, List<PLevel> levels, boolean levelsOnScreen){
+			float[] sample=new float[3];
+			for(PLevel level: levels)
+				if(level.typeNumber<3)
+					sample[level.typeNumber]=level.value;
+			synchronized(kept){
+				kept.add(sample);
+			}
+			return true;
+		}
+
+		void schedule(long deviceTime, float x, float y, float pressure){
+			List<PLevel> levels=new ArrayList<PLevel>();
+			levels.add(new PLevel(PLevel.Type.X, x));
+			levels.add(new PLevel(PLevel.Type.Y, y));
+			levels.add(new PLevel(PLevel.Type.PRESSURE, pressure));
+			scheduleLevelEvent(deviceTime, levels, false);
+		}
+
+		int getKeptCount(){
+			synchronized(kept){
+				return kept.size();
+			}
+		}
+	}
+
+	/**
+	A stroke along the X axis at constant pressure with one pixel of location jitter and one 1024th of pressure jitter.
+	*/
+	private static void scheduleNoisyLine(RecordingDecimator decimator){
+		Random random=new Random(1);
+		for(int i=0; i<SAMPLES; i++)
+			decimator.schedule(i, i*0.5f+random.nextInt(3)-1, 100+random.nextInt(3)-1, 0.5f+(random.nextInt(3)-1)/1024f);
+	}
+
+	public void testNoisyLineIsDecimated(){
+		RecordingDecimator decimator=new RecordingDecimator();
+		scheduleNoisyLine(decimator);
+		int keptCount=decimator.getKeptCount();
+		assertTrue("kept "+keptCount, keptCount>=SAMPLES/10 && keptCount<SAMPLES/10*3/2);
+	}
+
+	public void testNoisyLineWithoutThresholdsKeepsTheJitter(){
+		RecordingDecimator decimator=new RecordingDecimator();
+		decimator.setThresholds(0, PenDecimator.DEFAULT_MIN_TURN_ANGLE, 0);
+		scheduleNoisyLine(decimator);
+		int keptCount=decimator.getKeptCount();
+		assertTrue("kept "+keptCount, keptCount>SAMPLES/3);
+	}
+
+	public void testNoisyPressurePeakIsKept(){
+		RecordingDecimator decimator=new RecordingDecimator();
+		Random random=new Random(2);
+		for(int i=0; i<SAMPLES; i++){
+			float pressure=0.1f+0.7f*(1-Math.abs(i-SAMPLES/2-3)/(float)(SAMPLES/2)); // peak 0.8 on sample 503, between two rate periods
+			decimator.schedule(i, i, 100, pressure+(random.nextInt(3)-1)/1024f);
+		}
+		float maxKeptPressure=0;
+		for(float[] sample: decimator.kept)
+			maxKeptPressure=Math.max(maxKeptPressure, sample[2]);
+		assertEquals(0.8f, maxKeptPressure, 0.03f);
+		assertTrue("kept "+decimator.getKeptCount(), decimator.getKeptCount()<SAMPLES/10*3/2);
+	}
+
+	public void testNoisyCornerIsKept(){
+		RecordingDecimator decimator=new RecordingDecimator();
+		Random random=new Random(3);
+		for(int i=0; i<SAMPLES; i++){
+			float x=i<=505? i: 505;
+			float y=i<=505? 0: i-505;
+			decimator.schedule(i, x+random.nextInt(3)-1, y+random.nextInt(3)-1, 0.5f);
+		}
+		boolean cornerKept=false;
+		for(float[] sample: decimator.kept)
+			if(Math.abs(sample[0]-505)<=4 && Math.abs(sample[1])<=4)
+				cornerKept=true;
+		assertTrue(cornerKept);
+		assertTrue("kept "+decimator.getKeptCount(), decimator.getKeptCount()<SAMPLES/10*3/2);
+	}
+}
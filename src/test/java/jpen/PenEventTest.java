@@ -0,0 +1,79 @@
+/* [{
+Copyright 2007, 2008 Nicolas Carranza <nicarran at gmail.com>
+
+This file is part of jpen.
+
+jpen is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License,
+or (at your option) any later version.
+
+jpen is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with jpen.  If not, see <http://www.gnu.org/licenses/>.
+}] */
+package jpen;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import junit.framework.TestCase;
+
+public class PenEventTest extends TestCase {
+
+	/**
+	Written by the version with the {@code byte} device id: device id 5, device time 5678, time 1234, LEFT button pressed.
+	*/
+	private static final String V2_STREAM_RESOURCE="penButtonEvent-v2.ser";
+
+	private static Object readObject(InputStream in) throws Exception {
+		ObjectInputStream objectIn=new ObjectInputStream(in);
+		try{
+			return objectIn.readObject();
+		}finally{
+			objectIn.close();
+		}
+	}
+
+	private static PButtonEvent roundTrip(PButtonEvent ev) throws Exception {
+		ByteArrayOutputStream bytes=new ByteArrayOutputStream();
+		ObjectOutputStream out=new ObjectOutputStream(bytes);
+		out.writeObject(ev);
+		out.close();
+		return (PButtonEvent)readObject(new ByteArrayInputStream(bytes.toByteArray()));
+	}
+
+	private static PButtonEvent readV2Event() throws Exception {
+		InputStream in=PenEventTest.class.getResourceAsStream(V2_STREAM_RESOURCE);
+		assertNotNull(in);
+		return (PButtonEvent)readObject(in);
+	}
+
+	public void testReadV2Stream() throws Exception {
+		PButtonEvent ev=readV2Event();
+		assertEquals(5, ev.getDeviceId());
+		assertEquals(5678l, ev.getDeviceTime());
+		assertEquals(-1l, ev.getDeviceNanoTime());
+		assertEquals(1234l, ev.getTime());
+		assertEquals(PButton.Type.LEFT, ev.button.getType());
+		assertEquals(Boolean.TRUE, ev.button.value);
+		assertNull(ev.pen);
+	}
+
+	public void testRoundTrip() throws Exception {
+		PButtonEvent ev=roundTrip(readV2Event());
+		assertEquals(5, ev.getDeviceId());
+		assertEquals(5678l, ev.getDeviceTime());
+		assertEquals(1234l, ev.getTime());
+
+		PButtonEvent largeIdEv=readV2Event();
+		PenEvent.deviceIdField.getField().set(largeIdEv, 300);
+		assertEquals(300, roundTrip(largeIdEv).getDeviceId());
+	}
+}
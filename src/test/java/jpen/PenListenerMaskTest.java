@@ -0,0 +1,50 @@
+/* [{
+Copyright 2007, 2008 Nicolas Carranza <nicarran at gmail.com>
+
+This file is part of jpen.
+
+jpen is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License,
+or (at your option) any later version.
+
+jpen is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with jpen.  If not, see <http://www.gnu.org/licenses/>.
+}] */
+package jpen;
+
+import junit.framework.TestCase;
+
+public class PenListenerMaskTest extends TestCase {
+
+	private static void assertLevelAndKindOnly(PenListenerMask mask){
+		assertTrue(mask.acceptsEventType(PenListenerMask.EventType.KIND));
+		assertTrue(mask.acceptsEventType(PenListenerMask.EventType.LEVEL));
+		assertFalse(mask.acceptsEventType(PenListenerMask.EventType.BUTTON));
+		assertFalse(mask.acceptsEventType(PenListenerMask.EventType.TOCK));
+		assertTrue(mask.acceptsLevelType(PLevel.Type.PRESSURE));
+		assertFalse(mask.acceptsLevelType(PLevel.Type.TILT_X));
+	}
+
+	public void testWithLevelTypesThenWithEventTypes(){
+		assertLevelAndKindOnly(PenListenerMask.NONE.withLevelTypes(PLevel.Type.PRESSURE).withEventTypes(PenListenerMask.EventType.KIND));
+		assertLevelAndKindOnly(PenListenerMask.levels(PLevel.Type.PRESSURE).withEventTypes(PenListenerMask.EventType.KIND));
+	}
+
+	public void testWithEventTypesThenWithLevelTypes(){
+		assertLevelAndKindOnly(PenListenerMask.NONE.withEventTypes(PenListenerMask.EventType.KIND).withLevelTypes(PLevel.Type.PRESSURE));
+		assertLevelAndKindOnly(PenListenerMask.ALL.withEventTypes(PenListenerMask.EventType.KIND).withLevelTypes(PLevel.Type.PRESSURE));
+	}
+
+	public void testWithEventTypesWithoutLevelTypes(){
+		PenListenerMask mask=PenListenerMask.ALL.withEventTypes(PenListenerMask.EventType.KIND);
+		assertTrue(mask.acceptsEventType(PenListenerMask.EventType.KIND));
+		assertFalse(mask.acceptsEventType(PenListenerMask.EventType.LEVEL));
+		assertFalse(PenListenerMask.NONE.withEventTypes(PenListenerMask.EventType.KIND).acceptsEventType(PenListenerMask.EventType.LEVEL));
+	}
+}
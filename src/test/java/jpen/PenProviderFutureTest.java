@@ -0,0 +1,180 @@
+/* [{
+Copyright 2007, 2008 Nicolas Carranza <nicarran at gmail.com>
+
+This file is part of jpen.
+
+jpen is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License,
+or (at your option) any later version.
+
+jpen is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with jpen.  If not, see <http://www.gnu.org/licenses/>.
+}] */
+package jpen;
+
+import java.awt.Point;
+import java.awt.geom.Point2D;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import jpen.owner.PenClip;
+import jpen.owner.PenOwner;
+import jpen.provider.AbstractPenProvider;
+import junit.framework.TestCase;
+
+public class PenProviderFutureTest extends TestCase {
+
+	private static final long TIMEOUT_MILLIS=5000;
+
+	/**
+	Its {@link #constructable(PenManager)} waits for {@link #release}: the whenDone actions can be added before the construction is done.
+	*/
+	static final class BlockedConstructor
+		extends AbstractPenProvider.AbstractConstructor{
+		final CountDownLatch release=new CountDownLatch(1);
+
+		//@Override
+		public String getName(){
+			return "Blocked";
+		}
+
+		//@Override
+		public boolean constructable(PenManager penManager){
+			try{
+				release.await();
+			}catch(InterruptedException ex){
+				throw new AssertionError(ex);
+			}
+			return false;
+		}
+
+		@Override
+		protected PenProvider constructProvider(){
+			throw new AssertionError("not constructable");
+		}
+	}
+
+	static final class TestPenOwner
+		implements PenOwner{
+		final BlockedConstructor constructor=new BlockedConstructor();
+
+		//@Override
+		public Collection<PenProvider.Constructor> getPenProviderConstructors(){
+			return Collections.<PenProvider.Constructor>singleton(constructor);
+		}
+
+		//@Override
+		public void setPenManagerHandle(PenManagerHandle penManagerHandle){}
+
+		//@Override
+		public PenClip getPenClip(){
+			return new PenClip(){
+							 //@Override
+							 public void evalLocationOnScreen(Point locationOnScreen){
+								 locationOnScreen.x=locationOnScreen.y=0;
+							 }
+							 //@Override
+							 public boolean contains(Point2D.Float point){
+								 return true;
+							 }
+						 };
+		}
+
+		//@Override
+		public boolean isDraggingOut(){
+			return false;
+		}
+
+		//@Override
+		public Object evalPenEventTag(PenEvent ev){
+			return null;
+		}
+
+		//@Override
+		public boolean enforceSinglePenManager(){
+			return false;
+		}
+	}
+
+	private static Runnable record(final List<String> actions, final String action){
+		return new Runnable(){
+						 //@Override
+						 public void run(){
+							 synchronized(actions){
+								 actions.add(action);
+							 }
+						 }
+					 };
+	}
+
+	private static final Runnable THROWING_ACTION=new Runnable(){
+				//@Override
+				public void run(){
+					throw new IllegalStateException("thrown on purpose by the test");
+				}
+			};
+
+	public void testThrowingActionDoesNotPreventTheOthers() throws Exception {
+		PenProviderFuture providerFuture=new PenProviderFuture(new BlockedConstructor());
+		List<String> actions=new ArrayList<String>();
+		providerFuture.whenDone(record(actions, "first"));
+		providerFuture.whenDone(THROWING_ACTION);
+		providerFuture.whenDone(record(actions, "last"));
+		assertFalse(providerFuture.isDone());
+
+		providerFuture.done(PenProviderFuture.State.SKIPPED, null, 10);
+		assertEquals(Arrays.asList("first", "last"), actions);
+		assertTrue(providerFuture.isDone());
+		assertNull(providerFuture.get(0, TimeUnit.MILLISECONDS));
+		assertEquals(10, providerFuture.getConstructionNanos());
+
+		providerFuture.whenDone(record(actions, "after")); // run on the calling thread
+		assertEquals(Arrays.asList("first", "last", "after"), actions);
+	}
+
+	public void testThrowingActionDoesNotBlockTheProviderConstructorsWaiters() throws Exception {
+		TestPenOwner penOwner=new TestPenOwner();
+		PenManager penManager=new PenManager(penOwner);
+		try{
+			List<PenProviderFuture> providerFutures=penManager.getProviderFutures();
+			assertEquals(1, providerFutures.size());
+			PenProviderFuture providerFuture=providerFutures.get(0);
+			List<String> actions=new ArrayList<String>();
+			providerFuture.whenDone(THROWING_ACTION);
+			providerFuture.whenDone(record(actions, "done"));
+			penOwner.constructor.release.countDown();
+
+			assertNull(providerFuture.get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+			assertEquals(PenProviderFuture.State.SKIPPED, providerFuture.getState());
+			final PenManager waitedPenManager=penManager;
+			final List<Set<PenProvider.Constructor>> providerConstructors=new ArrayList<Set<PenProvider.Constructor>>();
+			Thread waiter=new Thread(){
+						@Override
+						public void run(){
+							providerConstructors.add(waitedPenManager.getProviderConstructors());
+						}
+					};
+			waiter.setDaemon(true); // does not keep the JVM alive if it hangs
+			waiter.start();
+			waiter.join(TIMEOUT_MILLIS);
+			assertFalse("getProviderConstructors() blocked", waiter.isAlive());
+			assertFalse(providerConstructors.get(0).contains(penOwner.constructor));
+			synchronized(actions){
+				assertEquals(Arrays.asList("done"), actions);
+			}
+		}finally{
+			penManager.close();
+		}
+	}
+}
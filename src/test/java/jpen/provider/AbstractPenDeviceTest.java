@@ -0,0 +1,319 @@
+/* [{
+Copyright 2007, 2008 Nicolas Carranza <nicarran at gmail.com>
+
+This file is part of jpen.
+
+jpen is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License,
+or (at your option) any later version.
+
+jpen is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with jpen.  If not, see <http://www.gnu.org/licenses/>.
+}] */
+package jpen.provider;
+
+import java.awt.Point;
+import java.awt.geom.Point2D;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import jpen.PButton;
+import jpen.Pen;
+import jpen.PenDevice;
+import jpen.PenEvent;
+import jpen.PenListenerMask;
+import jpen.PenManager;
+import jpen.PenProvider;
+import jpen.PKind;
+import jpen.PLevel;
+import jpen.PLevelEmulator;
+import jpen.PLevelEvent;
+import jpen.event.PenAdapter;
+import jpen.owner.PenClip;
+import jpen.owner.PenOwner;
+import junit.framework.TestCase;
+
+public class AbstractPenDeviceTest extends TestCase {
+
+	private static final long TIMEOUT_MILLIS=5000;
+
+	/**
+	Schedules the levels the way the providers do: only the listened level types are read (all of them unless the level filtering is enabled).
+	*/
+	static final class TestProvider
+		extends AbstractPenProvider{
+		final TestDevice device;
+
+		TestProvider(AbstractConstructor constructor){
+			super(constructor);
+			devices.add(device=new TestDevice());
+		}
+
+		final class TestDevice
+			extends AbstractPenDevice{
+			TestDevice(){
+				super(TestProvider.this);
+				setKindTypeNumber(PKind.Type.STYLUS.ordinal());
+				setEnabled(true);
+			}
+
+			//@Override
+			public String getName(){
+				return "Test";
+			}
+
+			void scheduleLevels(float x, float tiltX){
+				List<PLevel> levels=new ArrayList<PLevel>();
+				levels.add(new PLevel(PLevel.Type.X, x));
+				levels.add(new PLevel(PLevel.Type.Y, 1));
+				if(getPen().isLevelTypeListened(PLevel.Type.TILT_X))
+					levels.add(new PLevel(PLevel.Type.TILT_X, tiltX));
+				getPenManager().scheduleLevelEvent(this, System.currentTimeMillis(), levels);
+			}
+		}
+
+		//@Override
+		public void penManagerPaused(boolean paused){}
+	}
+
+	static final class TestConstructor
+		extends AbstractPenProvider.AbstractConstructor{
+		//@Override
+		public String getName(){
+			return "Test";
+		}
+
+		//@Override
+		public boolean constructable(PenManager penManager){
+			return true;
+		}
+
+		@Override
+		protected PenProvider constructProvider(){
+			return new TestProvider(this);
+		}
+	}
+
+	static final class TestPenOwner
+		implements PenOwner{
+		final TestConstructor constructor=new TestConstructor();
+		PenManagerHandle penManagerHandle;
+
+		//@Override
+		public Collection<PenProvider.Constructor> getPenProviderConstructors(){
+			return Collections.<PenProvider.Constructor>singleton(constructor);
+		}
+
+		//@Override
+		public void setPenManagerHandle(PenManagerHandle penManagerHandle){
+			this.penManagerHandle=penManagerHandle;
+		}
+
+		//@Override
+		public PenClip getPenClip(){
+			return new PenClip(){
+							 //@Override
+							 public void evalLocationOnScreen(Point locationOnScreen){
+								 locationOnScreen.x=locationOnScreen.y=0;
+							 }
+							 //@Override
+							 public boolean contains(Point2D.Float point){
+								 return true;
+							 }
+						 };
+		}
+
+		//@Override
+		public boolean isDraggingOut(){
+			return false;
+		}
+
+		//@Override
+		public Object evalPenEventTag(PenEvent ev){
+			return null;
+		}
+
+		//@Override
+		public boolean enforceSinglePenManager(){
+			return false;
+		}
+	}
+
+	public void testTiltDeliveredToDevicePenOnMultiPenMode() throws Exception {
+		TestPenOwner penOwner=new TestPenOwner();
+		PenManager penManager=new PenManager(penOwner, PenManager.PEN_PER_DEVICE);
+		try{
+			penManager.getProviderConstructors(); // waits for the construction
+			TestProvider provider=(TestProvider)penOwner.constructor.getConstructed();
+			PenDevice device=provider.device;
+			assertNotSame(penManager.pen, penManager.getPen(device));
+			assertSame(penManager.getPen(device), provider.device.getPen());
+
+			final List<Float> tiltXs=new ArrayList<Float>();
+			penManager.getPen(device).addListener(new PenAdapter(){
+				@Override
+				public void penLevelEvent(PLevelEvent ev){
+					for(PLevel level: ev.levels)
+						if(level.getType()==PLevel.Type.TILT_X)
+							synchronized(tiltXs){
+								tiltXs.add(level.value);
+								tiltXs.notifyAll();
+							}
+				}
+			}, PenListenerMask.levels(PLevel.Type.TILT_X));
+			synchronized(penOwner.penManagerHandle.getPenSchedulerLock()){
+				penOwner.penManagerHandle.setPenManagerPaused(false);
+			}
+
+			provider.device.scheduleLevels(10, 0.5f);
+			long deadline=System.currentTimeMillis()+TIMEOUT_MILLIS;
+			synchronized(tiltXs){
+				while(tiltXs.isEmpty() && System.currentTimeMillis()<deadline)
+					tiltXs.wait(100);
+				assertEquals(Collections.singletonList(0.5f), tiltXs);
+			}
+		}finally{
+			penManager.close();
+		}
+	}
+
+	public void testLevelEmulatorTriggersAppliedOnMultiPenMode() throws Exception {
+		TestPenOwner penOwner=new TestPenOwner();
+		PenManager penManager=new PenManager(penOwner, PenManager.PEN_PER_DEVICE);
+		try{
+			penManager.pen.levelEmulator.setTrigger(PKind.Type.STYLUS, PButton.Type.LEFT,
+				new PLevelEmulator.ButtonTriggerPolicy(PLevel.Type.TILT_Y, 0.25f, 0f));
+			TestProvider provider=startPenManager(penOwner, penManager);
+			// set after the device pen is created:
+			penManager.pen.levelEmulator.setTrigger(PKind.Type.STYLUS, PButton.Type.RIGHT,
+				new PLevelEmulator.ButtonTriggerPolicy(PLevel.Type.SIDE_PRESSURE, 0.75f, 0f));
+			Pen devicePen=penManager.getPen(provider.device);
+			assertNotSame(penManager.pen, devicePen);
+
+			provider.device.scheduleLevels(10, 0.5f);
+			penManager.scheduleButtonEvent(provider.device, System.currentTimeMillis(), new PButton(PButton.Type.LEFT, true));
+			assertEquals(0.25f, devicePen.lastScheduledState.getLevelValue(PLevel.Type.TILT_Y));
+			penManager.scheduleButtonEvent(provider.device, System.currentTimeMillis(), new PButton(PButton.Type.RIGHT, true));
+			assertEquals(0.75f, devicePen.lastScheduledState.getLevelValue(PLevel.Type.SIDE_PRESSURE));
+			penManager.scheduleButtonEvent(provider.device, System.currentTimeMillis(), new PButton(PButton.Type.LEFT, false));
+			assertEquals(0f, devicePen.lastScheduledState.getLevelValue(PLevel.Type.TILT_Y));
+		}finally{
+			penManager.close();
+		}
+	}
+
+	public void testDeviceIdsReused() throws Exception {
+		TestPenOwner penOwner=new TestPenOwner();
+		PenManager penManager=new PenManager(penOwner, PenManager.PEN_PER_DEVICE);
+		try{
+			TestProvider provider=startPenManager(penOwner, penManager);
+			int devicesCount=penManager.getDevices().size();
+			int pensCount=penManager.getPens().size();
+			int firstId=-1;
+			for(int i=0; i<300; i++){
+				TestProvider.TestDevice device=provider.new TestDevice();
+				penManager.firePenDeviceAdded(penOwner.constructor, device);
+				if(i==0)
+					firstId=device.getId();
+				assertEquals(firstId, device.getId());
+				assertSame(device, penManager.getDevice(device.getId()));
+				assertNotSame(penManager.pen, penManager.getPen(device));
+				penManager.firePenDeviceRemoved(penOwner.constructor, device);
+				assertNull(penManager.getDevice(device.getId()));
+			}
+			assertEquals(devicesCount, penManager.getDevices().size());
+			assertEquals(pensCount, penManager.getPens().size()); // the pens of the removed devices are dropped
+		}finally{
+			penManager.close();
+		}
+	}
+
+	private static boolean waitIdle(PenManager penManager, boolean idle) throws InterruptedException {
+		long deadline=System.currentTimeMillis()+TIMEOUT_MILLIS;
+		while(penManager.getIdle()!=idle && System.currentTimeMillis()<deadline)
+			Thread.sleep(20);
+		return penManager.getIdle()==idle;
+	}
+
+	public void testIdleAgainAfterNonProximityDeviceActivity() throws Exception {
+		TestPenOwner penOwner=new TestPenOwner();
+		PenManager penManager=new PenManager(penOwner);
+		try{
+			TestProvider provider=startPenManager(penOwner, penManager);
+			TestProvider.TestDevice mouseDevice=provider.new TestDevice(); // doesn't report proximity
+			penManager.firePenDeviceAdded(penOwner.constructor, mouseDevice);
+
+			penManager.firePenProximity(provider.device, true);
+			assertFalse(penManager.getIdle());
+			penManager.firePenProximity(provider.device, false);
+			assertTrue(penManager.getIdle());
+
+			mouseDevice.scheduleLevels(10, 0);
+			assertFalse(penManager.getIdle());
+			assertTrue(waitIdle(penManager, true));
+
+			// the pen device events keep the PenManager awake until the pen leaves the proximity:
+			provider.device.scheduleLevels(20, 0);
+			assertFalse(penManager.getIdle());
+			mouseDevice.scheduleLevels(30, 0);
+			Thread.sleep(2000); // twice the non proximity idle timeout
+			assertFalse(penManager.getIdle());
+			penManager.firePenProximity(provider.device, true);
+			penManager.firePenProximity(provider.device, false);
+			assertTrue(penManager.getIdle());
+		}finally{
+			penManager.close();
+		}
+	}
+
+	private static TestProvider startPenManager(TestPenOwner penOwner, PenManager penManager){
+		penManager.getProviderConstructors(); // waits for the construction
+		synchronized(penOwner.penManagerHandle.getPenSchedulerLock()){
+			penOwner.penManagerHandle.setPenManagerPaused(false);
+		}
+		return (TestProvider)penOwner.constructor.getConstructed();
+	}
+
+	public void testLevelsNotListenedAreScheduledByDefault() throws Exception {
+		TestPenOwner penOwner=new TestPenOwner();
+		PenManager penManager=new PenManager(penOwner);
+		try{
+			TestProvider provider=startPenManager(penOwner, penManager);
+			penManager.pen.addListener(new PenAdapter(), PenListenerMask.levels(PLevel.Type.X));
+			assertFalse(penManager.getLevelFiltering());
+			assertTrue(penManager.pen.isLevelTypeListened(PLevel.Type.TILT_X));
+			provider.device.scheduleLevels(10, 0.5f);
+			assertEquals(0.5f, penManager.pen.lastScheduledState.getLevelValue(PLevel.Type.TILT_X));
+		}finally{
+			penManager.close();
+		}
+	}
+
+	public void testLevelFilteringSkipsLevelsNotListened() throws Exception {
+		TestPenOwner penOwner=new TestPenOwner();
+		PenManager penManager=new PenManager(penOwner);
+		try{
+			TestProvider provider=startPenManager(penOwner, penManager);
+			penManager.setLevelFiltering(true);
+			penManager.pen.addListener(new PenAdapter(), PenListenerMask.levels(PLevel.Type.X));
+			assertFalse(penManager.pen.isLevelTypeListened(PLevel.Type.TILT_X));
+			assertTrue(penManager.pen.isLevelTypeListened(PLevel.Type.PRESSURE));
+			provider.device.scheduleLevels(10, 0.5f);
+			assertEquals(10f, penManager.pen.lastScheduledState.getLevelValue(PLevel.Type.X));
+			assertEquals(0f, penManager.pen.lastScheduledState.getLevelValue(PLevel.Type.TILT_X));
+
+			penManager.pen.addListener(new PenAdapter(), PenListenerMask.levels(PLevel.Type.TILT_X));
+			provider.device.scheduleLevels(20, 0.5f);
+			assertEquals(0.5f, penManager.pen.lastScheduledState.getLevelValue(PLevel.Type.TILT_X));
+		}finally{
+			penManager.close();
+		}
+	}
+}
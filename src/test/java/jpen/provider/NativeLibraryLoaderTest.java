@@ -0,0 +1,110 @@
+/* [{
+Copyright 2007, 2008 Nicolas Carranza <nicarran at gmail.com>
+
+This file is part of jpen.
+
+jpen is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License,
+or (at your option) any later version.
+
+jpen is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with jpen.  If not, see <http://www.gnu.org/licenses/>.
+}] */
+package jpen.provider;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import junit.framework.TestCase;
+
+public class NativeLibraryLoaderTest extends TestCase {
+
+	private static final String RESOURCE_NAME="libjpen-test.bin"; // any name: the extraction does not depend on the platform library name
+
+	private File cacheDir;
+
+	@Override
+	protected void setUp() throws IOException {
+		cacheDir=File.createTempFile("jpen-native", "");
+		assertTrue(cacheDir.delete());
+		System.setProperty(NativeLibraryLoader.CACHE_DIR_PROPERTY, cacheDir.getPath());
+	}
+
+	@Override
+	protected void tearDown() {
+		System.clearProperty(NativeLibraryLoader.CACHE_DIR_PROPERTY);
+		delete(cacheDir);
+	}
+
+	private static void delete(File file) {
+		File[] files=file.listFiles();
+		if(files!=null)
+			for(File child: files)
+				delete(child);
+		file.delete();
+	}
+
+	private static byte[] read(InputStream in) throws IOException {
+		try {
+			ByteArrayOutputStream out=new ByteArrayOutputStream();
+			byte[] buffer=new byte[1024];
+			for(int n; (n=in.read(buffer))!=-1;)
+				out.write(buffer, 0, n);
+			return out.toByteArray();
+		} finally {
+			in.close();
+		}
+	}
+
+	private static String sha1(byte[] content) throws Exception {
+		StringBuilder hash=new StringBuilder();
+		for(byte b: MessageDigest.getInstance("SHA-1").digest(content))
+			hash.append(String.format("%02x", b&0xff));
+		return hash.toString();
+	}
+
+	public void testExtractsToTheContentHashDirectory() throws Exception {
+		byte[] content=read(NativeLibraryLoader.class.getResourceAsStream("native/"+RESOURCE_NAME));
+		File libFile=NativeLibraryLoader.extractResource(RESOURCE_NAME);
+		assertEquals(new File(new File(cacheDir, sha1(content)), RESOURCE_NAME), libFile);
+		assertTrue(Arrays.equals(content, read(new FileInputStream(libFile))));
+		assertEquals("no temporary file left", 1, libFile.getParentFile().list().length);
+	}
+
+	public void testCachedLibraryIsNotExtractedAgain() throws Exception {
+		File libFile=NativeLibraryLoader.extractResource(RESOURCE_NAME);
+		long lastModified=libFile.lastModified()-60000;
+		assertTrue(libFile.setLastModified(lastModified));
+		assertEquals(libFile, NativeLibraryLoader.extractResource(RESOURCE_NAME));
+		assertEquals(lastModified, libFile.lastModified());
+	}
+
+	public void testPartiallyWrittenLibraryIsExtractedAgain() throws Exception {
+		File libFile=NativeLibraryLoader.extractResource(RESOURCE_NAME);
+		byte[] content=read(new FileInputStream(libFile));
+		FileOutputStream out=new FileOutputStream(libFile);
+		try {
+			out.write(content, 0, content.length/2);
+		} finally {
+			out.close();
+		}
+		assertEquals(libFile, NativeLibraryLoader.extractResource(RESOURCE_NAME));
+		assertTrue(Arrays.equals(content, read(new FileInputStream(libFile))));
+	}
+
+	public void testResourceNotInTheClasspath() throws IOException {
+		assertNull(NativeLibraryLoader.extractResource("libjpen-absent.bin"));
+		assertFalse(cacheDir.exists());
+	}
+}
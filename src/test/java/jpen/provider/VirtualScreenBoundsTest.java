@@ -0,0 +1,102 @@
+/* [{
+Copyright 2007, 2008 Nicolas Carranza <nicarran at gmail.com>
+
+This file is part of jpen.
+
+jpen is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License,
+or (at your option) any later version.
+
+jpen is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with jpen.  If not, see <http://www.gnu.org/licenses/>.
+}] */
+package jpen.provider;
+
+import java.awt.Rectangle;
+import java.awt.geom.Rectangle2D;
+import junit.framework.TestCase;
+
+public class VirtualScreenBoundsTest extends TestCase {
+
+	private static final float DELTA=1e-2f;
+
+	/**
+	A 1920x1080 screen at scale 1 on the left of a 3840x2160 (device pixels) screen at scale 2: the virtual desktop has a gap under the first screen.
+	*/
+	private static VirtualScreenBounds.Layout createMixedScaleLayout(){
+		Rectangle2D virtualDeviceBounds=new Rectangle2D.Double(0, 0, 5760, 2160);
+		VirtualScreenBounds.Screen[] screens=new VirtualScreenBounds.Screen[]{
+			new VirtualScreenBounds.Screen(new Rectangle(0, 0, 1920, 1080), 1f, 1f, new Rectangle2D.Double(0, 0, 1920, 1080), virtualDeviceBounds),
+			new VirtualScreenBounds.Screen(new Rectangle(1920, 0, 1920, 1080), 2f, 2f, new Rectangle2D.Double(1920, 0, 3840, 2160), virtualDeviceBounds),
+		};
+		return new VirtualScreenBounds.Layout(screens, new Rectangle(0, 0, 3840, 1080));
+	}
+
+	private static void assertMapped(VirtualScreenBounds.Layout layout, double deviceX, double deviceY, double virtualDeviceX, double virtualDeviceY, double virtualDeviceWidth, double virtualDeviceHeight, float expectedX, float expectedY){
+		float[] screenXY=new float[2];
+		layout.map((float)((deviceX-virtualDeviceX)/virtualDeviceWidth), (float)((deviceY-virtualDeviceY)/virtualDeviceHeight), screenXY);
+		assertEquals(expectedX, screenXY[0], DELTA);
+		assertEquals(expectedY, screenXY[1], DELTA);
+	}
+
+	public void testMixedScale(){
+		VirtualScreenBounds.Layout layout=createMixedScaleLayout();
+		assertSame(layout.getScreen(0), layout.getScreen(960f/5760, 540f/2160));
+		assertSame(layout.getScreen(1), layout.getScreen(3840f/5760, 0.5f));
+		assertMapped(layout, 960, 540, 0, 0, 5760, 2160, 960, 540);
+		assertMapped(layout, 1920, 1080, 0, 0, 5760, 2160, 1920, 1080);
+		// one device pixel is half a user space unit on the scale 2 screen:
+		assertMapped(layout, 3840, 1080, 0, 0, 5760, 2160, 2880, 540);
+		assertMapped(layout, 5760, 2160, 0, 0, 5760, 2160, 3840, 1080);
+	}
+
+	public void testGap(){
+		VirtualScreenBounds.Layout layout=createMixedScaleLayout();
+		// under the first screen: moved up to its bottom edge.
+		assertSame(layout.getScreen(0), layout.getScreen(100f/5760, 0.75f));
+		assertMapped(layout, 100, 1620, 0, 0, 5760, 2160, 100, 1080);
+		// nearer to the second screen: moved right to its left edge.
+		assertSame(layout.getScreen(1), layout.getScreen(1800f/5760, 0.75f));
+		assertMapped(layout, 1800, 1620, 0, 0, 5760, 2160, 1920, 810);
+	}
+
+	public void testOutsideNotClamped(){
+		VirtualScreenBounds.Layout layout=createMixedScaleLayout();
+		// out of the tablet range: extrapolated on the nearest screen.
+		assertMapped(layout, 6336, 1080, 0, 0, 5760, 2160, 4128, 540);
+	}
+
+	public void testNegativeOrigin(){
+		// a 1440x810 (device pixels) screen at scale 1.5 on the left of the main 1920x1080 screen at scale 1:
+		Rectangle2D virtualDeviceBounds=new Rectangle2D.Double(-1440, 0, 3360, 1080);
+		VirtualScreenBounds.Screen[] screens=new VirtualScreenBounds.Screen[]{
+			new VirtualScreenBounds.Screen(new Rectangle(0, 0, 1920, 1080), 1f, 1f, new Rectangle2D.Double(0, 0, 1920, 1080), virtualDeviceBounds),
+			new VirtualScreenBounds.Screen(new Rectangle(-960, 0, 960, 540), 1.5f, 1.5f, new Rectangle2D.Double(-1440, 0, 1440, 810), virtualDeviceBounds),
+		};
+		VirtualScreenBounds.Layout layout=new VirtualScreenBounds.Layout(screens, new Rectangle(-960, 0, 2880, 1080));
+		assertMapped(layout, -720, 405, -1440, 0, 3360, 1080, -480, 270);
+		assertMapped(layout, 960, 540, -1440, 0, 3360, 1080, 960, 540);
+		// under the scale 1.5 screen:
+		assertMapped(layout, -1000, 1000, -1440, 0, 3360, 1080, -960+440/1.5f, 540);
+	}
+
+	public void testEmpty(){
+		float[] screenXY=new float[]{1, 1};
+		VirtualScreenBounds.Layout.EMPTY.map(0.5f, 0.5f, screenXY);
+		assertEquals(0f, screenXY[0]);
+		assertEquals(0f, screenXY[1]);
+		assertNull(VirtualScreenBounds.Layout.EMPTY.getScreen(0.5f, 0.5f));
+	}
+
+	public void testEquals(){
+		assertEquals(createMixedScaleLayout(), createMixedScaleLayout());
+		assertEquals(createMixedScaleLayout().hashCode(), createMixedScaleLayout().hashCode());
+		assertFalse(createMixedScaleLayout().equals(VirtualScreenBounds.Layout.EMPTY));
+	}
+}
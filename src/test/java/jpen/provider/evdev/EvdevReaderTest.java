@@ -0,0 +1,179 @@
+/* [{
+Copyright 2007, 2008 Nicolas Carranza <nicarran at gmail.com>
+
+This file is part of jpen.
+
+jpen is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License,
+or (at your option) any later version.
+
+jpen is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with jpen.  If not, see <http://www.gnu.org/licenses/>.
+}] */
+package jpen.provider.evdev;
+
+import java.awt.Point;
+import java.awt.geom.Point2D;
+import java.io.File;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import jpen.PenEvent;
+import jpen.PenListenerMask;
+import jpen.PenManager;
+import jpen.PenProvider;
+import jpen.PKind;
+import jpen.PKindEvent;
+import jpen.PLevel;
+import jpen.PLevelEvent;
+import jpen.event.PenAdapter;
+import jpen.owner.PenClip;
+import jpen.owner.PenOwner;
+import junit.framework.TestCase;
+import static jpen.provider.evdev.InputEventDecoder.*;
+
+/**
+Replays recorded event files through the {@link EvdevProvider} reader loop.
+*/
+public class EvdevReaderTest extends TestCase {
+
+	private static final long TIMEOUT_MILLIS=5000;
+
+	static final class TestPenOwner
+		implements PenOwner {
+		final EvdevProvider.Constructor constructor=new EvdevProvider.Constructor() {
+					@Override
+					public boolean constructable(PenManager penManager) {
+						return true; // the nodes are given on DEVICES_SYSTEM_PROPERTY
+					}
+				};
+		PenManagerHandle penManagerHandle;
+
+		//@Override
+		public Collection<PenProvider.Constructor> getPenProviderConstructors() {
+			return Collections.<PenProvider.Constructor>singleton(constructor);
+		}
+
+		//@Override
+		public void setPenManagerHandle(PenManagerHandle penManagerHandle) {
+			this.penManagerHandle=penManagerHandle;
+		}
+
+		//@Override
+		public PenClip getPenClip() {
+			return new PenClip() {
+							 //@Override
+							 public void evalLocationOnScreen(Point locationOnScreen) {
+								 locationOnScreen.x=locationOnScreen.y=0;
+							 }
+							 //@Override
+							 public boolean contains(Point2D.Float point) {
+								 return true;
+							 }
+						 };
+		}
+
+		//@Override
+		public boolean isDraggingOut() {
+			return false;
+		}
+
+		//@Override
+		public Object evalPenEventTag(PenEvent ev) {
+			return null;
+		}
+
+		//@Override
+		public boolean enforceSinglePenManager() {
+			return false;
+		}
+	}
+
+	private File eventsFile;
+
+	@Override
+	protected void setUp() throws Exception {
+		eventsFile=new InputEventDecoderTest.EventRecorder(LONG_SIZE, ByteOrder.nativeOrder())
+							 .add(1000, EV_KEY, BTN_TOOL_RUBBER, 1).add(1000, EV_ABS, ABS_X, 500).add(1000, EV_ABS, ABS_Y, 250).syn(1000)
+							 .add(1005, EV_ABS, ABS_PRESSURE, 512).syn(1005)
+							 .add(1010, EV_ABS, ABS_PRESSURE, 4095).syn(1010) // out of the configured range: it grows
+							 .add(1015, EV_ABS, ABS_PRESSURE, 1023).syn(1015)
+							 .toFile();
+		System.setProperty(EvdevProvider.DEVICES_SYSTEM_PROPERTY, eventsFile.getPath());
+	}
+
+	@Override
+	protected void tearDown() {
+		System.clearProperty(EvdevProvider.DEVICES_SYSTEM_PROPERTY);
+		System.clearProperty(EvdevProvider.ABS_RANGES_SYSTEM_PROPERTY);
+		eventsFile.delete();
+	}
+
+	public void testRecordedEventsAreReplayedOnUnpause() throws Exception {
+		System.setProperty(EvdevProvider.ABS_RANGES_SYSTEM_PROPERTY, "X=0:1000,Y=0:1000,PRESSURE=0:1023");
+		TestPenOwner penOwner=new TestPenOwner();
+		PenManager penManager=new PenManager(penOwner);
+		try {
+			penManager.getProviderConstructors(); // waits for the construction
+			assertEquals(3, penOwner.constructor.getConstructed().getDevices().size());
+
+			final List<Object> events=new ArrayList<Object>();
+			penManager.pen.addListener(new PenAdapter() {
+						@Override
+						public void penKindEvent(PKindEvent ev) {
+							add(ev.kind.getType());
+						}
+						@Override
+						public void penLevelEvent(PLevelEvent ev) {
+							for(PLevel level: ev.levels)
+								if(level.getType()==PLevel.Type.PRESSURE)
+									add(level.value);
+						}
+						private void add(Object event) {
+							synchronized(events) {
+								events.add(event);
+								events.notifyAll();
+							}
+						}
+					}, PenListenerMask.levels(PLevel.Type.PRESSURE));
+			Thread.sleep(100);
+			synchronized(events) {
+				assertTrue("events read while paused: "+events, events.isEmpty());
+			}
+			synchronized(penOwner.penManagerHandle.getPenSchedulerLock()) {
+				penOwner.penManagerHandle.setPenManagerPaused(false);
+			}
+
+			List<Object> expected=Arrays.<Object>asList(PKind.Type.ERASER, 512/1023f, 1f, 1023/4095f);
+			long deadline=System.currentTimeMillis()+TIMEOUT_MILLIS;
+			synchronized(events) {
+				while(events.size()<expected.size() && System.currentTimeMillis()<deadline)
+					events.wait(100);
+				assertEquals(expected, events);
+			}
+		} finally {
+			penManager.close();
+		}
+	}
+
+	public void testNodesAreNotReadWithoutTheXYRanges() throws Exception {
+		System.setProperty(EvdevProvider.ABS_RANGES_SYSTEM_PROPERTY, "PRESSURE=0:1023");
+		TestPenOwner penOwner=new TestPenOwner();
+		PenManager penManager=new PenManager(penOwner);
+		try {
+			penManager.getProviderConstructors();
+			assertTrue(penOwner.constructor.getConstructed().getDevices().isEmpty());
+		} finally {
+			penManager.close();
+		}
+	}
+}
@@ -0,0 +1,187 @@
+/* [{
+Copyright 2007, 2008 Nicolas Carranza <nicarran at gmail.com>
+
+This file is part of jpen.
+
+jpen is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License,
+or (at your option) any later version.
+
+jpen is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with jpen.  If not, see <http://www.gnu.org/licenses/>.
+}] */
+package jpen.provider.evdev;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import junit.framework.TestCase;
+import static jpen.provider.evdev.InputEventDecoder.*;
+
+public class InputEventDecoderTest extends TestCase {
+
+	/**
+	Records {@code struct input_event}s the way the kernel writes them on an evdev node.
+	*/
+	static final class EventRecorder {
+		private final int longSize;
+		private final ByteBuffer buffer;
+
+		EventRecorder(int longSize, ByteOrder byteOrder) {
+			this.longSize=longSize;
+			this.buffer=ByteBuffer.allocate(1024*(2*longSize+8)).order(byteOrder);
+		}
+
+		EventRecorder add(long timeMillis, int type, int code, int value) {
+			long seconds=timeMillis/1000, microseconds=(timeMillis%1000)*1000;
+			if(longSize==8)
+				buffer.putLong(seconds).putLong(microseconds);
+			else
+				buffer.putInt((int)seconds).putInt((int)microseconds);
+			buffer.putShort((short)type).putShort((short)code).putInt(value);
+			return this;
+		}
+
+		EventRecorder syn(long timeMillis) {
+			return add(timeMillis, EV_SYN, SYN_REPORT, 0);
+		}
+
+		byte[] toBytes() {
+			byte[] bytes=new byte[buffer.position()];
+			((ByteBuffer)buffer.duplicate().flip()).get(bytes);
+			return bytes;
+		}
+
+		File toFile() throws IOException {
+			File file=File.createTempFile("jpen-evdev", ".events");
+			file.deleteOnExit();
+			FileOutputStream out=new FileOutputStream(file);
+			try {
+				out.write(toBytes());
+			} finally {
+				out.close();
+			}
+			return file;
+		}
+	}
+
+	/**
+	Keeps a copy of each frame.
+	*/
+	static final class FrameRecorder
+		implements InputEventDecoder.Listener {
+		final List<String> frames=new ArrayList<String>();
+
+		//@Override
+		public void frameDecoded(InputEventDecoder decoder) {
+			StringBuilder frame=new StringBuilder();
+			frame.append(decoder.getFrameTime());
+			for(int absCode: new int[]{ABS_X, ABS_Y, ABS_PRESSURE, ABS_TILT_X})
+				if(decoder.isAbsChanged(absCode))
+					frame.append(" abs").append(absCode).append('=').append(decoder.getAbsValue(absCode));
+			for(int i=0; i<decoder.getKeysSize(); i++)
+				frame.append(" key").append(Integer.toHexString(decoder.getKeyCode(i))).append('=').append(decoder.getKeyValue(i));
+			frames.add(frame.toString());
+		}
+	}
+
+	private static EventRecorder recordStroke(int longSize, ByteOrder byteOrder) {
+		return new EventRecorder(longSize, byteOrder)
+					 .add(1000, EV_KEY, BTN_TOOL_PEN, 1).add(1000, EV_ABS, ABS_X, 100).add(1000, EV_ABS, ABS_Y, 200).syn(1000)
+					 .add(1005, EV_ABS, ABS_PRESSURE, 512).add(1005, EV_ABS, ABS_TILT_X, -30).syn(1005)
+					 .add(1010, EV_ABS, ABS_X, 0x12345).syn(1010);
+	}
+
+	private static final String[] STROKE_FRAMES={
+		"1000 abs0=100 abs1=200 key140=1",
+		"1005 abs24=512 abs26=-30",
+		"1010 abs0=74565",
+	};
+
+	/**
+	Replays a recorded file through small reads which split the events, as the reader loop does.
+	*/
+	private static List<String> replay(File file, int longSize, ByteOrder byteOrder, int readSize) throws IOException {
+		FrameRecorder frameRecorder=new FrameRecorder();
+		InputEventDecoder decoder=new InputEventDecoder(longSize, frameRecorder);
+		ByteBuffer events=ByteBuffer.allocateDirect(decoder.eventSize+readSize).order(byteOrder);
+		FileChannel channel=new FileInputStream(file).getChannel();
+		try {
+			ByteBuffer read=ByteBuffer.allocate(readSize);
+			while(channel.read(read)>=0) {
+				read.flip();
+				events.put(read);
+				read.clear();
+				events.flip();
+				decoder.decode(events);
+				events.compact();
+			}
+		} finally {
+			channel.close();
+		}
+		assertEquals("trailing bytes", 0, events.position());
+		return frameRecorder.frames;
+	}
+
+	public void testReplayOnNativeLongSize() throws IOException {
+		File file=recordStroke(LONG_SIZE, ByteOrder.nativeOrder()).toFile();
+		for(int readSize: new int[]{1, 7, EVENT_SIZE, EVENT_SIZE+3})
+			assertEquals("readSize="+readSize, Arrays.asList(STROKE_FRAMES),
+									 replay(file, LONG_SIZE, ByteOrder.nativeOrder(), readSize));
+	}
+
+	public void testReplayOfEventsRecordedOnOtherLongSize() throws IOException {
+		for(int longSize: new int[]{4, 8})
+			for(ByteOrder byteOrder: new ByteOrder[]{ByteOrder.LITTLE_ENDIAN, ByteOrder.BIG_ENDIAN})
+				assertEquals("longSize="+longSize+", byteOrder="+byteOrder, Arrays.asList(STROKE_FRAMES),
+										 replay(recordStroke(longSize, byteOrder).toFile(), longSize, byteOrder, 5));
+	}
+
+	public void testDroppedEventsAreNotAFrame() throws IOException {
+		File file=new EventRecorder(LONG_SIZE, ByteOrder.nativeOrder())
+							.add(1000, EV_ABS, ABS_X, 1).syn(1000)
+							.add(1001, EV_ABS, ABS_X, 2).add(1001, EV_SYN, SYN_DROPPED, 0)
+							.add(1002, EV_ABS, ABS_Y, 3).add(1002, EV_KEY, BTN_STYLUS, 1).syn(1002)
+							.add(1003, EV_ABS, ABS_PRESSURE, 4).syn(1003)
+							.toFile();
+		assertEquals(Arrays.asList("1000 abs0=1", "1003 abs24=4"),
+								 replay(file, LONG_SIZE, ByteOrder.nativeOrder(), 64));
+		FrameRecorder frameRecorder=new FrameRecorder();
+		InputEventDecoder decoder=new InputEventDecoder(frameRecorder);
+		// the axis values read while dropping are kept:
+		ByteBuffer events=ByteBuffer.wrap(new EventRecorder(LONG_SIZE, ByteOrder.nativeOrder())
+																			.add(0, EV_ABS, ABS_X, 2).add(0, EV_SYN, SYN_DROPPED, 0).syn(0)
+																			.add(1, EV_ABS, ABS_Y, 3).syn(1).toBytes()).order(ByteOrder.nativeOrder());
+		decoder.decode(events);
+		assertEquals(Arrays.asList("1 abs1=3"), frameRecorder.frames);
+		assertEquals(2, decoder.getAbsValue(ABS_X));
+	}
+
+	public void testKeysAfterMaxFrameKeysAreIgnored() {
+		EventRecorder recorder=new EventRecorder(LONG_SIZE, ByteOrder.nativeOrder());
+		for(int i=0; i<MAX_FRAME_KEYS+4; i++)
+			recorder.add(0, EV_KEY, BTN_LEFT, i&1);
+		recorder.syn(0);
+		final int[] keysSize={-1};
+		new InputEventDecoder(new InputEventDecoder.Listener() {
+					//@Override
+					public void frameDecoded(InputEventDecoder decoder) {
+						keysSize[0]=decoder.getKeysSize();
+					}
+				}).decode(ByteBuffer.wrap(recorder.toBytes()).order(ByteOrder.nativeOrder()));
+		assertEquals(MAX_FRAME_KEYS, keysSize[0]);
+	}
+}
@@ -0,0 +1,185 @@
+/* [{
+Copyright 2007, 2008 Nicolas Carranza <nicarran at gmail.com>
+
+This file is part of jpen.
+
+jpen is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License,
+or (at your option) any later version.
+
+jpen is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with jpen.  If not, see <http://www.gnu.org/licenses/>.
+}] */
+package jpen.provider.hidraw;
+
+import java.nio.ByteBuffer;
+import junit.framework.TestCase;
+import static jpen.provider.hidraw.HidReportDecoder.*;
+
+public class HidReportDecoderTest extends TestCase {
+
+	/**
+	Mouse mode report: ID 1, X and Y of 16 bits.
+	*/
+	private static final int[] MOUSE_COLLECTION={
+		0x05, 0x01, // usage page (generic desktop)
+		0x09, 0x02, // usage (mouse)
+		0xa1, 0x01, // collection (application)
+		0x85, 0x01, //   report ID (1)
+		0x09, 0x30, 0x09, 0x31, //   usage (X), usage (Y)
+		0x15, 0x00, 0x26, 0xff, 0x7f, //   logical minimum (0), logical maximum (32767)
+		0x75, 0x10, 0x95, 0x02, //   report size (16), report count (2)
+		0x81, 0x02, //   input (data, variable, absolute)
+		0xc0 // end collection
+	};
+
+	/**
+	Pen report: ID 2, 8 bytes: the ID, tip switch, barrel switch, in range and 5 bits of padding, X and Y of 12 bits (Y crosses a byte boundary), pressure of 10 bits and the tilts of 7 signed bits.
+	*/
+	private static final int[] PEN_COLLECTION={
+		0x05, 0x0d, // usage page (digitizer)
+		0x09, 0x02, // usage (pen)
+		0xa1, 0x01, // collection (application)
+		0x85, 0x02, //   report ID (2)
+		0x09, 0x20, //   usage (stylus)
+		0xa1, 0x00, //   collection (physical)
+		0x09, 0x42, 0x09, 0x44, 0x09, 0x32, //     usage (tip switch), usage (barrel switch), usage (in range)
+		0x15, 0x00, 0x25, 0x01, //     logical minimum (0), logical maximum (1)
+		0x75, 0x01, 0x95, 0x03, //     report size (1), report count (3)
+		0x81, 0x02, //     input (data, variable, absolute)
+		0x75, 0x05, 0x95, 0x01, //     report size (5), report count (1)
+		0x81, 0x03, //     input (constant)
+		0x05, 0x01, //     usage page (generic desktop)
+		0x09, 0x30, 0x09, 0x31, //     usage (X), usage (Y)
+		0x26, 0xff, 0x0f, //     logical maximum (4095)
+		0x75, 0x0c, 0x95, 0x02, //     report size (12), report count (2)
+		0x81, 0x02, //     input (data, variable, absolute)
+		0x05, 0x0d, //     usage page (digitizer)
+		0x09, 0x30, //     usage (tip pressure)
+		0x26, 0xff, 0x03, //     logical maximum (1023)
+		0x75, 0x0a, 0x95, 0x01, //     report size (10), report count (1)
+		0x81, 0x02, //     input (data, variable, absolute)
+		0x09, 0x3d, 0x09, 0x3e, //     usage (X tilt), usage (Y tilt)
+		0x15, 0xc0, 0x25, 0x3f, //     logical minimum (-64), logical maximum (63)
+		0x35, 0xc0, 0x45, 0x3f, //     physical minimum (-64), physical maximum (63)
+		0x75, 0x07, 0x95, 0x02, //     report size (7), report count (2)
+		0x81, 0x02, //     input (data, variable, absolute)
+		0xc0, //   end collection
+		0xc0 // end collection
+	};
+
+	private static byte[] toBytes(int[]... items) {
+		int size=0;
+		for(int[] someItems: items)
+			size+=someItems.length;
+		byte[] bytes=new byte[size];
+		int i=0;
+		for(int[] someItems: items)
+			for(int item: someItems)
+				bytes[i++]=(byte)item;
+		return bytes;
+	}
+
+	private static void setBits(byte[] report, int bitOffset, int bitSize, int value) {
+		for(int bit=0; bit<bitSize; bit++) {
+			int reportBit=bitOffset+bit;
+			if((value & (1<<bit))!=0)
+				report[reportBit>>>3]|=1<<(reportBit&7);
+			else
+				report[reportBit>>>3]&=~(1<<(reportBit&7));
+		}
+	}
+
+	private static ByteBuffer penReport(int x, int y, int pressure, int tiltX, int tiltY) {
+		byte[] report=new byte[8];
+		report[0]=2;
+		setBits(report, 8, 1, 1); // tip switch
+		setBits(report, 10, 1, 1); // in range
+		setBits(report, 16, 12, x);
+		setBits(report, 28, 12, y);
+		setBits(report, 40, 10, pressure);
+		setBits(report, 50, 7, tiltX);
+		setBits(report, 57, 7, tiltY);
+		return ByteBuffer.wrap(report);
+	}
+
+	public void testPenApplicationReportIsPreferredOverMouseReport() {
+		for(byte[] descriptor: new byte[][]{toBytes(MOUSE_COLLECTION, PEN_COLLECTION), toBytes(PEN_COLLECTION, MOUSE_COLLECTION)}) {
+			HidReportDecoder decoder=HidReportDecoder.parse(descriptor);
+			assertNotNull(decoder);
+			assertEquals(2, decoder.reportId);
+			assertEquals(PEN_USAGE, decoder.applicationUsage);
+			for(int field: new int[]{X, Y, TIP_PRESSURE, X_TILT, Y_TILT, IN_RANGE, TIP_SWITCH, BARREL_SWITCH})
+				assertTrue("field "+field, decoder.hasField(field));
+			for(int field: new int[]{SECONDARY_BARREL_SWITCH, INVERT, ERASER})
+				assertFalse("field "+field, decoder.hasField(field));
+			assertEquals(8, decoder.getReportSize());
+		}
+	}
+
+	public void testReportOutOfPenCollectionIsUsedIfAlone() {
+		HidReportDecoder decoder=HidReportDecoder.parse(toBytes(MOUSE_COLLECTION));
+		assertNotNull(decoder);
+		assertEquals(1, decoder.reportId);
+		assertEquals(0x010002, decoder.applicationUsage);
+		assertEquals(5, decoder.getReportSize());
+	}
+
+	public void testNoDecoderWithoutXY() {
+		int[] buttonsOnly={
+			0x05, 0x0d, 0x09, 0x02, 0xa1, 0x01,
+			0x09, 0x42, 0x15, 0x00, 0x25, 0x01, 0x75, 0x01, 0x95, 0x01, 0x81, 0x02,
+			0xc0
+		};
+		assertNull(HidReportDecoder.parse(toBytes(buttonsOnly)));
+		assertNull(HidReportDecoder.parse(new byte[0]));
+	}
+
+	public void testGetValue() {
+		HidReportDecoder decoder=HidReportDecoder.parse(toBytes(MOUSE_COLLECTION, PEN_COLLECTION));
+		ByteBuffer report=penReport(0xabc, 0x123, 1023, -64, 63);
+		assertEquals(0xabc, decoder.getValue(report, X));
+		assertEquals(0x123, decoder.getValue(report, Y)); // crosses a byte boundary
+		assertEquals(1023, decoder.getValue(report, TIP_PRESSURE));
+		assertEquals(-64, decoder.getValue(report, X_TILT)); // sign extended
+		assertEquals(63, decoder.getValue(report, Y_TILT));
+		assertTrue(decoder.getBoolean(report, TIP_SWITCH));
+		assertFalse(decoder.getBoolean(report, BARREL_SWITCH));
+		assertTrue(decoder.getBoolean(report, IN_RANGE));
+		assertEquals(0, decoder.getValue(report, ERASER)); // not on the report
+
+		assertEquals(1f, decoder.getRangedValue(report, TIP_PRESSURE), 0);
+		assertEquals(0x123/4095f, decoder.getRangedValue(report, Y), 1e-6f);
+		assertEquals(-64f, decoder.getPhysicalValue(report, X_TILT), 1e-4f);
+		assertEquals(-1, decoder.getValue(penReport(0, 0, 0, -1, 0), X_TILT));
+		assertEquals(0xfff, decoder.getValue(penReport(0xfff, 0, 0, 0, 0), X));
+	}
+
+	public void testIsPenReport() {
+		HidReportDecoder decoder=HidReportDecoder.parse(toBytes(MOUSE_COLLECTION, PEN_COLLECTION));
+		ByteBuffer report=penReport(1, 2, 3, 4, 5);
+		assertTrue(decoder.isPenReport(report));
+		report.put(0, (byte)1); // the mouse report ID
+		assertFalse(decoder.isPenReport(report));
+		report.put(0, (byte)2);
+		report.limit(7); // truncated
+		assertFalse(decoder.isPenReport(report));
+
+		int[] noReportId={
+			0x05, 0x01, 0x09, 0x02, 0xa1, 0x01,
+			0x09, 0x30, 0x09, 0x31, 0x15, 0x00, 0x26, 0xff, 0x7f, 0x75, 0x10, 0x95, 0x02, 0x81, 0x02,
+			0xc0
+		};
+		decoder=HidReportDecoder.parse(toBytes(noReportId));
+		assertEquals(-1, decoder.reportId);
+		assertEquals(4, decoder.getReportSize());
+		assertTrue(decoder.isPenReport(ByteBuffer.wrap(new byte[]{1, 2, 3, 4})));
+		assertEquals(0x0201, decoder.getValue(ByteBuffer.wrap(new byte[]{1, 2, 3, 4}), X));
+	}
+}
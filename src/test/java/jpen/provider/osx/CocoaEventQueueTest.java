@@ -0,0 +1,190 @@
+/* [{
+Copyright 2007, 2008 Nicolas Carranza <nicarran at gmail.com>
+
+This file is part of jpen.
+
+jpen is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License,
+or (at your option) any later version.
+
+jpen is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with jpen.  If not, see <http://www.gnu.org/licenses/>.
+}] */
+package jpen.provider.osx;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import junit.framework.TestCase;
+import static jpen.provider.osx.CocoaEventQueue.*;
+
+public class CocoaEventQueueTest extends TestCase {
+
+	private static final long TIMEOUT_MILLIS=5000;
+
+	/**
+	Keeps a description of each event drained: "p" and the SCREEN_X of a point, "e" (entering) or "l" (leaving) and the pointing device type of a proximity event.
+	*/
+	static final class RecordingHandler
+		implements CocoaEventQueue.Handler {
+		final List<String> events=new ArrayList<String>();
+
+		//@Override
+		public void point(int type, double eventTimeSeconds, boolean tabletEvent, float[] floats, int floatsOffset) {
+			events.add("p"+(int)floats[floatsOffset+SCREEN_X]);
+		}
+
+		//@Override
+		public void proximity(double eventTimeSeconds, boolean enteringProximity, int pointingDeviceType) {
+			events.add((enteringProximity? "e": "l")+pointingDeviceType);
+		}
+	}
+
+	private static boolean offerPoint(CocoaEventQueue queue, int screenX) {
+		return queue.offerPoint(0, screenX, true, screenX, 0, 0.5f, 0, 0, 0, 0);
+	}
+
+	public void testCapacityMustBeAPowerOfTwoGreaterThanTheReserve() {
+		for(int capacity: new int[]{0, 12, PROXIMITY_RESERVE})
+			try {
+				new CocoaEventQueue(capacity);
+				fail("capacity "+capacity+" accepted");
+			} catch(IllegalArgumentException ex) {}
+		new CocoaEventQueue(2*PROXIMITY_RESERVE);
+	}
+
+	public void testEventsAreDrainedInOrder() {
+		CocoaEventQueue queue=new CocoaEventQueue(32);
+		assertTrue(queue.isEmpty());
+		queue.offerProximity(0, true, 1);
+		offerPoint(queue, 10);
+		offerPoint(queue, 11);
+		queue.offerProximity(0, false, 1);
+		queue.offerProximity(0, true, 3);
+		offerPoint(queue, 12);
+		assertFalse(queue.isEmpty());
+		RecordingHandler handler=new RecordingHandler();
+		assertEquals(6, queue.drain(handler));
+		assertEquals(Arrays.asList("e1", "p10", "p11", "l1", "e3", "p12"), handler.events);
+		assertTrue(queue.isEmpty());
+		assertEquals(0, queue.drain(handler));
+	}
+
+	public void testWrapAround() {
+		CocoaEventQueue queue=new CocoaEventQueue(16);
+		RecordingHandler handler=new RecordingHandler();
+		List<String> expected=new ArrayList<String>();
+		int screenX=0;
+		for(int round=0; round<20; round++) { // 5 events per round: the slots wrap every few rounds
+			for(int i=0; i<5; i++) {
+				assertTrue(offerPoint(queue, screenX));
+				expected.add("p"+screenX++);
+			}
+			assertEquals(5, queue.drain(handler));
+		}
+		assertEquals(expected, handler.events);
+		assertEquals(0, queue.getDroppedCount());
+	}
+
+	public void testPointsAreDroppedWhenFullButProximityIsKept() {
+		int capacity=16;
+		CocoaEventQueue queue=new CocoaEventQueue(capacity);
+		int pointsSize=capacity-PROXIMITY_RESERVE;
+		for(int i=0; i<pointsSize; i++)
+			assertTrue(offerPoint(queue, i));
+		assertFalse(offerPoint(queue, pointsSize));
+		assertEquals(1, queue.getDroppedCount());
+
+		for(int i=0; i<PROXIMITY_RESERVE; i++)
+			assertTrue(queue.offerProximity(0, (i&1)==0, 1));
+		assertFalse(queue.offerProximity(0, true, 1)); // the reserve is full too
+		assertEquals(2, queue.getDroppedCount());
+
+		RecordingHandler handler=new RecordingHandler();
+		assertEquals(capacity, queue.drain(handler));
+		assertEquals("p"+(pointsSize-1), handler.events.get(pointsSize-1));
+		assertEquals("l1", handler.events.get(capacity-1));
+		assertTrue(offerPoint(queue, 100)); // the drained slots are reused
+	}
+
+	public void testAwaitEventsParksUntilAnEventIsOffered() throws InterruptedException {
+		final CocoaEventQueue queue=new CocoaEventQueue(16);
+		final RecordingHandler handler=new RecordingHandler();
+		Thread consumer=new Thread() {
+					@Override
+					public void run() {
+						while(handler.events.isEmpty()) {
+							queue.awaitEvents();
+							queue.drain(handler);
+						}
+					}
+				};
+		consumer.start();
+		waitParked(consumer);
+		offerPoint(queue, 7);
+		consumer.join(TIMEOUT_MILLIS);
+		assertFalse("consumer not unparked", consumer.isAlive());
+		assertEquals(Arrays.asList("p7"), handler.events);
+	}
+
+	public void testWakeUpReturnsFromAwaitEvents() throws InterruptedException {
+		final CocoaEventQueue queue=new CocoaEventQueue(16);
+		Thread consumer=new Thread() {
+					@Override
+					public void run() {
+						queue.awaitEvents();
+					}
+				};
+		consumer.start();
+		waitParked(consumer);
+		CocoaEventQueue.wakeUp(consumer);
+		consumer.join(TIMEOUT_MILLIS);
+		assertFalse("consumer not woken up", consumer.isAlive());
+		assertTrue(queue.isEmpty());
+	}
+
+	public void testConcurrentProducerAndConsumer() throws InterruptedException {
+		final CocoaEventQueue queue=new CocoaEventQueue(16);
+		final int eventsSize=100000;
+		Thread producer=new Thread() {
+					@Override
+					public void run() {
+						for(int i=0; i<eventsSize; i++)
+							while(!offerPoint(queue, i))
+								Thread.yield();
+					}
+				};
+		producer.start();
+		final int[] next={0};
+		CocoaEventQueue.Handler handler=new CocoaEventQueue.Handler() {
+					//@Override
+					public void point(int type, double eventTimeSeconds, boolean tabletEvent, float[] floats, int floatsOffset) {
+						assertEquals(next[0]++, (int)floats[floatsOffset+SCREEN_X]);
+						assertEquals(0.5f, floats[floatsOffset+PRESSURE], 0);
+					}
+					//@Override
+					public void proximity(double eventTimeSeconds, boolean enteringProximity, int pointingDeviceType) {
+						fail("no proximity event was offered");
+					}
+				};
+		long deadline=System.currentTimeMillis()+TIMEOUT_MILLIS;
+		while(next[0]<eventsSize && System.currentTimeMillis()<deadline)
+			if(queue.drain(handler)==0)
+				queue.awaitEvents();
+		producer.join(TIMEOUT_MILLIS);
+		assertEquals(eventsSize, next[0]);
+	}
+
+	private static void waitParked(Thread thread) throws InterruptedException {
+		long deadline=System.currentTimeMillis()+TIMEOUT_MILLIS;
+		while(thread.getState()!=Thread.State.WAITING && System.currentTimeMillis()<deadline)
+			Thread.sleep(1);
+		assertEquals(Thread.State.WAITING, thread.getState());
+	}
+}
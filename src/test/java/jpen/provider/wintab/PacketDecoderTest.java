@@ -0,0 +1,101 @@
+/* [{
+Copyright 2007, 2008 Nicolas Carranza <nicarran at gmail.com>
+
+This file is part of jpen.
+
+jpen is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License,
+or (at your option) any later version.
+
+jpen is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with jpen.  If not, see <http://www.gnu.org/licenses/>.
+}] */
+package jpen.provider.wintab;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import junit.framework.TestCase;
+import static jpen.provider.wintab.PacketDecoder.*;
+
+public class PacketDecoderTest extends TestCase {
+
+	/**
+	Writes a PACKET as the native side does.
+	*/
+	private static void putPacket(ByteBuffer packets, int index, int status, int time, int cursor, int buttons, int... values) {
+		int offset=index*PACKET_SIZE;
+		packets.putInt(offset+STATUS, status);
+		packets.putInt(offset+TIME, time);
+		packets.putInt(offset+CURSOR, cursor);
+		packets.putInt(offset+BUTTONS, buttons);
+		int[] valueOffsets={X, Y, NORMAL_PRESSURE, ORIENTATION_AZIMUTH, ORIENTATION_ALTITUDE, TANGENT_PRESSURE, ORIENTATION_TWIST};
+		for(int i=0; i<values.length; i++)
+			packets.putInt(offset+valueOffsets[i], values[i]);
+	}
+
+	public void testPacketLayout() {
+		assertEquals(44, PACKET_SIZE);
+		assertEquals(ORIENTATION_TWIST+4, PACKET_SIZE);
+	}
+
+	public void testDecodesEachPacket() {
+		ByteBuffer packets=ByteBuffer.allocate(3*PACKET_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		putPacket(packets, 0, 1, 1000, 2, 0x1, 100, 200, 512, 900, 450, 10, 3600);
+		putPacket(packets, 1, 0, -5, 3, 0x3, -1, 0x7fffffff, 0, 0, -450, 0, 0); // time signed as the native getTime, eraser altitude
+		putPacket(packets, 2, 0x10, Integer.MAX_VALUE, 4, 0, 1, 2, 3, 4, 5, 6, 7);
+		PacketDecoder decoder=new PacketDecoder(packets);
+		assertEquals(3, decoder.getCapacity());
+
+		decoder.setIndex(0);
+		assertEquals(1, decoder.getStatus());
+		assertEquals(1000, decoder.getTime());
+		assertEquals(2, decoder.getCursor());
+		assertEquals(0x1, decoder.getButtons());
+		assertEquals(100, decoder.getValue(WintabAccess.LEVEL_TYPE_X));
+		assertEquals(200, decoder.getValue(WintabAccess.LEVEL_TYPE_Y));
+		assertEquals(512, decoder.getValue(WintabAccess.LEVEL_TYPE_PRESSURE));
+		assertEquals(900, decoder.getValue(WintabAccess.LEVEL_TYPE_TILT_AZIMUTH));
+		assertEquals(450, decoder.getValue(WintabAccess.LEVEL_TYPE_TILT_ALTITUDE));
+		assertEquals(10, decoder.getValue(WintabAccess.LEVEL_TYPE_SIDE_PRESSURE));
+		assertEquals(3600, decoder.getValue(WintabAccess.LEVEL_TYPE_ROTATION));
+
+		decoder.setIndex(1);
+		assertEquals(0, decoder.getStatus());
+		assertEquals(-5, decoder.getTime());
+		assertEquals(3, decoder.getCursor());
+		assertEquals(0x3, decoder.getButtons());
+		assertEquals(-1, decoder.getValue(WintabAccess.LEVEL_TYPE_X));
+		assertEquals(0x7fffffff, decoder.getValue(WintabAccess.LEVEL_TYPE_Y));
+		assertEquals(-450, decoder.getValue(WintabAccess.LEVEL_TYPE_TILT_ALTITUDE));
+
+		decoder.setIndex(2);
+		assertEquals(0x10, decoder.getStatus());
+		assertEquals(Integer.MAX_VALUE, decoder.getTime());
+		assertEquals(4, decoder.getCursor());
+		for(int valueIndex=WintabAccess.LEVEL_TYPE_X; valueIndex<=WintabAccess.LEVEL_TYPE_ROTATION; valueIndex++)
+			assertEquals(valueIndex+1, decoder.getValue(valueIndex));
+	}
+
+	public void testDecodesLittleEndianWhateverTheBufferOrder() {
+		ByteBuffer packets=ByteBuffer.allocate(PACKET_SIZE).order(ByteOrder.BIG_ENDIAN);
+		byte[] time={0x04, 0x03, 0x02, 0x01}; // 0x01020304 little endian
+		for(int i=0; i<time.length; i++)
+			packets.put(TIME+i, time[i]);
+		PacketDecoder decoder=new PacketDecoder(packets);
+		decoder.setIndex(0);
+		assertEquals(0x01020304, decoder.getTime());
+	}
+
+	public void testDirectBufferCapacity() {
+		PacketDecoder decoder=new PacketDecoder(16);
+		assertEquals(16, decoder.getCapacity());
+		assertTrue(decoder.packets.isDirect());
+		assertEquals(ByteOrder.LITTLE_ENDIAN, decoder.packets.order());
+	}
+}
@@ -0,0 +1,125 @@
+/* [{
+Copyright 2007, 2008 Nicolas Carranza <nicarran at gmail.com>
+
+This file is part of jpen.
+
+jpen is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License,
+or (at your option) any later version.
+
+jpen is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with jpen.  If not, see <http://www.gnu.org/licenses/>.
+}] */
+package jpen.provider.wintab;
+
+import jpen.PLevel;
+import jpen.internal.Range;
+import junit.framework.TestCase;
+
+public class WintabDeviceTest extends TestCase {
+
+	private static final float DELTA=1e-5f;
+	private static final float PI=(float)Math.PI;
+
+	static final class TestPacket
+		implements WintabPacket {
+		final int[] values=new int[PLevel.Type.VALUES.size()];
+
+		TestPacket(int azimuth, int altitude) {
+			values[WintabAccess.LEVEL_TYPE_TILT_AZIMUTH]=azimuth;
+			values[WintabAccess.LEVEL_TYPE_TILT_ALTITUDE]=altitude;
+		}
+
+		//@Override
+		public int getStatus() {
+			return 0;
+		}
+		//@Override
+		public long getTime() {
+			return 0;
+		}
+		//@Override
+		public int getCursor() {
+			return 1;
+		}
+		//@Override
+		public int getButtons() {
+			return 0;
+		}
+		//@Override
+		public int getValue(int valueIndex) {
+			return values[valueIndex];
+		}
+	}
+
+	/**
+	Intuos like ranges: the azimuth and rotation in tenths of degree, the altitude up to 90deg.
+	*/
+	private static Range[] createLevelRanges() {
+		Range[] levelRanges=new Range[PLevel.Type.VALUES.size()];
+		levelRanges[PLevel.Type.X.ordinal()]=new Range(0, 1000);
+		levelRanges[PLevel.Type.Y.ordinal()]=new Range(0, 1000);
+		levelRanges[PLevel.Type.PRESSURE.ordinal()]=new Range(0, 1024);
+		levelRanges[PLevel.Type.TILT_X.ordinal()]=new Range(0, 3599); // azimuth
+		levelRanges[PLevel.Type.TILT_Y.ordinal()]=new Range(0, 900); // altitude
+		levelRanges[PLevel.Type.SIDE_PRESSURE.ordinal()]=new Range(0, 1023);
+		levelRanges[PLevel.Type.ROTATION.ordinal()]=new Range(0, 3600);
+		return levelRanges;
+	}
+
+	private static final Range[] LEVEL_RANGES=createLevelRanges();
+	private static final float AZIMUTH_RANGE_MAX=WintabDevice.evalCorrectAzimuthRangeMax(3599);
+
+	private static float eval(WintabPacket packet, PLevel.Type type) {
+		return WintabDevice.evalMultRangedValue(packet, type, LEVEL_RANGES, AZIMUTH_RANGE_MAX);
+	}
+
+	public void testCorrectAzimuthRangeMax() {
+		assertEquals(3600f, WintabDevice.evalCorrectAzimuthRangeMax(3599));
+		assertEquals(3600f, WintabDevice.evalCorrectAzimuthRangeMax(3600));
+		assertEquals(360f, WintabDevice.evalCorrectAzimuthRangeMax(359));
+	}
+
+	public void testNoTiltWhenPerpendicular() {
+		TestPacket packet=new TestPacket(1234, 900);
+		assertEquals(0f, eval(packet, PLevel.Type.TILT_X), 0);
+		assertEquals(0f, eval(packet, PLevel.Type.TILT_Y), 0);
+	}
+
+	public void testTiltFromAltitudeAndAzimuth() {
+		TestPacket north=new TestPacket(0, 450); // 45deg altitude, 0deg azimuth
+		assertEquals(0f, eval(north, PLevel.Type.TILT_X), DELTA);
+		assertEquals(-PI/4, eval(north, PLevel.Type.TILT_Y), DELTA);
+
+		TestPacket east=new TestPacket(900, 450);
+		assertEquals(PI/4, eval(east, PLevel.Type.TILT_X), DELTA);
+		assertEquals(0f, eval(east, PLevel.Type.TILT_Y), DELTA);
+
+		TestPacket south=new TestPacket(1800, 600); // 60deg altitude
+		assertEquals(0f, eval(south, PLevel.Type.TILT_X), DELTA);
+		assertEquals((float)Math.atan(1/Math.tan(PI/3)), eval(south, PLevel.Type.TILT_Y), DELTA);
+	}
+
+	public void testEraserAltitudeIsUpsideDown() {
+		TestPacket stylus=new TestPacket(2700, 300), eraser=new TestPacket(2700, -300);
+		for(PLevel.Type type: PLevel.Type.TILT_TYPES)
+			assertEquals(eval(stylus, type), eval(eraser, type), 0);
+		assertEquals(-(float)Math.atan(1/Math.tan(PI/6)), eval(stylus, PLevel.Type.TILT_X), DELTA);
+	}
+
+	public void testRotationAndRangedValues() {
+		TestPacket packet=new TestPacket(0, 900);
+		packet.values[WintabAccess.LEVEL_TYPE_ROTATION]=1800;
+		packet.values[WintabAccess.LEVEL_TYPE_PRESSURE]=512;
+		packet.values[WintabAccess.LEVEL_TYPE_X]=250;
+		assertEquals(PI, eval(packet, PLevel.Type.ROTATION), DELTA);
+		assertEquals(0.5f, eval(packet, PLevel.Type.PRESSURE), 0);
+		assertEquals(0.25f, eval(packet, PLevel.Type.X), 0);
+	}
+}